@@ -0,0 +1,4 @@
+# Dynamic property providers are called from native code
+-keep interface com.aghajari.rlottie.AXrLottieProperty$ColorProvider { *; }
+-keep interface com.aghajari.rlottie.AXrLottieProperty$FloatProvider { *; }
+-keep interface com.aghajari.rlottie.AXrLottieProperty$PointProvider { *; }
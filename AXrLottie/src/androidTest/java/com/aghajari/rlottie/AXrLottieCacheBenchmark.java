@@ -0,0 +1,219 @@
+package com.aghajari.rlottie;
+
+import android.graphics.Bitmap;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Generation, size and decoding of the frames cache:
+ * cache workers, size buckets and delta frames.
+ */
+@RunWith(AndroidJUnit4.class)
+public class AXrLottieCacheBenchmark {
+
+    @After
+    public void tearDown() {
+        AXrLottie.setCacheWorkersCount(0);
+        AXrLottie.setFramesCacheKeyFrameInterval(1);
+    }
+
+    /**
+     * Time to cache 8 stickers at 256px with 1, 2 and 4 workers,
+     * the cached frames must be the frames rendered without a cache.
+     */
+    @Test
+    public void cacheWorkers() throws Exception {
+        int size = 256;
+        List<File> files = copy("workers", Benchmarks.stickers("HotCherry").subList(0, 8));
+        for (int workers : new int[]{1, 2, 4}) {
+            AXrLottie.setCacheWorkersCount(workers);
+            for (File file : files) Benchmarks.delete(new File(file.getParentFile(), "acache"));
+
+            long start = System.nanoTime();
+            for (File file : files) Benchmarks.createCache(file, size);
+            double time = Benchmarks.millis(start);
+
+            int mismatches = 0;
+            Bitmap cached = Benchmarks.bitmap(size), rendered = Benchmarks.bitmap(size);
+            for (File file : files) {
+                int[] params = new int[3];
+                long cache = Benchmarks.create(file, size, params, true);
+                assertEquals("the cache wasn't completed", 0, params[2]);
+                long ptr = Benchmarks.create(file, size, params, false);
+                for (int frame = 0; frame < params[0]; frame += 5) {
+                    AXrLottieNative.getFrame(cache, frame, cached, size, size, cached.getRowBytes());
+                    AXrLottieNative.getFrame(ptr, frame, rendered, size, size, rendered.getRowBytes());
+                    if (!cached.sameAs(rendered)) mismatches++;
+                }
+                AXrLottieNative.destroy(cache);
+                AXrLottieNative.destroy(ptr);
+            }
+            cached.recycle();
+            rendered.recycle();
+            Benchmarks.log("cache workers=%d stickers=%d time-to-cached=%.0fms mismatches=%d cores=%d",
+                    workers, files.size(), time, mismatches, Runtime.getRuntime().availableProcessors());
+            assertEquals(0, mismatches);
+        }
+    }
+
+    /**
+     * 8 stickers shown at 200, 100 and 50px, a cache for each size
+     * against one 256px bucket cache that the smaller views are downscaled from.
+     */
+    @Test
+    public void sizeBuckets() throws Exception {
+        int[] sizes = {200, 100, 50};
+        int bucket = 256;
+        double[] build = new double[2], first = new double[2], frame = new double[2];
+        long[] disk = new long[2];
+        double difference = 0;
+        int compared = 0;
+        List<String> stickers = Benchmarks.stickers("HotCherry").subList(0, 8);
+        for (String sticker : stickers) {
+            File dir = Benchmarks.workDir("buckets");
+            File file = Benchmarks.copy(sticker, dir, "s.json");
+            int[][] reference = new int[sizes.length][];
+
+            for (int index = 0; index < 2; index++) {
+                boolean exact = index == 0;
+                for (int k = 0; k < sizes.length; k++) {
+                    int size = sizes[k], cacheSize = exact ? size : bucket;
+                    int[] params = new int[3];
+                    Bitmap bitmap = Benchmarks.bitmap(size);
+                    long start = System.nanoTime();
+                    long ptr = Benchmarks.create(file, cacheSize, params, true);
+                    AXrLottieNative.getFrame(ptr, 0, bitmap, size, size, bitmap.getRowBytes());
+                    first[index] += Benchmarks.millis(start);
+                    if (params[2] != 0) {
+                        start = System.nanoTime();
+                        AXrLottieNative.createCache(ptr, cacheSize, cacheSize);
+                        build[index] += Benchmarks.millis(start);
+                        AXrLottieNative.destroy(ptr);
+                        ptr = Benchmarks.create(file, cacheSize, params, true);
+                    }
+
+                    int frames = params[0];
+                    start = System.nanoTime();
+                    for (int f = 0; f < frames; f++)
+                        AXrLottieNative.getFrame(ptr, f, bitmap, size, size, bitmap.getRowBytes());
+                    if (k == sizes.length - 1) frame[index] += Benchmarks.millis(start) / frames;
+
+                    AXrLottieNative.getFrame(ptr, frames / 2, bitmap, size, size, bitmap.getRowBytes());
+                    int[] pixels = Benchmarks.pixels(bitmap);
+                    if (exact) {
+                        reference[k] = pixels;
+                    } else if (k > 0) {
+                        difference += meanDifference(pixels, reference[k]);
+                        compared++;
+                    }
+                    AXrLottieNative.destroy(ptr);
+                    bitmap.recycle();
+                }
+                disk[index] += Benchmarks.framesCacheSize(dir);
+                Benchmarks.delete(new File(dir, "acache"));
+            }
+        }
+        for (int index = 0; index < 2; index++) {
+            Benchmarks.log("%s: disk=%dKB build=%.0fms first-frame(sum of 3 views)=%.1fms 50px frame=%.0fus%s",
+                    index == 0 ? "exact   " : "bucketed", disk[index] / 1024, build[index],
+                    first[index] / stickers.size(), frame[index] * 1000 / stickers.size(),
+                    index == 0 ? "" : String.format(Locale.US, " meanAbsDiff=%.2f", difference / compared));
+        }
+        assertTrue(difference / compared < 8);
+    }
+
+    /**
+     * Size and decoding time of the frames cache with key frame intervals of 1, 8, 16 and 32,
+     * every decoded frame must be the rendered frame.
+     */
+    @Test
+    public void deltaFrames() throws Exception {
+        int size = 256;
+        int[] intervals = {1, 8, 16, 32};
+        long[] cacheSize = new long[intervals.length];
+        double[] inOrder = new double[intervals.length], random = new double[intervals.length];
+        long frames = 0, mismatches = 0;
+        for (String pack : Benchmarks.PACKS) {
+            for (String sticker : Benchmarks.stickers(pack).subList(0, 4)) {
+                File dir = Benchmarks.workDir("delta");
+                File file = Benchmarks.copy(sticker, dir, "a.json");
+                int[] params = new int[3];
+                long ptr = Benchmarks.create(file, size, params, false);
+                int count = params[0];
+                int[] reference = new int[count];
+                Bitmap bitmap = Benchmarks.bitmap(size);
+                for (int f = 0; f < count; f++) {
+                    AXrLottieNative.getFrame(ptr, f, bitmap, size, size, bitmap.getRowBytes());
+                    reference[f] = Arrays.hashCode(Benchmarks.pixels(bitmap));
+                }
+                AXrLottieNative.destroy(ptr);
+                frames += count;
+
+                for (int k = 0; k < intervals.length; k++) {
+                    Benchmarks.delete(new File(dir, "acache"));
+                    AXrLottie.setFramesCacheKeyFrameInterval(intervals[k]);
+                    Benchmarks.createCache(file, size);
+                    cacheSize[k] += Benchmarks.framesCacheSize(dir);
+
+                    ptr = Benchmarks.create(file, size, params, true);
+                    long start = System.nanoTime();
+                    for (int f = 0; f < count; f++)
+                        AXrLottieNative.getFrame(ptr, f, bitmap, size, size, bitmap.getRowBytes());
+                    inOrder[k] += Benchmarks.millis(start);
+
+                    Random rnd = new Random(1);
+                    start = System.nanoTime();
+                    for (int i = 0; i < count; i++) {
+                        int f = rnd.nextInt(count);
+                        AXrLottieNative.getFrame(ptr, f, bitmap, size, size, bitmap.getRowBytes());
+                    }
+                    random[k] += Benchmarks.millis(start);
+
+                    for (int f = 0; f < count; f++) {
+                        AXrLottieNative.getFrame(ptr, f, bitmap, size, size, bitmap.getRowBytes());
+                        if (Arrays.hashCode(Benchmarks.pixels(bitmap)) != reference[f]) mismatches++;
+                    }
+                    AXrLottieNative.destroy(ptr);
+                }
+                bitmap.recycle();
+            }
+        }
+        double raw = (double) frames * size * size * 4;
+        for (int k = 0; k < intervals.length; k++) {
+            Benchmarks.log("key frame interval=%2d size=%.1fMB ratio=%.1fx in-order=%.3fms/frame random=%.3fms/frame",
+                    intervals[k], cacheSize[k] / 1048576f, raw / cacheSize[k],
+                    inOrder[k] / frames, random[k] / frames);
+        }
+        assertEquals(0, mismatches);
+    }
+
+    private static List<File> copy(String name, List<String> stickers) throws Exception {
+        File dir = Benchmarks.workDir(name);
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < stickers.size(); i++)
+            files.add(Benchmarks.copy(stickers.get(i), dir, "s" + i + ".json"));
+        return files;
+    }
+
+    private static double meanDifference(int[] a, int[] b) {
+        long sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            for (int shift = 0; shift < 32; shift += 8)
+                sum += Math.abs(((a[i] >>> shift) & 0xff) - ((b[i] >>> shift) & 0xff));
+        }
+        return (double) sum / (a.length * 4);
+    }
+}
@@ -0,0 +1,151 @@
+package com.aghajari.rlottie;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Dropped frames of 50 drawables playing at once, like a grid of stickers.
+ * Every drawable is drawn on each vsync, frames are decoded by {@link AXrLottieFrameScheduler}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class AXrLottieDroppedFramesBenchmark {
+
+    private static final int DRAWABLES = 50;
+    private static final int SIZE = 160;
+    private static final long WARM_UP = 3000;
+    private static final long DURATION = 10000;
+
+    private final List<AXrLottieDrawable> drawables = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            for (AXrLottieDrawable drawable : drawables) drawable.recycle();
+            drawables.clear();
+        });
+        AXrLottie.setMetricsListener(null);
+    }
+
+    @Test
+    public void renderedFrames() throws Exception {
+        run(false);
+    }
+
+    @Test
+    public void cachedFrames() throws Exception {
+        run(true);
+    }
+
+    private void run(boolean cache) throws Exception {
+        List<String> stickers = Benchmarks.stickers();
+        AXrLottieMetrics metrics = new AXrLottieMetrics();
+        AXrLottie.setMetricsListener(metrics);
+        Handler handler = new Handler(Looper.getMainLooper());
+        Drawable.Callback callback = new Drawable.Callback() {
+            @Override
+            public void invalidateDrawable(@NonNull Drawable who) {
+                // drawn on every vsync anyway
+            }
+
+            @Override
+            public void scheduleDrawable(@NonNull Drawable who, @NonNull Runnable what, long when) {
+                handler.postAtTime(what, who, when);
+            }
+
+            @Override
+            public void unscheduleDrawable(@NonNull Drawable who, @NonNull Runnable what) {
+                handler.removeCallbacks(what, who);
+            }
+        };
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            for (int i = 0; i < DRAWABLES; i++) {
+                String sticker = stickers.get(i % stickers.size());
+                AXrLottieDrawable drawable = AXrLottieDrawable.fromAssets(Benchmarks.context(), sticker,
+                        "benchmark_" + (cache ? "cached_" : "") + i)
+                        .setSize(SIZE, SIZE)
+                        .setCacheEnabled(cache)
+                        .setAutoRepeat(true)
+                        .build();
+                drawable.setCallback(callback);
+                drawable.setBounds(0, 0, SIZE, SIZE);
+                drawable.start();
+                drawables.add(drawable);
+            }
+        });
+
+        AXrLottieFrameScheduler scheduler = AXrLottie.getFrameScheduler();
+        int[] vsyncs = new int[1];
+        int[] schedulerCounts = new int[3];
+        CountDownLatch done = new CountDownLatch(1);
+        Bitmap bitmap = Benchmarks.bitmap(SIZE);
+        Canvas canvas = new Canvas(bitmap);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            long start = SystemClock.uptimeMillis();
+            Choreographer.getInstance().postFrameCallback(new Choreographer.FrameCallback() {
+                boolean measuring;
+
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    long time = SystemClock.uptimeMillis() - start;
+                    if (!measuring && time >= WARM_UP) {
+                        // loading and the frames caches aren't measured
+                        measuring = true;
+                        metrics.reset();
+                        schedulerCounts[0] = scheduler.getExecutedCount();
+                        schedulerCounts[1] = scheduler.getDroppedCount();
+                        schedulerCounts[2] = scheduler.getLateCount();
+                    }
+                    if (time >= WARM_UP + DURATION) {
+                        done.countDown();
+                        return;
+                    }
+                    if (measuring) vsyncs[0]++;
+                    for (AXrLottieDrawable drawable : drawables) drawable.draw(canvas);
+                    Choreographer.getInstance().postFrameCallback(this);
+                }
+            });
+        });
+        assertTrue(done.await(WARM_UP + DURATION + 30000, TimeUnit.MILLISECONDS));
+
+        long decoded = 0, dropped = 0, late = 0, slowest = 0;
+        for (AXrLottieMetrics.AnimationMetrics animation : metrics.getAnimations().values()) {
+            decoded += animation.getDecodeLatency().getCount();
+            dropped += animation.getDroppedFrames();
+            late += animation.getLateFrames();
+            slowest = Math.max(slowest, animation.getDecodeLatency().getPercentile(90));
+        }
+        Benchmarks.log("%d drawables, %s frames, %.0fs, %d vsyncs: decoded=%d dropped=%d (%.1f%%) late=%d"
+                        + " p90 decode of the slowest animation=%.2fms"
+                        + " scheduler executed=%d dropped=%d late=%d workers=%d",
+                DRAWABLES, cache ? "cached" : "rendered", DURATION / 1000f, vsyncs[0],
+                decoded, dropped, 100f * dropped / Math.max(1, decoded + dropped), late,
+                slowest / 1e6,
+                scheduler.getExecutedCount() - schedulerCounts[0],
+                scheduler.getDroppedCount() - schedulerCounts[1],
+                scheduler.getLateCount() - schedulerCounts[2],
+                scheduler.getWorkersCount());
+        bitmap.recycle();
+        assertTrue("no frame was decoded", decoded > 0);
+    }
+}
@@ -0,0 +1,101 @@
+package com.aghajari.rlottie;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Exports of animations to files.
+ */
+@RunWith(AndroidJUnit4.class)
+public class AXrLottieExportBenchmark {
+
+    private static final int SIZE = 256;
+
+    /**
+     * Frames per second of the gif encoder with 1, 2 and 4 threads,
+     * exporting the first sticker of each pack at 256px.
+     */
+    @Test
+    public void gifThreads() throws Exception {
+        File dir = Benchmarks.workDir("gif");
+        for (String pack : Benchmarks.PACKS) {
+            File file = Benchmarks.copy(Benchmarks.stickers(pack).get(0), dir, pack + ".json");
+            int[] params = new int[3];
+            long ptr = Benchmarks.create(file, SIZE, params, false);
+            int frames = AXrLottieNative.getFramesCount(ptr);
+            StringBuilder result = new StringBuilder(pack).append(' ').append(frames).append(" frames");
+            for (int threads : new int[]{1, 2, 4}) {
+                File gif = new File(dir, pack + "_" + threads + ".gif");
+                long start = System.nanoTime();
+                AXrLottie2Gif export = AXrLottie2Gif.create(ptr)
+                        .setSize(SIZE, SIZE)
+                        .setOutputPath(gif)
+                        .setBackgroundTask(false)
+                        .setThreadsCount(threads)
+                        .build();
+                double time = Benchmarks.millis(start);
+                assertTrue(export.isSuccessful());
+                result.append(String.format(Locale.US, "  threads=%d %.1ffps %dKB",
+                        threads, frames * 1000 / time, gif.length() / 1024));
+            }
+            AXrLottieNative.destroy(ptr);
+            Benchmarks.log("%s, cores=%d", result, Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    /**
+     * Encode time and size of animated WebP, lossy (quality 80) and lossless,
+     * against the single threaded gif of 4 stickers of each pack at 256px.
+     */
+    @Test
+    public void webp() throws Exception {
+        File dir = Benchmarks.workDir("webp");
+        String[] outputs = {"gif", "webp q80", "webp lossless"};
+        double[] time = new double[outputs.length];
+        long[] size = new long[outputs.length];
+        int files = 0, frames = 0;
+        for (String pack : Benchmarks.PACKS) {
+            for (String sticker : Benchmarks.stickers(pack).subList(0, 4)) {
+                File file = Benchmarks.copy(sticker, dir, "w" + files++ + ".json");
+                int[] params = new int[3];
+                long ptr = Benchmarks.create(file, SIZE, params, false);
+                frames += AXrLottieNative.getFramesCount(ptr);
+                for (int output = 0; output < outputs.length; output++) {
+                    File result = new File(dir, "w" + output + (output == 0 ? ".gif" : ".webp"));
+                    boolean successful;
+                    long start = System.nanoTime();
+                    if (output == 0) {
+                        successful = AXrLottie2Gif.create(ptr)
+                                .setSize(SIZE, SIZE)
+                                .setOutputPath(result)
+                                .setBackgroundTask(false)
+                                .build().isSuccessful();
+                    } else {
+                        successful = AXrLottie2WebP.create(ptr)
+                                .setSize(SIZE, SIZE)
+                                .setOutputPath(result)
+                                .setBackgroundTask(false)
+                                .setQuality(80)
+                                .setLossless(output == 2)
+                                .build().isSuccessful();
+                    }
+                    time[output] += Benchmarks.millis(start);
+                    assertTrue(outputs[output], successful);
+                    size[output] += result.length();
+                }
+                AXrLottieNative.destroy(ptr);
+            }
+        }
+        for (int output = 0; output < outputs.length; output++) {
+            Benchmarks.log("%s: %d stickers, %d frames at %dpx, %.1fms/frame, %dKB",
+                    outputs[output], files, frames, SIZE, time[output] / frames, size[output] / 1024);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.aghajari.rlottie;
+
+import android.graphics.Bitmap;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.aghajari.rlottie.decoder.AXrFileReader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Cold loads of animations, the model cache is disabled so that every load is measured.
+ */
+@RunWith(AndroidJUnit4.class)
+public class AXrLottieLoadBenchmark {
+
+    private static final int ITERATIONS = 20;
+
+    @Before
+    public void setUp() {
+        Benchmarks.context();
+        AXrLottie.configureModelCacheSize(0);
+    }
+
+    @After
+    public void tearDown() {
+        // the default size
+        AXrLottie.configureModelCacheSize(10);
+    }
+
+    /**
+     * tractor.json loaded from the assets through a String, a direct buffer and a file.
+     */
+    @Test
+    public void assetLoading() throws Exception {
+        String asset = "tractor.json";
+        File file = Benchmarks.copy(asset, Benchmarks.workDir("load"), asset);
+        int[] params = new int[3];
+        double[] time = new double[3];
+        long[] heap = new long[3];
+        Runtime runtime = Runtime.getRuntime();
+        for (int mode = 0; mode < 3; mode++) {
+            for (int i = 0; i < ITERATIONS; i++) {
+                String name = "load_" + mode + "_" + i;
+                runtime.gc();
+                long used = runtime.totalMemory() - runtime.freeMemory();
+                long start = System.nanoTime();
+                long ptr;
+                if (mode == 0) {
+                    String json = AXrFileReader.fromAssets(Benchmarks.context(), asset);
+                    heap[mode] = Math.max(heap[mode], runtime.totalMemory() - runtime.freeMemory() - used);
+                    ptr = AXrLottieNative.createWithJson(json, name, params);
+                } else if (mode == 1) {
+                    ByteBuffer buffer = AXrFileReader.bufferFromAssets(Benchmarks.context(), asset);
+                    heap[mode] = Math.max(heap[mode], runtime.totalMemory() - runtime.freeMemory() - used);
+                    ptr = AXrLottieNative.createWithBuffer(buffer, buffer.position(), buffer.remaining(), name, params);
+                } else {
+                    ptr = Benchmarks.create(file, 100, params, false);
+                }
+                time[mode] += Benchmarks.millis(start);
+                assertNotEquals(0, ptr);
+                AXrLottieNative.destroy(ptr);
+            }
+        }
+        String[] modes = {"String", "buffer", "file"};
+        for (int mode = 0; mode < 3; mode++) {
+            Benchmarks.log("%s: %.2fms/load java heap=%dKB (file %dKB)", modes[mode],
+                    time[mode] / ITERATIONS, heap[mode] / 1024, file.length() / 1024);
+        }
+    }
+
+    /**
+     * 24 stickers loaded from their json and from the binary model written next to their frames cache,
+     * both must render the same frames.
+     */
+    @Test
+    public void binaryModel() throws Exception {
+        File dir = Benchmarks.workDir("binary");
+        List<File> files = new ArrayList<>();
+        for (String pack : Benchmarks.PACKS) {
+            List<String> stickers = Benchmarks.stickers(pack);
+            for (int i = 0; i < 8; i++)
+                files.add(Benchmarks.copy(stickers.get(i), dir, pack + "_" + i + ".json"));
+        }
+
+        int[] params = new int[3];
+        long jsonBytes = 0, binaryBytes = 0;
+        List<File> binaries = new ArrayList<>();
+        for (File file : files) {
+            // writes acache/<name>.lottiebin
+            AXrLottieNative.destroy(Benchmarks.create(file, 128, params, true));
+            File binary = new File(dir, "acache/" + file.getName() + ".lottiebin");
+            assertTrue(binary.exists());
+            binaries.add(binary);
+            jsonBytes += file.length();
+            binaryBytes += binary.length();
+        }
+
+        double json = 0, binary = 0;
+        int mismatches = 0;
+        Bitmap a = Benchmarks.bitmap(128), b = Benchmarks.bitmap(128);
+        for (int i = 0; i < files.size(); i++) {
+            long start = System.nanoTime();
+            long fromJson = Benchmarks.create(files.get(i), 128, params, false);
+            json += Benchmarks.millis(start);
+            start = System.nanoTime();
+            long fromBinary = Benchmarks.create(binaries.get(i), 128, params, false);
+            binary += Benchmarks.millis(start);
+
+            for (int frame = 0; frame < params[0]; frame++) {
+                a.eraseColor(0);
+                b.eraseColor(0);
+                AXrLottieNative.renderFrame(fromJson, frame, a, 128, 128, a.getRowBytes());
+                AXrLottieNative.renderFrame(fromBinary, frame, b, 128, 128, b.getRowBytes());
+                if (!a.sameAs(b)) mismatches++;
+            }
+            AXrLottieNative.destroy(fromJson);
+            AXrLottieNative.destroy(fromBinary);
+        }
+        a.recycle();
+        b.recycle();
+        Benchmarks.log("%d stickers, %dKB of json: json parse=%.1fms binary model=%.1fms (%dKB) mismatches=%d",
+                files.size(), jsonBytes / 1024, json, binary, binaryBytes / 1024, mismatches);
+        assertEquals(0, mismatches);
+    }
+}
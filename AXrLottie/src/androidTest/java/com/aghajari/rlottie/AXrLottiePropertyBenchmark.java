@@ -0,0 +1,128 @@
+package com.aghajari.rlottie;
+
+import android.graphics.Bitmap;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Layer properties: dynamic properties called on every frame
+ * and property batches against the setters of single properties.
+ */
+@RunWith(AndroidJUnit4.class)
+public class AXrLottiePropertyBenchmark {
+
+    private static final int SIZE = 200;
+
+    /**
+     * 20 dynamic properties set on every layer of tractor.json, all frames rendered.
+     */
+    @Test
+    public void dynamicProperties() throws Exception {
+        File file = Benchmarks.copy("tractor.json", Benchmarks.workDir("dynamic"), "tractor.json");
+        int[] params = new int[3];
+        long ptr = Benchmarks.create(file, SIZE, params, false);
+        Bitmap bitmap = Benchmarks.bitmap(SIZE);
+        AXrLottieNative.getFrame(ptr, 5, bitmap, SIZE, SIZE, bitmap.getRowBytes());
+        int[] plain = Benchmarks.pixels(bitmap);
+
+        AtomicInteger calls = new AtomicInteger();
+        for (int i = 0; i < 20; i++) {
+            if (i % 3 == 0) {
+                AXrLottieNative.setDynamicLayerTrRotation(ptr, "**", frame -> {
+                    calls.incrementAndGet();
+                    return frame * 3;
+                });
+            } else if (i % 3 == 1) {
+                AXrLottieNative.setDynamicLayerColor(ptr, "**", frame -> {
+                    calls.incrementAndGet();
+                    return 0xff0000 | frame;
+                });
+            } else {
+                AXrLottieNative.setDynamicLayerTrPosition(ptr, "**", (frame, out) -> {
+                    calls.incrementAndGet();
+                    out[0] = frame;
+                    out[1] = frame;
+                });
+            }
+        }
+        AXrLottieNative.getFrame(ptr, 5, bitmap, SIZE, SIZE, bitmap.getRowBytes());
+        boolean changed = !Arrays.equals(plain, Benchmarks.pixels(bitmap));
+
+        int frames = params[0];
+        int before = calls.get();
+        long start = System.nanoTime();
+        for (int frame = 0; frame < frames; frame++)
+            AXrLottieNative.getFrame(ptr, frame, bitmap, SIZE, SIZE, bitmap.getRowBytes());
+        double time = Benchmarks.millis(start);
+        int frameCalls = calls.get() - before;
+        AXrLottieNative.destroy(ptr);
+        bitmap.recycle();
+
+        Benchmarks.log("20 dynamic properties: %d frames %.1fms (%.2fms/frame), %d provider calls (%.1f/frame)",
+                frames, time, time / frames, frameCalls, (float) frameCalls / frames);
+        assertTrue("the dynamic properties weren't applied", changed);
+        assertTrue(frameCalls > 0);
+    }
+
+    /**
+     * The same 3 properties applied to the stickers of a pack through one batch
+     * and through a setter call for each property, both must render the same frame.
+     */
+    @Test
+    public void propertyBatch() throws Exception {
+        File dir = Benchmarks.workDir("batch");
+        List<String> stickers = Benchmarks.stickers("HotCherry");
+        AXrLottiePropertyBatch batch = new AXrLottiePropertyBatch()
+                .add("**", AXrLottieProperty.fillColor(0x3366cc))
+                .add("**", AXrLottieProperty.trRotation(30))
+                .add("**", AXrLottieProperty.trScale(80, 60));
+
+        int[] params = new int[3];
+        double batched = 0, batchedAgain = 0, single = 0;
+        int mismatches = 0;
+        Bitmap a = Benchmarks.bitmap(SIZE), b = Benchmarks.bitmap(SIZE);
+        for (int i = 0; i < stickers.size(); i++) {
+            File file = Benchmarks.copy(stickers.get(i), dir, "s" + i + ".json");
+            long withBatch = Benchmarks.create(file, SIZE, params, false);
+            long withSetters = Benchmarks.create(file, SIZE, params, false);
+
+            long start = System.nanoTime();
+            batch.apply(withBatch);
+            batched += Benchmarks.millis(start);
+            // the key paths are resolved already
+            start = System.nanoTime();
+            batch.apply(withBatch);
+            batchedAgain += Benchmarks.millis(start);
+
+            start = System.nanoTime();
+            AXrLottieNative.setLayerColor(withSetters, "**", 0x3366cc);
+            AXrLottieNative.setLayerTrRotation(withSetters, "**", 30);
+            AXrLottieNative.setLayerTrScale(withSetters, "**", 80, 60);
+            single += Benchmarks.millis(start);
+
+            int frame = params[0] / 2;
+            AXrLottieNative.getFrame(withBatch, frame, a, SIZE, SIZE, a.getRowBytes());
+            AXrLottieNative.getFrame(withSetters, frame, b, SIZE, SIZE, b.getRowBytes());
+            if (!a.sameAs(b)) mismatches++;
+            AXrLottieNative.destroy(withBatch);
+            AXrLottieNative.destroy(withSetters);
+        }
+        batch.release();
+        a.recycle();
+        b.recycle();
+        int count = stickers.size();
+        Benchmarks.log("3 properties on %d stickers: batch=%.0fus applied again=%.0fus setters=%.0fus mismatches=%d",
+                count, batched * 1000 / count, batchedAgain * 1000 / count, single * 1000 / count, mismatches);
+        assertEquals(0, mismatches);
+    }
+}
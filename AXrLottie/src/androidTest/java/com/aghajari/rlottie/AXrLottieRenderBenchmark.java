@@ -0,0 +1,205 @@
+package com.aghajari.rlottie;
+
+import android.graphics.Bitmap;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Frames rendered without a frames cache: byte order, partial redraws and render bands.
+ */
+@RunWith(AndroidJUnit4.class)
+public class AXrLottieRenderBenchmark {
+
+    @After
+    public void tearDown() {
+        AXrLottie.setRenderBandsCount(1);
+    }
+
+    /**
+     * getFrame throughput of frames rendered in ARGB and swizzled afterwards
+     * against frames rendered straight in Android's byte order, both must be the same frames.
+     */
+    @Test
+    public void byteOrder() throws Exception {
+        File dir = Benchmarks.workDir("byte_order");
+        List<String> animations = new ArrayList<>();
+        animations.add("loader.json");
+        animations.add("emoji_simple.json");
+        animations.add("tractor.json");
+        for (String pack : Benchmarks.PACKS) animations.add(Benchmarks.stickers(pack).get(0));
+
+        int mismatches = 0;
+        for (int size : new int[]{256, 512}) {
+            Bitmap swizzled = Benchmarks.bitmap(size), direct = Benchmarks.bitmap(size);
+            for (int i = 0; i < animations.size(); i++) {
+                File file = Benchmarks.copy(animations.get(i), dir, "o" + i + ".json");
+                int[] params = new int[3];
+                long ptr = Benchmarks.create(file, size, params, false);
+                int frames = params[0];
+                // each path renders all frames in turn, twice
+                double before = 0, after = 0;
+                for (int pass = 0; pass < 2; pass++) {
+                    long start = System.nanoTime();
+                    for (int frame = 0; frame < frames; frame++)
+                        AXrLottieNative.renderFrameSwizzled(ptr, frame, swizzled, size, size, swizzled.getRowBytes());
+                    before += Benchmarks.millis(start);
+                    start = System.nanoTime();
+                    for (int frame = 0; frame < frames; frame++)
+                        AXrLottieNative.renderFrame(ptr, frame, direct, size, size, direct.getRowBytes());
+                    after += Benchmarks.millis(start);
+                }
+                for (int frame = 0; frame < frames; frame++) {
+                    AXrLottieNative.renderFrameSwizzled(ptr, frame, swizzled, size, size, swizzled.getRowBytes());
+                    AXrLottieNative.renderFrame(ptr, frame, direct, size, size, direct.getRowBytes());
+                    if (!swizzled.sameAs(direct)) mismatches++;
+                }
+                AXrLottieNative.destroy(ptr);
+                Benchmarks.log("%dpx %s: ARGB + swizzle=%.0fus/frame ABGR=%.0fus/frame",
+                        size, animations.get(i), before * 500 / frames, after * 500 / frames);
+            }
+            swizzled.recycle();
+            direct.recycle();
+        }
+        Benchmarks.log("byte order mismatched frames=%d", mismatches);
+        assertEquals(0, mismatches);
+    }
+
+    /**
+     * Two loops of 4 stickers of each pack at 256px drawn into two bitmaps used in turn, like a drawable
+     * with partial rendering enabled does, only the area that changed since the frame a bitmap holds is redrawn.
+     * Logs the pixels rendered per frame and the time of both paths,
+     * every frame may differ from the fully rendered frame by 1 in a channel at most.
+     */
+    @Test
+    public void partialFrames() throws Exception {
+        int size = 256;
+        File dir = Benchmarks.workDir("partial");
+        double full = 0, partial = 0;
+        long changed = 0, total = 0, fullPixels = 0, partialPixels = 0;
+        int mismatches = 0, files = 0, rendered = 0;
+        Bitmap expected = Benchmarks.bitmap(size);
+        Bitmap[] bitmaps = {Benchmarks.bitmap(size), Benchmarks.bitmap(size)};
+        int[] region = new int[4];
+        long[] stats = new long[4];
+        for (String pack : Benchmarks.PACKS) {
+            for (String sticker : Benchmarks.stickers(pack).subList(0, 4)) {
+                File file = Benchmarks.copy(sticker, dir, "p" + files++ + ".json");
+                int[] params = new int[3];
+                long reference = Benchmarks.create(file, size, params, false);
+                long ptr = Benchmarks.create(file, size, params, false);
+                boolean[] drawn = new boolean[2];
+                int frames = params[0];
+                for (int loop = 0; loop < 2; loop++) {
+                    for (int frame = 0; frame < frames; frame++) {
+                        int index = (loop * frames + frame) & 1;
+                        Bitmap bitmap = bitmaps[index];
+                        long start = System.nanoTime();
+                        AXrLottieNative.getFramePartial(ptr, frame, bitmap, size, size,
+                                bitmap.getRowBytes(), drawn[index], region);
+                        partial += Benchmarks.millis(start);
+                        drawn[index] = true;
+                        AXrLottieNative.readFrameStats(ptr, stats);
+                        partialPixels += stats[3];
+
+                        start = System.nanoTime();
+                        AXrLottieNative.getFrame(reference, frame, expected, size, size, expected.getRowBytes());
+                        full += Benchmarks.millis(start);
+                        AXrLottieNative.readFrameStats(reference, stats);
+                        fullPixels += stats[3];
+                        rendered++;
+
+                        if (maxDifference(Benchmarks.pixels(bitmap), Benchmarks.pixels(expected)) > 1)
+                            mismatches++;
+                        if (loop == 1) {
+                            changed += (long) region[2] * region[3];
+                            total += size * size;
+                        }
+                    }
+                }
+                AXrLottieNative.destroy(reference);
+                AXrLottieNative.destroy(ptr);
+            }
+        }
+        expected.recycle();
+        for (Bitmap bitmap : bitmaps) bitmap.recycle();
+        Benchmarks.log("%d stickers, 2 loops at %dpx: changed=%.1f%% full=%dpx/frame %.0fms"
+                        + " partial=%dpx/frame %.0fms mismatches=%d",
+                files, size, 100f * changed / total, fullPixels / rendered, full,
+                partialPixels / rendered, partial, mismatches);
+        assertEquals(0, mismatches);
+    }
+
+    /**
+     * Time of a big frame drawn in 1, 2, 4 and 8 bands,
+     * the frames must be the frames drawn on a single thread.
+     */
+    @Test
+    public void renderBands() throws Exception {
+        int size = 1080;
+        File dir = Benchmarks.workDir("bands");
+        List<String> animations = new ArrayList<>();
+        animations.add("tractor.json");
+        for (String pack : Benchmarks.PACKS) animations.add(Benchmarks.stickers(pack).get(0));
+
+        int mismatches = 0;
+        Bitmap bitmap = Benchmarks.bitmap(size);
+        for (int i = 0; i < animations.size(); i++) {
+            File file = Benchmarks.copy(animations.get(i), dir, "b" + i + ".json");
+            int[] params = new int[3];
+            long ptr = Benchmarks.create(file, size, params, false);
+            int frames = Math.min(params[0], 60);
+            // frames of 1080px are too big to keep, their hashes are compared
+            int[] reference = new int[frames];
+            StringBuilder result = new StringBuilder(animations.get(i));
+            for (int bands : new int[]{1, 2, 4, 8}) {
+                AXrLottie.setRenderBandsCount(bands);
+                double[] times = new double[frames];
+                double sum = 0;
+                for (int frame = 0; frame < frames; frame++) {
+                    long start = System.nanoTime();
+                    AXrLottieNative.getFrame(ptr, frame, bitmap, size, size, bitmap.getRowBytes());
+                    times[frame] = Benchmarks.millis(start);
+                    sum += times[frame];
+
+                    int hash = Arrays.hashCode(Benchmarks.pixels(bitmap));
+                    if (bands == 1) {
+                        reference[frame] = hash;
+                    } else if (hash != reference[frame]) {
+                        mismatches++;
+                    }
+                }
+                Arrays.sort(times);
+                result.append(String.format(Locale.US, "  bands=%d mean=%.2fms p95=%.2fms",
+                        bands, sum / frames, times[frames * 95 / 100]));
+            }
+            Benchmarks.log("%s", result);
+            AXrLottieNative.destroy(ptr);
+        }
+        bitmap.recycle();
+        Benchmarks.log("%dpx, cores=%d, mismatched frames=%d",
+                size, Runtime.getRuntime().availableProcessors(), mismatches);
+        assertEquals(0, mismatches);
+    }
+
+    private static int maxDifference(int[] a, int[] b) {
+        int max = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] == b[i]) continue;
+            for (int shift = 0; shift < 32; shift += 8)
+                max = Math.max(max, Math.abs(((a[i] >>> shift) & 0xff) - ((b[i] >>> shift) & 0xff)));
+        }
+        return max;
+    }
+}
@@ -0,0 +1,152 @@
+package com.aghajari.rlottie;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Animations and helpers shared by the benchmarks, the animations are the assets of the sample app.
+ * Results are written to logcat with the {@link #TAG} tag.
+ */
+final class Benchmarks {
+
+    static final String TAG = "AXrLottieBenchmark";
+    static final String[] PACKS = {"HotCherry", "KangarooFighter", "ValentineCat"};
+
+    private static boolean initialized;
+
+    private Benchmarks() {
+    }
+
+    static synchronized Context context() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        if (!initialized) {
+            AXrLottie.init(context);
+            initialized = true;
+        }
+        return context;
+    }
+
+    /**
+     * @return asset paths of the stickers of a pack, in name order
+     */
+    static List<String> stickers(String pack) throws IOException {
+        String[] names = context().getAssets().list(pack);
+        List<String> stickers = new ArrayList<>();
+        if (names != null) {
+            Arrays.sort(names);
+            for (String name : names) {
+                if (name.endsWith(".json")) stickers.add(pack + "/" + name);
+            }
+        }
+        return stickers;
+    }
+
+    /**
+     * @return asset paths of the stickers of every pack
+     */
+    static List<String> stickers() throws IOException {
+        List<String> stickers = new ArrayList<>();
+        for (String pack : PACKS) stickers.addAll(stickers(pack));
+        return stickers;
+    }
+
+    /**
+     * @return an empty directory for the files of a benchmark
+     */
+    static File workDir(String name) {
+        File dir = new File(context().getCacheDir(), "benchmark_" + name);
+        delete(dir);
+        dir.mkdirs();
+        return dir;
+    }
+
+    /**
+     * Copies an asset to a file, native code loads the animations from files.
+     */
+    static File copy(String asset, File dir, String name) throws IOException {
+        File file = new File(dir, name);
+        try (InputStream input = context().getAssets().open(asset);
+             OutputStream output = new FileOutputStream(file)) {
+            byte[] buffer = new byte[16 * 1024];
+            int count;
+            while ((count = input.read(buffer)) > 0) output.write(buffer, 0, count);
+        }
+        return file;
+    }
+
+    static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) delete(child);
+        }
+        file.delete();
+    }
+
+    /**
+     * @return size of the frames caches of the animations in the directory
+     */
+    static long framesCacheSize(File dir) {
+        File[] files = new File(dir, "acache").listFiles();
+        long size = 0;
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(".cache")) size += file.length();
+            }
+        }
+        return size;
+    }
+
+    static Bitmap bitmap(int size) {
+        return Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+    }
+
+    static int[] pixels(Bitmap bitmap) {
+        int[] pixels = new int[bitmap.getWidth() * bitmap.getHeight()];
+        bitmap.getPixels(pixels, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+        return pixels;
+    }
+
+    /**
+     * @return a native animation, the frames cache is used if precache is true
+     */
+    static long create(File file, int size, int[] params, boolean precache) {
+        return AXrLottieNative.create(file.getAbsolutePath(), size, size, params, precache, false);
+    }
+
+    /**
+     * Generates the frames cache of the animation the way a drawable does,
+     * the first frame starts it and createCache writes the rest.
+     */
+    static void createCache(File file, int size) {
+        int[] params = new int[3];
+        long ptr = create(file, size, params, true);
+        if (params[2] != 0) {
+            Bitmap bitmap = bitmap(size);
+            AXrLottieNative.getFrame(ptr, 0, bitmap, size, size, bitmap.getRowBytes());
+            AXrLottieNative.createCache(ptr, size, size);
+            bitmap.recycle();
+        }
+        AXrLottieNative.destroy(ptr);
+    }
+
+    static double millis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1e6;
+    }
+
+    static void log(String format, Object... args) {
+        Log.i(TAG, String.format(Locale.US, format, args));
+    }
+}
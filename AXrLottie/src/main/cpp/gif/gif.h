@@ -66,6 +66,10 @@
 #include<string>
 #include<vector>
 #include<array>
+#include<atomic>
+#include<condition_variable>
+#include<mutex>
+#include<thread>
 
 #include <jni.h>
 
@@ -832,6 +836,19 @@ bool GifWriteFrame( GifWriter* writer, const uint8_t* image, uint32_t width, uin
     return true;
 }
 
+// Palettizes a frame the way GifWriteFrame does, but the frame is compared against the previous
+// source frame instead of the previous output, so frames can be palettized on different threads.
+// outFrame can be written with GifWriteLzwImage afterwards.
+void GifQuantizeFrame( const uint8_t* lastFrame, const uint8_t* image, uint8_t* outFrame, uint32_t width, uint32_t height, int bitDepth, bool dither, GifPalette* pPal )
+{
+    GifMakePalette((dither? NULL : lastFrame), image, width, height, bitDepth, dither, pPal);
+
+    if(dither)
+        GifDitherImage(lastFrame, image, outFrame, width, height, pPal);
+    else
+        GifThresholdImage(lastFrame, image, outFrame, width, height, pPal);
+}
+
 // Writes the EOF code, closes the file handle, and frees temp memory used by a GIF.
 // Many if not most viewers will still display a GIF properly if the EOF code is missing,
 // but it's still a good idea to write it out.
@@ -855,6 +872,8 @@ public:
                         const uint32_t height, const int bgColor=0xffffffff, const uint32_t delay = 2,const int32_t bitDepth = 8, const bool dither = false)
     {
         GifBegin(&handle, fileName.c_str(), width, height, delay,bitDepth,dither);
+        this->width = width;
+        this->height = height;
         bgColorR = (uint8_t) ((bgColor & 0xff0000) >> 16);
         bgColorG = (uint8_t) ((bgColor & 0x00ff00) >> 8);
         bgColorB = (uint8_t) ((bgColor & 0x0000ff));
@@ -865,53 +884,61 @@ public:
     }
     void addFrame(rlottie::Surface &s, uint32_t delay = 2,int32_t bitDepth = 8, bool dither = false)
     {
-        convertToCanvasFormat(s);
+        blendBackground(s);
         GifWriteFrame(&handle,
                       reinterpret_cast<uint8_t *>(s.buffer()),
                       s.width(),
                       s.height(),
                       delay,bitDepth,dither);
     }
-    void convertToCanvasFormat(rlottie::Surface &s)
+    // writes a frame that has been palettized by GifQuantizeFrame
+    void addQuantizedFrame(uint8_t *image, GifPalette *pal, uint32_t delay = 2)
+    {
+        if (handle.f == nullptr) return;
+        GifWriteLzwImage(handle.f, image, 0, 0, width, height, delay, pal);
+    }
+    bool isOpen() const
     {
-        uint8_t *buffer = reinterpret_cast<uint8_t *>(s.buffer());
-        uint32_t totalBytes = s.height() * s.bytesPerLine();
+        return handle.f != nullptr;
+    }
+    void blendBackground(rlottie::Surface &s)
+    {
+        blendBackground(reinterpret_cast<uint8_t *>(s.buffer()), s.height() * s.bytesPerLine());
+    }
+    // frames are rendered in R, G, B, A byte order already,
+    // only the background has to be composed under translucent pixels.
+    void blendBackground(uint8_t *buffer, size_t totalBytes) const
+    {
+        for (size_t i = 0; i < totalBytes; i += 4) {
+            uint32_t a = buffer[i+3];
+            if (a == 255) continue;
 
-        for (uint32_t i = 0; i < totalBytes; i += 4) {
-            unsigned char a = buffer[i+3];
-            // compute only if alpha is non zero
             if (a) {
-                unsigned char r = buffer[i+2];
-                unsigned char g = buffer[i+1];
-                unsigned char b = buffer[i];
-
-                if (a != 255) { //un premultiply
-                    unsigned char r2 = (unsigned char) ((float) bgColorR * ((float) (255 - a) / 255));
-                    unsigned char g2 = (unsigned char) ((float) bgColorG * ((float) (255 - a) / 255));
-                    unsigned char b2 = (unsigned char) ((float) bgColorB * ((float) (255 - a) / 255));
-                    buffer[i] = r + r2;
-                    buffer[i+1] = g + g2;
-                    buffer[i+2] = b + b2;
-
-                } else {
-                    // only swizzle r and b
-                    buffer[i] = r;
-                    buffer[i+1] = g;
-                    buffer[i+2] = b;
-                }
+                uint32_t ia = 255 - a;
+                buffer[i] += (uint8_t) (bgColorR * ia / 255);
+                buffer[i+1] += (uint8_t) (bgColorG * ia / 255);
+                buffer[i+2] += (uint8_t) (bgColorB * ia / 255);
             } else {
-                buffer[i+2] = bgColorB;
-                buffer[i+1] = bgColorG;
                 buffer[i] = bgColorR;
+                buffer[i+1] = bgColorG;
+                buffer[i+2] = bgColorB;
             }
         }
     }
 
 private:
     GifWriter      handle;
+    uint32_t width, height;
     uint8_t bgColorR, bgColorG, bgColorB;
 };
 
+// A frame of Lottie2Gif::renderPipelined, frames reuse (frame % slots count) slots.
+struct GifPipelineFrame {
+    std::vector<uint8_t> image;
+    std::vector<uint8_t> output;
+    GifPalette palette;
+};
+
 class Lottie2Gif {
 public:
     bool render(LottieInfo* player, jobject bitmap, int w, int h, int stride, int bgColor, std::string gifName,int delay,int bitDepth, bool dither,int frameStart,int frameEnd,JNIEnv *env,jobject listener) {
@@ -936,9 +963,8 @@ public:
                 env->CallVoidMethod(store_Wlistener, mth_start);
 
                 for (size_t i = start; i < end; i++) {
-                    rlottie::Surface surface((uint32_t *) pixels, (size_t) w, (size_t)h,(size_t) stride);
+                    rlottie::Surface surface = LottieWrapper::canvasSurface((uint32_t *) pixels, (size_t) w, (size_t)h,(size_t) stride);
                     player->animation->renderSync(i, surface);
-                    //LottieWrapper::convertToCanvasFormat(surface);
                     builder.addFrame(surface,delay,bitDepth,dither);
 
                     env->CallVoidMethod(store_Wlistener, mth_update, (jint) (i + 1),
@@ -948,9 +974,8 @@ public:
                 env->CallVoidMethod(store_Wlistener, mth_end);
             } else {
                 for (size_t i = start; i < end; i++) {
-                    rlottie::Surface surface((uint32_t *) pixels, (size_t)w, (size_t)h,(size_t)stride);
+                    rlottie::Surface surface = LottieWrapper::canvasSurface((uint32_t *) pixels, (size_t)w, (size_t)h,(size_t)stride);
                     player->animation->renderSync(i, surface);
-                    //LottieWrapper::convertToCanvasFormat(surface);
                     builder.addFrame(surface,delay,bitDepth,dither);
                 }
             }
@@ -961,6 +986,155 @@ public:
         return false;
     }
 
+    // Renders and palettizes frames on several threads while this thread writes them in order.
+    // Every frame is compared against the previous rendered frame (see GifQuantizeFrame),
+    // the output may differ slightly from render().
+    bool renderPipelined(LottieInfo* player, int w, int h, int bgColor, const std::string &gifName,int delay,int bitDepth, bool dither,int frameStart,int frameEnd,int threads,JNIEnv *env,jobject listener) {
+        size_t frameCount = player->animation->totalFrame();
+        size_t start = 0,end = frameCount;
+        if (frameStart>0 && frameStart<frameCount) start = frameStart;
+        if (frameEnd>1 && frameEnd<frameCount) end = frameEnd;
+        size_t count = end > start ? end - start : 0;
+
+        GifBuilder builder(gifName, w, h, bgColor, delay,bitDepth,dither);
+        if (!builder.isOpen()) {
+            return false;
+        }
+
+        jweak store_Wlistener = nullptr;
+        jmethodID mth_update = nullptr;
+        if (listener != NULL) {
+            store_Wlistener = env->NewWeakGlobalRef(listener);
+            jclass clazz = env->GetObjectClass(store_Wlistener);
+            mth_update = env->GetMethodID(clazz, "onProgress", "(II)V");
+            env->CallVoidMethod(store_Wlistener, env->GetMethodID(clazz, "onStarted", "()V"));
+        }
+
+        size_t workersCount = std::max((size_t) 1, std::min((size_t) threads, count));
+        // a new renderer tree doesn't have the layer properties of this animation
+        std::vector<std::unique_ptr<rlottie::Animation>> animations;
+        if (!player->propertiesChanged && !player->path.empty()) {
+            for (size_t a = 1; a < workersCount; a++) {
+                std::unique_ptr<rlottie::Animation> animation = rlottie::Animation::loadFromFile(player->path);
+                if (animation == nullptr) {
+                    break;
+                }
+                animations.push_back(std::move(animation));
+            }
+        }
+        size_t animationsCount = animations.size() + 1;
+        std::unique_ptr<std::mutex[]> animationLocks(new std::mutex[animationsCount]);
+
+        // a slot is free once its frame is written and the next frame has been palettized
+        size_t slotsCount = workersCount + 2;
+        std::vector<GifPipelineFrame> frames(slotsCount);
+        for (GifPipelineFrame &frame : frames) {
+            frame.image.resize((size_t) w * h * 4);
+            frame.output.resize((size_t) w * h * 4);
+        }
+        std::vector<bool> rendered(count, false);
+        std::vector<bool> quantized(count, false);
+        size_t nextFrame = 0, writtenCount = 0;
+        std::mutex lock;
+        std::condition_variable changed;
+        auto slotFree = [&](size_t r) { return r < slotsCount || writtenCount + slotsCount >= r + 2; };
+        // property providers call back into java, this thread renders the frames
+        // and the workers only palettize them
+        bool renderOnCaller = player->dynamicProperties;
+
+        auto worker = [&](size_t index) {
+            rlottie::Animation *animation = index % animationsCount == 0 ? player->animation.get() : animations[index % animationsCount - 1].get();
+            std::mutex &animationLock = animationLocks[index % animationsCount];
+            while (true) {
+                size_t r;
+                {
+                    std::unique_lock<std::mutex> guard(lock);
+                    if (nextFrame >= count) {
+                        return;
+                    }
+                    r = nextFrame++;
+                    if (!renderOnCaller) {
+                        changed.wait(guard, [&] { return slotFree(r); });
+                    }
+                }
+
+                GifPipelineFrame &frame = frames[r % slotsCount];
+                if (!renderOnCaller) {
+                    {
+                        std::lock_guard<std::mutex> guard(animationLock);
+                        rlottie::Surface surface = LottieWrapper::canvasSurface((uint32_t *) frame.image.data(), (size_t) w, (size_t) h, (size_t) w * 4);
+                        animation->renderSync(start + r, surface);
+                    }
+                    builder.blendBackground(frame.image.data(), frame.image.size());
+                }
+
+                {
+                    std::unique_lock<std::mutex> guard(lock);
+                    if (!renderOnCaller) {
+                        rendered[r] = true;
+                        changed.notify_all();
+                    }
+                    changed.wait(guard, [&] { return rendered[r] && (r == 0 || rendered[r - 1]); });
+                }
+                const uint8_t *lastFrame = r == 0 ? nullptr : frames[(r - 1) % slotsCount].image.data();
+                GifQuantizeFrame(lastFrame, frame.image.data(), frame.output.data(), (uint32_t) w, (uint32_t) h, bitDepth, dither, &frame.palette);
+
+                {
+                    std::lock_guard<std::mutex> guard(lock);
+                    quantized[r] = true;
+                }
+                changed.notify_all();
+            }
+        };
+
+        std::vector<std::thread> workers;
+        for (size_t a = 0; a < workersCount; a++) {
+            workers.emplace_back(worker, a);
+        }
+
+        size_t renderedCount = 0;
+        for (size_t r = 0; r < count; r++) {
+            // writtenCount is only changed by this thread
+            while (renderOnCaller && renderedCount < count && slotFree(renderedCount)) {
+                GifPipelineFrame &frame = frames[renderedCount % slotsCount];
+                rlottie::Surface surface = LottieWrapper::canvasSurface((uint32_t *) frame.image.data(), (size_t) w, (size_t) h, (size_t) w * 4);
+                player->animation->renderSync(start + renderedCount, surface);
+                builder.blendBackground(frame.image.data(), frame.image.size());
+                {
+                    std::lock_guard<std::mutex> guard(lock);
+                    rendered[renderedCount++] = true;
+                }
+                changed.notify_all();
+            }
+            {
+                std::unique_lock<std::mutex> guard(lock);
+                changed.wait(guard, [&] { return (bool) quantized[r]; });
+            }
+            GifPipelineFrame &frame = frames[r % slotsCount];
+            builder.addQuantizedFrame(frame.output.data(), &frame.palette, delay);
+            {
+                std::lock_guard<std::mutex> guard(lock);
+                writtenCount = r + 1;
+            }
+            changed.notify_all();
+
+            if (store_Wlistener != nullptr) {
+                env->CallVoidMethod(store_Wlistener, mth_update, (jint) (start + r + 1), (jint) frameCount);
+            }
+        }
+
+        for (std::thread &thread : workers) {
+            thread.join();
+        }
+
+        if (store_Wlistener != nullptr) {
+            jclass clazz = env->GetObjectClass(store_Wlistener);
+            env->CallVoidMethod(store_Wlistener, env->GetMethodID(clazz, "onFinished", "()V"));
+            env->DeleteWeakGlobalRef(store_Wlistener);
+        }
+        return true;
+    }
+
 };
 
 #endif
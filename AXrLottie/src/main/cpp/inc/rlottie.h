@@ -64,6 +64,84 @@ namespace rlottie {
  */
 RLOTTIE_API void configureModelCacheSize(size_t cacheSize);
 
+/**
+ *  @brief Configures the memory budget of the model cache.
+ *
+ *  The least recently used models are removed once the estimated
+ *  memory of the cached models exceeds the budget, a model bigger than
+ *  the budget is never cached.
+ *
+ *  @param[in] bytes  Maximum estimated memory of the cached models,
+ *                    0 removes the limit.
+ *
+ *  @internal
+ */
+RLOTTIE_API void configureModelCacheMemory(size_t bytes);
+
+/**
+ *  @brief Model cache counters.
+ *
+ *  hits, misses and evictions are counted since the library was loaded,
+ *  count and bytes describe the current content of the cache.
+ *
+ *  @internal
+ */
+struct ModelCacheStats {
+    size_t hits{0};
+    size_t misses{0};
+    size_t evictions{0};
+    size_t count{0};
+    size_t bytes{0};
+};
+
+RLOTTIE_API ModelCacheStats modelCacheStats();
+
+/**
+ *  @brief Configures the memory limit of the rle cache.
+ *
+ *  The rle of a shape, mask or matte is kept with the path it was generated
+ *  from, so a path that is the same as in the previous frame isn't
+ *  rasterized again.
+ *
+ *  @param[in] bytes  Maximum memory (in bytes) kept by the cache,
+ *                    0 removes the limit.
+ *
+ *  @internal
+ */
+RLOTTIE_API void configureRleCacheMemory(size_t bytes);
+
+/**
+ *  @brief Rle cache counters.
+ *
+ *  hits and misses are counted since the library was loaded,
+ *  count and bytes describe the current content of the cache.
+ *
+ *  @internal
+ */
+struct RleCacheStats {
+    size_t hits{0};
+    size_t misses{0};
+    size_t count{0};
+    size_t bytes{0};
+};
+
+RLOTTIE_API RleCacheStats rleCacheStats();
+
+/**
+ *  @brief Configures the number of bands a frame is drawn in.
+ *
+ *  The surface is split in horizontal bands that are drawn at the same time
+ *  on different threads, which lowers the time taken by a single big frame.
+ *  Bands are at least 64 rows high and frames that use mattes or offscreen
+ *  layers are drawn on the calling thread.
+ *
+ *  @param[in] count  Number of bands, 0 or 1 (default) draws the frame
+ *                    on the calling thread.
+ *
+ *  @internal
+ */
+RLOTTIE_API void configureRenderBands(size_t count);
+
 struct Color {
     Color() = default;
     Color(float r, float g , float b):_r(r), _g(g), _b(b){}
@@ -124,6 +202,18 @@ template <typename T> struct MapType;
 
 class RLOTTIE_API Surface {
 public:
+    /**
+     *  @brief Byte order of the pixels in the surface buffer.
+     *
+     *  ARGB32_Premultiplied is 0xAARRGGBB in a native uint32_t,
+     *  ABGR32_Premultiplied is 0xAABBGGRR (R, G, B, A in memory on little endian
+     *  machines, which is what Android's ARGB_8888 bitmaps use).
+     */
+    enum class Format : uint8_t {
+        ARGB32_Premultiplied,
+        ABGR32_Premultiplied
+    };
+
     /**
      *  @brief Surface object constructor.
      *
@@ -156,6 +246,29 @@ public:
      */
     void setDrawRegion(size_t x, size_t y, size_t width, size_t height);
 
+    /**
+     *  @brief Sets the byte order the frame is rendered in.
+     *
+     *  Colors, gradients and images are produced in this order directly,
+     *  so no conversion pass is needed after rendering.
+     *
+     *  @param[in] format pixel format of the surface buffer.
+     *
+     *  @note Default surface format is ARGB32_Premultiplied.
+     *
+     *  @internal
+     */
+    void setFormat(Format format) {mFormat = format;}
+
+    /**
+     *  @brief Returns pixel format of the surface.
+     *
+     *  @return pixel format
+     *
+     *  @internal
+     */
+    Format format() const {return mFormat;}
+
     /**
      *  @brief Returns width of the surface.
      *
@@ -247,6 +360,7 @@ private:
     size_t       mWidth{0};
     size_t       mHeight{0};
     size_t       mBytesPerLine{0};
+    Format       mFormat{Format::ARGB32_Premultiplied};
     struct {
         size_t   x{0};
         size_t   y{0};
@@ -265,6 +379,18 @@ using MarkerList = std::vector<std::tuple<std::string, int , int>>;
 
 using LayerInfoList = std::vector<std::tuple<std::string, int , int, int>>;
 
+/**
+ *  @brief An area of a surface in surface coordinates, empty if w or h is 0.
+ *
+ *  @see Animation::renderSyncPartial
+ */
+struct DirtyRegion {
+    size_t   x{0};
+    size_t   y{0};
+    size_t   w{0};
+    size_t   h{0};
+};
+
 
 using ColorFilter = std::function<void(float &r , float &g, float &b)>;
 
@@ -288,6 +414,23 @@ public:
     static std::unique_ptr<Animation>
     loadFromFile(const std::string &path, bool cachePolicy=true);
 
+    /**
+     *  @brief Constructs an animation object from file path, keeping a binary
+     *         copy of the parsed model.
+     *
+     *  @param[in] path Lottie resource file path
+     *  @param[in] binaryPath where the binary model is stored, it is used instead
+     *             of parsing the resource as long as the resource content is unchanged.
+     *  @param[in] cachePolicy whether to cache or not the model data.
+     *
+     *  @return Animation object that can render the contents of the
+     *          Lottie resource represented by file path.
+     *
+     *  @internal
+     */
+    static std::unique_ptr<Animation>
+    loadFromFile(const std::string &path, const std::string &binaryPath, bool cachePolicy);
+
     /**
      *  @brief Constructs an animation object from JSON string data.
      *
@@ -421,6 +564,30 @@ public:
      */
     void              renderSync(size_t frameNo, Surface surface, bool keepAspectRatio=true);
 
+    /**
+     *  @brief Renders the content to a surface that still holds a frame rendered
+     *         by this method, only the area that looks different is cleared and
+     *         drawn again.
+     *
+     *  The draw calls of the frame are compared with the ones of the frame the
+     *  buffer holds (the last few buffers are remembered). Layers drawn offscreen
+     *  (mattes, translucent precomps) make the whole surface drawn again.
+     *
+     *  @param[in] frameNo Content corresponds to the @p frameNo needs to be drawn
+     *  @param[in] surface Surface in which content will be drawn
+     *  @param[in] keepContent false if the buffer may have been changed since this
+     *             animation rendered into it, the whole surface is drawn then.
+     *  @param[out] redrawn the area that has been cleared and drawn, can be null.
+     *  @param[out] changed the area that looks different from the frame of the
+     *              previous render call of this animation, can be null.
+     *  @param[in] keepAspectRatio whether to keep the aspect ratio while scaling the content.
+     *
+     *  @internal
+     */
+    void              renderSyncPartial(size_t frameNo, Surface surface, bool keepContent,
+                                        DirtyRegion *redrawn, DirtyRegion *changed,
+                                        bool keepAspectRatio=true);
+
     /**
      *  @brief Returns root layer of the composition updated with
      *         content of the Lottie resource at frame number @p frameNo.
@@ -480,6 +647,37 @@ public:
         setValue(MapType<std::integral_constant<Property, prop>>{}, prop, keypath, value);
     }
 
+    /**
+     *  @brief Resolves the {@link KeyPath} to the contents a value of the property applies to,
+     *  so the value can be set with the returned id without resolving the keypath again.
+     *
+     *  Resolving the same keypath and property again returns the same id.
+     *
+     *  @param[in] keypath keypath as given to setValue().
+     *  @param[in] prop    property the keypath is resolved for.
+     *
+     *  @return id of the resolved contents, valid for the lifetime of the Animation.
+     *
+     *  @internal
+     */
+    size_t resolveKeyPath(const std::string &keypath, Property prop);
+
+    /**
+     *  @brief Sets property value for the contents of a keypath resolved by resolveKeyPath().
+     *
+     *  @usage
+     *
+     *     size_t id = player->resolveKeyPath("**.group1.**", rlottie::Property::FillColor);
+     *     player->setValue<rlottie::Property::FillColor>(id, rlottie::Color(0, 1, 0));
+     *
+     *  @internal
+     */
+    template<Property prop, typename AnyValue>
+    void setValue(size_t keyPathId, AnyValue value)
+    {
+        setValue(MapType<std::integral_constant<Property, prop>>{}, prop, keyPathId, value);
+    }
+
     /**
      *  @brief default destructor
      *
@@ -497,6 +695,11 @@ private:
     void setValue(Float_Type, Property, const std::string &, std::function<float(const FrameInfo &)> &&);
     void setValue(Size_Type, Property, const std::string &, std::function<Size(const FrameInfo &)> &&);
     void setValue(Point_Type, Property, const std::string &, std::function<Point(const FrameInfo &)> &&);
+
+    void setValue(Color_Type, Property, size_t, Color);
+    void setValue(Float_Type, Property, size_t, float);
+    void setValue(Size_Type, Property, size_t, Size);
+    void setValue(Point_Type, Property, size_t, Point);
     /**
      *  @brief default constructor
      *
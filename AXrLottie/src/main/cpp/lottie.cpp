@@ -1,20 +1,611 @@
 #include <jni.h>
 #include <android/bitmap.h>
 #include <cstring>
+#include <algorithm>
 #include "inc/rlottie.h"
 #include "lz4/lz4.h"
+#include "lz4/xxhash.h"
 #include <unistd.h>
 #include <condition_variable>
 #include <atomic>
 #include <thread>
+#include <pthread.h>
 #include <map>
+#include <unordered_map>
 #include <sys/stat.h>
+#include <fcntl.h>
 #include <utime.h>
 #include "c_utils.h"
 #include "gif/gif.h"
 #include "lottie.h"
 
+/**
+ * Hash of the pixels of a frame, never 0 (which marks a frame that hasn't been hashed).
+ */
+static uint64_t frameHash(const uint8_t *pixels, int w, int h, int stride) {
+    uint64_t hash;
+    if (stride == w * 4) {
+        hash = XXH64(pixels, (size_t) w * h * 4, 0);
+    } else {
+        hash = 0;
+        for (int y = 0; y < h; y++) {
+            hash = XXH64(pixels + (size_t) y * stride, (size_t) w * 4, hash);
+        }
+    }
+    return hash != 0 ? hash : 1;
+}
+
+/**
+ * A changed property makes the frames look different from the ones that were hashed,
+ * a property provider may change any frame at any time.
+ */
+static void onPropertiesChanged(LottieInfo *info, bool dynamic) {
+    info->propertiesChanged = true;
+    info->dynamicProperties |= dynamic;
+    std::fill(info->frameHashes.begin(), info->frameHashes.end(), 0);
+}
+
+static uint32_t getCacheFramesCount(LottieInfo *info) {
+    int framesPerUpdate = !info->limitFps || info->fps < 60 ? 1 : 2;
+    return (uint32_t) ((info->frameCount + framesPerUpdate - 1) / framesPerUpdate);
+}
+
+/**
+ * Maps a completed cache file for the rest of the LottieInfo lifetime,
+ * frames are decompressed straight from the mapping.
+ */
+static bool mapCacheFile(LottieInfo *info) {
+    int fd = open(info->cacheFile.c_str(), O_RDONLY);
+    if (fd < 0) {
+        return false;
+    }
+    struct stat st;
+    if (fstat(fd, &st) != 0 || (size_t) st.st_size < sizeof(LottieCacheHeader)) {
+        close(fd);
+        return false;
+    }
+    size_t size = (size_t) st.st_size;
+    void *map = mmap(nullptr, size, PROT_READ, MAP_SHARED, fd, 0);
+    close(fd);
+    if (map == MAP_FAILED) {
+        return false;
+    }
+
+    LottieCacheHeader header;
+    memcpy(&header, map, sizeof(LottieCacheHeader));
+    size_t tableEnd = sizeof(LottieCacheHeader) + (size_t) header.framesCount * sizeof(LottieCacheFrame);
+    bool valid = header.version == LOTTIE_CACHE_VERSION && header.framesCount == getCacheFramesCount(info) && tableEnd <= size
+                 && header.imageSize == (uint32_t) info->cacheWidth * info->cacheHeight * 4;
+    if (valid) {
+        auto *table = (const LottieCacheFrame *) ((uint8_t *) map + sizeof(LottieCacheHeader));
+        for (uint32_t a = 0; a < header.framesCount; a++) {
+            if ((size_t) table[a].offset + table[a].size > size) {
+                valid = false;
+                break;
+            }
+        }
+    }
+    if (!valid) {
+        munmap(map, size);
+        return false;
+    }
+
+    info->maxFrameSize = header.maxFrameSize;
+    info->imageSize = header.imageSize;
+    info->cacheFramesCount = header.framesCount;
+    info->keyFrameInterval = MAX(header.keyFrameInterval, 1);
+    info->cacheMapSize = size;
+    info->cacheMap.store((uint8_t *) map, std::memory_order_release);
+    return true;
+}
+
+static bool isCacheFileCompleted(const std::string &path) {
+    FILE *cacheFile = fopen(path.c_str(), "r");
+    if (cacheFile == nullptr) {
+        return false;
+    }
+    uint8_t version;
+    size_t read = fread(&version, sizeof(uint8_t), 1, cacheFile);
+    fclose(cacheFile);
+    return read == 1 && version == LOTTIE_CACHE_VERSION;
+}
+
+/**
+ * Area weights of the source pixels that cover each destination pixel.
+ */
+static void scaleWeights(uint32_t src, uint32_t dst, std::vector<uint32_t> &taps, std::vector<uint32_t> &weights) {
+    taps.clear();
+    weights.clear();
+    for (uint32_t d = 0; d < dst; d++) {
+        uint64_t x0 = ((uint64_t) d * src << 16) / dst;
+        uint64_t x1 = ((uint64_t) (d + 1) * src << 16) / dst;
+        uint32_t first = (uint32_t) (x0 >> 16);
+        uint32_t last = (uint32_t) std::min((x1 + 0xFFFF) >> 16, (uint64_t) src);
+        uint32_t total = 0;
+        taps.push_back(first);
+        taps.push_back(last - first);
+        for (uint32_t s = first; s < last; s++) {
+            uint64_t start = std::max(x0, (uint64_t) s << 16);
+            uint64_t end = std::min(x1, (uint64_t) (s + 1) << 16);
+            uint32_t weight = s + 1 == last ? 256 - total : (uint32_t) (((end - start) << 8) / (x1 - x0));
+            weights.push_back(weight);
+            total += weight;
+        }
+    }
+}
+
+/**
+ * Halves a frame with a 2x2 box filter, the last row and column of odd sizes are dropped.
+ */
+static void halveFrame(const uint32_t *src, uint32_t sw, uint32_t sh, uint32_t *dst) {
+    uint32_t dw = sw / 2, dh = sh / 2;
+    for (uint32_t y = 0; y < dh; y++) {
+        const uint32_t *r0 = src + (size_t) y * 2 * sw;
+        const uint32_t *r1 = r0 + sw;
+        uint32_t *dstRow = dst + (size_t) y * dw;
+        for (uint32_t x = 0; x < dw; x++) {
+            uint32_t a = r0[x * 2], b = r0[x * 2 + 1], c = r1[x * 2], d = r1[x * 2 + 1];
+            uint32_t rb = (a & 0x00FF00FF) + (b & 0x00FF00FF) + (c & 0x00FF00FF) + (d & 0x00FF00FF) + 0x00020002;
+            uint32_t ga = ((a >> 8) & 0x00FF00FF) + ((b >> 8) & 0x00FF00FF) + ((c >> 8) & 0x00FF00FF) + ((d >> 8) & 0x00FF00FF) + 0x00020002;
+            dstRow[x] = ((rb >> 2) & 0x00FF00FF) | (((ga >> 2) & 0x00FF00FF) << 8);
+        }
+    }
+}
+
+/**
+ * Downscales a premultiplied RGBA frame by averaging the covered area.
+ * Frames are halved first while they are at least twice as big, the rest is filtered by area.
+ * The source rows that cover a destination row are blended into one row first,
+ * which is then reduced horizontally.
+ * Channels are summed two at a time (R and B, G and A), each stays within 16 bits since the weights add up to 256.
+ */
+static void downscaleFrame(LottieScale &scale, const uint32_t *src, uint32_t sw, uint32_t sh, uint32_t *dst, uint32_t dw, uint32_t dh, size_t dstStride) {
+    if (sw >= dw * 2 && sh >= dh * 2) {
+        // the first half goes to the front of the buffer, the next ones alternate with the back
+        size_t front = (size_t) (sw / 2) * (sh / 2);
+        scale.half.resize(front + (size_t) (sw / 4) * (sh / 4));
+        uint32_t *first = scale.half.data();
+        uint32_t *second = first + front;
+        while (sw >= dw * 2 && sh >= dh * 2) {
+            uint32_t *target = src == first ? second : first;
+            halveFrame(src, sw, sh, target);
+            src = target;
+            sw /= 2;
+            sh /= 2;
+        }
+    }
+    if (scale.srcWidth != sw || scale.dstWidth != dw) {
+        scaleWeights(sw, dw, scale.xTaps, scale.xWeights);
+        scale.srcWidth = sw;
+        scale.dstWidth = dw;
+    }
+    if (scale.srcHeight != sh || scale.dstHeight != dh) {
+        scaleWeights(sh, dh, scale.yTaps, scale.yWeights);
+        scale.srcHeight = sh;
+        scale.dstHeight = dh;
+    }
+
+    scale.rows.resize(sw);
+    const uint32_t *yWeights = scale.yWeights.data();
+    for (uint32_t y = 0; y < dh; y++) {
+        const uint32_t *column = src + (size_t) scale.yTaps[y * 2] * sw;
+        uint32_t count = scale.yTaps[y * 2 + 1];
+        const uint32_t *row = column;
+        if (count == 2) {
+            // most rows of a downscale below 2x are covered by two source rows
+            uint32_t *blended = scale.rows.data();
+            const uint32_t *next = column + sw;
+            uint32_t w0 = yWeights[0], w1 = yWeights[1];
+            for (uint32_t x = 0; x < sw; x++) {
+                uint32_t p0 = column[x], p1 = next[x];
+                uint32_t sumRb = 0x00800080 + (p0 & 0x00FF00FF) * w0 + (p1 & 0x00FF00FF) * w1;
+                uint32_t sumGa = 0x00800080 + ((p0 >> 8) & 0x00FF00FF) * w0 + ((p1 >> 8) & 0x00FF00FF) * w1;
+                blended[x] = ((sumRb >> 8) & 0x00FF00FF) | (sumGa & 0xFF00FF00);
+            }
+            row = blended;
+        } else if (count > 1) {
+            uint32_t *blended = scale.rows.data();
+            for (uint32_t x = 0; x < sw; x++) {
+                const uint32_t *p = column + x;
+                uint32_t sumRb = 0x00800080, sumGa = 0x00800080;
+                for (uint32_t t = 0; t < count; t++, p += sw) {
+                    sumRb += (*p & 0x00FF00FF) * yWeights[t];
+                    sumGa += ((*p >> 8) & 0x00FF00FF) * yWeights[t];
+                }
+                blended[x] = ((sumRb >> 8) & 0x00FF00FF) | (sumGa & 0xFF00FF00);
+            }
+            row = blended;
+        }
+        yWeights += count;
+
+        uint32_t *dstRow = (uint32_t *) ((uint8_t *) dst + y * dstStride);
+        if (sw == dw) {
+            memcpy(dstRow, row, (size_t) dw * 4);
+            continue;
+        }
+        const uint32_t *xTaps = scale.xTaps.data();
+        const uint32_t *xWeights = scale.xWeights.data();
+        for (uint32_t x = 0; x < dw; x++) {
+            const uint32_t *p = row + xTaps[x * 2];
+            uint32_t taps = xTaps[x * 2 + 1];
+            uint32_t sumRb = 0x00800080, sumGa = 0x00800080;
+            for (uint32_t t = 0; t < taps; t++) {
+                sumRb += (p[t] & 0x00FF00FF) * xWeights[t];
+                sumGa += ((p[t] >> 8) & 0x00FF00FF) * xWeights[t];
+            }
+            dstRow[x] = ((sumRb >> 8) & 0x00FF00FF) | (sumGa & 0xFF00FF00);
+            xWeights += taps;
+        }
+    }
+}
+
+/**
+ * dst = frame XOR other, a delta frame of the cache XOR'ed with the frame before it gives the frame itself.
+ * Unchanged pixels become zeros, which compress to almost nothing.
+ */
+static void xorFrames(uint8_t *dst, const uint8_t *frame, const uint8_t *other, size_t size) {
+    size_t words = size / sizeof(uint64_t);
+    uint64_t a, b;
+    for (size_t i = 0; i < words; i++) {
+        memcpy(&a, frame + i * sizeof(uint64_t), sizeof(uint64_t));
+        memcpy(&b, other + i * sizeof(uint64_t), sizeof(uint64_t));
+        a ^= b;
+        memcpy(dst + i * sizeof(uint64_t), &a, sizeof(uint64_t));
+    }
+    for (size_t i = words * sizeof(uint64_t); i < size; i++) {
+        dst[i] = frame[i] ^ other[i];
+    }
+}
+
+/**
+ * The table entry of a cached frame, from the mapped cache or from the cache that is being generated.
+ */
+static const LottieCacheFrame *cacheEntry(LottieInfo *info, const uint8_t *cacheMap, uint32_t index) {
+    if (cacheMap != nullptr) {
+        return (const LottieCacheFrame *) (cacheMap + sizeof(LottieCacheHeader)) + index;
+    }
+    return &info->cacheFrames[index];
+}
+
+/**
+ * Decompresses the payload of a cached frame into target,
+ * a cache that is still being generated is read from the segment file of the frame.
+ */
+static bool decompressCachePayload(LottieInfo *info, const uint8_t *cacheMap, uint32_t index, uint8_t *target) {
+    int imageSize = info->cacheWidth * info->cacheHeight * 4;
+    const LottieCacheFrame cacheFrame = *cacheEntry(info, cacheMap, index);
+    if (cacheFrame.size == 0) {
+        return false;
+    }
+    if (cacheMap != nullptr) {
+        info->cacheBytesRead += cacheFrame.size;
+        return LZ4_decompress_safe((const char *) cacheMap + cacheFrame.offset, (char *) target, cacheFrame.size, imageSize) == imageSize;
+    }
+
+    const LottieCacheSegment *segment = nullptr;
+    for (const LottieCacheSegment &s : info->cacheSegments) {
+        if (index >= s.start && index < s.end) {
+            segment = &s;
+            break;
+        }
+    }
+    if (segment == nullptr) {
+        return false;
+    }
+    if (info->decompressBuffer != nullptr && info->decompressBufferSize < cacheFrame.size) {
+        delete[] info->decompressBuffer;
+        info->decompressBuffer = nullptr;
+    }
+    if (info->decompressBuffer == nullptr) {
+        info->decompressBufferSize = std::max(cacheFrame.size, (uint32_t) LZ4_compressBound(imageSize));
+        info->decompressBuffer = new uint8_t[info->decompressBufferSize];
+    }
+    bool successful = false;
+    int fd = open(segment->path.c_str(), O_RDONLY);
+    if (fd >= 0) {
+        if (pread(fd, info->decompressBuffer, cacheFrame.size, cacheFrame.offset) == cacheFrame.size) {
+            info->cacheBytesRead += cacheFrame.size;
+            successful = LZ4_decompress_safe((const char *) info->decompressBuffer, (char *) target, cacheFrame.size, imageSize) == imageSize;
+        }
+        close(fd);
+    }
+    return successful;
+}
+
+/**
+ * Decodes a cached frame into the bitmap, frames of a bigger cache are downscaled.
+ * A delta frame is decoded on top of the last decoded frame when that is one of the frames
+ * it depends on, otherwise from the last frame before it that isn't a delta frame.
+ */
+static bool decodeCacheFrame(LottieInfo *info, const uint8_t *cacheMap, uint32_t index, uint8_t *pixels, int w, int h) {
+    size_t imageSize = (size_t) info->cacheWidth * info->cacheHeight * 4;
+    bool sameSize = info->cacheWidth == w && info->cacheHeight == h;
+    const uint8_t *frame;
+    if (info->keyFrameInterval <= 1) {
+        if (sameSize) {
+            return decompressCachePayload(info, cacheMap, index, pixels);
+        }
+        info->scaleBuffer.resize((size_t) info->cacheWidth * info->cacheHeight);
+        if (!decompressCachePayload(info, cacheMap, index, (uint8_t *) info->scaleBuffer.data())) {
+            return false;
+        }
+        frame = (const uint8_t *) info->scaleBuffer.data();
+    } else {
+        uint32_t first = index;
+        while (first > 0 && (cacheEntry(info, cacheMap, first)->flags & LOTTIE_CACHE_FRAME_DELTA) != 0) {
+            first--;
+        }
+        info->deltaFrame.resize(imageSize);
+        info->deltaBuffer.resize(imageSize);
+        uint32_t next;
+        if (info->deltaFrameIndex >= first && info->deltaFrameIndex <= index) {
+            next = (uint32_t) info->deltaFrameIndex + 1;
+        } else {
+            info->deltaFrameIndex = -1;
+            if (!decompressCachePayload(info, cacheMap, first, info->deltaFrame.data())) {
+                return false;
+            }
+            next = first + 1;
+        }
+        for (; next <= index; next++) {
+            const LottieCacheFrame *entry = cacheEntry(info, cacheMap, next);
+            const LottieCacheFrame *previous = cacheEntry(info, cacheMap, next - 1);
+            if (entry->offset == previous->offset && entry->size == previous->size) {
+                // looks like the frame before it
+                continue;
+            }
+            if (!decompressCachePayload(info, cacheMap, next, info->deltaBuffer.data())) {
+                info->deltaFrameIndex = -1;
+                return false;
+            }
+            xorFrames(info->deltaFrame.data(), info->deltaFrame.data(), info->deltaBuffer.data(), imageSize);
+        }
+        info->deltaFrameIndex = index;
+        frame = info->deltaFrame.data();
+        if (sameSize) {
+            memcpy(pixels, frame, imageSize);
+            return true;
+        }
+    }
+    downscaleFrame(info->scale, (const uint32_t *) frame, (uint32_t) info->cacheWidth, (uint32_t) info->cacheHeight, (uint32_t *) pixels, (uint32_t) w, (uint32_t) h, (size_t) w * 4);
+    return true;
+}
+
+static JavaVM *javaVM = nullptr;
+static jmethodID colorProviderGetValue = nullptr;
+static jmethodID floatProviderGetValue = nullptr;
+static jmethodID pointProviderGetValue = nullptr;
+
+static pthread_key_t attachedThreadKey;
+
+static void detachThread(void *) {
+    if (javaVM != nullptr) {
+        javaVM->DetachCurrentThread();
+    }
+}
+
+/**
+ * The JNIEnv of the current thread, a native thread (gif encoder, band renderer...)
+ * is attached on the first call and detached when it exits.
+ */
+static JNIEnv *getJniEnv() {
+    JNIEnv *env = nullptr;
+    if (javaVM == nullptr) {
+        return nullptr;
+    }
+    jint result = javaVM->GetEnv((void **) &env, JNI_VERSION_1_6);
+    if (result == JNI_OK) {
+        return env;
+    }
+    if (result != JNI_EDETACHED || javaVM->AttachCurrentThread(&env, nullptr) != JNI_OK) {
+        LOGE("can't attach thread %ld to the JavaVM", (long) gettid());
+        return nullptr;
+    }
+    pthread_setspecific(attachedThreadKey, env);
+    return env;
+}
+
+static rlottie::Color toLottieColor(jint color) {
+    return rlottie::Color(((color >> 16) & 0xff) / 255.0f, ((color >> 8) & 0xff) / 255.0f, ((color) & 0xff) / 255.0f);
+}
+
+/**
+ * A property provider of AXrLottieProperty, called by rlottie while a frame is being rendered.
+ * The global reference is released as soon as rlottie drops the value
+ * (property replaced or animation destroyed), the last value is used if the provider throws.
+ */
+typedef struct LottiePropertyProvider{
+    LottiePropertyProvider(JNIEnv *env, jobject provider, bool point) {
+        this->provider = env->NewGlobalRef(provider);
+        if (point) {
+            jfloatArray array = env->NewFloatArray(2);
+            this->point = (jfloatArray) env->NewGlobalRef(array);
+            env->DeleteLocalRef(array);
+        }
+    }
+
+    ~LottiePropertyProvider() {
+        JNIEnv *env = getJniEnv();
+        if (env == nullptr) {
+            LOGE("leaking the global reference of a property provider, no JNIEnv");
+            return;
+        }
+        env->DeleteGlobalRef(provider);
+        if (point != nullptr) {
+            env->DeleteGlobalRef(point);
+        }
+    }
+
+    static bool checkException(JNIEnv *env) {
+        if (env->ExceptionCheck()) {
+            env->ExceptionDescribe();
+            env->ExceptionClear();
+            return false;
+        }
+        return true;
+    }
+
+    jobject provider = nullptr;
+    jfloatArray point = nullptr;
+    jint color = 0;
+    float value[2] = {0, 0};
+} LottiePropertyProvider;
+
+static auto colorProvider(JNIEnv *env, jobject provider) {
+    auto callback = std::make_shared<LottiePropertyProvider>(env, provider, false);
+    return [callback](const rlottie::FrameInfo &frameInfo) {
+        JNIEnv *env = getJniEnv();
+        if (env != nullptr) {
+            jint color = env->CallIntMethod(callback->provider, colorProviderGetValue, (jint) frameInfo.curFrame());
+            if (LottiePropertyProvider::checkException(env)) {
+                callback->color = color;
+            }
+        }
+        return toLottieColor(callback->color);
+    };
+}
+
+static auto floatProvider(JNIEnv *env, jobject provider) {
+    auto callback = std::make_shared<LottiePropertyProvider>(env, provider, false);
+    return [callback](const rlottie::FrameInfo &frameInfo) {
+        JNIEnv *env = getJniEnv();
+        if (env != nullptr) {
+            jfloat value = env->CallFloatMethod(callback->provider, floatProviderGetValue, (jint) frameInfo.curFrame());
+            if (LottiePropertyProvider::checkException(env)) {
+                callback->value[0] = value;
+            }
+        }
+        return callback->value[0];
+    };
+}
+
+static std::shared_ptr<LottiePropertyProvider> pointProvider(JNIEnv *env, jobject provider) {
+    return std::make_shared<LottiePropertyProvider>(env, provider, true);
+}
+
+static void updatePoint(const std::shared_ptr<LottiePropertyProvider> &callback, const rlottie::FrameInfo &frameInfo) {
+    JNIEnv *env = getJniEnv();
+    if (env != nullptr) {
+        env->CallVoidMethod(callback->provider, pointProviderGetValue, (jint) frameInfo.curFrame(), callback->point);
+        if (LottiePropertyProvider::checkException(env)) {
+            env->GetFloatArrayRegion(callback->point, 0, 2, callback->value);
+        }
+    }
+}
+
+// AXrLottieProperty.PropertyType ordinals
+#define PROPERTY_FILL_COLOR 0
+#define PROPERTY_FILL_OPACITY 1
+#define PROPERTY_STROKE_COLOR 2
+#define PROPERTY_STROKE_OPACITY 3
+#define PROPERTY_STROKE_WIDTH 4
+#define PROPERTY_TR_ANCHOR 5
+#define PROPERTY_TR_OPACITY 6
+#define PROPERTY_TR_POSITION 7
+#define PROPERTY_TR_ROTATION 8
+#define PROPERTY_TR_SCALE 9
+
+/**
+ * Targets of a LottiePropertyBatch resolved for one animation,
+ * ids given by Animation::resolveKeyPath in the order of the batch targets.
+ */
+typedef struct LottieResolvedTargets{
+    std::weak_ptr<void> lifetime;
+    std::vector<size_t> ids;
+} LottieResolvedTargets;
+
+/**
+ * Key paths of an AXrLottiePropertyBatch, converted once and shared by every animation
+ * the batch is applied to.
+ * Each target is a key path with the property set on it, resolved once per animation.
+ */
+typedef struct LottiePropertyBatch{
+    std::vector<std::string> keyPaths;
+    std::vector<std::pair<uint32_t, rlottie::Property>> targets;
+    std::unordered_map<LottieInfo *, LottieResolvedTargets> resolved;
+
+    const std::vector<size_t> &resolve(LottieInfo *info) {
+        auto it = resolved.find(info);
+        if (it != resolved.end() && !it->second.lifetime.expired()) {
+            return it->second.ids;
+        }
+        // forget the animations that are destroyed, a new one may have the same address
+        for (auto a = resolved.begin(); a != resolved.end();) {
+            if (a->second.lifetime.expired()) {
+                a = resolved.erase(a);
+            } else {
+                a++;
+            }
+        }
+        LottieResolvedTargets &result = resolved[info];
+        result.lifetime = info->lifetime;
+        result.ids.reserve(targets.size());
+        for (auto &target : targets) {
+            result.ids.push_back(target.first < keyPaths.size()
+                                 ? info->animation->resolveKeyPath(keyPaths[target.first], target.second) : 0);
+        }
+        return result.ids;
+    }
+} LottiePropertyBatch;
+
+static bool toLottieProperty(jint type, rlottie::Property &property) {
+    switch (type) {
+        case PROPERTY_FILL_COLOR:
+            property = rlottie::Property::FillColor;
+            return true;
+        case PROPERTY_FILL_OPACITY:
+            property = rlottie::Property::FillOpacity;
+            return true;
+        case PROPERTY_STROKE_COLOR:
+            property = rlottie::Property::StrokeColor;
+            return true;
+        case PROPERTY_STROKE_OPACITY:
+            property = rlottie::Property::StrokeOpacity;
+            return true;
+        case PROPERTY_STROKE_WIDTH:
+            property = rlottie::Property::StrokeWidth;
+            return true;
+        case PROPERTY_TR_ANCHOR:
+            property = rlottie::Property::TrAnchor;
+            return true;
+        case PROPERTY_TR_OPACITY:
+            property = rlottie::Property::TrOpacity;
+            return true;
+        case PROPERTY_TR_POSITION:
+            property = rlottie::Property::TrPosition;
+            return true;
+        case PROPERTY_TR_ROTATION:
+            property = rlottie::Property::TrRotation;
+            return true;
+        case PROPERTY_TR_SCALE:
+            property = rlottie::Property::TrScale;
+            return true;
+        default:
+            return false;
+    }
+}
+
 extern "C" {
+
+jint JNI_OnLoad(JavaVM *vm, void *reserved) {
+    JNIEnv *env;
+    if (vm->GetEnv((void **) &env, JNI_VERSION_1_6) != JNI_OK) {
+        return -1;
+    }
+    javaVM = vm;
+    pthread_key_create(&attachedThreadKey, detachThread);
+
+    jclass clazz = env->FindClass("com/aghajari/rlottie/AXrLottieProperty$ColorProvider");
+    colorProviderGetValue = env->GetMethodID(clazz, "getValue", "(I)I");
+    env->DeleteLocalRef(clazz);
+    clazz = env->FindClass("com/aghajari/rlottie/AXrLottieProperty$FloatProvider");
+    floatProviderGetValue = env->GetMethodID(clazz, "getValue", "(I)F");
+    env->DeleteLocalRef(clazz);
+    clazz = env->FindClass("com/aghajari/rlottie/AXrLottieProperty$PointProvider");
+    pointProviderGetValue = env->GetMethodID(clazz, "getValue", "(I[F)V");
+    env->DeleteLocalRef(clazz);
+    return JNI_VERSION_1_6;
+}
 using namespace rlottie;
 
 jlong Java_com_aghajari_rlottie_AXrLottieNative_create(JNIEnv *env, jclass clazz, jstring src, jint w, jint h, jintArray data, jboolean precache, jboolean limitFps) {
@@ -24,10 +615,23 @@ jlong Java_com_aghajari_rlottie_AXrLottieNative_create(JNIEnv *env, jclass clazz
 
     char const *srcString = env->GetStringUTFChars(src, 0);
     info->path = srcString;
-    info->animation = rlottie::Animation::loadFromFile(info->path);
     if (srcString != 0) {
         env->ReleaseStringUTFChars(src, srcString);
     }
+    if (precache) {
+        // the parsed model is kept next to the frames cache, so the json is parsed only once
+        std::string binaryPath = info->path;
+        std::string::size_type index = binaryPath.find_last_of("/");
+        if (index != std::string::npos) {
+            std::string dir = binaryPath.substr(0, index) + "/acache";
+            mkdir(dir.c_str(), 0777);
+            binaryPath.insert(index, "/acache");
+        }
+        binaryPath += ".lottiebin";
+        info->animation = rlottie::Animation::loadFromFile(info->path, binaryPath, true);
+    } else {
+        info->animation = rlottie::Animation::loadFromFile(info->path);
+    }
     if (info->animation == nullptr) {
         delete info;
         return 0;
@@ -48,28 +652,17 @@ jlong Java_com_aghajari_rlottie_AXrLottieNative_create(JNIEnv *env, jclass clazz
             mkdir(dir.c_str(), 0777);
             info->cacheFile.insert(index, "/acache");
         }
+        info->cacheWidth = w;
+        info->cacheHeight = h;
         info->cacheFile += std::to_string(w) + "_" + std::to_string(h);
         if (limitFps) {
             info->cacheFile += ".s.cache";
         } else {
             info->cacheFile += ".cache";
         }
-        FILE *precacheFile = fopen(info->cacheFile.c_str(), "r+");
-        if (precacheFile == nullptr) {
-            info->createCache = true;
-        } else {
-            uint8_t temp;
-            size_t read = fread(&temp, sizeof(uint8_t), 1, precacheFile);
-            info->createCache = read != 1 || temp == 0;
-            if (!info->createCache) {
-                uint32_t maxFrameSize;
-                fread(&maxFrameSize, sizeof(uint32_t), 1, precacheFile);
-                info->maxFrameSize = maxFrameSize;
-                fread(&(info->imageSize), sizeof(uint32_t), 1, precacheFile);
-                info->fileOffset = 9;
-                utimensat(0, info->cacheFile.c_str(), NULL, 0);
-            }
-            fclose(precacheFile);
+        info->createCache = !mapCacheFile(info);
+        if (!info->createCache) {
+            utimensat(0, info->cacheFile.c_str(), NULL, 0);
         }
     }
 
@@ -112,6 +705,36 @@ jlong Java_com_aghajari_rlottie_AXrLottieNative_createWithJson(JNIEnv *env, jcla
     return (jlong) (intptr_t) info;
 }
 
+jlong Java_com_aghajari_rlottie_AXrLottieNative_createWithBuffer(JNIEnv *env, jclass clazz, jobject buffer, jint offset, jint length, jstring name, jintArray data) {
+    char *address = (char *) env->GetDirectBufferAddress(buffer);
+    if (address == nullptr || offset < 0 || length <= 0 || offset + length > env->GetDirectBufferCapacity(buffer)) {
+        return 0;
+    }
+    LottieInfo *info = new LottieInfo();
+
+    // the parser works in place, so the bytes are copied once, straight from the buffer
+    char const *nameString = env->GetStringUTFChars(name, 0);
+    info->animation = rlottie::Animation::loadFromData(std::string(address + offset, (size_t) length), nameString);
+    if (nameString != 0) {
+        env->ReleaseStringUTFChars(name, nameString);
+    }
+    if (info->animation == nullptr) {
+        delete info;
+        return 0;
+    }
+    info->frameCount = info->animation->totalFrame();
+    info->fps = (int) info->animation->frameRate();
+
+    jint *dataArr = env->GetIntArrayElements(data, 0);
+    if (dataArr != nullptr) {
+        dataArr[0] = (int) info->frameCount;
+        dataArr[1] = (int) info->animation->frameRate();
+        dataArr[2] = 0;
+        env->ReleaseIntArrayElements(data, dataArr, 0);
+    }
+    return (jlong) (intptr_t) info;
+}
+
 void Java_com_aghajari_rlottie_AXrLottieNative_destroy(JNIEnv *env, jclass clazz, jlong ptr) {
     if (ptr == NULL) {
         return;
@@ -121,48 +744,236 @@ void Java_com_aghajari_rlottie_AXrLottieNative_destroy(JNIEnv *env, jclass clazz
 }
 
 
-bool cacheWriteThreadCreated{false};
-LottieInfo *cacheWriteThreadTask{nullptr};
-bool cacheWriteThreadDone{false};
-std::thread worker;
-std::mutex cacheMutex;
-std::condition_variable cacheCv;
+std::atomic<int> cacheWorkersCount{0};
+std::atomic<int> cacheKeyFrameInterval{1};
 
-std::mutex cacheDoneMutex;
-std::condition_variable cacheDoneCv;
-std::atomic<bool> frameReady{false};
+static int getCacheWorkersCount() {
+    int count = cacheWorkersCount;
+    if (count <= 0) {
+        count = MIN(MAX((int) std::thread::hardware_concurrency(), 1), 4);
+    }
+    return count;
+}
 
-void CacheWriteThreadProc() {
-    while (!cacheWriteThreadDone) {
-        std::unique_lock<std::mutex> lk(cacheMutex);
-        cacheCv.wait(lk, [] { return frameReady.load(); });
-        std::lock_guard<std::mutex> lg(cacheDoneMutex);
-        LottieInfo *task;
-        if (cacheWriteThreadTask != nullptr) {
-            task = cacheWriteThreadTask;
-            cacheWriteThreadTask = nullptr;
-        } else {
-            task = nullptr;
+/**
+ * Whether a full frame payload of a segment file holds these pixels, frames with the same hash may still differ.
+ */
+static bool payloadEquals(FILE *segmentFile, const LottieCacheFrame &frame, const uint8_t *pixels, int size, char *compressed, uint8_t *decompressed) {
+    return pread(fileno(segmentFile), compressed, frame.size, frame.offset) == (ssize_t) frame.size
+           && LZ4_decompress_safe(compressed, (char *) decompressed, (int) frame.size, size) == size
+           && memcmp(decompressed, pixels, (size_t) size) == 0;
+}
+
+/**
+ * Renders and compresses one segment of the cache with its own Animation instance,
+ * frames become readable one by one through cacheFramesReady.
+ * A segment starts with a key frame, so its delta frames only depend on frames of the segment.
+ */
+static void renderCacheSegment(LottieInfo *info, Animation *animation, size_t segmentIndex, int w, int h, uint32_t *maxFrameSize) {
+    const LottieCacheSegment &segment = info->cacheSegments[segmentIndex];
+    FILE *segmentFile = fopen(segment.path.c_str(), "w+");
+    if (segmentFile == nullptr) {
+        return;
+    }
+
+    int bufferSize = w * h * 4;
+    int compressBound = LZ4_compressBound(bufferSize);
+    char *compressBuffer = new char[compressBound];
+    uint8_t *buffer = new uint8_t[bufferSize];
+    uint32_t keyFrameInterval = info->keyFrameInterval;
+    // the frame before the rendered one and the difference between them
+    uint8_t *previousBuffer = keyFrameInterval > 1 ? new uint8_t[bufferSize] : nullptr;
+    uint8_t *deltaBuffer = keyFrameInterval > 1 ? new uint8_t[bufferSize] : nullptr;
+    char *deltaCompressBuffer = keyFrameInterval > 1 ? new char[compressBound] : nullptr;
+    uint8_t *compareBuffer = nullptr;
+
+    int framesPerUpdate = !info->limitFps || info->fps < 60 ? 1 : 2;
+    uint32_t offset = 0;
+    // frames that look like an earlier frame of the segment point to its payload,
+    // the payload of a delta frame is only shared with the frame right after it.
+    std::unordered_map<uint64_t, uint32_t> payloads;
+    for (uint32_t index = segment.start; index < segment.end; index++) {
+        Surface surface = LottieWrapper::canvasSurface((uint32_t *) buffer, (size_t) w, (size_t) h, (size_t) w * 4);
+        animation->renderSync(index * framesPerUpdate, surface);
+        uint64_t hash = frameHash(buffer, w, h, w * 4);
+        info->cacheFrameHashes[index] = hash;
+        bool keyFrame = index % keyFrameInterval == 0;
+        if (!keyFrame && info->cacheFrameHashes[index - 1] == hash && memcmp(buffer, previousBuffer, (size_t) bufferSize) == 0) {
+            info->cacheFrames[index] = info->cacheFrames[index - 1];
+            info->cacheFramesReady[index].store(true, std::memory_order_release);
+            continue;
+        }
+        auto same = payloads.find(hash);
+        if (same != payloads.end() && compareBuffer == nullptr) {
+            compareBuffer = new uint8_t[bufferSize];
+        }
+        if (same != payloads.end() && payloadEquals(segmentFile, info->cacheFrames[same->second], buffer, bufferSize, compressBuffer, compareBuffer)) {
+            info->cacheFrames[index] = info->cacheFrames[same->second];
+            info->cacheFramesReady[index].store(true, std::memory_order_release);
+            if (keyFrameInterval > 1) std::swap(buffer, previousBuffer);
+            continue;
         }
-        lk.unlock();
 
-        if (task != nullptr) {
-            uint32_t size = (uint32_t) LZ4_compress_default(task->buffer, task->compressBuffer, task->bufferSize, task->compressBound);
-            if (task->firstFrame) {
-                task->firstFrameSize = size;
-                task->fileOffset = 9 + sizeof(uint32_t) + task->firstFrameSize;
+        uint32_t size = (uint32_t) LZ4_compress_default((const char *) buffer, compressBuffer, bufferSize, compressBound);
+        uint32_t flags = 0;
+        if (!keyFrame) {
+            // the difference doesn't always compress better (e.g. when most pixels move)
+            xorFrames(deltaBuffer, buffer, previousBuffer, (size_t) bufferSize);
+            uint32_t deltaSize = (uint32_t) LZ4_compress_default((const char *) deltaBuffer, deltaCompressBuffer, bufferSize, compressBound);
+            if (deltaSize != 0 && deltaSize < size) {
+                std::swap(compressBuffer, deltaCompressBuffer);
+                size = deltaSize;
+                flags = LOTTIE_CACHE_FRAME_DELTA;
             }
-            task->maxFrameSize = MAX(task->maxFrameSize, size);
-            fwrite(&size, sizeof(uint32_t), 1, task->precacheFile);
-            fwrite(task->compressBuffer, sizeof(uint8_t), size, task->precacheFile);
+        }
+        if (size == 0 || fwrite(compressBuffer, sizeof(uint8_t), size, segmentFile) != size) {
+            break;
+        }
+        fflush(segmentFile);
+
+        info->cacheFrames[index].offset = offset;
+        info->cacheFrames[index].size = size;
+        info->cacheFrames[index].flags = flags;
+        if (flags == 0) payloads.emplace(hash, index);
+        offset += size;
+        *maxFrameSize = MAX(*maxFrameSize, size);
+        info->cacheFramesReady[index].store(true, std::memory_order_release);
+        if (keyFrameInterval > 1) std::swap(buffer, previousBuffer);
+    }
+
+    delete[] compressBuffer;
+    delete[] buffer;
+    delete[] previousBuffer;
+    delete[] deltaBuffer;
+    delete[] deltaCompressBuffer;
+    delete[] compareBuffer;
+    fclose(segmentFile);
+}
+
+/**
+ * Writes the header and the offset table, then appends the payloads of the segments in order.
+ * A frame that looks like an earlier frame (of any segment) points to its payload, unless that is a delta frame.
+ */
+static bool stitchCacheSegments(LottieInfo *info, uint32_t maxFrameSize, int w, int h) {
+    uint32_t framesCount = (uint32_t) info->cacheFrames.size();
+    for (uint32_t a = 0; a < framesCount; a++) {
+        if (!info->cacheFramesReady[a].load(std::memory_order_acquire)) {
+            return false;
+        }
+    }
 
-            fflush(task->precacheFile);
-            fsync(fileno(task->precacheFile));
-            task->framesAvailableInCache++;
+    FILE *cacheFile = fopen(info->cacheFile.c_str(), "w+");
+    if (cacheFile == nullptr) {
+        return false;
+    }
+    LottieCacheHeader header = {};
+    header.maxFrameSize = maxFrameSize;
+    header.imageSize = (uint32_t) w * h * 4;
+    header.framesCount = framesCount;
+    header.keyFrameInterval = (uint16_t) info->keyFrameInterval;
+
+    std::vector<FILE *> segmentFiles(info->cacheSegments.size(), nullptr);
+    auto segmentOf = [&](uint32_t index) {
+        size_t segmentIndex = 0;
+        while (index >= info->cacheSegments[segmentIndex].end) {
+            segmentIndex++;
+        }
+        return segmentIndex;
+    };
+    auto readPayload = [&](uint32_t index, char *payload) {
+        size_t segmentIndex = segmentOf(index);
+        if (segmentFiles[segmentIndex] == nullptr) {
+            segmentFiles[segmentIndex] = fopen(info->cacheSegments[segmentIndex].path.c_str(), "r");
+        }
+        const LottieCacheFrame &frame = info->cacheFrames[index];
+        return segmentFiles[segmentIndex] != nullptr
+               && pread(fileno(segmentFiles[segmentIndex]), payload, frame.size, frame.offset) == (ssize_t) frame.size;
+    };
+    // lz4 compresses the same pixels to the same bytes, so equal payloads are equal frames
+    std::vector<char> buffer(maxFrameSize), otherBuffer(maxFrameSize);
+    auto samePayload = [&](uint32_t index, uint32_t other) {
+        const LottieCacheFrame &frame = info->cacheFrames[index];
+        const LottieCacheFrame &otherFrame = info->cacheFrames[other];
+        if (frame.size != otherFrame.size) {
+            return false;
+        }
+        if (frame.offset == otherFrame.offset && segmentOf(index) == segmentOf(other)) {
+            return true;
+        }
+        return readPayload(index, buffer.data()) && readPayload(other, otherBuffer.data())
+               && memcmp(buffer.data(), otherBuffer.data(), frame.size) == 0;
+    };
+
+    std::vector<LottieCacheFrame> table(framesCount);
+    std::vector<uint32_t> payloads;
+    std::unordered_map<uint64_t, uint32_t> firstFrames;
+    uint32_t offset = (uint32_t) (sizeof(LottieCacheHeader) + framesCount * sizeof(LottieCacheFrame));
+    for (uint32_t index = 0; index < framesCount; index++) {
+        const LottieCacheFrame &frame = info->cacheFrames[index];
+        if ((frame.flags & LOTTIE_CACHE_FRAME_DELTA) != 0) {
+            // its segment knows if it looks like the frame before it
+            const LottieCacheFrame &previous = info->cacheFrames[index - 1];
+            if (frame.offset == previous.offset && frame.size == previous.size) {
+                table[index] = table[index - 1];
+                continue;
+            }
+        } else {
+            auto same = firstFrames.find(info->cacheFrameHashes[index]);
+            if (same != firstFrames.end() && samePayload(index, same->second)) {
+                table[index] = table[same->second];
+                continue;
+            }
+            firstFrames.emplace(info->cacheFrameHashes[index], index);
+        }
+        table[index].offset = offset;
+        table[index].size = frame.size;
+        table[index].flags = frame.flags;
+        offset += table[index].size;
+        payloads.push_back(index);
+    }
+    fwrite(&header, sizeof(LottieCacheHeader), 1, cacheFile);
+    fwrite(table.data(), sizeof(LottieCacheFrame), framesCount, cacheFile);
+
+    bool successful = true;
+    for (uint32_t index : payloads) {
+        const LottieCacheFrame &frame = info->cacheFrames[index];
+        if (!readPayload(index, buffer.data())
+            || fwrite(buffer.data(), sizeof(char), frame.size, cacheFile) != frame.size) {
+            successful = false;
+            break;
         }
-        frameReady = false;
-        cacheDoneCv.notify_one();
     }
+    for (FILE *segmentFile : segmentFiles) {
+        if (segmentFile != nullptr) {
+            fclose(segmentFile);
+        }
+    }
+
+    if (successful) {
+        fflush(cacheFile);
+        fsync(fileno(cacheFile));
+
+        // the version byte is written last, so a half-written cache is never trusted.
+        header.version = LOTTIE_CACHE_VERSION;
+        fseek(cacheFile, 0, SEEK_SET);
+        fwrite(&header, sizeof(LottieCacheHeader), 1, cacheFile);
+        fflush(cacheFile);
+        fsync(fileno(cacheFile));
+    }
+    fclose(cacheFile);
+    return successful;
+}
+
+void Java_com_aghajari_rlottie_AXrLottieNative_configureCacheWorkers(JNIEnv *env, jclass clazz, jint count) {
+    cacheWorkersCount = count;
+}
+
+void Java_com_aghajari_rlottie_AXrLottieNative_configureCacheKeyFrames(JNIEnv *env, jclass clazz, jint interval) {
+    cacheKeyFrameInterval = MIN(MAX(interval, 1), UINT16_MAX);
+}
+
+void Java_com_aghajari_rlottie_AXrLottieNative_configureRenderBands(JNIEnv *env, jclass clazz, jint count) {
+    rlottie::configureRenderBands(count > 1 ? (size_t) count : 1);
 }
 
 void Java_com_aghajari_rlottie_AXrLottieNative_createCache(JNIEnv *env, jclass clazz, jlong ptr, jint w, jint h) {
@@ -171,86 +982,99 @@ void Java_com_aghajari_rlottie_AXrLottieNative_createCache(JNIEnv *env, jclass c
     }
     LottieInfo *info = (LottieInfo *) (intptr_t) ptr;
 
-    FILE *cacheFile = fopen(info->cacheFile.c_str(), "r+");
-    if (cacheFile != nullptr) {
-        uint8_t temp;
-        size_t read = fread(&temp, sizeof(uint8_t), 1, cacheFile);
-        fclose(cacheFile);
-        if (read == 1 && temp != 0) {
-            return;
-        }
-    }
-
-    if (!cacheWriteThreadCreated) {
-        cacheWriteThreadCreated = true;
-        worker = std::thread(CacheWriteThreadProc);
+    if (isCacheFileCompleted(info->cacheFile)) {
+        return;
     }
 
     if (info->nextFrameIsCacheFrame && info->createCache && info->frameCount != 0) {
-        info->precacheFile = fopen(info->cacheFile.c_str(), "w+");
-        if (info->precacheFile != nullptr) {
-            fseek(info->precacheFile, info->fileOffset = 9, SEEK_SET);
-            info->maxFrameSize = 0;
-            info->bufferSize = w * h * 4;
-            info->imageSize = (uint32_t) w * h * 4;
-            info->compressBound = LZ4_compressBound(info->bufferSize);
-            info->compressBuffer = new char[info->compressBound];
-            uint8_t *firstBuffer = new uint8_t[info->bufferSize];
-            uint8_t *secondBuffer = new uint8_t[info->bufferSize];
-            //long time = ConnectionsManager::getInstance(0).getCurrentTimeMonotonicMillis();
-
-            Surface surface1((uint32_t *) firstBuffer, (size_t) w, (size_t) h, (size_t) w * 4);
-            Surface surface2((uint32_t *) secondBuffer, (size_t) w, (size_t) h, (size_t) w * 4);
-            int framesPerUpdate = !info->limitFps || info->fps < 60 ? 1 : 2;
-            int num = 0;
-            for (size_t a = 0; a < info->frameCount; a += framesPerUpdate) {
-                Surface &surfaceToRender = num % 2 == 0 ? surface1 : surface2;
-                num++;
-                info->animation->renderSync(a, surfaceToRender);
-                LottieWrapper::convertToCanvasFormat(surfaceToRender);
-                if (a != 0) {
-                    std::unique_lock<std::mutex> lk(cacheDoneMutex);
-                    cacheDoneCv.wait(lk, [] { return !frameReady.load(); });
-                }
+        uint32_t framesCount = getCacheFramesCount(info);
+        // segments are split at key frames
+        info->keyFrameInterval = (uint32_t) cacheKeyFrameInterval.load();
+        uint32_t groupsCount = (framesCount + info->keyFrameInterval - 1) / info->keyFrameInterval;
+        uint32_t workersCount = (uint32_t) MIN((uint32_t) getCacheWorkersCount(), groupsCount);
+        if (info->propertiesChanged) {
+            workersCount = 1;
+        }
 
-                std::lock_guard<std::mutex> lg(cacheMutex);
-                cacheWriteThreadTask = info;
-                info->firstFrame = a == 0;
-                info->buffer = (const char *) surfaceToRender.buffer();
-                frameReady = true;
-                cacheCv.notify_one();
+        // every worker except the first one needs its own renderer tree,
+        // the parsed model is shared through the model cache.
+        // (a new renderer tree doesn't have the layer properties, so they are rendered on one worker)
+        std::vector<std::unique_ptr<Animation>> animations;
+        for (uint32_t a = 1; a < workersCount; a++) {
+            std::unique_ptr<Animation> animation = Animation::loadFromFile(info->path);
+            if (animation == nullptr) {
+                break;
             }
-            std::unique_lock<std::mutex> lk(cacheDoneMutex);
-            cacheDoneCv.wait(lk, [] { return !frameReady.load(); });
+            animations.push_back(std::move(animation));
+        }
+        workersCount = (uint32_t) animations.size() + 1;
+
+        info->cacheFrames.assign(framesCount, LottieCacheFrame());
+        info->cacheFramesReady.reset(new std::atomic<bool>[framesCount]);
+        info->cacheFrameHashes.assign(framesCount, 0);
+        for (uint32_t a = 0; a < framesCount; a++) {
+            info->cacheFramesReady[a].store(false);
+        }
+        info->cacheSegments.clear();
+        for (uint32_t a = 0; a < workersCount; a++) {
+            LottieCacheSegment segment;
+            segment.path = info->cacheFile + ".part" + std::to_string(a);
+            segment.start = MIN(groupsCount * a / workersCount * info->keyFrameInterval, framesCount);
+            segment.end = MIN(groupsCount * (a + 1) / workersCount * info->keyFrameInterval, framesCount);
+            info->cacheSegments.push_back(segment);
+        }
+
+        info->imageSize = (uint32_t) w * h * 4;
+        info->cacheGenerating.store(true, std::memory_order_release);
 
-            //DEBUG_D("sticker time = %d", (int) (ConnectionsManager::getInstance(0).getCurrentTimeMonotonicMillis() - time));
-            delete[] info->compressBuffer;
-            delete[] secondBuffer;
-            fseek(info->precacheFile, 0, SEEK_SET);
-            uint8_t byte = 1;
-            fwrite(&byte, sizeof(uint8_t), 1, info->precacheFile);
-            uint32_t maxFrameSize = info->maxFrameSize;
-            fwrite(&maxFrameSize, sizeof(uint32_t), 1, info->precacheFile);
-            fwrite(&info->imageSize, sizeof(uint32_t), 1, info->precacheFile);
-            fflush(info->precacheFile);
-            fsync(fileno(info->precacheFile));
-            info->createCache = false;
-            fclose(info->precacheFile);
+        std::vector<uint32_t> maxFrameSizes(workersCount, 0);
+        std::vector<std::thread> workers;
+        for (uint32_t a = 1; a < workersCount; a++) {
+            workers.emplace_back(renderCacheSegment, info, animations[a - 1].get(), a, w, h, &maxFrameSizes[a]);
         }
+        renderCacheSegment(info, info->animation.get(), 0, w, h, &maxFrameSizes[0]);
+        for (std::thread &worker : workers) {
+            worker.join();
+        }
+
+        uint32_t maxFrameSize = 0;
+        for (uint32_t size : maxFrameSizes) {
+            maxFrameSize = MAX(maxFrameSize, size);
+        }
+        bool stitched = stitchCacheSegments(info, maxFrameSize, w, h);
+        for (const LottieCacheSegment &segment : info->cacheSegments) {
+            unlink(segment.path.c_str());
+        }
+
+        if (!stitched || !mapCacheFile(info)) {
+            unlink(info->cacheFile.c_str());
+        }
+        // segment vectors stay alive until the LottieInfo is destroyed, getFrame may still be reading them.
+        info->cacheGenerating.store(false, std::memory_order_release);
+        info->createCache = false;
     }
 }
 
-jint Java_com_aghajari_rlottie_AXrLottieNative_getFrame(JNIEnv *env, jclass clazz, jlong ptr, jint frame, jobject bitmap, jint w, jint h, jint stride) {
-    if (ptr == NULL || bitmap == nullptr) {
-        return 0;
+/**
+ * Renders or decodes the frame into the bitmap. A partial render only draws the area that
+ * changed since the frame the bitmap holds (keepContent), changed gets the area that looks
+ * different from the frame of the previous call (x, y, w, h).
+ */
+static jint getFrame(JNIEnv *env, LottieInfo *info, jint frame, jobject bitmap, jint w, jint h, jint stride, bool partial, bool keepContent, jint *changed) {
+    if (changed != nullptr) {
+        changed[0] = changed[1] = 0;
+        changed[2] = w;
+        changed[3] = h;
     }
-    LottieInfo *info = (LottieInfo *) (intptr_t) ptr;
 
     int framesPerUpdate = !info->limitFps || info->fps < 60 ? 1 : 2;
-    int framesAvailableInCache = info->framesAvailableInCache;
-
-    if (info->createCache && info->precache && frame > 0) {
-        if (frame / framesPerUpdate >= framesAvailableInCache) {
+    uint32_t cacheIndex = (uint32_t) frame / framesPerUpdate;
+    bool cacheFrameReady = false;
+    if (info->createCache && info->precache) {
+        if (info->cacheGenerating.load(std::memory_order_acquire)) {
+            cacheFrameReady = cacheIndex < info->cacheFrames.size() && info->cacheFramesReady[cacheIndex].load(std::memory_order_acquire);
+        }
+        if (frame > 0 && !cacheFrameReady && info->cacheMap.load(std::memory_order_acquire) == nullptr) {
             return -1;
         }
     }
@@ -258,64 +1082,205 @@ jint Java_com_aghajari_rlottie_AXrLottieNative_getFrame(JNIEnv *env, jclass claz
     void *pixels;
     if (AndroidBitmap_lockPixels(env, bitmap, &pixels) >= 0) {
         bool loadedFromCache = false;
-        uint32_t maxFrameSize = info->maxFrameSize;
-        if (info->precache && (!info->createCache || frame > 0) && w * 4 == stride && maxFrameSize <= w * h * 4 && info->imageSize == w * h * 4) {
-            FILE *precacheFile = fopen(info->cacheFile.c_str(), "r");
-            if (precacheFile != nullptr) {
-                if (info->decompressBuffer != nullptr && info->decompressBufferSize < maxFrameSize) {
-                    delete[] info->decompressBuffer;
-                    info->decompressBuffer = nullptr;
-                }
-                if (info->decompressBuffer == nullptr) {
-                    info->decompressBufferSize = maxFrameSize;
-                    if (info->createCache) {
-                        info->decompressBufferSize += 10000;
-                    }
-                    info->decompressBuffer = new uint8_t[info->decompressBufferSize];
-                }
-                fseek(precacheFile, info->fileOffset, SEEK_SET);
-                uint32_t frameSize;
-                fread(&frameSize, sizeof(uint32_t), 1, precacheFile);
-                if (frameSize > 0 && frameSize <= info->decompressBufferSize) {
-                    fread(info->decompressBuffer, sizeof(uint8_t), frameSize, precacheFile);
-                    info->fileOffset += 4 + frameSize;
-                    LZ4_decompress_safe((const char *) info->decompressBuffer, (char *) pixels, frameSize, w * h * 4);
-                    loadedFromCache = true;
-                }
-                fclose(precacheFile);
-                if (frame + framesPerUpdate >= info->frameCount) {
-                    info->fileOffset = 9;
-                }
+        if (info->precache && w * 4 == stride && w <= info->cacheWidth && h <= info->cacheHeight) {
+            const uint8_t *cacheMap = info->cacheMap.load(std::memory_order_acquire);
+            if (cacheMap != nullptr ? cacheIndex < info->cacheFramesCount : cacheFrameReady) {
+                // a cache that is still being generated is read from its segment files
+                loadedFromCache = decodeCacheFrame(info, cacheMap, cacheIndex, (uint8_t *) pixels, w, h);
             }
         }
 
+        bool renderedPartially = false;
         if (!loadedFromCache) {
-            if (!info->nextFrameIsCacheFrame || !info->precache) {
-                Surface surface((uint32_t *) pixels, (size_t) w, (size_t) h, (size_t) stride);
-                info->animation->renderSync((size_t) frame, surface);
-                LottieWrapper::convertToCanvasFormat(surface);
+            if (!info->nextFrameIsCacheFrame || !info->precache || !info->createCache) {
+                Surface surface = LottieWrapper::canvasSurface((uint32_t *) pixels, (size_t) w, (size_t) h, (size_t) stride);
+                if (partial) {
+                    auto kept = std::find(info->partialSurfaces.begin(), info->partialSurfaces.end(), pixels);
+                    DirtyRegion redrawnRegion, changedRegion;
+                    info->animation->renderSyncPartial((size_t) frame, surface, keepContent && kept != info->partialSurfaces.end(), &redrawnRegion, &changedRegion);
+                    info->pixelsRendered += (uint64_t) redrawnRegion.w * redrawnRegion.h;
+                    if (kept == info->partialSurfaces.end()) {
+                        info->partialSurfaces.push_back(pixels);
+                    }
+                    if (changed != nullptr && info->lastFramePartial) {
+                        changed[0] = (jint) changedRegion.x;
+                        changed[1] = (jint) changedRegion.y;
+                        changed[2] = (jint) changedRegion.w;
+                        changed[3] = (jint) changedRegion.h;
+                    }
+                    renderedPartially = true;
+                } else {
+                    info->animation->renderSync((size_t) frame, surface);
+                    info->pixelsRendered += (uint64_t) w * h;
+                }
                 info->nextFrameIsCacheFrame = true;
+                info->framesRendered++;
+
+                if (!info->dynamicProperties) {
+                    if (info->frameHashesWidth != w || info->frameHashesHeight != h) {
+                        info->frameHashes.assign(info->frameCount, 0);
+                        info->frameHashesWidth = w;
+                        info->frameHashesHeight = h;
+                    }
+                    if ((size_t) frame < info->frameHashes.size() && info->frameHashes[frame] == 0) {
+                        info->frameHashes[frame] = frameHash((const uint8_t *) pixels, w, h, stride);
+                    }
+                }
             }
+        } else {
+            info->framesFromCache++;
+        }
+        if (!renderedPartially) {
+            // the bitmap doesn't hold what the renderer remembers anymore
+            info->partialSurfaces.erase(std::remove(info->partialSurfaces.begin(), info->partialSurfaces.end(), pixels), info->partialSurfaces.end());
         }
+        info->lastFramePartial = renderedPartially;
 
         AndroidBitmap_unlockPixels(env, bitmap);
     }
     return frame;
 }
 
-void LottieWrapper::convertToCanvasFormat(Surface &s) {
-    uint8_t *buffer = reinterpret_cast<uint8_t *>(s.buffer());
-    uint32_t totalBytes = s.height() * s.bytesPerLine();
+jint Java_com_aghajari_rlottie_AXrLottieNative_getFrame(JNIEnv *env, jclass clazz, jlong ptr, jint frame, jobject bitmap, jint w, jint h, jint stride) {
+    if (ptr == NULL || bitmap == nullptr) {
+        return 0;
+    }
+    LottieInfo *info = (LottieInfo *) (intptr_t) ptr;
+    return getFrame(env, info, frame, bitmap, w, h, stride, false, false, nullptr);
+}
 
-    for (int i = 0; i < totalBytes; i += 4) {
-        unsigned char r = buffer[i + 2];
-        unsigned char g = buffer[i + 1];
-        unsigned char b = buffer[i];
+// keepContent: the bitmap hasn't been changed since this animation wrote its last frame into it.
+// changed (x, y, w, h) gets the area that looks different from the frame of the previous call.
+jint Java_com_aghajari_rlottie_AXrLottieNative_getFramePartial(JNIEnv *env, jclass clazz, jlong ptr, jint frame, jobject bitmap, jint w, jint h, jint stride, jboolean keepContent, jintArray changed) {
+    if (ptr == NULL || bitmap == nullptr) {
+        return 0;
+    }
+    LottieInfo *info = (LottieInfo *) (intptr_t) ptr;
+    jint region[4];
+    jint result = getFrame(env, info, frame, bitmap, w, h, stride, true, keepContent, region);
+    if (changed != nullptr && env->GetArrayLength(changed) >= 4) {
+        env->SetIntArrayRegion(changed, 0, 4, region);
+    }
+    return result;
+}
 
-        buffer[i] = r;
-        buffer[i + 1] = g;
-        buffer[i + 2] = b;
+// true if the frame is known to look exactly like previousFrame (at the size the frames were drawn),
+// so it doesn't have to be decoded again.
+jboolean Java_com_aghajari_rlottie_AXrLottieNative_isFrameUnchanged(JNIEnv *env, jclass clazz, jlong ptr, jint frame, jint previousFrame) {
+    if (ptr == NULL || frame < 0 || previousFrame < 0) {
+        return JNI_FALSE;
+    }
+    LottieInfo *info = (LottieInfo *) (intptr_t) ptr;
+    if (info->dynamicProperties) {
+        return JNI_FALSE;
+    }
+
+    if (info->precache) {
+        int framesPerUpdate = !info->limitFps || info->fps < 60 ? 1 : 2;
+        uint32_t index = (uint32_t) frame / framesPerUpdate;
+        uint32_t previousIndex = (uint32_t) previousFrame / framesPerUpdate;
+        const uint8_t *cacheMap = info->cacheMap.load(std::memory_order_acquire);
+        if (cacheMap != nullptr) {
+            if (index < info->cacheFramesCount && previousIndex < info->cacheFramesCount) {
+                auto *table = (const LottieCacheFrame *) (cacheMap + sizeof(LottieCacheHeader));
+                return (jboolean) (table[index].size > 0 && table[index].offset == table[previousIndex].offset
+                                   && table[index].size == table[previousIndex].size);
+            }
+        } else if (info->cacheGenerating.load(std::memory_order_acquire)) {
+            if (index < info->cacheFrames.size() && previousIndex < info->cacheFrames.size()
+                && info->cacheFramesReady[index].load(std::memory_order_acquire)
+                && info->cacheFramesReady[previousIndex].load(std::memory_order_acquire)) {
+                return (jboolean) (info->cacheFrameHashes[index] == info->cacheFrameHashes[previousIndex]);
+            }
+        }
     }
+
+    if ((size_t) frame < info->frameHashes.size() && (size_t) previousFrame < info->frameHashes.size()) {
+        uint64_t hash = info->frameHashes[frame];
+        return (jboolean) (hash != 0 && hash == info->frameHashes[previousFrame]);
+    }
+    return JNI_FALSE;
+}
+
+// stats[0]: frames read from the frames cache, stats[1]: frames rendered,
+// stats[2]: bytes read from the frames cache, stats[3] (optional): pixels rendered. The counters are reset.
+void Java_com_aghajari_rlottie_AXrLottieNative_readFrameStats(JNIEnv *env, jclass clazz, jlong ptr, jlongArray stats) {
+    if (ptr == NULL || stats == nullptr || env->GetArrayLength(stats) < 3) {
+        return;
+    }
+    LottieInfo *info = (LottieInfo *) (intptr_t) ptr;
+
+    jlong values[4] = {(jlong) info->framesFromCache, (jlong) info->framesRendered, (jlong) info->cacheBytesRead, (jlong) info->pixelsRendered};
+    env->SetLongArrayRegion(stats, 0, MIN(env->GetArrayLength(stats), 4), values);
+    info->framesFromCache = 0;
+    info->framesRendered = 0;
+    info->cacheBytesRead = 0;
+    info->pixelsRendered = 0;
+}
+
+jint Java_com_aghajari_rlottie_AXrLottieNative_getFramesCount(JNIEnv *env, jclass clazz, jlong ptr) {
+    if (ptr == NULL) {
+        return 0;
+    }
+    LottieInfo *info = (LottieInfo *) (intptr_t) ptr;
+    return (jint) info->frameCount;
+}
+
+jdouble Java_com_aghajari_rlottie_AXrLottieNative_getFrameRate(JNIEnv *env, jclass clazz, jlong ptr) {
+    if (ptr == NULL) {
+        return 0;
+    }
+    LottieInfo *info = (LottieInfo *) (intptr_t) ptr;
+    return info->animation->frameRate();
+}
+
+// Renders the frame straight into the bitmap, without the frame cache.
+jboolean Java_com_aghajari_rlottie_AXrLottieNative_renderFrame(JNIEnv *env, jclass clazz, jlong ptr, jint frame, jobject bitmap, jint w, jint h, jint stride) {
+    if (ptr == NULL || bitmap == nullptr) {
+        return false;
+    }
+    LottieInfo *info = (LottieInfo *) (intptr_t) ptr;
+
+    void *pixels;
+    if (AndroidBitmap_lockPixels(env, bitmap, &pixels) >= 0) {
+        Surface surface = LottieWrapper::canvasSurface((uint32_t *) pixels, (size_t) w, (size_t) h, (size_t) stride);
+        info->animation->renderSync((size_t) frame, surface);
+        AndroidBitmap_unlockPixels(env, bitmap);
+        return true;
+    }
+    return false;
+}
+
+// Renders the frame in rlottie's ARGB order and swaps R and B afterwards, the way frames were
+// drawn before the rasterizer wrote Android's byte order. Only kept to compare both paths.
+jboolean Java_com_aghajari_rlottie_AXrLottieNative_renderFrameSwizzled(JNIEnv *env, jclass clazz, jlong ptr, jint frame, jobject bitmap, jint w, jint h, jint stride) {
+    if (ptr == NULL || bitmap == nullptr) {
+        return false;
+    }
+    LottieInfo *info = (LottieInfo *) (intptr_t) ptr;
+
+    void *pixels;
+    if (AndroidBitmap_lockPixels(env, bitmap, &pixels) >= 0) {
+        Surface surface((uint32_t *) pixels, (size_t) w, (size_t) h, (size_t) stride);
+        info->animation->renderSync((size_t) frame, surface);
+        uint8_t *row = (uint8_t *) pixels;
+        for (jint y = 0; y < h; y++, row += stride) {
+            for (jint x = 0; x < w * 4; x += 4) {
+                uint8_t b = row[x];
+                row[x] = row[x + 2];
+                row[x + 2] = b;
+            }
+        }
+        AndroidBitmap_unlockPixels(env, bitmap);
+        return true;
+    }
+    return false;
+}
+
+Surface LottieWrapper::canvasSurface(uint32_t *buffer, size_t width, size_t height, size_t bytesPerLine) {
+    Surface surface(buffer, width, height, bytesPerLine);
+    surface.setFormat(Surface::Format::ABGR32_Premultiplied);
+    return surface;
 }
 
 jint Java_com_aghajari_rlottie_AXrLottieNative_getLayersCount(JNIEnv *env, jclass clazz, jlong ptr){
@@ -370,35 +1335,22 @@ void Java_com_aghajari_rlottie_AXrLottieNative_setLayerColor(JNIEnv *env, jclass
         return;
     }
     LottieInfo *info = (LottieInfo *) (intptr_t) ptr;
+    onPropertiesChanged(info, false);
     char const *layerString = env->GetStringUTFChars(layer, 0);
-    info->animation->setValue<Property::FillColor>(layerString, rlottie::Color(((color >> 16) & 0xff) / 255.0f, ((color >> 8) & 0xff) / 255.0f, ((color) & 0xff) / 255.0f));
+    info->animation->setValue<Property::FillColor>(layerString, toLottieColor(color));
      if (layerString != 0) {
         env->ReleaseStringUTFChars(layer, layerString);
     }
 }
 
-void Java_com_aghajari_rlottie_AXrLottieNative_setDynamicLayerColor(JNIEnv *env, jclass clazz, jlong ptr, jstring layer, jobject listener) {
-    if (listener == NULL || ptr == NULL || layer == nullptr) {
+void Java_com_aghajari_rlottie_AXrLottieNative_setDynamicLayerColor(JNIEnv *env, jclass clazz, jlong ptr, jstring layer, jobject provider) {
+    if (provider == NULL || ptr == NULL || layer == nullptr) {
         return;
     }
     LottieInfo *info = (LottieInfo *) (intptr_t) ptr;
+    onPropertiesChanged(info, true);
     char const *layerString = env->GetStringUTFChars(layer, 0);
-
-    jweak store_Wlistener = env->NewWeakGlobalRef(listener);
-    jclass lclazz = env->GetObjectClass(store_Wlistener);
-    jmethodID mth_update = env->GetMethodID(lclazz, "getValue", "(I)Ljava/lang/Integer;");
-
-    info->animation->setValue<Property::FillColor>
-            (layerString,[mth_update,store_Wlistener,env](const FrameInfo& info) {
-                    jobject colorObj = env->CallObjectMethod(store_Wlistener, mth_update, (jint) (info.curFrame()));
-                    jclass cls = env->GetObjectClass(colorObj);
-                    jmethodID integerToInt = env->GetMethodID(cls, "intValue", "()I");
-                    jint color = env->CallIntMethod(colorObj, integerToInt);
-
-                    return rlottie::Color(((color >> 16) & 0xff) / 255.0f,
-                                          ((color >> 8) & 0xff) / 255.0f,
-                                          ((color) & 0xff) / 255.0f);
-    });
+    info->animation->setValue<Property::FillColor>(layerString, colorProvider(env, provider));
     if (layerString != 0) {
         env->ReleaseStringUTFChars(layer, layerString);
     }
@@ -409,35 +1361,22 @@ void Java_com_aghajari_rlottie_AXrLottieNative_setLayerStrokeColor(JNIEnv *env,
         return;
     }
     LottieInfo *info = (LottieInfo *) (intptr_t) ptr;
+    onPropertiesChanged(info, false);
     char const *layerString = env->GetStringUTFChars(layer, 0);
-    info->animation->setValue<Property::StrokeColor>(layerString, rlottie::Color(((color >> 16) & 0xff) / 255.0f, ((color >> 8) & 0xff) / 255.0f, ((color) & 0xff) / 255.0f));
+    info->animation->setValue<Property::StrokeColor>(layerString, toLottieColor(color));
     if (layerString != 0) {
         env->ReleaseStringUTFChars(layer, layerString);
     }
 }
 
-void Java_com_aghajari_rlottie_AXrLottieNative_setDynamicLayerStrokeColor(JNIEnv *env, jclass clazz, jlong ptr, jstring layer, jobject listener) {
-    if (listener == NULL || ptr == NULL || layer == nullptr) {
+void Java_com_aghajari_rlottie_AXrLottieNative_setDynamicLayerStrokeColor(JNIEnv *env, jclass clazz, jlong ptr, jstring layer, jobject provider) {
+    if (provider == NULL || ptr == NULL || layer == nullptr) {
         return;
     }
     LottieInfo *info = (LottieInfo *) (intptr_t) ptr;
+    onPropertiesChanged(info, true);
     char const *layerString = env->GetStringUTFChars(layer, 0);
-
-    jweak store_Wlistener = env->NewWeakGlobalRef(listener);
-    jclass lclazz = env->GetObjectClass(store_Wlistener);
-    jmethodID mth_update = env->GetMethodID(lclazz, "getValue", "(I)Ljava/lang/Integer;");
-
-    info->animation->setValue<Property::StrokeColor>(layerString,
-                                                   [mth_update,store_Wlistener,env](const FrameInfo& info) {
-                                                       jobject colorObj = env->CallObjectMethod(store_Wlistener, mth_update, (jint) (info.curFrame()));
-                                                       jclass cls = env->GetObjectClass(colorObj);
-                                                       jmethodID integerToInt = env->GetMethodID(cls, "intValue", "()I");
-                                                       jint color = env->CallIntMethod(colorObj, integerToInt);
-
-                                                       return rlottie::Color(((color >> 16) & 0xff) / 255.0f,
-                                                                             ((color >> 8) & 0xff) / 255.0f,
-                                                                             ((color) & 0xff) / 255.0f);
-                                                   });
+    info->animation->setValue<Property::StrokeColor>(layerString, colorProvider(env, provider));
     if (layerString != 0) {
         env->ReleaseStringUTFChars(layer, layerString);
     }
@@ -448,6 +1387,7 @@ void Java_com_aghajari_rlottie_AXrLottieNative_setLayerFillOpacity(JNIEnv *env,
         return;
     }
     LottieInfo *info = (LottieInfo *) (intptr_t) ptr;
+    onPropertiesChanged(info, false);
     char const *layerString = env->GetStringUTFChars(layer, 0);
     info->animation->setValue<Property::FillOpacity>(layerString, (float) value);
     if (layerString != 0) {
@@ -455,26 +1395,14 @@ void Java_com_aghajari_rlottie_AXrLottieNative_setLayerFillOpacity(JNIEnv *env,
     }
 }
 
-void Java_com_aghajari_rlottie_AXrLottieNative_setDynamicLayerFillOpacity(JNIEnv *env, jclass clazz, jlong ptr, jstring layer, jobject listener) {
-    if (listener == NULL || ptr == NULL || layer == nullptr) {
+void Java_com_aghajari_rlottie_AXrLottieNative_setDynamicLayerFillOpacity(JNIEnv *env, jclass clazz, jlong ptr, jstring layer, jobject provider) {
+    if (provider == NULL || ptr == NULL || layer == nullptr) {
         return;
     }
     LottieInfo *info = (LottieInfo *) (intptr_t) ptr;
+    onPropertiesChanged(info, true);
     char const *layerString = env->GetStringUTFChars(layer, 0);
-
-    jweak store_Wlistener = env->NewWeakGlobalRef(listener);
-    jclass lclazz = env->GetObjectClass(store_Wlistener);
-    jmethodID mth_update = env->GetMethodID(lclazz, "getValue", "(I)Ljava/lang/Float;");
-
-    info->animation->setValue<Property::FillOpacity>
-            (layerString,[mth_update,store_Wlistener,env](const FrameInfo& info) {
-                jobject obj = env->CallObjectMethod(store_Wlistener, mth_update, (jint) (info.curFrame()));
-                jclass cls = env->GetObjectClass(obj);
-                jmethodID FloatToF = env->GetMethodID(cls, "floatValue", "()F");
-                jfloat value = env->CallFloatMethod(obj, FloatToF);
-
-                return (float) value;
-            });
+    info->animation->setValue<Property::FillOpacity>(layerString, floatProvider(env, provider));
     if (layerString != 0) {
         env->ReleaseStringUTFChars(layer, layerString);
     }
@@ -485,6 +1413,7 @@ void Java_com_aghajari_rlottie_AXrLottieNative_setLayerStrokeOpacity(JNIEnv *env
         return;
     }
     LottieInfo *info = (LottieInfo *) (intptr_t) ptr;
+    onPropertiesChanged(info, false);
     char const *layerString = env->GetStringUTFChars(layer, 0);
     info->animation->setValue<Property::StrokeOpacity>(layerString,(float) value);
     if (layerString != 0) {
@@ -492,26 +1421,14 @@ void Java_com_aghajari_rlottie_AXrLottieNative_setLayerStrokeOpacity(JNIEnv *env
     }
 }
 
-void Java_com_aghajari_rlottie_AXrLottieNative_setDynamicLayerStrokeOpacity(JNIEnv *env, jclass clazz, jlong ptr, jstring layer, jobject listener) {
-    if (listener == NULL || ptr == NULL || layer == nullptr) {
+void Java_com_aghajari_rlottie_AXrLottieNative_setDynamicLayerStrokeOpacity(JNIEnv *env, jclass clazz, jlong ptr, jstring layer, jobject provider) {
+    if (provider == NULL || ptr == NULL || layer == nullptr) {
         return;
     }
     LottieInfo *info = (LottieInfo *) (intptr_t) ptr;
+    onPropertiesChanged(info, true);
     char const *layerString = env->GetStringUTFChars(layer, 0);
-
-    jweak store_Wlistener = env->NewWeakGlobalRef(listener);
-    jclass lclazz = env->GetObjectClass(store_Wlistener);
-    jmethodID mth_update = env->GetMethodID(lclazz, "getValue", "(I)Ljava/lang/Float;");
-
-    info->animation->setValue<Property::StrokeOpacity>
-            (layerString,[mth_update,store_Wlistener,env](const FrameInfo& info) {
-                jobject obj = env->CallObjectMethod(store_Wlistener, mth_update, (jint) (info.curFrame()));
-                jclass cls = env->GetObjectClass(obj);
-                jmethodID FloatToF = env->GetMethodID(cls, "floatValue", "()F");
-                jfloat value = env->CallFloatMethod(obj, FloatToF);
-
-                return (float) value;
-            });
+    info->animation->setValue<Property::StrokeOpacity>(layerString, floatProvider(env, provider));
     if (layerString != 0) {
         env->ReleaseStringUTFChars(layer, layerString);
     }
@@ -522,6 +1439,7 @@ void Java_com_aghajari_rlottie_AXrLottieNative_setLayerStrokeWidth(JNIEnv *env,
         return;
     }
     LottieInfo *info = (LottieInfo *) (intptr_t) ptr;
+    onPropertiesChanged(info, false);
     char const *layerString = env->GetStringUTFChars(layer, 0);
     info->animation->setValue<Property::StrokeWidth>(layerString,(float) value);
     if (layerString != 0) {
@@ -529,26 +1447,14 @@ void Java_com_aghajari_rlottie_AXrLottieNative_setLayerStrokeWidth(JNIEnv *env,
     }
 }
 
-void Java_com_aghajari_rlottie_AXrLottieNative_setDynamicLayerStrokeWidth(JNIEnv *env, jclass clazz, jlong ptr, jstring layer, jobject listener) {
-    if (listener == NULL || ptr == NULL || layer == nullptr) {
+void Java_com_aghajari_rlottie_AXrLottieNative_setDynamicLayerStrokeWidth(JNIEnv *env, jclass clazz, jlong ptr, jstring layer, jobject provider) {
+    if (provider == NULL || ptr == NULL || layer == nullptr) {
         return;
     }
     LottieInfo *info = (LottieInfo *) (intptr_t) ptr;
+    onPropertiesChanged(info, true);
     char const *layerString = env->GetStringUTFChars(layer, 0);
-
-    jweak store_Wlistener = env->NewWeakGlobalRef(listener);
-    jclass lclazz = env->GetObjectClass(store_Wlistener);
-    jmethodID mth_update = env->GetMethodID(lclazz, "getValue", "(I)Ljava/lang/Float;");
-
-    info->animation->setValue<Property::StrokeWidth>
-            (layerString,[mth_update,store_Wlistener,env](const FrameInfo& info) {
-                jobject obj = env->CallObjectMethod(store_Wlistener, mth_update, (jint) (info.curFrame()));
-                jclass cls = env->GetObjectClass(obj);
-                jmethodID FloatToF = env->GetMethodID(cls, "floatValue", "()F");
-                jfloat value = env->CallFloatMethod(obj, FloatToF);
-
-                return (float) value;
-            });
+    info->animation->setValue<Property::StrokeWidth>(layerString, floatProvider(env, provider));
     if (layerString != 0) {
         env->ReleaseStringUTFChars(layer, layerString);
     }
@@ -559,6 +1465,7 @@ void Java_com_aghajari_rlottie_AXrLottieNative_setLayerTrRotation(JNIEnv *env, j
         return;
     }
     LottieInfo *info = (LottieInfo *) (intptr_t) ptr;
+    onPropertiesChanged(info, false);
     char const *layerString = env->GetStringUTFChars(layer, 0);
     info->animation->setValue<Property::TrRotation>(layerString,(float) value);
     if (layerString != 0) {
@@ -566,26 +1473,14 @@ void Java_com_aghajari_rlottie_AXrLottieNative_setLayerTrRotation(JNIEnv *env, j
     }
 }
 
-void Java_com_aghajari_rlottie_AXrLottieNative_setDynamicLayerTrRotation(JNIEnv *env, jclass clazz, jlong ptr, jstring layer, jobject listener) {
-    if (listener == NULL || ptr == NULL || layer == nullptr) {
+void Java_com_aghajari_rlottie_AXrLottieNative_setDynamicLayerTrRotation(JNIEnv *env, jclass clazz, jlong ptr, jstring layer, jobject provider) {
+    if (provider == NULL || ptr == NULL || layer == nullptr) {
         return;
     }
     LottieInfo *info = (LottieInfo *) (intptr_t) ptr;
+    onPropertiesChanged(info, true);
     char const *layerString = env->GetStringUTFChars(layer, 0);
-
-    jweak store_Wlistener = env->NewWeakGlobalRef(listener);
-    jclass lclazz = env->GetObjectClass(store_Wlistener);
-    jmethodID mth_update = env->GetMethodID(lclazz, "getValue", "(I)Ljava/lang/Float;");
-
-    info->animation->setValue<Property::TrRotation>
-            (layerString,[mth_update,store_Wlistener,env](const FrameInfo& info) {
-                jobject obj = env->CallObjectMethod(store_Wlistener, mth_update, (jint) (info.curFrame()));
-                jclass cls = env->GetObjectClass(obj);
-                jmethodID FloatToF = env->GetMethodID(cls, "floatValue", "()F");
-                jfloat value = env->CallFloatMethod(obj, FloatToF);
-
-                return (float) value;
-            });
+    info->animation->setValue<Property::TrRotation>(layerString, floatProvider(env, provider));
     if (layerString != 0) {
         env->ReleaseStringUTFChars(layer, layerString);
     }
@@ -596,6 +1491,7 @@ void Java_com_aghajari_rlottie_AXrLottieNative_setLayerTrOpacity(JNIEnv *env, jc
         return;
     }
     LottieInfo *info = (LottieInfo *) (intptr_t) ptr;
+    onPropertiesChanged(info, false);
     char const *layerString = env->GetStringUTFChars(layer, 0);
     info->animation->setValue<Property::TrOpacity>(layerString,(float) value);
     if (layerString != 0) {
@@ -603,26 +1499,14 @@ void Java_com_aghajari_rlottie_AXrLottieNative_setLayerTrOpacity(JNIEnv *env, jc
     }
 }
 
-void Java_com_aghajari_rlottie_AXrLottieNative_setDynamicLayerTrOpacity(JNIEnv *env, jclass clazz, jlong ptr, jstring layer, jobject listener) {
-    if (listener == NULL || ptr == NULL || layer == nullptr) {
+void Java_com_aghajari_rlottie_AXrLottieNative_setDynamicLayerTrOpacity(JNIEnv *env, jclass clazz, jlong ptr, jstring layer, jobject provider) {
+    if (provider == NULL || ptr == NULL || layer == nullptr) {
         return;
     }
     LottieInfo *info = (LottieInfo *) (intptr_t) ptr;
+    onPropertiesChanged(info, true);
     char const *layerString = env->GetStringUTFChars(layer, 0);
-
-    jweak store_Wlistener = env->NewWeakGlobalRef(listener);
-    jclass lclazz = env->GetObjectClass(store_Wlistener);
-    jmethodID mth_update = env->GetMethodID(lclazz, "getValue", "(I)Ljava/lang/Float;");
-
-    info->animation->setValue<Property::TrOpacity>
-            (layerString,[mth_update,store_Wlistener,env](const FrameInfo& info) {
-                jobject obj = env->CallObjectMethod(store_Wlistener, mth_update, (jint) (info.curFrame()));
-                jclass cls = env->GetObjectClass(obj);
-                jmethodID FloatToF = env->GetMethodID(cls, "floatValue", "()F");
-                jfloat value = env->CallFloatMethod(obj, FloatToF);
-
-                return (float) value;
-            });
+    info->animation->setValue<Property::TrOpacity>(layerString, floatProvider(env, provider));
     if (layerString != 0) {
         env->ReleaseStringUTFChars(layer, layerString);
     }
@@ -633,6 +1517,7 @@ void Java_com_aghajari_rlottie_AXrLottieNative_setLayerTrAnchor(JNIEnv *env, jcl
         return;
     }
     LottieInfo *info = (LottieInfo *) (intptr_t) ptr;
+    onPropertiesChanged(info, false);
     char const *layerString = env->GetStringUTFChars(layer, 0);
     info->animation->setValue<Property::TrAnchor>(layerString, Point((float)x,(float)y));
     if (layerString != 0) {
@@ -640,31 +1525,18 @@ void Java_com_aghajari_rlottie_AXrLottieNative_setLayerTrAnchor(JNIEnv *env, jcl
     }
 }
 
-void Java_com_aghajari_rlottie_AXrLottieNative_setDynamicLayerTrAnchor(JNIEnv *env, jclass clazz, jlong ptr, jstring layer, jobject listener) {
-    if (listener == NULL || ptr == NULL || layer == nullptr) {
+void Java_com_aghajari_rlottie_AXrLottieNative_setDynamicLayerTrAnchor(JNIEnv *env, jclass clazz, jlong ptr, jstring layer, jobject provider) {
+    if (provider == NULL || ptr == NULL || layer == nullptr) {
         return;
     }
     LottieInfo *info = (LottieInfo *) (intptr_t) ptr;
+    onPropertiesChanged(info, true);
     char const *layerString = env->GetStringUTFChars(layer, 0);
-
-    jweak store_Wlistener = env->NewWeakGlobalRef(listener);
-    jclass lclazz = env->GetObjectClass(store_Wlistener);
-    jmethodID mth_update = env->GetMethodID(lclazz, "getValue", "(I)[Ljava/lang/Float;");
-
-    info->animation->setValue<Property::TrAnchor>
-            (layerString,[mth_update,store_Wlistener,env](const FrameInfo& info) {
-                auto obj = (jobjectArray) env->CallObjectMethod(store_Wlistener, mth_update, (jint) (info.curFrame()));
-
-                jobject xObj = env->GetObjectArrayElement(obj, 0);
-                jobject yObj = env->GetObjectArrayElement(obj, 1);
-                jclass cls = env->GetObjectClass(xObj);
-                jmethodID FloatToF = env->GetMethodID(cls, "floatValue", "()F");
-
-                jfloat x = env->CallFloatMethod(xObj, FloatToF);
-                jfloat y = env->CallFloatMethod(yObj, FloatToF);
-
-                return Point((float)x,(float)y);
-            });
+    auto callback = pointProvider(env, provider);
+    info->animation->setValue<Property::TrAnchor>(layerString, [callback](const rlottie::FrameInfo &frameInfo) {
+        updatePoint(callback, frameInfo);
+        return Point(callback->value[0], callback->value[1]);
+    });
     if (layerString != 0) {
         env->ReleaseStringUTFChars(layer, layerString);
     }
@@ -675,6 +1547,7 @@ void Java_com_aghajari_rlottie_AXrLottieNative_setLayerTrPosition(JNIEnv *env, j
         return;
     }
     LottieInfo *info = (LottieInfo *) (intptr_t) ptr;
+    onPropertiesChanged(info, false);
     char const *layerString = env->GetStringUTFChars(layer, 0);
     info->animation->setValue<Property::TrPosition>(layerString, Point((float)x,(float)y));
     if (layerString != 0) {
@@ -682,31 +1555,18 @@ void Java_com_aghajari_rlottie_AXrLottieNative_setLayerTrPosition(JNIEnv *env, j
     }
 }
 
-void Java_com_aghajari_rlottie_AXrLottieNative_setDynamicLayerTrPosition(JNIEnv *env, jclass clazz, jlong ptr, jstring layer, jobject listener) {
-    if (listener == NULL || ptr == NULL || layer == nullptr) {
+void Java_com_aghajari_rlottie_AXrLottieNative_setDynamicLayerTrPosition(JNIEnv *env, jclass clazz, jlong ptr, jstring layer, jobject provider) {
+    if (provider == NULL || ptr == NULL || layer == nullptr) {
         return;
     }
     LottieInfo *info = (LottieInfo *) (intptr_t) ptr;
+    onPropertiesChanged(info, true);
     char const *layerString = env->GetStringUTFChars(layer, 0);
-
-    jweak store_Wlistener = env->NewWeakGlobalRef(listener);
-    jclass lclazz = env->GetObjectClass(store_Wlistener);
-    jmethodID mth_update = env->GetMethodID(lclazz, "getValue", "(I)[Ljava/lang/Float;");
-
-    info->animation->setValue<Property::TrPosition>
-            (layerString,[mth_update,store_Wlistener,env](const FrameInfo& info) {
-                auto obj = (jobjectArray) env->CallObjectMethod(store_Wlistener, mth_update, (jint) (info.curFrame()));
-
-                jobject xObj = env->GetObjectArrayElement(obj, 0);
-                jobject yObj = env->GetObjectArrayElement(obj, 1);
-                jclass cls = env->GetObjectClass(xObj);
-                jmethodID FloatToF = env->GetMethodID(cls, "floatValue", "()F");
-
-                jfloat x = env->CallFloatMethod(xObj, FloatToF);
-                jfloat y = env->CallFloatMethod(yObj, FloatToF);
-
-                return Point((float)x,(float)y);
-            });
+    auto callback = pointProvider(env, provider);
+    info->animation->setValue<Property::TrPosition>(layerString, [callback](const rlottie::FrameInfo &frameInfo) {
+        updatePoint(callback, frameInfo);
+        return Point(callback->value[0], callback->value[1]);
+    });
     if (layerString != 0) {
         env->ReleaseStringUTFChars(layer, layerString);
     }
@@ -717,6 +1577,7 @@ void Java_com_aghajari_rlottie_AXrLottieNative_setLayerTrScale(JNIEnv *env, jcla
         return;
     }
     LottieInfo *info = (LottieInfo *) (intptr_t) ptr;
+    onPropertiesChanged(info, false);
     char const *layerString = env->GetStringUTFChars(layer, 0);
     info->animation->setValue<Property::TrScale>(layerString, Size((float)w,(float)h));
     if (layerString != 0) {
@@ -724,34 +1585,124 @@ void Java_com_aghajari_rlottie_AXrLottieNative_setLayerTrScale(JNIEnv *env, jcla
     }
 }
 
-void Java_com_aghajari_rlottie_AXrLottieNative_setDynamicLayerTrScale(JNIEnv *env, jclass clazz, jlong ptr, jstring layer, jobject listener) {
-    if (listener == NULL || ptr == NULL || layer == nullptr) {
+void Java_com_aghajari_rlottie_AXrLottieNative_setDynamicLayerTrScale(JNIEnv *env, jclass clazz, jlong ptr, jstring layer, jobject provider) {
+    if (provider == NULL || ptr == NULL || layer == nullptr) {
         return;
     }
     LottieInfo *info = (LottieInfo *) (intptr_t) ptr;
+    onPropertiesChanged(info, true);
     char const *layerString = env->GetStringUTFChars(layer, 0);
+    auto callback = pointProvider(env, provider);
+    info->animation->setValue<Property::TrScale>(layerString, [callback](const rlottie::FrameInfo &frameInfo) {
+        updatePoint(callback, frameInfo);
+        return Size(callback->value[0], callback->value[1]);
+    });
+    if (layerString != 0) {
+        env->ReleaseStringUTFChars(layer, layerString);
+    }
+}
 
-    jweak store_Wlistener = env->NewWeakGlobalRef(listener);
-    jclass lclazz = env->GetObjectClass(store_Wlistener);
-    jmethodID mth_update = env->GetMethodID(lclazz, "getValue", "(I)[Ljava/lang/Float;");
-
-    info->animation->setValue<Property::TrScale>
-            (layerString,[mth_update,store_Wlistener,env](const FrameInfo& info) {
-                auto obj = (jobjectArray) env->CallObjectMethod(store_Wlistener, mth_update, (jint) (info.curFrame()));
 
-                jobject xObj = env->GetObjectArrayElement(obj, 0);
-                jobject yObj = env->GetObjectArrayElement(obj, 1);
-                jclass cls = env->GetObjectClass(xObj);
-                jmethodID FloatToF = env->GetMethodID(cls, "floatValue", "()F");
+jlong Java_com_aghajari_rlottie_AXrLottieNative_createPropertyBatch(JNIEnv *env, jclass clazz, jobjectArray keyPaths, jintArray targets) {
+    if (keyPaths == nullptr || targets == nullptr) {
+        return 0;
+    }
+    auto *batch = new LottiePropertyBatch();
+    jsize count = env->GetArrayLength(keyPaths);
+    batch->keyPaths.reserve((size_t) count);
+    for (jsize a = 0; a < count; a++) {
+        auto keyPath = (jstring) env->GetObjectArrayElement(keyPaths, a);
+        char const *keyPathString = keyPath == nullptr ? nullptr : env->GetStringUTFChars(keyPath, 0);
+        batch->keyPaths.emplace_back(keyPathString == nullptr ? "" : keyPathString);
+        if (keyPathString != 0) {
+            env->ReleaseStringUTFChars(keyPath, keyPathString);
+        }
+        env->DeleteLocalRef(keyPath);
+    }
+
+    jsize targetsCount = env->GetArrayLength(targets) / 2;
+    jint *targetsArr = env->GetIntArrayElements(targets, 0);
+    batch->targets.reserve((size_t) targetsCount);
+    for (jsize a = 0; a < targetsCount; a++) {
+        jint keyPath = targetsArr[a * 2];
+        Property property;
+        if (keyPath < 0 || keyPath >= count || !toLottieProperty(targetsArr[a * 2 + 1], property)) {
+            // keeps the indexes of the next targets, entries of this one are skipped
+            keyPath = -1;
+            property = Property::FillColor;
+        }
+        batch->targets.emplace_back((uint32_t) keyPath, property);
+    }
+    env->ReleaseIntArrayElements(targets, targetsArr, JNI_ABORT);
+    return (jlong) (intptr_t) batch;
+}
 
-                jfloat x = env->CallFloatMethod(xObj, FloatToF);
-                jfloat y = env->CallFloatMethod(yObj, FloatToF);
+void Java_com_aghajari_rlottie_AXrLottieNative_destroyPropertyBatch(JNIEnv *env, jclass clazz, jlong batch) {
+    if (batch != NULL) {
+        delete (LottiePropertyBatch *) (intptr_t) batch;
+    }
+}
 
-                return Size((float)x,(float)y);
-            });
-    if (layerString != 0) {
-        env->ReleaseStringUTFChars(layer, layerString);
+void Java_com_aghajari_rlottie_AXrLottieNative_applyPropertyBatch(JNIEnv *env, jclass clazz, jlong ptr, jlong batchPtr, jintArray entries, jfloatArray values, jint start, jint end) {
+    if (ptr == NULL || batchPtr == NULL || entries == nullptr || values == nullptr) {
+        return;
+    }
+    LottieInfo *info = (LottieInfo *) (intptr_t) ptr;
+    auto *batch = (LottiePropertyBatch *) (intptr_t) batchPtr;
+    jsize count = std::min(env->GetArrayLength(entries) / 2, env->GetArrayLength(values) / 2);
+    if (start < 0 || end > count || start >= end) {
+        return;
+    }
+    onPropertiesChanged(info, false);
+    const std::vector<size_t> &ids = batch->resolve(info);
+
+    jint *entriesArr = env->GetIntArrayElements(entries, 0);
+    jfloat *valuesArr = env->GetFloatArrayElements(values, 0);
+    for (jsize a = start; a < end; a++) {
+        jint *entry = entriesArr + a * 2;
+        jfloat *value = valuesArr + a * 2;
+        if (entry[0] < 0 || entry[0] >= (jint) batch->targets.size()
+            || batch->targets[entry[0]].first >= batch->keyPaths.size()) {
+            continue;
+        }
+        size_t id = ids[entry[0]];
+        switch (batch->targets[entry[0]].second) {
+            case Property::FillColor:
+                info->animation->setValue<Property::FillColor>(id, toLottieColor(entry[1]));
+                break;
+            case Property::FillOpacity:
+                info->animation->setValue<Property::FillOpacity>(id, (float) value[0]);
+                break;
+            case Property::StrokeColor:
+                info->animation->setValue<Property::StrokeColor>(id, toLottieColor(entry[1]));
+                break;
+            case Property::StrokeOpacity:
+                info->animation->setValue<Property::StrokeOpacity>(id, (float) value[0]);
+                break;
+            case Property::StrokeWidth:
+                info->animation->setValue<Property::StrokeWidth>(id, (float) value[0]);
+                break;
+            case Property::TrAnchor:
+                info->animation->setValue<Property::TrAnchor>(id, Point((float) value[0], (float) value[1]));
+                break;
+            case Property::TrOpacity:
+                info->animation->setValue<Property::TrOpacity>(id, (float) value[0]);
+                break;
+            case Property::TrPosition:
+                info->animation->setValue<Property::TrPosition>(id, Point((float) value[0], (float) value[1]));
+                break;
+            case Property::TrRotation:
+                info->animation->setValue<Property::TrRotation>(id, (float) value[0]);
+                break;
+            case Property::TrScale:
+                info->animation->setValue<Property::TrScale>(id, Size((float) value[0], (float) value[1]));
+                break;
+            default:
+                break;
+        }
     }
+    env->ReleaseIntArrayElements(entries, entriesArr, JNI_ABORT);
+    env->ReleaseFloatArrayElements(values, valuesArr, JNI_ABORT);
 }
 
 
@@ -759,13 +1710,43 @@ void Java_com_aghajari_rlottie_AXrLottieNative_configureModelCacheSize(JNIEnv *e
     rlottie::configureModelCacheSize((size_t )cacheSize);
 }
 
-jboolean Java_com_aghajari_rlottie_AXrLottieNative_lottie2gif(JNIEnv *env, jclass clazz, jlong ptr,jobject bitmap, jint w, jint h, jint stride, jint bgColor, jstring gifName,jint delay,jint bitDepth, jboolean dither,jint frameStart,jint frameEnd,jobject listener) {
+void Java_com_aghajari_rlottie_AXrLottieNative_configureModelCacheMemory(JNIEnv *env, jclass clazz, jlong bytes) {
+    rlottie::configureModelCacheMemory(bytes > 0 ? (size_t) bytes : 0);
+}
+
+void Java_com_aghajari_rlottie_AXrLottieNative_getModelCacheStats(JNIEnv *env, jclass clazz, jlongArray data) {
+    if (data == nullptr || env->GetArrayLength(data) < 5) return;
+    rlottie::ModelCacheStats stats = rlottie::modelCacheStats();
+    jlong values[5] = {(jlong) stats.hits, (jlong) stats.misses, (jlong) stats.evictions,
+                       (jlong) stats.count, (jlong) stats.bytes};
+    env->SetLongArrayRegion(data, 0, 5, values);
+}
+
+void Java_com_aghajari_rlottie_AXrLottieNative_configureRleCacheMemory(JNIEnv *env, jclass clazz, jlong bytes) {
+    rlottie::configureRleCacheMemory(bytes > 0 ? (size_t) bytes : 0);
+}
+
+void Java_com_aghajari_rlottie_AXrLottieNative_getRleCacheStats(JNIEnv *env, jclass clazz, jlongArray data) {
+    if (data == nullptr || env->GetArrayLength(data) < 4) return;
+    rlottie::RleCacheStats stats = rlottie::rleCacheStats();
+    jlong values[4] = {(jlong) stats.hits, (jlong) stats.misses, (jlong) stats.count, (jlong) stats.bytes};
+    env->SetLongArrayRegion(data, 0, 4, values);
+}
+
+jboolean Java_com_aghajari_rlottie_AXrLottieNative_lottie2gif(JNIEnv *env, jclass clazz, jlong ptr,jobject bitmap, jint w, jint h, jint stride, jint bgColor, jstring gifName,jint delay,jint bitDepth, jboolean dither,jint frameStart,jint frameEnd,jint threads,jobject listener) {
     if (ptr == NULL) {
         return false;
     }
-    char const *name = env->GetStringUTFChars(gifName, 0);
+    char const *nameString = env->GetStringUTFChars(gifName, 0);
+    std::string name = nameString;
+    if (nameString != 0) {
+        env->ReleaseStringUTFChars(gifName, nameString);
+    }
     LottieInfo *info = (LottieInfo *) (intptr_t) ptr;
     Lottie2Gif lottie2Gif;
+    if (threads > 1) {
+        return lottie2Gif.renderPipelined(info,w,h,bgColor,name,delay,bitDepth,dither,frameStart,frameEnd,threads,env,listener);
+    }
     return lottie2Gif.render(info,bitmap,w,h,stride,bgColor,name,delay,bitDepth,dither,frameStart,frameEnd,env,listener);
 }
 
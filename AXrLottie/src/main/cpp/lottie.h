@@ -5,9 +5,65 @@
 #ifndef AXRLOTTIE_APP_LOTTIE_H
 #define AXRLOTTIE_APP_LOTTIE_H
 
+#include <sys/mman.h>
+#include <atomic>
+#include <memory>
+#include <vector>
+
+// Cache file layout (v3):
+// [LottieCacheHeader][LottieCacheFrame x framesCount][lz4 frame data...]
+// version stays 0 while the file is being written.
+// Frames that look the same share one payload (same offset and size in the table).
+// With a keyFrameInterval above 1, frames (except every keyFrameInterval-th one) may be
+// XOR'ed with the frame before them before they are compressed (LOTTIE_CACHE_FRAME_DELTA),
+// they are decoded on top of the frames back to the last one that isn't.
+// A delta frame only shares its payload with the frames right after it that look the same.
+#define LOTTIE_CACHE_VERSION 3
+#define LOTTIE_CACHE_FRAME_DELTA 1
+
+typedef struct LottieCacheHeader{
+    uint8_t version;
+    uint8_t flags;
+    uint16_t keyFrameInterval;
+    uint32_t maxFrameSize;
+    uint32_t imageSize;
+    uint32_t framesCount;
+} LottieCacheHeader;
+
+typedef struct LottieCacheFrame{
+    uint32_t offset;
+    uint32_t size;
+    uint32_t flags;
+} LottieCacheFrame;
+
+// A contiguous range of cached frames rendered by one cache worker.
+// Frame offsets stay relative to the segment file until it is stitched into the cache.
+typedef struct LottieCacheSegment{
+    std::string path;
+    uint32_t start;
+    uint32_t end;
+} LottieCacheSegment;
+
+// Area filter of a downscale, kept while the same sizes are requested.
+// taps hold the first source pixel and the count of weights of each destination pixel,
+// weights are in 8.8 fixed point and add up to 256.
+typedef struct LottieScale{
+    uint32_t srcWidth = 0;
+    uint32_t srcHeight = 0;
+    uint32_t dstWidth = 0;
+    uint32_t dstHeight = 0;
+    std::vector<uint32_t> xTaps;
+    std::vector<uint32_t> yTaps;
+    std::vector<uint32_t> xWeights;
+    std::vector<uint32_t> yWeights;
+    std::vector<uint32_t> rows;
+    std::vector<uint32_t> half;
+} LottieScale;
+
 typedef struct LottieWrapper{
 public:
-    static void convertToCanvasFormat(rlottie::Surface &s);
+    // A surface rendered in Android's ARGB_8888 byte order (R, G, B, A in memory).
+    static rlottie::Surface canvasSurface(uint32_t *buffer, size_t width, size_t height, size_t bytesPerLine);
 };
 
 typedef struct LottieInfo{
@@ -16,6 +72,10 @@ typedef struct LottieInfo{
             delete[]decompressBuffer;
             decompressBuffer = nullptr;
         }
+        uint8_t *map = cacheMap.exchange(nullptr);
+        if (map != nullptr) {
+            munmap(map, cacheMapSize);
+        }
     }
 
 public:
@@ -27,21 +87,56 @@ public:
     bool limitFps = false;
     std::string path;
     std::string cacheFile;
+    // size of the cached frames, bigger views are never served from a smaller cache
+    // but smaller ones are downscaled from it.
+    int32_t cacheWidth = 0;
+    int32_t cacheHeight = 0;
+    std::vector<uint32_t> scaleBuffer;
+    LottieScale scale;
     uint8_t *decompressBuffer = nullptr;
     uint32_t decompressBufferSize = 0;
-    volatile uint32_t maxFrameSize = 0;
+    uint32_t maxFrameSize = 0;
     uint32_t imageSize = 0;
-    uint32_t fileOffset = 0;
+    uint32_t cacheFramesCount = 0;
+    uint32_t keyFrameInterval = 1;
+    // the last frame decoded from a cache with delta frames, the next ones are decoded on top of it
+    std::vector<uint8_t> deltaFrame;
+    std::vector<uint8_t> deltaBuffer;
+    int64_t deltaFrameIndex = -1;
     bool nextFrameIsCacheFrame = false;
+    // set once a layer property is changed, other renderer trees of this animation won't have it.
+    bool propertiesChanged = false;
+
+    // what getFrame has done since the last readFrameStats
+    uint32_t framesFromCache = 0;
+    uint32_t framesRendered = 0;
+    uint64_t cacheBytesRead = 0;
+    uint64_t pixelsRendered = 0;
+
+    // bitmaps that hold what the last partial render drew into them
+    std::vector<void *> partialSurfaces;
+    bool lastFramePartial = false;
+
+    // hash of each frame rendered at frameHashesWidth x frameHashesHeight (0 if it wasn't),
+    // frames with the same hash look the same.
+    std::vector<uint64_t> frameHashes;
+    int32_t frameHashesWidth = 0;
+    int32_t frameHashesHeight = 0;
+    // a property provider may change any frame, no frame is treated as unchanged
+    bool dynamicProperties = false;
+    // expires with the LottieInfo, property batches drop the key paths they resolved for it then.
+    std::shared_ptr<void> lifetime = std::make_shared<char>(0);
+
+    // published with release once the fields read from its header are set,
+    // readers load it with acquire before they read those fields.
+    std::atomic<uint8_t *> cacheMap{nullptr};
+    size_t cacheMapSize = 0;
 
-    FILE *precacheFile = nullptr;
-    char *compressBuffer = nullptr;
-    const char *buffer = nullptr;
-    bool firstFrame = false;
-    int bufferSize;
-    int compressBound;
-    int firstFrameSize;
-    volatile uint32_t framesAvailableInCache = 0;
+    std::vector<LottieCacheFrame> cacheFrames;
+    std::vector<LottieCacheSegment> cacheSegments;
+    std::unique_ptr<std::atomic<bool>[]> cacheFramesReady;
+    std::vector<uint64_t> cacheFrameHashes;
+    std::atomic<bool> cacheGenerating{false};
 };
 
 #endif //AXRLOTTIE_APP_LOTTIE_H
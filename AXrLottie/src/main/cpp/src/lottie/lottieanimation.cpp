@@ -34,6 +34,44 @@ RLOTTIE_API void rlottie::configureModelCacheSize(size_t cacheSize)
     internal::model::configureModelCacheSize(cacheSize);
 }
 
+RLOTTIE_API void rlottie::configureModelCacheMemory(size_t bytes)
+{
+    internal::model::configureModelCacheMemory(bytes);
+}
+
+RLOTTIE_API rlottie::ModelCacheStats rlottie::modelCacheStats()
+{
+    auto            stats = internal::model::modelCacheStats();
+    ModelCacheStats result;
+    result.hits = stats.hits;
+    result.misses = stats.misses;
+    result.evictions = stats.evictions;
+    result.count = stats.count;
+    result.bytes = stats.bytes;
+    return result;
+}
+
+RLOTTIE_API void rlottie::configureRleCacheMemory(size_t bytes)
+{
+    VRasterizer::configureCacheMemory(bytes);
+}
+
+RLOTTIE_API rlottie::RleCacheStats rlottie::rleCacheStats()
+{
+    auto          stats = VRasterizer::cacheStats();
+    RleCacheStats result;
+    result.hits = stats.hits;
+    result.misses = stats.misses;
+    result.count = stats.count;
+    result.bytes = stats.bytes;
+    return result;
+}
+
+RLOTTIE_API void rlottie::configureRenderBands(size_t count)
+{
+    renderer::configureRenderBands(count);
+}
+
 struct RenderTask {
     RenderTask() { receiver = sender.get_future(); }
     std::promise<Surface> sender;
@@ -58,6 +96,9 @@ public:
                    bool keepAspectRatio);
     std::future<Surface> renderAsync(size_t frameNo, Surface &&surface,
                                      bool keepAspectRatio);
+    void    renderPartial(size_t frameNo, const Surface &surface,
+                          bool keepContent, DirtyRegion *redrawn,
+                          DirtyRegion *changed, bool keepAspectRatio);
     const LOTLayerNode * renderTree(size_t frameNo, const VSize &size);
 
     const LayerInfoList &layerInfoList() const
@@ -70,6 +111,8 @@ public:
 
     const MarkerList &markers() const { return mModel->markers(); }
     void              setValue(const std::string &keypath, LOTVariant &&value);
+    size_t            resolveKeyPath(const std::string &keypath, Property prop);
+    void              setValue(size_t keyPathId, LOTVariant &&value);
     void              removeFilter(const std::string &keypath, Property prop);
 
 private:
@@ -86,6 +129,18 @@ void AnimationImpl::setValue(const std::string &keypath, LOTVariant &&value)
     mRenderer->setValue(keypath, value);
 }
 
+size_t AnimationImpl::resolveKeyPath(const std::string &keypath, Property prop)
+{
+    // only the property of the value is read while resolving
+    LOTVariant value(prop, [](const FrameInfo &) { return 0.0f; });
+    return mRenderer->resolveKeyPath(keypath, value);
+}
+
+void AnimationImpl::setValue(size_t keyPathId, LOTVariant &&value)
+{
+    mRenderer->setValue(keyPathId, value);
+}
+
 const LOTLayerNode *AnimationImpl::renderTree(size_t frameNo, const VSize &size)
 {
     if (update(frameNo, size, true)) {
@@ -126,6 +181,40 @@ Surface AnimationImpl::render(size_t frameNo, const Surface &surface,
     return surface;
 }
 
+static DirtyRegion dirtyRegion(const Surface &surface, const VRect &rect)
+{
+    DirtyRegion region;
+    if (rect.empty()) return region;
+    region.x = surface.drawRegionPosX() + size_t(rect.x());
+    region.y = surface.drawRegionPosY() + size_t(rect.y());
+    region.w = size_t(rect.width());
+    region.h = size_t(rect.height());
+    return region;
+}
+
+void AnimationImpl::renderPartial(size_t frameNo, const Surface &surface,
+                                  bool keepContent, DirtyRegion *redrawn,
+                                  DirtyRegion *changed, bool keepAspectRatio)
+{
+    bool renderInProgress = mRenderInProgress.load();
+    if (renderInProgress) {
+        vCritical << "Already Rendering Scheduled for this Animation";
+        return;
+    }
+
+    mRenderInProgress.store(true);
+    update(
+        frameNo,
+        VSize(int(surface.drawRegionWidth()), int(surface.drawRegionHeight())),
+        keepAspectRatio);
+    VRect changedRect;
+    VRect redrawnRect = mRenderer->renderPartial(surface, keepContent, &changedRect);
+    mRenderInProgress.store(false);
+
+    if (redrawn) *redrawn = dirtyRegion(surface, redrawnRect);
+    if (changed) *changed = dirtyRegion(surface, changedRect);
+}
+
 void AnimationImpl::init(std::shared_ptr<model::Composition> composition)
 {
     mModel = composition.get();
@@ -310,6 +399,24 @@ std::unique_ptr<Animation> Animation::loadFromFile(const std::string &path,
     return nullptr;
 }
 
+std::unique_ptr<Animation> Animation::loadFromFile(const std::string &path,
+                                                   const std::string &binaryPath,
+                                                   bool cachePolicy)
+{
+    if (path.empty()) {
+        vWarning << "File path is empty";
+        return nullptr;
+    }
+
+    auto composition = model::loadFromFile(path, binaryPath, cachePolicy);
+    if (composition) {
+        auto animation = std::unique_ptr<Animation>(new Animation);
+        animation->d->init(std::move(composition));
+        return animation;
+    }
+    return nullptr;
+}
+
 void Animation::size(size_t &width, size_t &height) const
 {
     VSize sz = d->size();
@@ -356,6 +463,14 @@ void Animation::renderSync(size_t frameNo, Surface surface,
     d->render(frameNo, surface, keepAspectRatio);
 }
 
+void Animation::renderSyncPartial(size_t frameNo, Surface surface,
+                                  bool keepContent, DirtyRegion *redrawn,
+                                  DirtyRegion *changed, bool keepAspectRatio)
+{
+    d->renderPartial(frameNo, surface, keepContent, redrawn, changed,
+                     keepAspectRatio);
+}
+
 const LayerInfoList &Animation::layers() const
 {
     return d->layerInfoList();
@@ -418,6 +533,39 @@ void Animation::setValue(Point_Type, Property prop, const std::string &keypath,
     d->setValue(keypath, LOTVariant(prop, value));
 }
 
+size_t Animation::resolveKeyPath(const std::string &keypath, Property prop)
+{
+    return d->resolveKeyPath(keypath, prop);
+}
+
+void Animation::setValue(Color_Type, Property prop, size_t keyPathId,
+                         Color value)
+{
+    d->setValue(keyPathId,
+                LOTVariant(prop, [value](const FrameInfo &) { return value; }));
+}
+
+void Animation::setValue(Float_Type, Property prop, size_t keyPathId,
+                         float value)
+{
+    d->setValue(keyPathId,
+                LOTVariant(prop, [value](const FrameInfo &) { return value; }));
+}
+
+void Animation::setValue(Size_Type, Property prop, size_t keyPathId,
+                         Size value)
+{
+    d->setValue(keyPathId,
+                LOTVariant(prop, [value](const FrameInfo &) { return value; }));
+}
+
+void Animation::setValue(Point_Type, Property prop, size_t keyPathId,
+                         Point value)
+{
+    d->setValue(keyPathId,
+                LOTVariant(prop, [value](const FrameInfo &) { return value; }));
+}
+
 Animation::~Animation() = default;
 Animation::Animation() : d(std::make_unique<AnimationImpl>()) {}
 
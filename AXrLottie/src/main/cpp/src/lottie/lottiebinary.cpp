@@ -0,0 +1,1020 @@
+#include <cstring>
+#include <unordered_map>
+
+#include "lottiemodel.h"
+
+using namespace rlottie::internal;
+
+/*
+ * Binary model format
+ *
+ * header : "LOTB" | version (u32) | source hash (u64)
+ * body   : the composition, written depth first.
+ *
+ * Objects and interpolators are shared between several owners in the parsed
+ * tree (precomp layers, rounded corners, repeater contents), so each one is
+ * written once and referenced by its index afterwards.
+ * The model is written after all the post processing of the parser
+ * (repeaters, stats, keyframe caches) so nothing is computed again on load.
+ */
+
+static constexpr char     BINARY_MAGIC[4] = {'L', 'O', 'T', 'B'};
+static constexpr uint32_t BINARY_VERSION = 1;
+static constexpr size_t   BINARY_HEADER_SIZE = 16;
+
+static constexpr uint32_t NULL_REF = 0;
+static constexpr uint32_t NEW_REF = 0xFFFFFFFF;
+
+namespace {
+
+class BinaryWriter {
+public:
+    explicit BinaryWriter(std::string &out) : mOut(out) {}
+
+    void writeComposition(const model::Composition *comp)
+    {
+        writeString(comp->mVersion);
+        write<int32_t>(comp->mSize.width());
+        write<int32_t>(comp->mSize.height());
+        write<int64_t>(comp->mStartFrame);
+        write<int64_t>(comp->mEndFrame);
+        write<float>(comp->mFrameRate);
+        write<uint8_t>(uint8_t(comp->mBlendMode));
+        write<uint8_t>(comp->isStatic());
+
+        // indexes first, layers of an asset can refer to the other assets
+        write<uint32_t>(uint32_t(comp->mAssets.size()));
+        for (const auto &it : comp->mAssets)
+            mAssets[it.second] = uint32_t(mAssets.size()) + 1;
+        for (const auto &it : comp->mAssets) writeAsset(it.second);
+
+        writeObject(comp->mRootLayer);
+
+        write<uint32_t>(uint32_t(comp->mMarkers.size()));
+        for (const auto &marker : comp->mMarkers) {
+            writeString(std::get<0>(marker));
+            write<int32_t>(std::get<1>(marker));
+            write<int32_t>(std::get<2>(marker));
+        }
+
+        write<uint16_t>(comp->mStats.precompLayerCount);
+        write<uint16_t>(comp->mStats.solidLayerCount);
+        write<uint16_t>(comp->mStats.shapeLayerCount);
+        write<uint16_t>(comp->mStats.imageLayerCount);
+        write<uint16_t>(comp->mStats.nullLayerCount);
+    }
+
+    bool valid() const { return mValid; }
+
+private:
+    template <typename T>
+    void write(T value)
+    {
+        mOut.append(reinterpret_cast<const char *>(&value), sizeof(T));
+    }
+
+    void writeString(const std::string &str) { writeString(str.c_str()); }
+
+    void writeString(const char *str)
+    {
+        uint32_t len = str ? uint32_t(strlen(str)) : 0;
+        write<uint32_t>(len);
+        if (len) mOut.append(str, len);
+    }
+
+    void writeValue(float v) { write<float>(v); }
+
+    void writeValue(const VPointF &v)
+    {
+        write<float>(v.x());
+        write<float>(v.y());
+    }
+
+    void writeValue(const model::Color &v)
+    {
+        write<float>(v.r);
+        write<float>(v.g);
+        write<float>(v.b);
+    }
+
+    void writeValue(const model::PathData &v)
+    {
+        write<uint8_t>(v.mClosed);
+        write<uint32_t>(uint32_t(v.mPoints.size()));
+        for (const auto &pt : v.mPoints) writeValue(pt);
+    }
+
+    void writeValue(const model::Gradient::Data &v)
+    {
+        write<uint32_t>(uint32_t(v.mGradient.size()));
+        for (auto f : v.mGradient) write<float>(f);
+    }
+
+    template <typename T>
+    void writeKeyValue(const model::Value<T> &v)
+    {
+        writeValue(v.start_);
+        writeValue(v.end_);
+    }
+
+    template <typename T>
+    void writeKeyValue(const model::Value<T, model::Position> &v)
+    {
+        writeValue(v.start_);
+        writeValue(v.end_);
+        writeValue(v.inTangent_);
+        writeValue(v.outTangent_);
+        write<float>(v.length_);
+        write<uint8_t>(v.hasTangent_);
+    }
+
+    void writeInterpolator(const VInterpolator *interpolator)
+    {
+        if (!interpolator) {
+            write<uint32_t>(NULL_REF);
+            return;
+        }
+        auto search = mInterpolators.find(interpolator);
+        if (search != mInterpolators.end()) {
+            write<uint32_t>(search->second);
+            return;
+        }
+        mInterpolators[interpolator] = uint32_t(mInterpolators.size()) + 1;
+        write<uint32_t>(NEW_REF);
+        writeValue(interpolator->p1());
+        writeValue(interpolator->p2());
+    }
+
+    template <typename T, typename Tag>
+    void writeProperty(const model::Property<T, Tag> &prop)
+    {
+        write<uint8_t>(prop.isStatic());
+        if (prop.isStatic()) {
+            writeValue(prop.value());
+            return;
+        }
+        const auto &frames = prop.animation().frames_;
+        write<uint32_t>(uint32_t(frames.size()));
+        for (const auto &frame : frames) {
+            write<float>(frame.start_);
+            write<float>(frame.end_);
+            writeInterpolator(frame.interpolator_);
+            writeKeyValue(frame.value_);
+        }
+    }
+
+    void writeDash(const model::Dash &dash)
+    {
+        write<uint32_t>(uint32_t(dash.mData.size()));
+        for (const auto &prop : dash.mData) writeProperty(prop);
+    }
+
+    void writeAsset(const model::Asset *asset)
+    {
+        write<uint8_t>(uint8_t(asset->mAssetType));
+        write<uint8_t>(asset->mStatic);
+        writeString(asset->mRefId);
+        write<int32_t>(asset->mWidth);
+        write<int32_t>(asset->mHeight);
+
+        write<uint32_t>(uint32_t(asset->mLayers.size()));
+        for (auto layer : asset->mLayers) writeObject(layer);
+
+        // decoded image, so the image is not decoded again either
+        const VBitmap &bitmap = asset->mBitmap;
+        write<uint8_t>(bitmap.valid());
+        if (bitmap.valid()) {
+            write<uint8_t>(uint8_t(bitmap.format()));
+            write<uint32_t>(uint32_t(bitmap.width()));
+            write<uint32_t>(uint32_t(bitmap.height()));
+            size_t rowBytes = bitmap.width() * bitmap.depth() / 8;
+            for (size_t y = 0; y < bitmap.height(); y++)
+                mOut.append(reinterpret_cast<const char *>(bitmap.data() +
+                                                           y * bitmap.stride()),
+                            rowBytes);
+        }
+    }
+
+    void writeMask(const model::Mask *mask)
+    {
+        writeProperty(mask->mShape);
+        writeProperty(mask->mOpacity);
+        write<uint8_t>(mask->mInv);
+        write<uint8_t>(mask->mIsStatic);
+        write<uint8_t>(uint8_t(mask->mMode));
+    }
+
+    void writeChildren(const model::Group *group)
+    {
+        write<uint32_t>(uint32_t(group->mChildren.size()));
+        for (auto child : group->mChildren) writeObject(child);
+        writeObject(group->mTransform);
+    }
+
+    void writeTransform(const model::Transform *obj)
+    {
+        if (obj->isStatic()) {
+            VMatrix m = obj->matrix(0);
+            write<float>(m.m_11());
+            write<float>(m.m_12());
+            write<float>(m.m_13());
+            write<float>(m.m_21());
+            write<float>(m.m_22());
+            write<float>(m.m_23());
+            write<float>(m.m_tx());
+            write<float>(m.m_ty());
+            write<float>(m.m_33());
+            write<float>(obj->opacity(0));
+            return;
+        }
+
+        auto data = obj->data();
+        writeProperty(data->mRotation);
+        writeProperty(data->mScale);
+        writeProperty(data->mPosition);
+        writeProperty(data->mAnchor);
+        writeProperty(data->mOpacity);
+        write<uint8_t>(data->mExtra != nullptr);
+        if (data->mExtra) {
+            writeProperty(data->mExtra->m3DRx);
+            writeProperty(data->mExtra->m3DRy);
+            writeProperty(data->mExtra->m3DRz);
+            writeProperty(data->mExtra->mSeparateX);
+            writeProperty(data->mExtra->mSeparateY);
+            write<uint8_t>(data->mExtra->mSeparate);
+            write<uint8_t>(data->mExtra->m3DData);
+        }
+    }
+
+    void writeLayer(const model::Layer *obj)
+    {
+        writeChildren(obj);
+        write<uint8_t>(uint8_t(obj->mMatteType));
+        write<uint8_t>(uint8_t(obj->mLayerType));
+        write<uint8_t>(uint8_t(obj->mBlendMode));
+        write<uint8_t>(obj->mHasRoundedCorner);
+        write<uint8_t>(obj->mHasPathOperator);
+        write<uint8_t>(obj->mHasMask);
+        write<uint8_t>(obj->mHasRepeater);
+        write<uint8_t>(obj->mHasGradient);
+        write<uint8_t>(obj->mAutoOrient);
+        write<int32_t>(obj->mLayerSize.width());
+        write<int32_t>(obj->mLayerSize.height());
+        write<int32_t>(obj->mParentId);
+        write<int32_t>(obj->mId);
+        write<float>(obj->mTimeStreatch);
+        write<int32_t>(obj->mInFrame);
+        write<int32_t>(obj->mOutFrame);
+        write<int32_t>(obj->mStartFrame);
+
+        auto extra = obj->mExtra.get();
+        write<uint8_t>(extra != nullptr);
+        if (!extra) return;
+
+        writeValue(extra->mSolidColor);
+        writeString(extra->mPreCompRefId);
+        writeProperty(extra->mTimeRemap);
+        write<uint8_t>(extra->mCompRef != nullptr);
+        if (extra->mAsset) {
+            auto search = mAssets.find(extra->mAsset);
+            if (search == mAssets.end()) {
+                mValid = false;
+                write<uint32_t>(NULL_REF);
+            } else {
+                write<uint32_t>(search->second);
+            }
+        } else {
+            write<uint32_t>(NULL_REF);
+        }
+        write<uint32_t>(uint32_t(extra->mMasks.size()));
+        for (auto mask : extra->mMasks) writeMask(mask);
+    }
+
+    void writeGradient(const model::Gradient *obj)
+    {
+        write<int32_t>(obj->mGradientType);
+        writeProperty(obj->mStartPoint);
+        writeProperty(obj->mEndPoint);
+        writeProperty(obj->mHighlightLength);
+        writeProperty(obj->mHighlightAngle);
+        writeProperty(obj->mOpacity);
+        writeProperty(obj->mGradient);
+        write<int32_t>(obj->mColorPoints);
+        write<uint8_t>(obj->mEnabled);
+    }
+
+    void writeRepeaterTransform(const model::Repeater::Transform &tr)
+    {
+        writeProperty(tr.mRotation);
+        writeProperty(tr.mScale);
+        writeProperty(tr.mPosition);
+        writeProperty(tr.mAnchor);
+        writeProperty(tr.mStartOpacity);
+        writeProperty(tr.mEndOpacity);
+    }
+
+    void writeObject(const model::Object *obj)
+    {
+        if (!obj) {
+            write<uint32_t>(NULL_REF);
+            return;
+        }
+        auto search = mObjects.find(obj);
+        if (search != mObjects.end()) {
+            write<uint32_t>(search->second);
+            return;
+        }
+        mObjects[obj] = uint32_t(mObjects.size()) + 1;
+
+        write<uint32_t>(NEW_REF);
+        write<uint8_t>(uint8_t(obj->type()));
+        write<uint8_t>(obj->isStatic());
+        write<uint8_t>(obj->hidden());
+        writeString(obj->name());
+
+        switch (obj->type()) {
+        case model::Object::Type::Layer:
+            writeLayer(static_cast<const model::Layer *>(obj));
+            break;
+        case model::Object::Type::Group:
+            writeChildren(static_cast<const model::Group *>(obj));
+            break;
+        case model::Object::Type::Transform:
+            writeTransform(static_cast<const model::Transform *>(obj));
+            break;
+        case model::Object::Type::Fill: {
+            auto fill = static_cast<const model::Fill *>(obj);
+            write<uint8_t>(uint8_t(fill->mFillRule));
+            write<uint8_t>(fill->mEnabled);
+            writeProperty(fill->mColor);
+            writeProperty(fill->mOpacity);
+            break;
+        }
+        case model::Object::Type::Stroke: {
+            auto stroke = static_cast<const model::Stroke *>(obj);
+            writeProperty(stroke->mColor);
+            writeProperty(stroke->mOpacity);
+            writeProperty(stroke->mWidth);
+            write<uint8_t>(uint8_t(stroke->mCapStyle));
+            write<uint8_t>(uint8_t(stroke->mJoinStyle));
+            write<float>(stroke->mMiterLimit);
+            writeDash(stroke->mDash);
+            write<uint8_t>(stroke->mEnabled);
+            break;
+        }
+        case model::Object::Type::GFill: {
+            auto fill = static_cast<const model::GradientFill *>(obj);
+            writeGradient(fill);
+            write<uint8_t>(uint8_t(fill->mFillRule));
+            break;
+        }
+        case model::Object::Type::GStroke: {
+            auto stroke = static_cast<const model::GradientStroke *>(obj);
+            writeGradient(stroke);
+            writeProperty(stroke->mWidth);
+            write<uint8_t>(uint8_t(stroke->mCapStyle));
+            write<uint8_t>(uint8_t(stroke->mJoinStyle));
+            write<float>(stroke->mMiterLimit);
+            writeDash(stroke->mDash);
+            break;
+        }
+        case model::Object::Type::Rect: {
+            auto rect = static_cast<const model::Rect *>(obj);
+            write<int32_t>(rect->mDirection);
+            writeObject(rect->mRoundedCorner);
+            writeProperty(rect->mPos);
+            writeProperty(rect->mSize);
+            writeProperty(rect->mRound);
+            break;
+        }
+        case model::Object::Type::Ellipse: {
+            auto ellipse = static_cast<const model::Ellipse *>(obj);
+            write<int32_t>(ellipse->mDirection);
+            writeProperty(ellipse->mPos);
+            writeProperty(ellipse->mSize);
+            break;
+        }
+        case model::Object::Type::Path: {
+            auto path = static_cast<const model::Path *>(obj);
+            write<int32_t>(path->mDirection);
+            writeProperty(path->mShape);
+            break;
+        }
+        case model::Object::Type::Polystar: {
+            auto star = static_cast<const model::Polystar *>(obj);
+            write<int32_t>(star->mDirection);
+            write<uint8_t>(uint8_t(star->mPolyType));
+            writeProperty(star->mPos);
+            writeProperty(star->mPointCount);
+            writeProperty(star->mInnerRadius);
+            writeProperty(star->mOuterRadius);
+            writeProperty(star->mInnerRoundness);
+            writeProperty(star->mOuterRoundness);
+            writeProperty(star->mRotation);
+            break;
+        }
+        case model::Object::Type::Trim: {
+            auto trim = static_cast<const model::Trim *>(obj);
+            writeProperty(trim->mStart);
+            writeProperty(trim->mEnd);
+            writeProperty(trim->mOffset);
+            write<uint8_t>(uint8_t(trim->mTrimType));
+            break;
+        }
+        case model::Object::Type::Repeater: {
+            auto repeater = static_cast<const model::Repeater *>(obj);
+            writeObject(repeater->mContent);
+            writeRepeaterTransform(repeater->mTransform);
+            writeProperty(repeater->mCopies);
+            writeProperty(repeater->mOffset);
+            write<float>(repeater->mMaxCopies);
+            write<uint8_t>(repeater->mProcessed);
+            break;
+        }
+        case model::Object::Type::RoundedCorner:
+            writeProperty(
+                static_cast<const model::RoundedCorner *>(obj)->mRadius);
+            break;
+        default:
+            // unknown object, can't be stored
+            mValid = false;
+            break;
+        }
+    }
+
+    std::string &mOut;
+    bool         mValid{true};
+    std::unordered_map<const model::Object *, uint32_t>  mObjects;
+    std::unordered_map<const model::Asset *, uint32_t>   mAssets;
+    std::unordered_map<const VInterpolator *, uint32_t>  mInterpolators;
+};
+
+class BinaryReader {
+public:
+    BinaryReader(const char *data, size_t size) : mPtr(data), mEnd(data + size)
+    {
+    }
+
+    std::shared_ptr<model::Composition> readComposition()
+    {
+        auto sharedComposition = std::make_shared<model::Composition>();
+        mComp = sharedComposition.get();
+
+        mComp->mVersion = readString();
+        int w = read<int32_t>();
+        int h = read<int32_t>();
+        mComp->mSize = VSize(w, h);
+        mComp->mStartFrame = long(read<int64_t>());
+        mComp->mEndFrame = long(read<int64_t>());
+        mComp->mFrameRate = read<float>();
+        mComp->mBlendMode = model::BlendMode(read<uint8_t>());
+        mComp->setStatic(read<uint8_t>());
+
+        uint32_t assetsCount = read<uint32_t>();
+        if (!available(assetsCount)) return {};
+        for (uint32_t i = 0; i < assetsCount; i++)
+            mAssets.push_back(mComp->mArenaAlloc.make<model::Asset>());
+        for (auto asset : mAssets) {
+            readAsset(asset);
+            if (!mValid) return {};
+            mComp->mAssets[asset->mRefId] = asset;
+        }
+
+        auto root = readObject();
+        if (!root || root->type() != model::Object::Type::Layer) return {};
+        mComp->mRootLayer = static_cast<model::Layer *>(root);
+
+        uint32_t markersCount = read<uint32_t>();
+        for (uint32_t i = 0; i < markersCount && mValid; i++) {
+            std::string name = readString();
+            int         start = read<int32_t>();
+            int         end = read<int32_t>();
+            mComp->mMarkers.emplace_back(std::move(name), start, end);
+        }
+
+        mComp->mStats.precompLayerCount = read<uint16_t>();
+        mComp->mStats.solidLayerCount = read<uint16_t>();
+        mComp->mStats.shapeLayerCount = read<uint16_t>();
+        mComp->mStats.imageLayerCount = read<uint16_t>();
+        mComp->mStats.nullLayerCount = read<uint16_t>();
+
+        if (!mValid || mPtr != mEnd) return {};
+        return sharedComposition;
+    }
+
+private:
+    bool available(size_t size)
+    {
+        if (!mValid || size_t(mEnd - mPtr) < size) {
+            mValid = false;
+            return false;
+        }
+        return true;
+    }
+
+    template <typename T>
+    T read()
+    {
+        T value{};
+        if (!available(sizeof(T))) return value;
+        memcpy(&value, mPtr, sizeof(T));
+        mPtr += sizeof(T);
+        return value;
+    }
+
+    std::string readString()
+    {
+        uint32_t len = read<uint32_t>();
+        if (!available(len)) return {};
+        std::string str(mPtr, len);
+        mPtr += len;
+        return str;
+    }
+
+    void readValue(float &v) { v = read<float>(); }
+
+    void readValue(VPointF &v)
+    {
+        float x = read<float>();
+        float y = read<float>();
+        v = VPointF(x, y);
+    }
+
+    void readValue(model::Color &v)
+    {
+        v.r = read<float>();
+        v.g = read<float>();
+        v.b = read<float>();
+    }
+
+    void readValue(model::PathData &v)
+    {
+        v.mClosed = read<uint8_t>();
+        uint32_t count = read<uint32_t>();
+        if (!available(size_t(count) * 2 * sizeof(float))) return;
+        v.mPoints.resize(count);
+        for (auto &pt : v.mPoints) readValue(pt);
+    }
+
+    void readValue(model::Gradient::Data &v)
+    {
+        uint32_t count = read<uint32_t>();
+        if (!available(size_t(count) * sizeof(float))) return;
+        v.mGradient.resize(count);
+        for (auto &f : v.mGradient) f = read<float>();
+    }
+
+    template <typename T>
+    void readKeyValue(model::Value<T> &v)
+    {
+        readValue(v.start_);
+        readValue(v.end_);
+    }
+
+    template <typename T>
+    void readKeyValue(model::Value<T, model::Position> &v)
+    {
+        readValue(v.start_);
+        readValue(v.end_);
+        readValue(v.inTangent_);
+        readValue(v.outTangent_);
+        v.length_ = read<float>();
+        v.hasTangent_ = read<uint8_t>();
+    }
+
+    VInterpolator *readInterpolator()
+    {
+        uint32_t ref = read<uint32_t>();
+        if (ref == NULL_REF) return nullptr;
+        if (ref != NEW_REF) {
+            if (ref > mInterpolators.size()) {
+                mValid = false;
+                return nullptr;
+            }
+            return mInterpolators[ref - 1];
+        }
+        VPointF p1, p2;
+        readValue(p1);
+        readValue(p2);
+        auto obj = mComp->mArenaAlloc.make<VInterpolator>(p1, p2);
+        mInterpolators.push_back(obj);
+        return obj;
+    }
+
+    template <typename T, typename Tag>
+    void readProperty(model::Property<T, Tag> &prop)
+    {
+        if (read<uint8_t>()) {
+            readValue(prop.value());
+            return;
+        }
+        uint32_t count = read<uint32_t>();
+        if (!available(count)) return;
+        auto &frames = prop.animation().frames_;
+        frames.resize(count);
+        for (auto &frame : frames) {
+            frame.start_ = read<float>();
+            frame.end_ = read<float>();
+            frame.interpolator_ = readInterpolator();
+            readKeyValue(frame.value_);
+        }
+        if (frames.empty()) mValid = false;
+    }
+
+    void readDash(model::Dash &dash)
+    {
+        uint32_t count = read<uint32_t>();
+        if (!available(count)) return;
+        dash.mData.resize(count);
+        for (auto &prop : dash.mData) readProperty(prop);
+    }
+
+    void readAsset(model::Asset *asset)
+    {
+        asset->mAssetType = model::Asset::Type(read<uint8_t>());
+        asset->mStatic = read<uint8_t>();
+        asset->mRefId = readString();
+        asset->mWidth = read<int32_t>();
+        asset->mHeight = read<int32_t>();
+
+        uint32_t layersCount = read<uint32_t>();
+        for (uint32_t i = 0; i < layersCount && mValid; i++)
+            asset->mLayers.push_back(readObject());
+
+        if (read<uint8_t>()) {
+            auto     format = VBitmap::Format(read<uint8_t>());
+            uint32_t width = read<uint32_t>();
+            uint32_t height = read<uint32_t>();
+            VBitmap  bitmap(width, height, format);
+            if (!bitmap.valid()) {
+                mValid = false;
+                return;
+            }
+            size_t rowBytes = size_t(width) * bitmap.depth() / 8;
+            if (!available(rowBytes * height)) return;
+            for (size_t y = 0; y < height; y++) {
+                memcpy(bitmap.data() + y * bitmap.stride(), mPtr, rowBytes);
+                mPtr += rowBytes;
+            }
+            asset->mBitmap = bitmap;
+        }
+    }
+
+    model::Mask *readMask()
+    {
+        auto mask = mComp->mArenaAlloc.make<model::Mask>();
+        readProperty(mask->mShape);
+        readProperty(mask->mOpacity);
+        mask->mInv = read<uint8_t>();
+        mask->mIsStatic = read<uint8_t>();
+        mask->mMode = model::Mask::Mode(read<uint8_t>());
+        return mask;
+    }
+
+    void readChildren(model::Group *group)
+    {
+        uint32_t count = read<uint32_t>();
+        if (!available(count)) return;
+        group->mChildren.reserve(count);
+        for (uint32_t i = 0; i < count && mValid; i++) {
+            auto child = readObject();
+            if (child) group->mChildren.push_back(child);
+        }
+        group->mTransform = readObject<model::Transform>(model::Object::Type::Transform);
+    }
+
+    void readTransform(model::Transform *obj, bool isStatic)
+    {
+        if (isStatic) {
+            float m[9];
+            for (auto &f : m) f = read<float>();
+            float opacity = read<float>();
+            obj->setStaticData(
+                VMatrix(m[0], m[1], m[2], m[3], m[4], m[5], m[6], m[7], m[8]),
+                opacity);
+            return;
+        }
+
+        auto data = mComp->mArenaAlloc.make<model::Transform::Data>();
+        readProperty(data->mRotation);
+        readProperty(data->mScale);
+        readProperty(data->mPosition);
+        readProperty(data->mAnchor);
+        readProperty(data->mOpacity);
+        if (read<uint8_t>()) {
+            data->createExtraData();
+            readProperty(data->mExtra->m3DRx);
+            readProperty(data->mExtra->m3DRy);
+            readProperty(data->mExtra->m3DRz);
+            readProperty(data->mExtra->mSeparateX);
+            readProperty(data->mExtra->mSeparateY);
+            data->mExtra->mSeparate = read<uint8_t>();
+            data->mExtra->m3DData = read<uint8_t>();
+        }
+        obj->set(data, false);
+    }
+
+    void readLayer(model::Layer *obj)
+    {
+        readChildren(obj);
+        obj->mMatteType = model::MatteType(read<uint8_t>());
+        obj->mLayerType = model::Layer::Type(read<uint8_t>());
+        obj->mBlendMode = model::BlendMode(read<uint8_t>());
+        obj->mHasRoundedCorner = read<uint8_t>();
+        obj->mHasPathOperator = read<uint8_t>();
+        obj->mHasMask = read<uint8_t>();
+        obj->mHasRepeater = read<uint8_t>();
+        obj->mHasGradient = read<uint8_t>();
+        obj->mAutoOrient = read<uint8_t>();
+        int w = read<int32_t>();
+        int h = read<int32_t>();
+        obj->mLayerSize = VSize(w, h);
+        obj->mParentId = read<int32_t>();
+        obj->mId = read<int32_t>();
+        obj->mTimeStreatch = read<float>();
+        obj->mInFrame = read<int32_t>();
+        obj->mOutFrame = read<int32_t>();
+        obj->mStartFrame = read<int32_t>();
+
+        if (!read<uint8_t>()) return;
+
+        auto extra = obj->extra();
+        readValue(extra->mSolidColor);
+        extra->mPreCompRefId = readString();
+        readProperty(extra->mTimeRemap);
+        if (read<uint8_t>()) extra->mCompRef = mComp;
+        uint32_t asset = read<uint32_t>();
+        if (asset != NULL_REF) {
+            if (asset > mAssets.size()) {
+                mValid = false;
+                return;
+            }
+            extra->mAsset = mAssets[asset - 1];
+        }
+        uint32_t masksCount = read<uint32_t>();
+        if (!available(masksCount)) return;
+        for (uint32_t i = 0; i < masksCount && mValid; i++)
+            extra->mMasks.push_back(readMask());
+    }
+
+    void readGradient(model::Gradient *obj)
+    {
+        obj->mGradientType = read<int32_t>();
+        readProperty(obj->mStartPoint);
+        readProperty(obj->mEndPoint);
+        readProperty(obj->mHighlightLength);
+        readProperty(obj->mHighlightAngle);
+        readProperty(obj->mOpacity);
+        readProperty(obj->mGradient);
+        obj->mColorPoints = read<int32_t>();
+        obj->mEnabled = read<uint8_t>();
+    }
+
+    void readRepeaterTransform(model::Repeater::Transform &tr)
+    {
+        readProperty(tr.mRotation);
+        readProperty(tr.mScale);
+        readProperty(tr.mPosition);
+        readProperty(tr.mAnchor);
+        readProperty(tr.mStartOpacity);
+        readProperty(tr.mEndOpacity);
+    }
+
+    template <typename T>
+    T *readObject(model::Object::Type type)
+    {
+        auto obj = readObject();
+        if (!obj) return nullptr;
+        if (obj->type() != type) {
+            mValid = false;
+            return nullptr;
+        }
+        return static_cast<T *>(obj);
+    }
+
+    model::Object *readObject()
+    {
+        uint32_t ref = read<uint32_t>();
+        if (ref == NULL_REF || !mValid) return nullptr;
+        if (ref != NEW_REF) {
+            if (ref > mObjects.size() || !mObjects[ref - 1]) {
+                mValid = false;
+                return nullptr;
+            }
+            return mObjects[ref - 1];
+        }
+        // reserve the index, children are read before the object is complete
+        size_t index = mObjects.size();
+        mObjects.push_back(nullptr);
+
+        auto        type = model::Object::Type(read<uint8_t>());
+        bool        isStatic = read<uint8_t>();
+        bool        hidden = read<uint8_t>();
+        std::string name = readString();
+
+        model::Object *obj = nullptr;
+        switch (type) {
+        case model::Object::Type::Layer: {
+            auto layer = mComp->mArenaAlloc.make<model::Layer>();
+            mObjects[index] = obj = layer;
+            readLayer(layer);
+            break;
+        }
+        case model::Object::Type::Group: {
+            auto group = mComp->mArenaAlloc.make<model::Group>();
+            mObjects[index] = obj = group;
+            readChildren(group);
+            break;
+        }
+        case model::Object::Type::Transform: {
+            auto transform = mComp->mArenaAlloc.make<model::Transform>();
+            mObjects[index] = obj = transform;
+            readTransform(transform, isStatic);
+            break;
+        }
+        case model::Object::Type::Fill: {
+            auto fill = mComp->mArenaAlloc.make<model::Fill>();
+            mObjects[index] = obj = fill;
+            fill->mFillRule = FillRule(read<uint8_t>());
+            fill->mEnabled = read<uint8_t>();
+            readProperty(fill->mColor);
+            readProperty(fill->mOpacity);
+            break;
+        }
+        case model::Object::Type::Stroke: {
+            auto stroke = mComp->mArenaAlloc.make<model::Stroke>();
+            mObjects[index] = obj = stroke;
+            readProperty(stroke->mColor);
+            readProperty(stroke->mOpacity);
+            readProperty(stroke->mWidth);
+            stroke->mCapStyle = CapStyle(read<uint8_t>());
+            stroke->mJoinStyle = JoinStyle(read<uint8_t>());
+            stroke->mMiterLimit = read<float>();
+            readDash(stroke->mDash);
+            stroke->mEnabled = read<uint8_t>();
+            break;
+        }
+        case model::Object::Type::GFill: {
+            auto fill = mComp->mArenaAlloc.make<model::GradientFill>();
+            mObjects[index] = obj = fill;
+            readGradient(fill);
+            fill->mFillRule = FillRule(read<uint8_t>());
+            break;
+        }
+        case model::Object::Type::GStroke: {
+            auto stroke = mComp->mArenaAlloc.make<model::GradientStroke>();
+            mObjects[index] = obj = stroke;
+            readGradient(stroke);
+            readProperty(stroke->mWidth);
+            stroke->mCapStyle = CapStyle(read<uint8_t>());
+            stroke->mJoinStyle = JoinStyle(read<uint8_t>());
+            stroke->mMiterLimit = read<float>();
+            readDash(stroke->mDash);
+            break;
+        }
+        case model::Object::Type::Rect: {
+            auto rect = mComp->mArenaAlloc.make<model::Rect>();
+            mObjects[index] = obj = rect;
+            rect->mDirection = read<int32_t>();
+            rect->mRoundedCorner = readObject<model::RoundedCorner>(
+                model::Object::Type::RoundedCorner);
+            readProperty(rect->mPos);
+            readProperty(rect->mSize);
+            readProperty(rect->mRound);
+            break;
+        }
+        case model::Object::Type::Ellipse: {
+            auto ellipse = mComp->mArenaAlloc.make<model::Ellipse>();
+            mObjects[index] = obj = ellipse;
+            ellipse->mDirection = read<int32_t>();
+            readProperty(ellipse->mPos);
+            readProperty(ellipse->mSize);
+            break;
+        }
+        case model::Object::Type::Path: {
+            auto path = mComp->mArenaAlloc.make<model::Path>();
+            mObjects[index] = obj = path;
+            path->mDirection = read<int32_t>();
+            readProperty(path->mShape);
+            break;
+        }
+        case model::Object::Type::Polystar: {
+            auto star = mComp->mArenaAlloc.make<model::Polystar>();
+            mObjects[index] = obj = star;
+            star->mDirection = read<int32_t>();
+            star->mPolyType = model::Polystar::PolyType(read<uint8_t>());
+            readProperty(star->mPos);
+            readProperty(star->mPointCount);
+            readProperty(star->mInnerRadius);
+            readProperty(star->mOuterRadius);
+            readProperty(star->mInnerRoundness);
+            readProperty(star->mOuterRoundness);
+            readProperty(star->mRotation);
+            break;
+        }
+        case model::Object::Type::Trim: {
+            auto trim = mComp->mArenaAlloc.make<model::Trim>();
+            mObjects[index] = obj = trim;
+            readProperty(trim->mStart);
+            readProperty(trim->mEnd);
+            readProperty(trim->mOffset);
+            trim->mTrimType = model::Trim::TrimType(read<uint8_t>());
+            break;
+        }
+        case model::Object::Type::Repeater: {
+            auto repeater = mComp->mArenaAlloc.make<model::Repeater>();
+            mObjects[index] = obj = repeater;
+            repeater->setContent(readObject<model::Group>(model::Object::Type::Group));
+            readRepeaterTransform(repeater->mTransform);
+            readProperty(repeater->mCopies);
+            readProperty(repeater->mOffset);
+            repeater->mMaxCopies = read<float>();
+            if (read<uint8_t>()) repeater->markProcessed();
+            if (!repeater->content()) mValid = false;
+            break;
+        }
+        case model::Object::Type::RoundedCorner: {
+            auto corner = mComp->mArenaAlloc.make<model::RoundedCorner>();
+            mObjects[index] = obj = corner;
+            readProperty(corner->mRadius);
+            break;
+        }
+        default:
+            mValid = false;
+            return nullptr;
+        }
+
+        obj->setName(name.c_str());
+        obj->setStatic(isStatic);
+        obj->setHidden(hidden);
+        return mValid ? obj : nullptr;
+    }
+
+    const char *                  mPtr;
+    const char *                  mEnd;
+    bool                          mValid{true};
+    model::Composition *          mComp{nullptr};
+    std::vector<model::Object *>  mObjects;
+    std::vector<model::Asset *>   mAssets;
+    std::vector<VInterpolator *>  mInterpolators;
+};
+
+}  // namespace
+
+bool model::isBinary(const char *data, size_t size)
+{
+    return data && size >= BINARY_HEADER_SIZE &&
+           memcmp(data, BINARY_MAGIC, sizeof(BINARY_MAGIC)) == 0;
+}
+
+uint64_t model::sourceHash(const char *data, size_t size)
+{
+    // FNV-1a, 8 bytes a step
+    uint64_t hash = 14695981039346656037ULL;
+    size_t   i = 0;
+    for (; i + 8 <= size; i += 8) {
+        uint64_t word;
+        memcpy(&word, data + i, 8);
+        hash = (hash ^ word) * 1099511628211ULL;
+    }
+    for (; i < size; i++) hash = (hash ^ uint8_t(data[i])) * 1099511628211ULL;
+    hash ^= size;
+    return hash ? hash : 1;
+}
+
+bool model::serialize(const model::Composition *comp, uint64_t sourceHash,
+                      std::string &out)
+{
+    if (!comp || !comp->mRootLayer) return false;
+
+    out.clear();
+    out.append(BINARY_MAGIC, sizeof(BINARY_MAGIC));
+    uint32_t version = BINARY_VERSION;
+    out.append(reinterpret_cast<const char *>(&version), sizeof(version));
+    out.append(reinterpret_cast<const char *>(&sourceHash), sizeof(sourceHash));
+
+    BinaryWriter writer(out);
+    writer.writeComposition(comp);
+    if (!writer.valid()) {
+        out.clear();
+        return false;
+    }
+    return true;
+}
+
+std::shared_ptr<model::Composition> model::deserialize(const char *data,
+                                                       size_t      size,
+                                                       uint64_t    sourceHash)
+{
+    if (!isBinary(data, size)) return {};
+
+    uint32_t version;
+    uint64_t hash;
+    memcpy(&version, data + 4, sizeof(version));
+    memcpy(&hash, data + 8, sizeof(hash));
+    if (version != BINARY_VERSION) return {};
+    if (sourceHash && hash != sourceHash) return {};
+
+    BinaryReader reader(data + BINARY_HEADER_SIZE, size - BINARY_HEADER_SIZE);
+    return reader.readComposition();
+}
@@ -22,8 +22,10 @@
 
 #include "lottieitem.h"
 #include <algorithm>
+#include <atomic>
 #include <cmath>
 #include <iterator>
+#include "config.h"
 #include "lottiekeypath.h"
 #include "vbitmap.h"
 #include "vpainter.h"
@@ -72,6 +74,17 @@ static bool strokeProp(rlottie::Property prop)
     }
 }
 
+// a content the key path resolves to, collected or given the value
+static void resolved(LOTKeyPath &keyPath, model::FilterData *filter,
+                     LOTVariant &value)
+{
+    if (keyPath.targets()) {
+        keyPath.targets()->push_back(filter);
+    } else {
+        filter->addValue(value);
+    }
+}
+
 static renderer::Layer *createLayerItem(model::Layer *layerData,
                                         VArenaAlloc * allocator)
 {
@@ -111,6 +124,36 @@ void renderer::Composition::setValue(const std::string &keypath,
 {
     LOTKeyPath key(keypath);
     mRootLayer->resolveKeyPath(key, 0, value);
+    // a property (e.g. an opacity) may make the frames recordable again
+    mRecordSkips = 0;
+}
+
+size_t renderer::Composition::resolveKeyPath(const std::string &keypath,
+                                             LOTVariant &       value)
+{
+    auto key = std::make_pair(keypath, value.property());
+    auto it = mResolvedIds.find(key);
+    if (it != mResolvedIds.end()) return it->second;
+
+    LOTKeyPath::Targets targets;
+    LOTKeyPath          keyPath(keypath);
+    keyPath.collect(&targets);
+    mRootLayer->resolveKeyPath(keyPath, 0, value);
+    // a globstar may reach the same content more than once
+    std::sort(targets.begin(), targets.end());
+    targets.erase(std::unique(targets.begin(), targets.end()), targets.end());
+
+    mResolvedKeyPaths.push_back(std::move(targets));
+    size_t id = mResolvedKeyPaths.size() - 1;
+    mResolvedIds.emplace(std::move(key), id);
+    return id;
+}
+
+void renderer::Composition::setValue(size_t id, LOTVariant &value)
+{
+    if (id >= mResolvedKeyPaths.size()) return;
+    for (auto *filter : mResolvedKeyPaths[id]) filter->addValue(value);
+    mRecordSkips = 0;
 }
 
 bool renderer::Composition::update(int frameNo, const VSize &size,
@@ -147,12 +190,153 @@ bool renderer::Composition::update(int frameNo, const VSize &size,
     return true;
 }
 
+// bands thinner than this aren't worth the hand-off to another thread.
+static constexpr int kMinBandHeight = 64;
+
+// frames drawn at once before recording is tried again after a frame
+// that couldn't be recorded, the layers that can't be recorded usually
+// stay for a while.
+static constexpr int kRecordRetryFrames = 30;
+
+static std::atomic<size_t> gRenderBands{1};
+
+void renderer::configureRenderBands(size_t count)
+{
+    gRenderBands.store(count, std::memory_order_relaxed);
+}
+
+#ifdef LOTTIE_THREAD_SUPPORT
+
+#include <functional>
+#include <future>
+#include <thread>
+#include "vtaskqueue.h"
+
+/*
+ * Draws the bands of a frame, the calling thread draws the first band itself
+ * so one thread less than the cores is enough. Like the other schedulers each
+ * thread has its own queue and steals from the others when it's empty.
+ */
+class BandTaskScheduler {
+    using Task = std::packaged_task<void()>;
+
+    const unsigned _count{std::max(std::thread::hardware_concurrency(), 2u) - 1};
+    std::vector<std::thread>     _threads;
+    std::vector<TaskQueue<Task>> _q{_count};
+    std::atomic<unsigned>        _index{0};
+
+    void run(unsigned i)
+    {
+        while (true) {
+            bool success = false;
+            Task task;
+            for (unsigned n = 0; n != _count * 2; ++n) {
+                if (_q[(i + n) % _count].try_pop(task)) {
+                    success = true;
+                    break;
+                }
+            }
+            if (!success && !_q[i].pop(task)) break;
+
+            task();
+        }
+    }
+
+    BandTaskScheduler()
+    {
+        for (unsigned n = 0; n != _count; ++n) {
+            _threads.emplace_back([&, n] { run(n); });
+        }
+    }
+
+public:
+    static BandTaskScheduler &instance()
+    {
+        static BandTaskScheduler singleton;
+        return singleton;
+    }
+
+    ~BandTaskScheduler()
+    {
+        for (auto &e : _q) e.done();
+
+        for (auto &e : _threads) e.join();
+    }
+
+    std::future<void> process(std::function<void()> fn)
+    {
+        Task task(std::move(fn));
+        auto receiver = task.get_future();
+        auto i = _index++;
+
+        for (unsigned n = 0; n != _count; ++n) {
+            if (_q[(i + n) % _count].try_push(std::move(task))) return receiver;
+        }
+
+        _q[i % _count].push(std::move(task));
+        return receiver;
+    }
+};
+
+static size_t bandCount(int height)
+{
+    size_t bands = gRenderBands.load(std::memory_order_relaxed);
+    if (bands < 2) return 1;
+    return std::max<size_t>(1, std::min(bands, size_t(height / kMinBandHeight)));
+}
+
+#else
+
+static size_t bandCount(int)
+{
+    return 1;
+}
+
+#endif
+
+void renderer::Composition::drawBands(const DisplayList &list,
+                                      const VRect &area, const VRect &region,
+                                      size_t bands)
+{
+    // spans are rows, a band only cuts the rles between two rows so the
+    // pixels are the same as when the area is drawn at once.
+    auto drawBand = [&](int top, int bottom) {
+        VRect    band(area.x(), top, area.width(), bottom - top);
+        VPainter painter;
+        painter.begin(&mSurface, band);
+        painter.setDrawRegion(region);
+        painter.setClipRect(band.translated(-region.x(), -region.y()));
+        list.draw(&painter);
+        painter.end();
+    };
+
+    auto edge = [&](size_t i) {
+        return area.y() + int(size_t(area.height()) * i / bands);
+    };
+
+#ifdef LOTTIE_THREAD_SUPPORT
+    std::vector<std::future<void>> pending;
+    pending.reserve(bands - 1);
+    for (size_t i = 1; i < bands; i++) {
+        int top = edge(i), bottom = edge(i + 1);
+        pending.push_back(BandTaskScheduler::instance().process(
+            [&drawBand, top, bottom] { drawBand(top, bottom); }));
+    }
+    drawBand(edge(0), edge(1));
+    for (auto &band : pending) band.wait();
+#else
+    drawBand(edge(0), edge(bands));
+#endif
+}
+
 bool renderer::Composition::render(const rlottie::Surface &surface)
 {
     mSurface.reset(reinterpret_cast<uint8_t *>(surface.buffer()),
                    uint32_t(surface.width()), uint32_t(surface.height()),
                    uint32_t(surface.bytesPerLine()),
-                   VBitmap::Format::ARGB32_Premultiplied);
+                   surface.format() == rlottie::Surface::Format::ABGR32_Premultiplied
+                       ? VBitmap::Format::ABGR32_Premultiplied
+                       : VBitmap::Format::ARGB32_Premultiplied);
 
     /* schedule all preprocess task for this frame at once.
      */
@@ -160,16 +344,239 @@ bool renderer::Composition::render(const rlottie::Surface &surface)
                int(surface.drawRegionHeight()));
     mRootLayer->preprocess(clip);
 
+    VRect region(int(surface.drawRegionPosX()), int(surface.drawRegionPosY()),
+                 int(surface.drawRegionWidth()), int(surface.drawRegionHeight()));
+    VRect area(0, 0, int(mSurface.width()), int(mSurface.height()));
+    size_t bands = bandCount(area.height());
+    if (bands > 1 && mRecordSkips > 0) {
+        mRecordSkips--;
+    } else if (bands > 1) {
+        // the draw calls are recorded once, then each band draws them
+        // clipped to its rows. frames that can't be recorded (mattes,
+        // offscreen layers) are drawn on this thread.
+        DisplayList list(clip.size());
+        VPainter    recorder;
+        recorder.setRecorder(&list);
+        recorder.setDrawRegion(clip);
+        mRootLayer->render(&recorder, {}, {}, mSurfaceCache);
+        if (list.supported()) {
+            drawBands(list, area, region, bands);
+            forgetSurface(surface.buffer());
+            mLastList = nullptr;
+            return true;
+        }
+        mRecordSkips = kRecordRetryFrames;
+    }
+
     VPainter painter(&mSurface);
     // set sub surface area for drawing.
-    painter.setDrawRegion(
-        VRect(int(surface.drawRegionPosX()), int(surface.drawRegionPosY()),
-              int(surface.drawRegionWidth()), int(surface.drawRegionHeight())));
+    painter.setDrawRegion(region);
     mRootLayer->render(&painter, {}, {}, mSurfaceCache);
     painter.end();
+
+    // nothing was recorded, the next partial render draws everything
+    forgetSurface(surface.buffer());
+    mLastList = nullptr;
     return true;
 }
 
+void renderer::Composition::forgetSurface(const void *buffer)
+{
+    mSurfaceContents.erase(
+        std::remove_if(mSurfaceContents.begin(), mSurfaceContents.end(),
+                       [buffer](const SurfaceContent &content) {
+                           return content.mBuffer == buffer;
+                       }),
+        mSurfaceContents.end());
+}
+
+VRect renderer::Composition::renderPartial(const rlottie::Surface &surface,
+                                           bool keepContent, VRect *changed)
+{
+    mSurface.reset(reinterpret_cast<uint8_t *>(surface.buffer()),
+                   uint32_t(surface.width()), uint32_t(surface.height()),
+                   uint32_t(surface.bytesPerLine()),
+                   surface.format() == rlottie::Surface::Format::ABGR32_Premultiplied
+                       ? VBitmap::Format::ABGR32_Premultiplied
+                       : VBitmap::Format::ARGB32_Premultiplied);
+
+    VRect clip(0, 0, int(surface.drawRegionWidth()),
+               int(surface.drawRegionHeight()));
+    VRect region(int(surface.drawRegionPosX()), int(surface.drawRegionPosY()),
+                 int(surface.drawRegionWidth()), int(surface.drawRegionHeight()));
+    mRootLayer->preprocess(clip);
+
+    // record the draw calls of the frame first, nothing is drawn
+    auto list = std::make_shared<DisplayList>(clip.size());
+    VPainter recorder;
+    recorder.setRecorder(list.get());
+    recorder.setDrawRegion(clip);
+    mRootLayer->render(&recorder, {}, {}, mSurfaceCache);
+
+    std::shared_ptr<DisplayList> previous;
+    for (const auto &content : mSurfaceContents) {
+        if (content.mBuffer == surface.buffer()) previous = content.mList;
+    }
+    forgetSurface(surface.buffer());
+    if (!keepContent) previous = nullptr;
+
+    if (!list->supported()) {
+        VPainter painter(&mSurface);
+        painter.setDrawRegion(region);
+        mRootLayer->render(&painter, {}, {}, mSurfaceCache);
+        painter.end();
+
+        mLastList = nullptr;
+        if (changed) *changed = clip;
+        return clip;
+    }
+
+    VRect dirty = previous ? previous->difference(*list) & clip : clip;
+    if (changed)
+        *changed = mLastList ? mLastList->difference(*list) & clip : clip;
+
+    if (!dirty.empty())
+        drawBands(*list, dirty.translated(region.x(), region.y()), region,
+                  bandCount(dirty.height()));
+
+    // a buffer is used by the drawable and its frames in turn, a few are enough
+    if (mSurfaceContents.size() >= 4)
+        mSurfaceContents.erase(mSurfaceContents.begin());
+    mSurfaceContents.push_back({surface.buffer(), list});
+    mLastList = list;
+    return dirty;
+}
+
+static bool sameMatrix(const VMatrix &m1, const VMatrix &m2)
+{
+    return m1.m_11() == m2.m_11() && m1.m_12() == m2.m_12() &&
+           m1.m_13() == m2.m_13() && m1.m_21() == m2.m_21() &&
+           m1.m_22() == m2.m_22() && m1.m_23() == m2.m_23() &&
+           m1.m_tx() == m2.m_tx() && m1.m_ty() == m2.m_ty() &&
+           m1.m_33() == m2.m_33();
+}
+
+static bool sameGradient(const VGradient &g1, const VGradient &g2)
+{
+    if (g1.mType != g2.mType || g1.mSpread != g2.mSpread ||
+        g1.mMode != g2.mMode || g1.mAlpha != g2.mAlpha ||
+        g1.mStops != g2.mStops || !sameMatrix(g1.mMatrix, g2.mMatrix))
+        return false;
+
+    if (g1.mType == VGradient::Type::Linear)
+        return g1.linear.x1 == g2.linear.x1 && g1.linear.y1 == g2.linear.y1 &&
+               g1.linear.x2 == g2.linear.x2 && g1.linear.y2 == g2.linear.y2;
+
+    return g1.radial.cx == g2.radial.cx && g1.radial.cy == g2.radial.cy &&
+           g1.radial.fx == g2.radial.fx && g1.radial.fy == g2.radial.fy &&
+           g1.radial.cradius == g2.radial.cradius &&
+           g1.radial.fradius == g2.radial.fradius;
+}
+
+void renderer::DisplayList::drawRle(const VBrush &brush, const VRle &rle,
+                                    const VRle *clip)
+{
+    Call call;
+    call.mBrush = brush;
+    call.mRle = rle;
+    call.mBounds = rle.boundingRect() & VRect(VPoint(), mSize);
+    if (clip) {
+        call.mClip = *clip;
+        call.mClipped = true;
+        call.mBounds = call.mBounds & clip->boundingRect();
+    }
+
+    switch (brush.type()) {
+    case VBrush::Type::LinearGradient:
+    case VBrush::Type::RadialGradient:
+        call.mGradient = std::make_shared<VGradient>(*brush.mGradient);
+        break;
+    case VBrush::Type::Texture:
+        call.mMatrix = brush.mTexture->mMatrix;
+        call.mAlpha = brush.mTexture->mAlpha;
+        call.mTexture = brush.mTexture->mBitmap.data();
+        break;
+    default:
+        break;
+    }
+    mCalls.push_back(std::move(call));
+}
+
+bool renderer::DisplayList::Call::sameAs(const Call &other) const
+{
+    if (mBrush.type() != other.mBrush.type() || mClipped != other.mClipped ||
+        mRle != other.mRle || (mClipped && mClip != other.mClip))
+        return false;
+
+    switch (mBrush.type()) {
+    case VBrush::Type::Solid:
+        return mBrush.mColor == other.mBrush.mColor;
+    case VBrush::Type::LinearGradient:
+    case VBrush::Type::RadialGradient:
+        return sameGradient(*mGradient, *other.mGradient);
+    case VBrush::Type::Texture:
+        return mTexture == other.mTexture && mAlpha == other.mAlpha &&
+               sameMatrix(mMatrix, other.mMatrix);
+    default:
+        return true;
+    }
+}
+
+VRect renderer::DisplayList::difference(const DisplayList &other) const
+{
+    VRect full(VPoint(), mSize);
+    if (mSize != other.mSize) return full;
+
+    size_t count = std::min(mCalls.size(), other.mCalls.size());
+    size_t start = 0;
+    size_t end = 0;
+
+    int left = full.right(), top = full.bottom(), right = 0, bottom = 0;
+    auto add = [&](const VRect &rect) {
+        if (rect.empty()) return;
+        left = std::min(left, rect.left());
+        top = std::min(top, rect.top());
+        right = std::max(right, rect.right());
+        bottom = std::max(bottom, rect.bottom());
+    };
+
+    if (mCalls.size() == other.mCalls.size()) {
+        for (size_t i = 0; i < count; i++) {
+            if (!mCalls[i].sameAs(other.mCalls[i])) {
+                add(mCalls[i].mBounds);
+                add(other.mCalls[i].mBounds);
+            }
+        }
+    } else {
+        // a call was added or removed (e.g. a shape became empty),
+        // the calls that match at the start and the end are kept.
+        while (start < count && mCalls[start].sameAs(other.mCalls[start]))
+            start++;
+        while (end < count - start &&
+               mCalls[mCalls.size() - 1 - end].sameAs(
+                   other.mCalls[other.mCalls.size() - 1 - end]))
+            end++;
+        for (size_t i = start; i < mCalls.size() - end; i++)
+            add(mCalls[i].mBounds);
+        for (size_t i = start; i < other.mCalls.size() - end; i++)
+            add(other.mCalls[i].mBounds);
+    }
+
+    if (right <= left || bottom <= top) return {};
+    return VRect(left, top, right - left, bottom - top);
+}
+
+void renderer::DisplayList::draw(VPainter *painter) const
+{
+    for (const auto &call : mCalls) {
+        painter->setBrush(call.mBrush);
+        if (call.mClipped)
+            painter->drawRle(call.mRle, call.mClip);
+        else
+            painter->drawRle(VPoint(), call.mRle);
+    }
+}
+
 void renderer::Mask::update(int frameNo, const VMatrix &parentMatrix,
                             float /*parentAlpha*/, const DirtyFlag &flag)
 {
@@ -500,9 +907,14 @@ void renderer::CompLayer::render(VPainter *painter, const VRle &inheritMask,
         renderHelper(painter, inheritMask, matteRle, cache);
     } else {
         if (complexContent()) {
+            if (painter->recorder()) {
+                painter->recorder()->unsupported();
+                return;
+            }
             VSize    size = painter->clipBoundingRect().size();
             VPainter srcPainter;
-            VBitmap srcBitmap = cache.make_surface(size.width(), size.height());
+            VBitmap srcBitmap = cache.make_surface(size.width(), size.height(),
+                                                   painter->format());
             srcPainter.begin(&srcBitmap);
             renderHelper(&srcPainter, inheritMask, matteRle, cache);
             srcPainter.end();
@@ -560,18 +972,24 @@ void renderer::CompLayer::renderMatteLayer(VPainter *painter, const VRle &mask,
                                            renderer::Layer *src,
                                            SurfaceCache &   cache)
 {
+    if (painter->recorder()) {
+        painter->recorder()->unsupported();
+        return;
+    }
     VSize size = painter->clipBoundingRect().size();
     // Decide if we can use fast matte.
     // 1. draw src layer to matte buffer
     VPainter srcPainter;
-    VBitmap  srcBitmap = cache.make_surface(size.width(), size.height());
+    VBitmap  srcBitmap = cache.make_surface(size.width(), size.height(),
+                                            painter->format());
     srcPainter.begin(&srcBitmap);
     src->render(&srcPainter, mask, matteRle, cache);
     srcPainter.end();
 
     // 2. draw layer to layer buffer
     VPainter layerPainter;
-    VBitmap  layerBitmap = cache.make_surface(size.width(), size.height());
+    VBitmap  layerBitmap = cache.make_surface(size.width(), size.height(),
+                                              painter->format());
     layerPainter.begin(&layerBitmap);
     layer->render(&layerPainter, mask, matteRle, cache);
 
@@ -874,7 +1292,7 @@ bool renderer::Group::resolveKeyPath(LOTKeyPath &keyPath, uint32_t depth,
         if (!keyPath.skip(mModel.name())) {
             if (keyPath.fullyResolvesTo(mModel.name(), depth) &&
                 transformProp(value.property())) {
-                mModel.filter()->addValue(value);
+                resolved(keyPath, mModel.filter(), value);
             }
         }
     }
@@ -897,7 +1315,7 @@ bool renderer::Fill::resolveKeyPath(LOTKeyPath &keyPath, uint32_t depth,
 
     if (keyPath.fullyResolvesTo(mModel.name(), depth) &&
         fillProp(value.property())) {
-        mModel.filter()->addValue(value);
+        resolved(keyPath, mModel.filter(), value);
         return true;
     }
     return false;
@@ -912,7 +1330,7 @@ bool renderer::Stroke::resolveKeyPath(LOTKeyPath &keyPath, uint32_t depth,
 
     if (keyPath.fullyResolvesTo(mModel.name(), depth) &&
         strokeProp(value.property())) {
-        mModel.filter()->addValue(value);
+        resolved(keyPath, mModel.filter(), value);
         return true;
     }
     return false;
@@ -23,6 +23,7 @@
 #ifndef LOTTIEITEM_H
 #define LOTTIEITEM_H
 
+#include <map>
 #include <memory>
 #include <sstream>
 
@@ -88,6 +89,10 @@ enum class DirtyFlagBit : uint8_t {
 };
 typedef vFlag<DirtyFlagBit> DirtyFlag;
 
+// the number of horizontal bands a frame is drawn in, each band on its own
+// thread. 0 and 1 draw the frame on the calling thread.
+void configureRenderBands(size_t count);
+
 class SurfaceCache {
 public:
     SurfaceCache() { mCache.reserve(10); }
@@ -187,6 +192,43 @@ public:
 
 class Layer;
 
+/*
+ * The draw calls of a frame. Two frames look the same wherever their calls
+ * are the same, so only the bounds of the calls that differ are drawn again.
+ */
+class DisplayList final : public VPainter::Recorder {
+public:
+    explicit DisplayList(const VSize &size) : mSize(size) {}
+    void drawRle(const VBrush &brush, const VRle &rle,
+                 const VRle *clip) override;
+    void unsupported() override { mSupported = false; }
+    bool supported() const { return mSupported; }
+    // the area that may look different in the frame of other
+    VRect difference(const DisplayList &other) const;
+    // the brushes are only valid until the next update of the composition
+    void draw(VPainter *painter) const;
+
+private:
+    struct Call {
+        VBrush mBrush;
+        VRle   mRle;
+        VRle   mClip;
+        VRect  mBounds;
+        bool   mClipped{false};
+        // gradients and textures are changed in place, their values are kept
+        std::shared_ptr<VGradient> mGradient;
+        VMatrix                    mMatrix;
+        int                        mAlpha{255};
+        const uint8_t *            mTexture{nullptr};
+
+        bool sameAs(const Call &other) const;
+    };
+
+    std::vector<Call> mCalls;
+    VSize             mSize;
+    bool              mSupported{true};
+};
+
 class Composition {
 public:
     explicit Composition(std::shared_ptr<model::Composition> composition);
@@ -195,9 +237,25 @@ public:
     void  buildRenderTree();
     const LOTLayerNode *renderTree() const;
     bool                render(const rlottie::Surface &surface);
+    VRect               renderPartial(const rlottie::Surface &surface,
+                                      bool keepContent, VRect *changed);
     void                setValue(const std::string &keypath, LOTVariant &value);
+    size_t              resolveKeyPath(const std::string &keypath,
+                                       LOTVariant &       value);
+    void                setValue(size_t id, LOTVariant &value);
 
 private:
+    struct SurfaceContent {
+        const void *                 mBuffer;
+        std::shared_ptr<DisplayList> mList;
+    };
+    void forgetSurface(const void *buffer);
+    void drawBands(const DisplayList &list, const VRect &area,
+                   const VRect &region, size_t bands);
+
+    // the frames held by the last few buffers of renderPartial()
+    std::vector<SurfaceContent>         mSurfaceContents;
+    std::shared_ptr<DisplayList>        mLastList;
     SurfaceCache                        mSurfaceCache;
     VBitmap                             mSurface;
     VMatrix                             mScaleMatrix;
@@ -205,7 +263,12 @@ private:
     std::shared_ptr<model::Composition> mModel;
     Layer *                             mRootLayer{nullptr};
     VArenaAlloc                         mAllocator{2048};
+    // contents of each key path resolved by resolveKeyPath(), by id
+    std::vector<LOTKeyPath::Targets>    mResolvedKeyPaths;
+    std::map<std::pair<std::string, rlottie::Property>, size_t> mResolvedIds;
     int                                 mCurFrameNo;
+    // frames render() draws at once before it records a frame again
+    int                                 mRecordSkips{0};
     bool                                mKeepAspectRatio{true};
 };
 
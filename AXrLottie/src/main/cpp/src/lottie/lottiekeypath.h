@@ -27,8 +27,18 @@
 #include <vector>
 #include "vglobal.h"
 
+namespace rlottie {
+namespace internal {
+namespace model {
+class FilterData;
+}  // namespace model
+}  // namespace internal
+}  // namespace rlottie
+
 class LOTKeyPath {
 public:
+    using Targets = std::vector<rlottie::internal::model::FilterData *>;
+
     LOTKeyPath(const std::string &keyPath);
     bool matches(const std::string &key, uint32_t depth);
     uint32_t nextDepth(const std::string key, uint32_t depth);
@@ -40,6 +50,11 @@ public:
     }
     bool skip(const std::string &key) const { return key == "__"; }
 
+    // when set, the contents the key path resolves to are added to targets
+    // instead of getting the value.
+    void     collect(Targets *targets) { mTargets = targets; }
+    Targets *targets() const { return mTargets; }
+
 private:
     bool   isGlobstar(uint32_t depth) const { return mKeys[depth] == "**"; }
     bool   isGlob(uint32_t depth) const { return mKeys[depth] == "*"; }
@@ -48,6 +63,7 @@ private:
 
 private:
     std::vector<std::string> mKeys;
+    Targets *                mTargets{nullptr};
 };
 
 #endif  // LOTTIEKEYPATH_H
@@ -20,9 +20,11 @@
  * SOFTWARE.
  */
 
+#include <cstdio>
 #include <cstring>
 #include <fstream>
 #include <sstream>
+#include <sys/stat.h>
 
 #include "lottiemodel.h"
 
@@ -30,9 +32,25 @@ using namespace rlottie::internal;
 
 #ifdef LOTTIE_CACHE_SUPPORT
 
+#include <atomic>
 #include <mutex>
+#include <shared_mutex>
 #include <unordered_map>
 
+// estimated memory of a model: the arena blocks, the keyframes and paths
+// (which grow with the source) and the decoded images.
+static size_t footprint(const model::Composition *comp, size_t sourceSize)
+{
+    size_t size = sizeof(model::Composition) + comp->mArenaAlloc.heapSize() +
+                  sourceSize;
+    for (const auto &asset : comp->mAssets) {
+        const auto &bitmap = asset.second->mBitmap;
+        if (!bitmap.valid()) continue;
+        size += bitmap.stride() * bitmap.height();
+    }
+    return size;
+}
+
 class ModelCache {
 public:
     static ModelCache &instance()
@@ -40,43 +58,126 @@ public:
         static ModelCache singleton;
         return singleton;
     }
-    std::shared_ptr<model::Composition> find(const std::string &key)
+    // version identifies the content of the key (e.g. the state of a file),
+    // a model of another version is a miss.
+    std::shared_ptr<model::Composition> find(const std::string &key,
+                                             uint64_t           version = 0)
     {
-        std::lock_guard<std::mutex> guard(mMutex);
+        // lookups only share the lock, the recency is kept in an atomic
+        // stamp so concurrent loaders don't serialize on the cache.
+        std::shared_lock<std::shared_timed_mutex> guard(mMutex);
 
         if (!mcacheSize) return nullptr;
 
         auto search = mHash.find(key);
-
-        return (search != mHash.end()) ? search->second : nullptr;
+        if (search == mHash.end() || search->second.version != version) {
+            mMisses.fetch_add(1, std::memory_order_relaxed);
+            return nullptr;
+        }
+
+        search->second.stamp.store(nextStamp(), std::memory_order_relaxed);
+        mHits.fetch_add(1, std::memory_order_relaxed);
+        return search->second.value;
     }
-    void add(const std::string &key, std::shared_ptr<model::Composition> value)
+    void add(const std::string &key, std::shared_ptr<model::Composition> value,
+             size_t sourceSize, uint64_t version = 0)
     {
-        std::lock_guard<std::mutex> guard(mMutex);
+        size_t size = footprint(value.get(), sourceSize);
 
-        if (!mcacheSize) return;
+        std::unique_lock<std::shared_timed_mutex> guard(mMutex);
 
-        //@TODO just remove the 1st element
-        // not the best of LRU logic
-        if (mcacheSize == mHash.size()) mHash.erase(mHash.cbegin());
+        if (!mcacheSize || (mcacheMemory && size > mcacheMemory)) return;
 
-        mHash[key] = std::move(value);
+        auto search = mHash.find(key);
+        if (search != mHash.end()) {
+            mBytes -= search->second.size;
+            mHash.erase(search);
+        }
+
+        while (!mHash.empty() && (mHash.size() >= mcacheSize ||
+                                  (mcacheMemory && mBytes + size > mcacheMemory)))
+            evict();
+
+        auto &entry = mHash[key];
+        entry.value = std::move(value);
+        entry.size = size;
+        entry.version = version;
+        entry.stamp.store(nextStamp(), std::memory_order_relaxed);
+        mBytes += size;
     }
 
     void configureCacheSize(size_t cacheSize)
     {
-        std::lock_guard<std::mutex> guard(mMutex);
+        std::unique_lock<std::shared_timed_mutex> guard(mMutex);
         mcacheSize = cacheSize;
 
-        if (!mcacheSize) mHash.clear();
+        if (!mcacheSize) {
+            mHash.clear();
+            mBytes = 0;
+        }
+        while (mHash.size() > mcacheSize) evict();
+    }
+
+    void configureCacheMemory(size_t bytes)
+    {
+        std::unique_lock<std::shared_timed_mutex> guard(mMutex);
+        mcacheMemory = bytes;
+
+        while (mcacheMemory && mBytes > mcacheMemory) evict();
+    }
+
+    model::CacheStats stats()
+    {
+        std::shared_lock<std::shared_timed_mutex> guard(mMutex);
+
+        model::CacheStats stats;
+        stats.hits = mHits.load(std::memory_order_relaxed);
+        stats.misses = mMisses.load(std::memory_order_relaxed);
+        stats.evictions = mEvictions;
+        stats.count = mHash.size();
+        stats.bytes = mBytes;
+        return stats;
     }
 
 private:
+    struct Entry {
+        std::shared_ptr<model::Composition> value;
+        size_t                              size{0};
+        uint64_t                            version{0};
+        std::atomic<uint64_t>               stamp{0};
+    };
+
     ModelCache() = default;
 
-    std::unordered_map<std::string, std::shared_ptr<model::Composition>> mHash;
-    std::mutex                                                           mMutex;
-    size_t mcacheSize{10};
+    uint64_t nextStamp()
+    {
+        return mClock.fetch_add(1, std::memory_order_relaxed) + 1;
+    }
+
+    // the cache holds a few dozens of models at most,
+    // a scan is cheaper than keeping a list in order on every lookup.
+    void evict()
+    {
+        auto oldest = mHash.begin();
+        for (auto it = mHash.begin(); it != mHash.end(); ++it) {
+            if (it->second.stamp.load(std::memory_order_relaxed) <
+                oldest->second.stamp.load(std::memory_order_relaxed))
+                oldest = it;
+        }
+        mBytes -= oldest->second.size;
+        mHash.erase(oldest);
+        mEvictions++;
+    }
+
+    std::unordered_map<std::string, Entry> mHash;
+    std::shared_timed_mutex                mMutex;
+    std::atomic<uint64_t>                  mClock{0};
+    std::atomic<size_t>                    mHits{0};
+    std::atomic<size_t>                    mMisses{0};
+    size_t                                 mEvictions{0};
+    size_t                                 mBytes{0};
+    size_t                                 mcacheSize{10};
+    size_t                                 mcacheMemory{32 * 1024 * 1024};
 };
 
 #else
@@ -88,12 +189,17 @@ public:
         static ModelCache singleton;
         return singleton;
     }
-    std::shared_ptr<model::Composition> find(const std::string &)
+    std::shared_ptr<model::Composition> find(const std::string &, uint64_t = 0)
     {
         return nullptr;
     }
-    void add(const std::string &, std::shared_ptr<model::Composition>) {}
+    void add(const std::string &, std::shared_ptr<model::Composition>, size_t,
+             uint64_t = 0)
+    {
+    }
     void configureCacheSize(size_t) {}
+    void configureCacheMemory(size_t) {}
+    model::CacheStats stats() { return {}; }
 };
 
 #endif
@@ -108,40 +214,148 @@ static std::string dirname(const std::string &path)
     return std::string(path, 0, len);
 }
 
+// the images of an animation extracted from an archive are kept in
+// <path>.assets, with the paths they had next to the json in the archive.
+static std::string resourceDir(const std::string &path)
+{
+    std::string assets = path + ".assets";
+    struct stat st;
+    if (stat(assets.c_str(), &st) == 0 && S_ISDIR(st.st_mode))
+        return assets + "/";
+    return dirname(path);
+}
+
 void model::configureModelCacheSize(size_t cacheSize)
 {
     ModelCache::instance().configureCacheSize(cacheSize);
 }
 
+void model::configureModelCacheMemory(size_t bytes)
+{
+    ModelCache::instance().configureCacheMemory(bytes);
+}
+
+model::CacheStats model::modelCacheStats()
+{
+    return ModelCache::instance().stats();
+}
+
+// changes when the file is rewritten or replaced, so the cached model of an
+// updated file (e.g. a revalidated download) isn't used anymore.
+static uint64_t fileVersion(const std::string &path)
+{
+    struct stat st;
+    if (stat(path.c_str(), &st) != 0) return 0;
+    uint64_t version = uint64_t(st.st_mtime);
+    version = version * 31 + uint64_t(st.st_size);
+    version = version * 31 + uint64_t(st.st_ino);
+    return version;
+}
+
+static bool readFile(const std::string &path, std::string &content)
+{
+    std::ifstream f;
+    f.open(path, std::ios::in | std::ios::binary);
+
+    if (!f.is_open()) return false;
+
+    // read the whole file at once instead of growing the string
+    f.seekg(0, std::ios::end);
+    auto size = f.tellg();
+    if (size > 0) {
+        content.resize(size_t(size));
+        f.seekg(0, std::ios::beg);
+        f.read(&content[0], size);
+        content.resize(size_t(f.gcount()));
+    }
+    f.close();
+    return true;
+}
+
+static std::shared_ptr<model::Composition> parseContent(std::string &content,
+                                                        const std::string &path)
+{
+    if (model::isBinary(content.data(), content.size()))
+        return model::deserialize(content.data(), content.size(), 0);
+
+    // the parser stops at the first null character
+    content.resize(strlen(content.c_str()));
+    if (content.empty()) return {};
+
+    return model::parse(const_cast<char *>(content.c_str()), resourceDir(path));
+}
+
 std::shared_ptr<model::Composition> model::loadFromFile(const std::string &path,
                                                         bool cachePolicy)
 {
+    uint64_t version = cachePolicy ? fileVersion(path) : 0;
     if (cachePolicy) {
-        auto obj = ModelCache::instance().find(path);
+        auto obj = ModelCache::instance().find(path, version);
         if (obj) return obj;
     }
 
-    std::ifstream f;
-    f.open(path);
-
-    if (!f.is_open()) {
+    std::string content;
+    if (!readFile(path, content)) {
         vCritical << "failed to open file = " << path.c_str();
         return {};
-    } else {
-        std::string content;
+    }
+    if (content.empty()) return {};
 
-        std::getline(f, content, '\0');
-        f.close();
+    auto obj = parseContent(content, path);
 
-        if (content.empty()) return {};
+    if (obj && cachePolicy)
+        ModelCache::instance().add(path, obj, content.size(), version);
 
-        auto obj = internal::model::parse(const_cast<char *>(content.c_str()),
-                                          dirname(path));
+    return obj;
+}
 
-        if (obj && cachePolicy) ModelCache::instance().add(path, obj);
+std::shared_ptr<model::Composition> model::loadFromFile(
+    const std::string &path, const std::string &binaryPath, bool cachePolicy)
+{
+    uint64_t version = cachePolicy ? fileVersion(path) : 0;
+    if (cachePolicy) {
+        auto obj = ModelCache::instance().find(path, version);
+        if (obj) return obj;
+    }
 
-        return obj;
+    std::string content;
+    if (!readFile(path, content)) {
+        vCritical << "failed to open file = " << path.c_str();
+        return {};
+    }
+    if (content.empty()) return {};
+
+    std::shared_ptr<model::Composition> obj;
+    if (model::isBinary(content.data(), content.size()) || binaryPath.empty()) {
+        obj = parseContent(content, path);
+    } else {
+        // the binary model is used as long as it was made from the same json
+        uint64_t    hash = model::sourceHash(content.data(), content.size());
+        std::string binary;
+        if (readFile(binaryPath, binary))
+            obj = model::deserialize(binary.data(), binary.size(), hash);
+
+        if (!obj) {
+            obj = parseContent(content, path);
+            if (obj && model::serialize(obj.get(), hash, binary)) {
+                // written aside and renamed, readers never see a partial file
+                std::string   temp = binaryPath + ".temp";
+                std::ofstream out(temp, std::ios::out | std::ios::binary |
+                                            std::ios::trunc);
+                out.write(binary.data(), binary.size());
+                out.close();
+                if (out.good())
+                    std::rename(temp.c_str(), binaryPath.c_str());
+                else
+                    std::remove(temp.c_str());
+            }
+        }
     }
+
+    if (obj && cachePolicy)
+        ModelCache::instance().add(path, obj, content.size(), version);
+
+    return obj;
 }
 
 std::shared_ptr<model::Composition> model::loadFromData(
@@ -153,10 +367,15 @@ std::shared_ptr<model::Composition> model::loadFromData(
         if (obj) return obj;
     }
 
-    auto obj = internal::model::parse(const_cast<char *>(jsonData.c_str()),
-                                      std::move(resourcePath));
+    std::shared_ptr<model::Composition> obj;
+    if (model::isBinary(jsonData.data(), jsonData.size()))
+        obj = model::deserialize(jsonData.data(), jsonData.size(), 0);
+    else
+        obj = internal::model::parse(const_cast<char *>(jsonData.c_str()),
+                                     std::move(resourcePath));
 
-    if (obj && cachePolicy) ModelCache::instance().add(key, obj);
+    if (obj && cachePolicy)
+        ModelCache::instance().add(key, obj, jsonData.size());
 
     return obj;
 }
@@ -623,6 +623,15 @@ public:
         if (isStatic()) return impl.mStaticData.mOpacity;
         return impl.mData->opacity(frameNo);
     }
+    const Transform::Data *data() const
+    {
+        return isStatic() ? nullptr : impl.mData;
+    }
+    void setStaticData(VMatrix matrix, float opacity)
+    {
+        setStatic(true);
+        new (&impl.mStaticData) StaticData(std::move(matrix), opacity);
+    }
     Transform(const Transform &) = delete;
     Transform(Transform &&) = delete;
     Transform &operator=(Transform &) = delete;
@@ -1128,9 +1137,25 @@ using ColorFilter = std::function<void(float &, float &, float &)>;
 
 void configureModelCacheSize(size_t cacheSize);
 
+void configureModelCacheMemory(size_t bytes);
+
+struct CacheStats {
+    size_t hits{0};
+    size_t misses{0};
+    size_t evictions{0};
+    size_t count{0};
+    size_t bytes{0};
+};
+
+CacheStats modelCacheStats();
+
 std::shared_ptr<model::Composition> loadFromFile(const std::string &filePath,
                                                  bool cachePolicy);
 
+std::shared_ptr<model::Composition> loadFromFile(const std::string &filePath,
+                                                 const std::string &binaryPath,
+                                                 bool               cachePolicy);
+
 std::shared_ptr<model::Composition> loadFromData(std::string        jsonData,
                                                  const std::string &key,
                                                  std::string resourcePath,
@@ -1143,6 +1168,20 @@ std::shared_ptr<model::Composition> loadFromData(std::string jsonData,
 std::shared_ptr<model::Composition> parse(char *str, std::string dir_path,
                                           ColorFilter filter = {});
 
+/*
+ * Binary model (lottiebinary.cpp)
+ * a compact copy of a parsed composition, so it can be loaded again without parsing the json.
+ */
+bool isBinary(const char *data, size_t size);
+
+uint64_t sourceHash(const char *data, size_t size);
+
+bool serialize(const Composition *comp, uint64_t sourceHash, std::string &out);
+
+// sourceHash 0 accepts the model of any source
+std::shared_ptr<model::Composition> deserialize(const char *data, size_t size,
+                                                uint64_t sourceHash);
+
 }  // namespace model
 
 }  // namespace internal
@@ -68,6 +68,9 @@ public:
 
     ~VArenaAlloc();
 
+    // bytes taken from the heap for the blocks, the inline block is not counted
+    size_t heapSize() const { return fHeapSize; }
+
     template <typename T, typename... Args>
     T* make(Args&&... args) {
         uint32_t size      = ToU32(sizeof(T));
@@ -215,6 +218,7 @@ private:
     // allocated is fFib0 * fFirstHeapAllocationSize. Using 2 ^ n * fFirstHeapAllocationSize
     // had too much slop for Android.
     uint32_t       fFib0 {1}, fFib1 {1};
+    size_t         fHeapSize {0};
 };
 
 // Helper for defining allocators with inline/reserved storage.
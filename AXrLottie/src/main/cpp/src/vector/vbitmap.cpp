@@ -62,6 +62,7 @@ uint8_t VBitmap::Impl::depth(VBitmap::Format format)
         break;
     case VBitmap::Format::ARGB32:
     case VBitmap::Format::ARGB32_Premultiplied:
+    case VBitmap::Format::ABGR32_Premultiplied:
         depth = 32;
         break;
     default:
@@ -77,7 +78,10 @@ void VBitmap::Impl::fill(uint32_t /*pixel*/)
 
 void VBitmap::Impl::updateLuma()
 {
-    if (mFormat != VBitmap::Format::ARGB32_Premultiplied) return;
+    if (mFormat != VBitmap::Format::ARGB32_Premultiplied &&
+        mFormat != VBitmap::Format::ABGR32_Premultiplied)
+        return;
+    const bool swapRB = mFormat == VBitmap::Format::ABGR32_Premultiplied;
     auto dataPtr = data();
     for (uint32_t col = 0; col < mHeight; col++) {
         uint32_t *pixel = (uint32_t *)(dataPtr + mStride * col);
@@ -88,9 +92,9 @@ void VBitmap::Impl::updateLuma()
                 continue;
             }
 
-            int red = vRed(*pixel);
+            int red = swapRB ? vBlue(*pixel) : vRed(*pixel);
             int green = vGreen(*pixel);
-            int blue = vBlue(*pixel);
+            int blue = swapRB ? vRed(*pixel) : vBlue(*pixel);
 
             if (alpha != 255) {
                 // un multiply
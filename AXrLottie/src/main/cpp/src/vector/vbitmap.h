@@ -34,7 +34,8 @@ public:
         Invalid,
         Alpha8,
         ARGB32,
-        ARGB32_Premultiplied
+        ARGB32_Premultiplied,
+        ABGR32_Premultiplied
     };
 
     VBitmap() = default;
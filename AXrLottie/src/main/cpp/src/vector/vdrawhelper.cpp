@@ -41,8 +41,10 @@ void VTextureData::setClip(const VRect &clip)
 class VGradientCache {
 public:
     struct CacheInfo : public VColorTable {
-        inline CacheInfo(VGradientStops s) : stops(std::move(s)) {}
+        inline CacheInfo(VGradientStops s, bool abgr)
+            : stops(std::move(s)), abgr(abgr) {}
         VGradientStops stops;
+        bool           abgr;
     };
     using VCacheData = std::shared_ptr<const CacheInfo>;
     using VCacheKey = int64_t;
@@ -50,8 +52,8 @@ public:
         std::unordered_multimap<VCacheKey, VCacheData>;
 
     bool generateGradientColorTable(const VGradientStops &stops, float alpha,
-                                    uint32_t *colorTable, int size);
-    VCacheData getBuffer(const VGradient &gradient)
+                                    uint32_t *colorTable, int size, bool abgr);
+    VCacheData getBuffer(const VGradient &gradient, bool abgr)
     {
         VCacheKey             hash_val = 0;
         VCacheData            info;
@@ -66,27 +68,29 @@ public:
             size_t count = mCache.count(hash_val);
             if (!count) {
                 // key is not present in the hash
-                info = addCacheElement(hash_val, gradient);
+                info = addCacheElement(hash_val, gradient, abgr);
             } else if (count == 1) {
                 auto search = mCache.find(hash_val);
-                if (search->second->stops == stops) {
+                if (search->second->stops == stops &&
+                    search->second->abgr == abgr) {
                     info = search->second;
                 } else {
                     // didn't find an exact match
-                    info = addCacheElement(hash_val, gradient);
+                    info = addCacheElement(hash_val, gradient, abgr);
                 }
             } else {
                 // we have a multiple data with same key
                 auto range = mCache.equal_range(hash_val);
                 for (auto it = range.first; it != range.second; ++it) {
-                    if (it->second->stops == stops) {
+                    if (it->second->stops == stops &&
+                        it->second->abgr == abgr) {
                         info = it->second;
                         break;
                     }
                 }
                 if (!info) {
                     // didn't find an exact match
-                    info = addCacheElement(hash_val, gradient);
+                    info = addCacheElement(hash_val, gradient, abgr);
                 }
             }
         }
@@ -101,7 +105,8 @@ public:
 
 protected:
     uint32_t       maxCacheSize() const { return 60; }
-    VCacheData addCacheElement(VCacheKey hash_val, const VGradient &gradient)
+    VCacheData addCacheElement(VCacheKey hash_val, const VGradient &gradient,
+                               bool abgr)
     {
         if (mCache.size() == maxCacheSize()) {
             uint32_t count = maxCacheSize() / 10;
@@ -109,10 +114,10 @@ protected:
                 mCache.erase(mCache.begin());
             }
         }
-        auto cache_entry = std::make_shared<CacheInfo>(gradient.mStops);
+        auto cache_entry = std::make_shared<CacheInfo>(gradient.mStops, abgr);
         cache_entry->alpha = generateGradientColorTable(
             gradient.mStops, gradient.alpha(), cache_entry->buffer32,
-            VGradient::colorTableSize);
+            VGradient::colorTableSize, abgr);
         mCache.insert(std::make_pair(hash_val, cache_entry));
         return cache_entry;
     }
@@ -126,7 +131,8 @@ private:
 
 bool VGradientCache::generateGradientColorTable(const VGradientStops &stops,
                                                 float                 opacity,
-                                                uint32_t *colorTable, int size)
+                                                uint32_t *colorTable, int size,
+                                                bool abgr)
 {
     int                  dist, idist, pos = 0;
     size_t               i;
@@ -175,6 +181,11 @@ bool VGradientCache::generateGradientColorTable(const VGradientStops &stops,
 
     // Make sure the last color stop is represented at the end of the table
     colorTable[size - 1] = curColor;
+
+    if (abgr) {
+        for (pos = 0; pos < size; ++pos)
+            colorTable[pos] = vSwapRB(colorTable[pos]);
+    }
     return alpha;
 }
 
@@ -183,6 +194,15 @@ void VRasterBuffer::clear()
     memset(mBuffer, 0, mHeight * mBytesPerLine);
 }
 
+void VRasterBuffer::clear(const VRect &rect)
+{
+    VRect area = rect & VRect(0, 0, int(mWidth), int(mHeight));
+    if (area.empty()) return;
+
+    for (int y = area.top(); y < area.bottom(); y++)
+        memset(pixelRef(area.left(), y), 0, size_t(area.width()) * mBytesPerPixel);
+}
+
 VBitmap::Format VRasterBuffer::prepare(const VBitmap *image)
 {
     mBuffer = image->data();
@@ -581,7 +601,8 @@ static void blend_image_xform(size_t size, const VRle::Span *array,
     const auto &src = data->texture();
 
     if (src.format() != VBitmap::Format::ARGB32_Premultiplied &&
-        src.format() != VBitmap::Format::ARGB32) {
+        src.format() != VBitmap::Format::ARGB32 &&
+        src.format() != VBitmap::Format::ABGR32_Premultiplied) {
         //@TODO other formats not yet handled.
         return;
     }
@@ -601,6 +622,9 @@ static void blend_image_xform(size_t size, const VRle::Span *array,
                 const int   py = clamp(int(fy), src.top, src.bottom);
                 scratch[i] = src.pixel(px, py);
             }
+            if (src.swapRB) {
+                for (size_t i = 0; i < len; i++) scratch[i] = vSwapRB(scratch[i]);
+            }
             op.func(data->buffer((int)x, (int)y), (int)len, scratch, coverage);
         });
 }
@@ -611,12 +635,14 @@ static void blend_image(size_t size, const VRle::Span *array, void *userData)
     const auto &src = data->texture();
 
     if (src.format() != VBitmap::Format::ARGB32_Premultiplied &&
-        src.format() != VBitmap::Format::ARGB32) {
+        src.format() != VBitmap::Format::ARGB32 &&
+        src.format() != VBitmap::Format::ABGR32_Premultiplied) {
         //@TODO other formats not yet handled.
         return;
     }
 
     Operator op = getOperator(data);
+    std::array<uint32_t, 2048> buf;
 
     for (size_t i = 0; i < size; i++) {
         const auto &span = array[i];
@@ -639,8 +665,23 @@ static void blend_image(size_t size, const VRle::Span *array, void *userData)
         // intersecting right edge of image
         if (sx + length > int(src.width())) length = (int)src.width() - sx;
 
-        op.func(data->buffer(x, span.y), length, src.pixelRef(sx, sy),
-                alpha_mul(span.coverage, src.alpha()));
+        if (!src.swapRB) {
+            op.func(data->buffer(x, span.y), length, src.pixelRef(sx, sy),
+                    alpha_mul(span.coverage, src.alpha()));
+            continue;
+        }
+
+        // texture is in the other byte order, convert it chunk by chunk.
+        while (length > 0) {
+            int       l = std::min(length, int(buf.size()));
+            uint32_t *s = src.pixelRef(sx, sy);
+            for (int j = 0; j < l; j++) buf[j] = vSwapRB(s[j]);
+            op.func(data->buffer(x, span.y), l, buf.data(),
+                    alpha_mul(span.coverage, src.alpha()));
+            x += l;
+            sx += l;
+            length -= l;
+        }
     }
 }
 
@@ -655,10 +696,12 @@ void VSpanData::setup(const VBrush &brush, BlendMode /*mode*/, int /*alpha*/)
     case VBrush::Type::Solid:
         mType = VSpanData::Type::Solid;
         mSolid = brush.mColor.premulARGB();
+        if (vIsABGR(mRasterBuffer->format())) mSolid = vSwapRB(mSolid);
         break;
     case VBrush::Type::LinearGradient: {
         mType = VSpanData::Type::LinearGradient;
-        mColorTable = VGradientCache::instance().getBuffer(*brush.mGradient);
+        mColorTable = VGradientCache::instance().getBuffer(
+            *brush.mGradient, vIsABGR(mRasterBuffer->format()));
         mGradient.mColorTable = mColorTable->buffer32;
         mGradient.mColorTableAlpha = mColorTable->alpha;
         mGradient.linear.x1 = brush.mGradient->linear.x1;
@@ -671,7 +714,8 @@ void VSpanData::setup(const VBrush &brush, BlendMode /*mode*/, int /*alpha*/)
     }
     case VBrush::Type::RadialGradient: {
         mType = VSpanData::Type::RadialGradient;
-        mColorTable = VGradientCache::instance().getBuffer(*brush.mGradient);
+        mColorTable = VGradientCache::instance().getBuffer(
+            *brush.mGradient, vIsABGR(mRasterBuffer->format()));
         mGradient.mColorTable = mColorTable->buffer32;
         mGradient.mColorTableAlpha = mColorTable->alpha;
         mGradient.radial.cx = brush.mGradient->radial.cx;
@@ -723,6 +767,8 @@ void VSpanData::initTexture(const VBitmap *bitmap, int alpha,
 {
     mType = VSpanData::Type::Texture;
     mTexture.prepare(bitmap);
+    mTexture.swapRB =
+        vIsABGR(mTexture.format()) != vIsABGR(mRasterBuffer->format());
     mTexture.setClip(sourceRect);
     mTexture.setAlpha(alpha);
     updateSpanFunc();
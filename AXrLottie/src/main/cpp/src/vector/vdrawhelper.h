@@ -124,6 +124,7 @@ class VRasterBuffer {
 public:
     VBitmap::Format prepare(const VBitmap *image);
     void            clear();
+    void            clear(const VRect &rect);
 
     void resetBuffer(int val = 0);
 
@@ -171,6 +172,8 @@ struct VGradientData {
 
 struct VTextureData : public VRasterBuffer {
     uint32_t pixel(int x, int y) const { return *pixelRef(x, y); };
+    // texture and target have R and B in opposite order
+    bool     swapRB{false};
     uint8_t    alpha() const { return mAlpha; }
     void     setAlpha(uint8_t alpha) { mAlpha = alpha; }
     void     setClip(const VRect &clip);
@@ -256,6 +259,17 @@ inline constexpr int vAlpha(uint32_t c)
     return c >> 24;
 }
 
+// converts between ARGB32 and ABGR32 byte orders.
+inline constexpr uint32_t vSwapRB(uint32_t c)
+{
+    return (c & 0xff00ff00) | ((c >> 16) & 0xff) | ((c & 0xff) << 16);
+}
+
+inline constexpr bool vIsABGR(VBitmap::Format format)
+{
+    return format == VBitmap::Format::ABGR32_Premultiplied;
+}
+
 static inline uint32_t interpolate_pixel(uint32_t x, uint32_t a, uint32_t y, uint32_t b)
 {
     uint32_t t = (x & 0xff00ff) * a + (y & 0xff00ff) * b;
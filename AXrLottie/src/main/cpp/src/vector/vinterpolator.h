@@ -47,6 +47,9 @@ public:
 
     float value(float aX) const;
 
+    VPointF p1() const { return {mX1, mY1}; }
+    VPointF p2() const { return {mX2, mY2}; }
+
     void GetSplineDerivativeValues(float aX, float& aDX, float& aDY) const;
 
 private:
@@ -30,21 +30,39 @@ V_BEGIN_NAMESPACE
 void VPainter::drawRle(const VPoint &, const VRle &rle)
 {
     if (rle.empty()) return;
+
+    if (mRecorder) {
+        mRecorder->drawRle(mBrush, rle, nullptr);
+        return;
+    }
     // mSpanData.updateSpanFunc();
 
     if (!mSpanData.mUnclippedBlendFunc) return;
 
     // do draw after applying clip.
-    rle.intersect(mSpanData.clipRect(), mSpanData.mUnclippedBlendFunc,
-                  &mSpanData);
+    VRect clipRect = mSpanData.clipRect();
+    if (mClipped) clipRect = clipRect & mClipRect;
+    rle.intersect(clipRect, mSpanData.mUnclippedBlendFunc, &mSpanData);
 }
 
 void VPainter::drawRle(const VRle &rle, const VRle &clip)
 {
     if (rle.empty() || clip.empty()) return;
 
+    if (mRecorder) {
+        mRecorder->drawRle(mBrush, rle, &clip);
+        return;
+    }
+
     if (!mSpanData.mUnclippedBlendFunc) return;
 
+    if (mClipped && !mClipRect.contains(clip.boundingRect())) {
+        VRect bounds = rle.boundingRect() & clip.boundingRect();
+        if (!mClipRect.intersects(bounds)) return;
+        rle.intersect(mClipRect, clip, mSpanData.mUnclippedBlendFunc,
+                      &mSpanData);
+        return;
+    }
     rle.intersect(clip, mSpanData.mUnclippedBlendFunc, &mSpanData);
 }
 
@@ -104,6 +122,15 @@ bool VPainter::begin(VBitmap *buffer)
     mBuffer.clear();
     return true;
 }
+
+bool VPainter::begin(VBitmap *buffer, const VRect &area)
+{
+    mBuffer.prepare(buffer);
+    mSpanData.init(&mBuffer);
+    mBuffer.clear(area);
+    return true;
+}
+
 void VPainter::end() {}
 
 void VPainter::setDrawRegion(const VRect &region)
@@ -113,14 +140,23 @@ void VPainter::setDrawRegion(const VRect &region)
 
 void VPainter::setBrush(const VBrush &brush)
 {
-    mSpanData.setup(brush);
+    mBrush = brush;
+    // a recording painter has no buffer to set the brush up for
+    if (!mRecorder) mSpanData.setup(brush);
 }
 
 void VPainter::setBlendMode(BlendMode mode)
 {
+    if (mRecorder && mode != BlendMode::SrcOver) mRecorder->unsupported();
     mSpanData.mBlendMode = mode;
 }
 
+void VPainter::setClipRect(const VRect &rect)
+{
+    mClipRect = rect;
+    mClipped = true;
+}
+
 VRect VPainter::clipBoundingRect() const
 {
     return mSpanData.clipRect();
@@ -140,6 +176,11 @@ void VPainter::drawBitmap(const VRect &target, const VBitmap &bitmap,
 {
     if (!bitmap.valid()) return;
 
+    if (mRecorder) {
+        mRecorder->unsupported();
+        return;
+    }
+
     // clear any existing brush data.
     setBrush(VBrush());
 
@@ -33,16 +33,33 @@ V_BEGIN_NAMESPACE
 class VBitmap;
 class VPainter {
 public:
+    // receives the draw calls of a painter instead of its buffer
+    class Recorder {
+    public:
+        virtual ~Recorder() = default;
+        virtual void drawRle(const VBrush &brush, const VRle &rle,
+                             const VRle *clip) = 0;
+        // something was drawn that can't be recorded (a bitmap or a blend mode)
+        virtual void unsupported() = 0;
+    };
+
     VPainter() = default;
     explicit VPainter(VBitmap *buffer);
     bool  begin(VBitmap *buffer);
+    // like begin() but only area (in buffer coordinates) is cleared
+    bool  begin(VBitmap *buffer, const VRect &area);
     void  end();
     void  setDrawRegion(const VRect &region); // sub surface rendering area.
     void  setBrush(const VBrush &brush);
     void  setBlendMode(BlendMode mode);
+    // draws only inside rect (in draw region coordinates)
+    void  setClipRect(const VRect &rect);
+    void  setRecorder(Recorder *recorder) { mRecorder = recorder; }
+    Recorder *recorder() const { return mRecorder; }
     void  drawRle(const VPoint &pos, const VRle &rle);
     void  drawRle(const VRle &rle, const VRle &clip);
     VRect clipBoundingRect() const;
+    VBitmap::Format format() const { return mBuffer.format(); }
 
     void  drawBitmap(const VPoint &point, const VBitmap &bitmap, const VRect &source, uint8_t const_alpha = 255);
     void  drawBitmap(const VRect &target, const VBitmap &bitmap, const VRect &source, uint8_t const_alpha = 255);
@@ -53,6 +70,10 @@ private:
                                const VRect &source, uint8_t const_alpha);
     VRasterBuffer mBuffer;
     VSpanData     mSpanData;
+    VBrush        mBrush;
+    Recorder *    mRecorder{nullptr};
+    VRect         mClipRect;
+    bool          mClipped{false};
 };
 
 V_END_NAMESPACE
@@ -20,6 +20,8 @@
  * SOFTWARE.
  */
 #include "vraster.h"
+#include <algorithm>
+#include <atomic>
 #include <climits>
 #include <cstring>
 #include <memory>
@@ -311,6 +313,79 @@ private:
     bool                    _pending{false};
 };
 
+class RleCache {
+public:
+    static RleCache &instance()
+    {
+        static RleCache singleton;
+        return singleton;
+    }
+
+    // the limit is checked when an entry is added, entries that would go
+    // over it aren't kept and are rasterized again on the next request.
+    bool acquire(size_t bytes)
+    {
+        size_t limit = mLimit.load(std::memory_order_relaxed);
+        size_t total = mBytes.fetch_add(bytes, std::memory_order_relaxed) + bytes;
+        if (limit && total > limit) {
+            mBytes.fetch_sub(bytes, std::memory_order_relaxed);
+            return false;
+        }
+        mCount.fetch_add(1, std::memory_order_relaxed);
+        return true;
+    }
+
+    void release(size_t bytes)
+    {
+        mBytes.fetch_sub(bytes, std::memory_order_relaxed);
+        mCount.fetch_sub(1, std::memory_order_relaxed);
+    }
+
+    void hit() { mHits.fetch_add(1, std::memory_order_relaxed); }
+    void miss() { mMisses.fetch_add(1, std::memory_order_relaxed); }
+
+    void configureMemory(size_t bytes)
+    {
+        mLimit.store(bytes, std::memory_order_relaxed);
+    }
+
+    VRleCacheStats stats() const
+    {
+        VRleCacheStats stats;
+        stats.hits = mHits.load(std::memory_order_relaxed);
+        stats.misses = mMisses.load(std::memory_order_relaxed);
+        stats.count = mCount.load(std::memory_order_relaxed);
+        stats.bytes = mBytes.load(std::memory_order_relaxed);
+        return stats;
+    }
+
+private:
+    RleCache() = default;
+
+    std::atomic<size_t> mHits{0};
+    std::atomic<size_t> mMisses{0};
+    std::atomic<size_t> mCount{0};
+    std::atomic<size_t> mBytes{0};
+    std::atomic<size_t> mLimit{16 * 1024 * 1024};
+};
+
+static bool samePath(const VPath &a, const VPath &b)
+{
+    if (a.segments() != b.segments()) return false;
+    const auto &ae = a.elements();
+    const auto &be = b.elements();
+    if (ae.size() != be.size() ||
+        !std::equal(ae.begin(), ae.end(), be.begin()))
+        return false;
+    const auto &ap = a.points();
+    const auto &bp = b.points();
+    if (ap.size() != bp.size()) return false;
+    for (size_t i = 0; i < ap.size(); i++) {
+        if (ap[i].x() != bp[i].x() || ap[i].y() != bp[i].y()) return false;
+    }
+    return true;
+}
+
 struct VRleTask {
     SharedRle mRle;
     VPath     mPath;
@@ -321,12 +396,43 @@ struct VRleTask {
     CapStyle  mCap;
     JoinStyle mJoin;
     bool      mGenerateStroke;
+    bool      mCached{false};
+    size_t    mCachedBytes{0};
+
+    ~VRleTask() { invalidate(); }
 
     VRle &rle() { return mRle.get(); }
 
+    // must only be called once the pending request is done.
+    void invalidate()
+    {
+        if (!mCached) return;
+        RleCache::instance().release(mCachedBytes);
+        mCached = false;
+        mCachedBytes = 0;
+        mPath = VPath();
+    }
+
+    bool matches(const VPath &path, FillRule fillRule, const VRect &clip)
+    {
+        mRle.wait();
+        return mCached && !mGenerateStroke && mFillRule == fillRule &&
+               mClip == clip && samePath(mPath, path);
+    }
+
+    bool matches(const VPath &path, CapStyle cap, JoinStyle join, float width,
+                 float miterLimit, const VRect &clip)
+    {
+        mRle.wait();
+        return mCached && mGenerateStroke && mCap == cap && mJoin == join &&
+               mStrokeWidth == width && mMiterLimit == miterLimit &&
+               mClip == clip && samePath(mPath, path);
+    }
+
     void update(VPath path, FillRule fillRule, const VRect &clip)
     {
         mRle.reset();
+        invalidate();
         mPath = std::move(path);
         mFillRule = fillRule;
         mClip = clip;
@@ -337,6 +443,7 @@ struct VRleTask {
                 float miterLimit, const VRect &clip)
     {
         mRle.reset();
+        invalidate();
         mPath = std::move(path);
         mCap = cap;
         mJoin = join;
@@ -407,7 +514,15 @@ struct VRleTask {
 
         render(outRef);
 
-        mPath = VPath();
+        // keep the path to recognize the same request on the next frame.
+        size_t bytes = mPath.points().size() * sizeof(VPointF) +
+                       mPath.elements().size() * sizeof(VPath::Element) +
+                       mRle.unsafe().size() * sizeof(VRle::Span);
+        mCached = RleCache::instance().acquire(bytes);
+        if (mCached)
+            mCachedBytes = bytes;
+        else
+            mPath = VPath();
 
         mRle.notify();
     }
@@ -520,6 +635,16 @@ struct VRasterizer::VRasterizerImpl {
     VRleTask &task() { return mTask; }
 };
 
+void VRasterizer::configureCacheMemory(size_t bytes)
+{
+    RleCache::instance().configureMemory(bytes);
+}
+
+VRleCacheStats VRasterizer::cacheStats()
+{
+    return RleCache::instance().stats();
+}
+
 VRle VRasterizer::rle()
 {
     if (!d) return VRle();
@@ -542,8 +667,14 @@ void VRasterizer::rasterize(VPath path, FillRule fillRule, const VRect &clip)
     init();
     if (path.empty()) {
         d->rle().reset();
+        d->task().invalidate();
+        return;
+    }
+    if (d->task().matches(path, fillRule, clip)) {
+        RleCache::instance().hit();
         return;
     }
+    RleCache::instance().miss();
     d->task().update(std::move(path), fillRule, clip);
     updateRequest();
 }
@@ -554,8 +685,14 @@ void VRasterizer::rasterize(VPath path, CapStyle cap, JoinStyle join,
     init();
     if (path.empty() || vIsZero(width)) {
         d->rle().reset();
+        d->task().invalidate();
+        return;
+    }
+    if (d->task().matches(path, cap, join, width, miterLimit, clip)) {
+        RleCache::instance().hit();
         return;
     }
+    RleCache::instance().miss();
     d->task().update(std::move(path), cap, join, width, miterLimit, clip);
     updateRequest();
 }
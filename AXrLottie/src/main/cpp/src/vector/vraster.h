@@ -31,9 +31,22 @@ V_BEGIN_NAMESPACE
 class VPath;
 class VRle;
 
+// an rle is kept with the request it was generated from, a request equal to
+// the previous one (same path, style and clip) reuses it instead of
+// rasterizing the path again.
+struct VRleCacheStats {
+    size_t hits{0};
+    size_t misses{0};
+    size_t count{0};
+    size_t bytes{0};
+};
+
 class VRasterizer
 {
 public:
+    static void           configureCacheMemory(size_t bytes);
+    static VRleCacheStats cacheStats();
+
     void rasterize(VPath path, FillRule fillRule = FillRule::Winding, const VRect &clip = VRect());
     void rasterize(VPath path, CapStyle cap, JoinStyle join, float width,
                    float miterLimit, const VRect &clip = VRect());
@@ -41,6 +41,16 @@ static size_t _opGeneric(rle_view &a, rle_view &b, Result &result,
 static size_t _opIntersect(const VRect &, rle_view &, Result &);
 static size_t _opIntersect(rle_view &, rle_view &, Result &);
 
+// the spans are sorted by row, so the rows in [top, bottom) are found
+// without walking the ones above them.
+static rle_view rowRange(rle_view v, int top, int bottom)
+{
+    auto less = [](const VRle::Span &span, int y) { return span.y < y; };
+    auto first = std::lower_bound(v.data(), v.data() + v.size(), top, less);
+    auto last = std::lower_bound(first, v.data() + v.size(), bottom, less);
+    return {first, size_t(last - first)};
+}
+
 static inline uint8_t divBy255(int x)
 {
     return (x + (x >> 8) + 0x80) >> 8;
@@ -159,7 +169,7 @@ void VRle::Data::opIntersect(const VRect &r, VRle::VRleSpanCb cb,
         return;
     }
 
-    auto   obj = view();
+    auto   obj = rowRange(view(), r.top(), r.bottom());
     Result result;
     // run till all the spans are processed
     while (obj.size()) {
@@ -300,6 +310,7 @@ void VRle::Data::opIntersect(VRle::View a, VRle::View b)
         if (count) copy(result.data(), count, mSpans);
     }
 
+    mBboxDirty = true;
     updateBbox();
 }
 
@@ -725,6 +736,25 @@ VRle operator-(const VRect &rect, const VRle &o)
     return result;
 }
 
+bool VRle::operator==(const VRle &o) const
+{
+    const VRle::Data &a = d.read();
+    const VRle::Data &b = o.d.read();
+    // an rle that wasn't generated again is shared
+    if (&a == &b) return true;
+    if (a.mSpans.size() != b.mSpans.size() || a.mOffset != b.mOffset)
+        return false;
+
+    for (size_t i = 0; i < a.mSpans.size(); i++) {
+        const VRle::Span &s1 = a.mSpans[i];
+        const VRle::Span &s2 = b.mSpans[i];
+        if (s1.x != s2.x || s1.y != s2.y || s1.len != s2.len ||
+            s1.coverage != s2.coverage)
+            return false;
+    }
+    return true;
+}
+
 VRle operator&(const VRect &rect, const VRle &o)
 {
     if (rect.empty() || o.empty()) return {};
@@ -745,4 +775,34 @@ void VRle::intersect(const VRle &clip, VRleSpanCb cb, void *userData) const
     _opIntersect(d.read().view(), clip.d.read().view(), cb, userData);
 }
 
+void VRle::intersect(const VRect &r, const VRle &clip, VRleSpanCb cb,
+                     void *userData) const
+{
+    if (empty() || clip.empty() || !cb) return;
+
+    auto a = rowRange(d.read().view(), r.top(), r.bottom());
+    auto b = rowRange(clip.d.read().view(), r.top(), r.bottom());
+    if (!a.size() || !b.size()) return;
+
+    // the result is inside the columns of this rle
+    VRect bbox = boundingRect();
+    bool  inside = r.left() <= bbox.left() && r.right() >= bbox.right();
+
+    _opIntersectPrepare(a, b);
+    Result result, clipped;
+    while (a.size()) {
+        auto count = _opIntersect(a, b, result);
+        if (!count) continue;
+        if (inside) {
+            cb(count, result.data(), userData);
+            continue;
+        }
+        rle_view spans(result.data(), count);
+        while (spans.size()) {
+            auto n = _opIntersect(r, spans, clipped);
+            if (n) cb(n, clipped.data(), userData);
+        }
+    }
+}
+
 V_END_NAMESPACE
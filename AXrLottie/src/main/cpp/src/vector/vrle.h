@@ -42,6 +42,7 @@ public:
     using VRleSpanCb = void (*)(size_t count, const VRle::Span *spans,
                                 void *userData);
     bool  empty() const { return d->empty(); }
+    size_t size() const { return d->mSpans.size(); }
     VRect boundingRect() const { return d->bbox(); }
     void  setBoundingRect(const VRect &bbox) { d->setBbox(bbox); }
     void  addSpan(const VRle::Span *span, size_t count)
@@ -56,12 +57,17 @@ public:
 
     void intersect(const VRect &r, VRleSpanCb cb, void *userData) const;
     void intersect(const VRle &rle, VRleSpanCb cb, void *userData) const;
+    // the spans inside both the rect and the clip rle
+    void intersect(const VRect &r, const VRle &clip, VRleSpanCb cb,
+                   void *userData) const;
 
     void operator&=(const VRle &o);
     VRle operator&(const VRle &o) const;
     VRle operator-(const VRle &o) const;
     VRle operator+(const VRle &o) const { return opGeneric(o, Data::Op::Add); }
     VRle operator^(const VRle &o) const { return opGeneric(o, Data::Op::Xor); }
+    bool operator==(const VRle &o) const;
+    bool operator!=(const VRle &o) const { return !(*this == o); }
 
     friend VRle operator-(const VRect &rect, const VRle &o);
     friend VRle operator&(const VRect &rect, const VRle &o);
@@ -26,18 +26,22 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.aghajari.rlottie.network.AXrLottieNetworkFetcher;
+import com.aghajari.rlottie.network.AXrLottieTask;
 import com.aghajari.rlottie.network.AXrLottieTaskCache;
+import com.aghajari.rlottie.network.AXrLottieTaskExecutor;
 import com.aghajari.rlottie.network.AXrLottieTaskFactory;
 import com.aghajari.rlottie.network.AXrNetworkFetcher;
 import com.aghajari.rlottie.network.AXrSimpleNetworkFetcher;
 import com.aghajari.rlottie.extension.AXrFileExtension;
 import com.aghajari.rlottie.extension.JsonFileExtension;
+import com.aghajari.rlottie.extension.LottieBinFileExtension;
 import com.aghajari.rlottie.extension.ZipFileExtension;
 import com.getkeepsafe.relinker.ReLinker;
 
 import java.io.File;
 import java.io.InputStream;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -66,13 +70,18 @@ public class AXrLottie {
     @Nullable
     private static AXrLottieOptions defaultOptions = null;
 
+    @Nullable
+    private static volatile AXrLottieMetricsListener metricsListener = null;
+
     public static void init(Context context) {
         ReLinker.loadLibrary(context, "jlottie");
         AXrLottie.applicationContext = context.getApplicationContext();
         loadScreenRefreshRate(context);
+        applicationContext.registerComponentCallbacks(AXrLottieBitmapPool.getInstance());
 
         addFileExtension(ZipFileExtension.ZIP);
         addFileExtension(JsonFileExtension.JSON);
+        addFileExtension(LottieBinFileExtension.LOTTIEBIN);
     }
 
     public static Map<String, AXrFileExtension> getSupportedFileExtensions() {
@@ -91,6 +100,152 @@ public class AXrLottie {
         AXrLottieNative.configureModelCacheSize(cacheSize);
     }
 
+    /**
+     * Set the maximum estimated memory (in bytes) of the parsed animations kept by the native model cache,
+     * the least recently used ones are removed first.
+     * 0 removes the limit, Default: 32MB
+     */
+    public static void configureModelCacheMemory(long maxSize) {
+        AXrLottieNative.configureModelCacheMemory(Math.max(maxSize, 0));
+    }
+
+    /**
+     * @return a snapshot of the native model cache counters
+     */
+    public static AXrLottieModelCacheStats getModelCacheStats() {
+        long[] stats = new long[5];
+        AXrLottieNative.getModelCacheStats(stats);
+        return new AXrLottieModelCacheStats(stats[0], stats[1], stats[2], (int) stats[3], stats[4]);
+    }
+
+    /**
+     * Set the maximum memory (in bytes) kept by the native rle cache.
+     * The rasterized shapes, masks and mattes are kept with their paths,
+     * so the ones that didn't change since the previous frame aren't rasterized again.
+     * 0 removes the limit, Default: 16MB
+     */
+    public static void configureRleCacheMemory(long maxSize) {
+        AXrLottieNative.configureRleCacheMemory(Math.max(maxSize, 0));
+    }
+
+    /**
+     * @return a snapshot of the native rle cache counters
+     */
+    public static AXrLottieRleCacheStats getRleCacheStats() {
+        long[] stats = new long[4];
+        AXrLottieNative.getRleCacheStats(stats);
+        return new AXrLottieRleCacheStats(stats[0], stats[1], (int) stats[2], stats[3]);
+    }
+
+    /**
+     * Set the number of threads that render and compress frames of a single animation
+     * while its cache is being generated.
+     * 0 (default) uses the available cores, up to 4.
+     */
+    public static void setCacheWorkersCount(int count) {
+        AXrLottieNative.configureCacheWorkers(Math.max(count, 0));
+    }
+
+    /**
+     * Set how often frames caches store a frame on its own (a key frame).
+     * Frames between key frames are stored as their difference to the frame before them
+     * when that is smaller, which makes caches of animations that change little between frames
+     * a lot smaller, but a frame that isn't played in order is decoded from the key frame before it.
+     * 1 (default) stores every frame on its own, 16 is a good trade-off. Caches that are already
+     * created keep their encoding.
+     */
+    public static void setFramesCacheKeyFrameInterval(int interval) {
+        AXrLottieNative.configureCacheKeyFrames(Math.max(interval, 1));
+    }
+
+    /**
+     * Set the number of horizontal bands a frame is drawn in, each band is drawn on its own thread.
+     * This lowers the time taken by a single frame of big (e.g. full-screen) animations.
+     * Bands are at least 64 pixels high and frames with mattes are drawn on a single thread.
+     * 1 (default) draws the frame on a single thread.
+     */
+    public static void setRenderBandsCount(int count) {
+        AXrLottieNative.configureRenderBands(Math.max(count, 1));
+    }
+
+    /**
+     * Set the maximum number of animations whose caches can be generated at the same time.
+     * Default: 2
+     */
+    public static void setMaxConcurrentCacheGenerations(int count) {
+        AXrLottieDrawable.setCacheGenerateQueueSize(count);
+    }
+
+    /**
+     * Downloads, parses and renders the first frame of the animations (and creates their
+     * frames caches if enabled) in the background, before their drawables are built.
+     *
+     * @see AXrLottiePrefetcher
+     */
+    public static void prefetch(@NonNull List<AXrLottiePrefetcher.Request> requests,
+                                @Nullable AXrLottiePrefetcher.OnPrefetchListener listener) {
+        AXrLottiePrefetcher.getInstance().prefetch(requests, listener);
+    }
+
+    public static void prefetch(@NonNull AXrLottiePrefetcher.Request request,
+                                @Nullable AXrLottiePrefetcher.OnPrefetchListener listener) {
+        AXrLottiePrefetcher.getInstance().prefetch(request, listener);
+    }
+
+    /**
+     * Set the maximum number of prefetched animations that are loaded at the same time.
+     * Default: {@value AXrLottiePrefetcher#DEFAULT_POOL_SIZE}
+     */
+    public static void setMaxConcurrentPrefetches(int count) {
+        AXrLottiePrefetcher.getInstance().setPoolSize(count);
+    }
+
+    /**
+     * Set the maximum size (in bytes) of decoded frames shared between drawables
+     * that play the same animation at the same size.
+     *
+     * @see AXrLottieFrameStore
+     */
+    public static void setFrameStoreSize(int maxSize) {
+        AXrLottieFrameStore.getInstance().setMaxSize(maxSize);
+    }
+
+    public static AXrLottieFrameStore getFrameStore() {
+        return AXrLottieFrameStore.getInstance();
+    }
+
+    /**
+     * Set the maximum size (in bytes) of the frame buffers kept for reuse.
+     *
+     * @see AXrLottieBitmapPool
+     */
+    public static void setBitmapPoolSize(long maxSize) {
+        AXrLottieBitmapPool.getInstance().setMaxSize(maxSize);
+    }
+
+    public static AXrLottieBitmapPool getBitmapPool() {
+        return AXrLottieBitmapPool.getInstance();
+    }
+
+    /**
+     * Set a listener that receives the timings of the decoded frames, the loads,
+     * the frames caches, the downloads and the tasks, null (default) disables the measurements.
+     *
+     * @see AXrLottieMetrics
+     */
+    public static void setMetricsListener(@Nullable AXrLottieMetricsListener listener) {
+        metricsListener = listener;
+    }
+
+    @Nullable
+    public static AXrLottieMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    public static AXrLottieFrameScheduler getFrameScheduler() {
+        return AXrLottieFrameScheduler.getInstance();
+    }
+
     @Nullable
     public static AXrLottieOptions getDefaultOptions() {
         return defaultOptions;
@@ -127,6 +282,16 @@ public class AXrLottie {
         AXrLottie.networkFetcher = new AXrNetworkFetcher(networkFetcher != null ? networkFetcher : new AXrSimpleNetworkFetcher());
     }
 
+    /**
+     * Set the maximum number of animations downloaded at the same time,
+     * the others wait in the queue by their priority.
+     * Default: {@value AXrLottieTaskExecutor#DEFAULT_POOL_SIZE}
+     */
+    public static void setMaxConcurrentDownloads(int count) {
+        if (AXrLottieTask.EXECUTOR instanceof AXrLottieTaskExecutor)
+            ((AXrLottieTaskExecutor) AXrLottieTask.EXECUTOR).setPoolSize(count);
+    }
+
     /**
      * Provide your own network cache directory.
      * By default, animations will be saved in your application's cacheDir/lottie_network.
@@ -163,6 +328,43 @@ public class AXrLottie {
         AXrLottieTaskCache.getInstance().resize(cacheSize);
     }
 
+    /**
+     * Set the maximum size (in bytes) of the downloaded animations kept on disk,
+     * the least recently used ones are removed first.
+     * 0 disables the limit, Default: 50MB
+     */
+    public static void setMaxNetworkDiskCacheSize(long maxSize) {
+        getLottieCacheManager().setMaxNetworkCacheSize(maxSize);
+    }
+
+    /**
+     * Set the maximum size (in bytes) of the local animations cached on disk.
+     * 0 disables the limit, Default: 50MB
+     */
+    public static void setMaxLocalDiskCacheSize(long maxSize) {
+        getLottieCacheManager().setMaxLocalCacheSize(maxSize);
+    }
+
+    /**
+     * Set the maximum size (in bytes) of each directory where the frames of the animations are cached.
+     * 0 disables the limit, Default: 200MB
+     */
+    public static void setMaxFramesDiskCacheSize(long maxSize) {
+        getLottieCacheManager().setMaxFramesCacheSize(maxSize);
+    }
+
+    /**
+     * Set the sizes that frames caches are created at, so an animation shown at several sizes
+     * is rendered and cached once and smaller views are downscaled from the bigger cache.
+     * null disables the buckets (default).
+     *
+     * @see AXrLottieCacheManager#DEFAULT_FRAMES_CACHE_BUCKETS
+     * @see AXrLottieCacheManager#setFramesCacheBuckets(int...)
+     */
+    public static void setFramesCacheBuckets(@Nullable int... buckets) {
+        getLottieCacheManager().setFramesCacheBuckets(buckets);
+    }
+
     public static void clearCache() {
         AXrLottieTaskFactory.clearCache();
         getLottieCacheManager().clear();
@@ -29,6 +29,10 @@ import java.io.File;
 public class AXrLottie2Gif {
     private static DispatchQueuePool runnableQueue = null;
 
+    /**
+     * onFinished is only called once the whole gif was written,
+     * a failed export ends without it and {@link #isSuccessful()} returns false.
+     */
     public interface Lottie2GifListener {
         void onStarted();
 
@@ -42,11 +46,13 @@ public class AXrLottie2Gif {
     private boolean destroyed = false;
     private final Builder builder;
     private int mFrame, mTotalFrame;
+    private long frameStartTime;
 
     private final Lottie2GifListener listener = new Lottie2GifListener() {
         @Override
         public void onStarted() {
             running = true;
+            frameStartTime = System.nanoTime();
             if (builder.listener != null) builder.listener.onStarted();
         }
 
@@ -54,6 +60,12 @@ public class AXrLottie2Gif {
         public void onProgress(int frame, int totalFrame) {
             mFrame = frame;
             mTotalFrame = totalFrame;
+            AXrLottieMetricsListener metrics = AXrLottie.getMetricsListener();
+            if (metrics != null) {
+                long now = System.nanoTime();
+                metrics.onGifFrameEncoded(builder.path, frame, now - frameStartTime);
+                frameStartTime = now;
+            }
             if (builder.listener != null) builder.listener.onProgress(frame, totalFrame);
         }
 
@@ -87,9 +99,18 @@ public class AXrLottie2Gif {
     Runnable converter = new Runnable() {
         @Override
         public void run() {
+            if (builder.threads > 1) {
+                // frames are rendered into native buffers
+                successful = AXrLottieNative.lottie2gif(builder.lottie, null, builder.w, builder.h, builder.w * 4,
+                        builder.bgColor, builder.path.getAbsolutePath(),
+                        builder.delay, builder.bitDepth, builder.dither, builder.frameStart, builder.frameEnd, builder.threads, listener);
+                if (!successful && builder.destroyable) destroy();
+                return;
+            }
+
             if (bitmap == null) {
                 try {
-                    bitmap = Bitmap.createBitmap(builder.w, builder.h, Bitmap.Config.ARGB_8888);
+                    bitmap = AXrLottieBitmapPool.getInstance().get(builder.w, builder.h);
                 } catch (Throwable e) {
                     e.printStackTrace();
                 }
@@ -98,7 +119,9 @@ public class AXrLottie2Gif {
             if (bitmap != null) {
                 successful = AXrLottieNative.lottie2gif(builder.lottie, bitmap, builder.w, builder.h, bitmap.getRowBytes(),
                         builder.bgColor, builder.path.getAbsolutePath(),
-                        builder.delay, builder.bitDepth, builder.dither, builder.frameStart, builder.frameEnd, listener);
+                        builder.delay, builder.bitDepth, builder.dither, builder.frameStart, builder.frameEnd, 1, listener);
+                AXrLottieBitmapPool.getInstance().put(bitmap);
+                bitmap = null;
             } else {
                 successful = false;
             }
@@ -180,6 +203,7 @@ public class AXrLottie2Gif {
         int frameStart = 0;
         int frameEnd = -1;
         boolean cancelable = false;
+        int threads = 1;
 
         public Builder(@NonNull AXrLottieDrawable animation) {
             this.lottie = animation.getNativePtr();
@@ -291,6 +315,18 @@ public class AXrLottie2Gif {
             return this;
         }
 
+        /**
+         * Renders and palettizes frames on several threads while the gif is being written.
+         * Each frame is compared with the previous rendered frame instead of the previous
+         * gif frame, so the output may differ slightly from the single threaded one.
+         * <p>
+         * 1 (default) uses the single threaded encoder.
+         */
+        public Builder setThreadsCount(int threads) {
+            this.threads = Math.max(threads, 1);
+            return this;
+        }
+
         public AXrLottie2Gif build() {
             if (path == null) {
                 throw new RuntimeException("output gif path can't be null!");
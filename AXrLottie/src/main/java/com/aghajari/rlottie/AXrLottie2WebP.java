@@ -0,0 +1,429 @@
+/*
+ * Copyright (C) 2020 - Amir Hossein Aghajari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package com.aghajari.rlottie;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import androidx.annotation.IntRange;
+import androidx.annotation.NonNull;
+import androidx.annotation.Px;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Exports lottie animations as animated WebP, with full alpha from API 18.
+ * <p>
+ * Frames are rendered one by one and compressed by the platform WebP encoder,
+ * then muxed into an animated WebP (VP8X, ANIM and ANMF chunks) while the file is written.
+ * The platform encoder has no alpha before API 18, frames are opaque there.
+ */
+public class AXrLottie2WebP {
+    private static DispatchQueuePool runnableQueue = null;
+
+    /**
+     * Same contract as {@link AXrLottie2Gif.Lottie2GifListener}: onFinished is only called once
+     * the whole file was written. A failed export ends without it, {@link #isSuccessful()}
+     * returns false and the partially written file is deleted.
+     */
+    public interface Lottie2WebPListener {
+        void onStarted();
+
+        void onProgress(int frame, int totalFrame);
+
+        void onFinished();
+    }
+
+    private boolean running;
+    private boolean successful;
+    private boolean destroyed = false;
+    private final Builder builder;
+    private int mFrame, mTotalFrame;
+
+    AXrLottie2WebP(Builder builder) {
+        if (runnableQueue == null)
+            runnableQueue = new DispatchQueuePool(2);
+        this.builder = builder;
+        build();
+    }
+
+    public boolean buildAgain() {
+        if (isRunning()) return false;
+        if (destroyed) {
+            throw new RuntimeException("can't build a destroyable lottie again!");
+        }
+        build();
+        return successful;
+    }
+
+    Runnable converter = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                successful = encode();
+            } catch (Throwable e) {
+                e.printStackTrace();
+                successful = false;
+            }
+            running = false;
+
+            if (builder.destroyable) destroy();
+            if (successful && builder.listener != null) builder.listener.onFinished();
+        }
+    };
+
+    private void build() {
+        if (builder.async) {
+            runnableQueue.execute(converter);
+        } else {
+            converter.run();
+        }
+    }
+
+    private boolean encode() throws IOException {
+        int frameCount = AXrLottieNative.getFramesCount(builder.lottie);
+        if (frameCount <= 0) return false;
+
+        int start = 0, end = frameCount;
+        if (builder.frameStart > 0 && builder.frameStart < frameCount) start = builder.frameStart;
+        if (builder.frameEnd > 1 && builder.frameEnd < frameCount) end = builder.frameEnd;
+
+        int duration = builder.duration;
+        if (duration <= 0) {
+            double fps = AXrLottieNative.getFrameRate(builder.lottie);
+            duration = (int) Math.max(1, Math.round(1000 / (fps > 0 ? fps : 60)));
+        }
+
+        Bitmap bitmap = AXrLottieBitmapPool.getInstance().get(builder.w, builder.h);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        RandomAccessFile file = new RandomAccessFile(builder.path, "rw");
+        boolean written = false;
+        try {
+            file.setLength(0);
+            writeHeader(file);
+
+            running = true;
+            if (builder.listener != null) builder.listener.onStarted();
+
+            for (int i = start; i < end; i++) {
+                if (!AXrLottieNative.renderFrame(builder.lottie, i, bitmap, builder.w, builder.h, bitmap.getRowBytes()))
+                    return false;
+
+                stream.reset();
+                if (!compress(bitmap, stream))
+                    return false;
+                writeFrame(file, stream.toByteArray(), stream.size(), duration);
+
+                mFrame = i + 1;
+                mTotalFrame = frameCount;
+                if (builder.listener != null) builder.listener.onProgress(mFrame, mTotalFrame);
+            }
+
+            // RIFF size
+            long size = file.length() - 8;
+            file.seek(4);
+            writeInt32(file, (int) size);
+            written = true;
+            return true;
+        } finally {
+            file.close();
+            AXrLottieBitmapPool.getInstance().put(bitmap);
+            if (!written) builder.path.delete();
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private boolean compress(Bitmap bitmap, ByteArrayOutputStream stream) {
+        Bitmap.CompressFormat format;
+        int quality = builder.quality;
+        if (Build.VERSION.SDK_INT >= 30) {
+            format = builder.lossless ? Bitmap.CompressFormat.WEBP_LOSSLESS : Bitmap.CompressFormat.WEBP_LOSSY;
+        } else {
+            // quality 100 is lossless from API 29, the best lossy quality before
+            format = Bitmap.CompressFormat.WEBP;
+            if (builder.lossless) {
+                quality = 100;
+            } else if (Build.VERSION.SDK_INT >= 29) {
+                quality = Math.min(quality, 99);
+            }
+        }
+        return bitmap.compress(format, quality, stream);
+    }
+
+    private void writeHeader(RandomAccessFile file) throws IOException {
+        file.write(new byte[]{'R', 'I', 'F', 'F'});
+        writeInt32(file, 0);
+        file.write(new byte[]{'W', 'E', 'B', 'P'});
+
+        // VP8X : alpha and animation
+        file.write(new byte[]{'V', 'P', '8', 'X'});
+        writeInt32(file, 10);
+        file.write(Build.VERSION.SDK_INT >= 18 ? 0x10 | 0x02 : 0x02);
+        writeInt24(file, 0);
+        writeInt24(file, builder.w - 1);
+        writeInt24(file, builder.h - 1);
+
+        // ANIM : transparent background (BGRA), loop count
+        file.write(new byte[]{'A', 'N', 'I', 'M'});
+        writeInt32(file, 6);
+        writeInt32(file, 0);
+        file.write(builder.loopCount & 0xff);
+        file.write((builder.loopCount >> 8) & 0xff);
+    }
+
+    /**
+     * Wraps the image chunks (ALPH, VP8, VP8L) of a still WebP into an ANMF chunk.
+     */
+    private void writeFrame(RandomAccessFile file, byte[] webp, int length, int duration) throws IOException {
+        if (length < 12 || webp[8] != 'W' || webp[9] != 'E' || webp[10] != 'B' || webp[11] != 'P')
+            throw new IOException("invalid webp frame");
+
+        int dataStart = -1, dataEnd = -1;
+        int offset = 12;
+        while (offset + 8 <= length) {
+            int chunkSize = readInt32(webp, offset + 4);
+            int next = offset + 8 + chunkSize + (chunkSize & 1);
+            boolean image = webp[offset] == 'A' && webp[offset + 1] == 'L' && webp[offset + 2] == 'P' && webp[offset + 3] == 'H'
+                    || webp[offset] == 'V' && webp[offset + 1] == 'P' && webp[offset + 2] == '8'
+                    && (webp[offset + 3] == ' ' || webp[offset + 3] == 'L');
+            if (image) {
+                if (dataStart == -1) dataStart = offset;
+                dataEnd = Math.min(next, length);
+            }
+            offset = next;
+        }
+        if (dataStart == -1)
+            throw new IOException("invalid webp frame");
+
+        file.write(new byte[]{'A', 'N', 'M', 'F'});
+        writeInt32(file, 16 + dataEnd - dataStart);
+        writeInt24(file, 0); // x / 2
+        writeInt24(file, 0); // y / 2
+        writeInt24(file, builder.w - 1);
+        writeInt24(file, builder.h - 1);
+        writeInt24(file, duration);
+        file.write(0x02); // do not blend, do not dispose
+        file.write(webp, dataStart, dataEnd - dataStart);
+    }
+
+    private static void writeInt24(RandomAccessFile file, int value) throws IOException {
+        file.write(value & 0xff);
+        file.write((value >> 8) & 0xff);
+        file.write((value >> 16) & 0xff);
+    }
+
+    private static void writeInt32(RandomAccessFile file, int value) throws IOException {
+        writeInt24(file, value);
+        file.write((value >> 24) & 0xff);
+    }
+
+    private static int readInt32(byte[] data, int offset) {
+        return (data[offset] & 0xff) | (data[offset + 1] & 0xff) << 8
+                | (data[offset + 2] & 0xff) << 16 | (data[offset + 3] & 0xff) << 24;
+    }
+
+    private void destroy() {
+        destroyed = true;
+        AXrLottieNative.destroy(builder.lottie);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public boolean isSuccessful() {
+        return successful;
+    }
+
+    public Builder getBuilder() {
+        return builder;
+    }
+
+    public int getCurrentFrame() {
+        return mFrame;
+    }
+
+    public int getTotalFrame() {
+        return mTotalFrame;
+    }
+
+    public File getWebPPath() {
+        return builder.path;
+    }
+
+    public static Builder create(@NonNull AXrLottieDrawable lottie) {
+        return new Builder(lottie);
+    }
+
+    public static Builder create(long lottie) {
+        return new Builder(lottie);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof AXrLottie2WebP)) return false;
+        AXrLottie2WebP c = (AXrLottie2WebP) o;
+        if (c.getBuilder() == null) return false;
+        return (c.getWebPPath().equals(getWebPPath()) && c.getBuilder().lottie == builder.lottie);
+    }
+
+    @Override
+    public String toString() {
+        return getWebPPath().getAbsolutePath();
+    }
+
+    public static class Builder {
+        long lottie;
+        int w, h;
+        int duration = 0;
+        int quality = 80;
+        boolean lossless = false;
+        int loopCount = 0;
+        Lottie2WebPListener listener = null;
+        File path;
+        boolean destroyable = false;
+        boolean async = true;
+        int frameStart = 0;
+        int frameEnd = -1;
+
+        public Builder(@NonNull AXrLottieDrawable animation) {
+            this.lottie = animation.getNativePtr();
+            float density = 1;
+            if (AXrLottie.applicationContext != null)
+                density = AXrLottie.applicationContext.getResources().getDisplayMetrics().density;
+            setSize((int) (animation.getMinimumWidth() / density), (int) (animation.getMinimumHeight() / density));
+        }
+
+        public Builder(long ptr) {
+            this.lottie = ptr;
+            setSize(200, 200);
+        }
+
+        public Builder setLottieAnimation(@NonNull AXrLottieDrawable animation) {
+            this.lottie = animation.getNativePtr();
+            return this;
+        }
+
+        public Builder setLottieAnimation(long ptr) {
+            this.lottie = ptr;
+            return this;
+        }
+
+        /**
+         * set the output webp width and height
+         */
+        public Builder setSize(@Px int width, @Px int height) {
+            this.w = width;
+            this.h = height;
+            return this;
+        }
+
+        public Builder setListener(Lottie2WebPListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        /**
+         * The duration of each frame in milliseconds, the animation frame rate is used by default.
+         */
+        public Builder setFrameDuration(int duration) {
+            this.duration = duration;
+            return this;
+        }
+
+        /**
+         * Quality of the lossy encoder
+         */
+        public Builder setQuality(@IntRange(from = 0, to = 100) int quality) {
+            this.quality = quality;
+            return this;
+        }
+
+        /**
+         * Lossless frames need API 29, older versions encode lossy frames at quality 100.
+         */
+        public Builder setLossless(boolean lossless) {
+            this.lossless = lossless;
+            return this;
+        }
+
+        /**
+         * 0 (default) loops infinitely
+         */
+        public Builder setLoopCount(int loopCount) {
+            this.loopCount = loopCount;
+            return this;
+        }
+
+        /**
+         * set the output webp path
+         */
+        public Builder setOutputPath(@NonNull File webp) {
+            this.path = webp;
+            return this;
+        }
+
+        /**
+         * set the output webp path
+         */
+        public Builder setOutputPath(@NonNull String webp) {
+            this.path = new File(webp);
+            return this;
+        }
+
+        /**
+         * destroy lottie when webp created
+         */
+        public Builder setDestroyable(boolean destroyable) {
+            this.destroyable = destroyable;
+            return this;
+        }
+
+        public Builder setBackgroundTask(boolean enabled) {
+            async = enabled;
+            return this;
+        }
+
+        public Builder setFrameStartAt(int frameStart) {
+            this.frameStart = frameStart;
+            return this;
+        }
+
+        public Builder setFrameEndAt(int frameEnd) {
+            this.frameEnd = frameEnd;
+            return this;
+        }
+
+        public AXrLottie2WebP build() {
+            if (path == null) {
+                throw new RuntimeException("output webp path can't be null!");
+            }
+            if (w <= 0 || h <= 0) {
+                throw new RuntimeException("output webp width and height must be > 0");
+            }
+
+            return new AXrLottie2WebP(this);
+        }
+    }
+
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2020 - Amir Hossein Aghajari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package com.aghajari.rlottie;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Pool of ARGB_8888 frame buffers, bucketed by size.
+ * <p>
+ * {@link AXrLottieDrawable} and {@link AXrLottie2Gif} take their bitmaps from here
+ * and give them back when they are recycled, so scrolling lists of animations
+ * don't allocate a new buffer for every drawable.
+ */
+public class AXrLottieBitmapPool implements ComponentCallbacks2 {
+
+    private static final AXrLottieBitmapPool INSTANCE = new AXrLottieBitmapPool();
+
+    public static AXrLottieBitmapPool getInstance() {
+        return INSTANCE;
+    }
+
+    // access-ordered, the eldest bucket is the least recently used size
+    private final LinkedHashMap<Long, ArrayDeque<Bitmap>> buckets = new LinkedHashMap<>(16, 0.75f, true);
+    private long maxSize;
+    private long size;
+
+    private int hitCount;
+    private int missCount;
+    private int putCount;
+    private int evictionCount;
+
+    private AXrLottieBitmapPool() {
+        maxSize = Runtime.getRuntime().maxMemory() / 32;
+    }
+
+    private static long getKey(int width, int height) {
+        return ((long) width << 32) | (height & 0xffffffffL);
+    }
+
+    /**
+     * @return a cleared bitmap from the pool or a new one if there is no bitmap of this size.
+     */
+    @NonNull
+    public Bitmap get(int width, int height) {
+        Bitmap bitmap = null;
+        synchronized (this) {
+            long key = getKey(width, height);
+            ArrayDeque<Bitmap> bucket = buckets.get(key);
+            if (bucket != null) {
+                bitmap = bucket.pollFirst();
+                if (bucket.isEmpty()) buckets.remove(key);
+            }
+            if (bitmap != null) {
+                size -= bitmap.getAllocationByteCount();
+                hitCount++;
+            } else {
+                missCount++;
+            }
+        }
+
+        if (bitmap != null) {
+            bitmap.eraseColor(Color.TRANSPARENT);
+            return bitmap;
+        }
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Gives the bitmap back to the pool, the caller must not use it anymore.
+     */
+    public void put(@Nullable Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) return;
+        if (!bitmap.isMutable() || bitmap.getConfig() != Bitmap.Config.ARGB_8888
+                || bitmap.getAllocationByteCount() > maxSize) {
+            bitmap.recycle();
+            return;
+        }
+
+        synchronized (this) {
+            long key = getKey(bitmap.getWidth(), bitmap.getHeight());
+            ArrayDeque<Bitmap> bucket = buckets.get(key);
+            if (bucket == null) {
+                bucket = new ArrayDeque<>();
+                buckets.put(key, bucket);
+            } else if (bucket.contains(bitmap)) {
+                return;
+            }
+            bucket.addFirst(bitmap);
+            size += bitmap.getAllocationByteCount();
+            putCount++;
+            trimToSize(maxSize);
+        }
+    }
+
+    /**
+     * Recycles pooled bitmaps, least recently used sizes first, until the pool fits in maxSize.
+     */
+    public synchronized void trimToSize(long maxSize) {
+        Iterator<Map.Entry<Long, ArrayDeque<Bitmap>>> it = buckets.entrySet().iterator();
+        while (size > maxSize && it.hasNext()) {
+            ArrayDeque<Bitmap> bucket = it.next().getValue();
+            while (size > maxSize && !bucket.isEmpty()) {
+                Bitmap bitmap = bucket.pollLast();
+                size -= bitmap.getAllocationByteCount();
+                evictionCount++;
+                bitmap.recycle();
+            }
+            if (bucket.isEmpty()) it.remove();
+        }
+    }
+
+    public void clear() {
+        trimToSize(0);
+    }
+
+    /**
+     * Set the maximum size of the pool in bytes.
+     */
+    public synchronized void setMaxSize(long maxSize) {
+        this.maxSize = Math.max(maxSize, 0);
+        trimToSize(this.maxSize);
+    }
+
+    public synchronized long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the sum of the sizes of the pooled bitmaps in bytes.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    public synchronized int getPutCount() {
+        return putCount;
+    }
+
+    public synchronized int getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return the fraction of {@link #get(int, int)} calls that reused a pooled bitmap.
+     */
+    public synchronized float getReuseRate() {
+        int total = hitCount + missCount;
+        return total == 0 ? 0 : (float) hitCount / total;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            clear();
+        } else if (level >= TRIM_MEMORY_UI_HIDDEN || level == TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(getMaxSize() / 2);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        clear();
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+    }
+}
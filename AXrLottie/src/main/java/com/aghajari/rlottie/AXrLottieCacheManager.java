@@ -7,6 +7,9 @@ import androidx.annotation.WorkerThread;
 
 import com.aghajari.rlottie.extension.AXrFileExtension;
 import com.aghajari.rlottie.extension.JsonFileExtension;
+import com.aghajari.rlottie.extension.LottieBinFileExtension;
+import com.aghajari.rlottie.extension.ZipFileExtension;
+import com.aghajari.rlottie.network.AXrLottieCacheMetadata;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -14,22 +17,57 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Lottie cache manager
+ * <p>
+ * The network, local and frames (acache) directories are kept under their size limits by
+ * {@link AXrLottieDiskCache}, the least recently used files are removed first.
  */
 public class AXrLottieCacheManager {
 
     private static final String TAG = AXrLottieCacheManager.class.getSimpleName();
 
+    static final String FRAMES_CACHE_DIR = "acache";
+    private static final String[] ANIMATION_COMPANIONS = {ZipFileExtension.ASSETS_SUFFIX, ZipFileExtension.HASH_SUFFIX, AXrLottieCacheMetadata.SUFFIX};
+
     File networkCacheDir, localCacheDir;
 
+    private long maxNetworkCacheSize = 50 * 1024 * 1024;
+    private long maxLocalCacheSize = 50 * 1024 * 1024;
+    private long maxFramesCacheSize = 200 * 1024 * 1024;
+
+    /**
+     * Buckets that follow the density ratios (1, 1.5, 2, 3, 4),
+     * the cached side is at most 1.5 times bigger than the requested one.
+     */
+    public static final int[] DEFAULT_FRAMES_CACHE_BUCKETS = {32, 48, 64, 96, 128, 192, 256, 384, 512, 768, 1024};
+
+    @Nullable
+    private int[] framesCacheBuckets = null;
+    private float maxFramesCacheDownscale = 4;
+
+    private final Map<File, AXrLottieDiskCache> diskCaches = new HashMap<>();
+
     public AXrLottieCacheManager(File networkCacheDir, File localCacheDir) {
         this.networkCacheDir = networkCacheDir;
         this.localCacheDir = localCacheDir;
     }
 
     public void clear() {
+        synchronized (diskCaches) {
+            for (AXrLottieDiskCache diskCache : diskCaches.values()) {
+                if (diskCache.getDirectory().getName().equals(FRAMES_CACHE_DIR))
+                    clear(diskCache.getDirectory());
+                diskCache.reset();
+            }
+        }
+        clear(new File(getLocalCacheParent(), FRAMES_CACHE_DIR));
+        clear(new File(getNetworkCacheParent(), FRAMES_CACHE_DIR));
         clear(getLocalCacheParent());
         clear(getNetworkCacheParent());
     }
@@ -39,13 +77,222 @@ public class AXrLottieCacheManager {
             File[] files = parentDir.listFiles();
             if (files != null && files.length > 0) {
                 for (File file : files) {
-                    file.delete();
+                    // the images extracted from archives
+                    if (file.isDirectory() && !file.getName().equals(FRAMES_CACHE_DIR)) {
+                        AXrLottieDiskCache.delete(file);
+                    } else {
+                        file.delete();
+                    }
                 }
             }
             parentDir.delete();
         }
     }
 
+    /**
+     * Set the maximum size (in bytes) of the downloaded animations directory.
+     * 0 disables the limit, Default: 50MB
+     */
+    public void setMaxNetworkCacheSize(long maxSize) {
+        maxNetworkCacheSize = Math.max(maxSize, 0);
+        getNetworkDiskCache().setMaxSize(maxNetworkCacheSize);
+    }
+
+    /**
+     * Set the maximum size (in bytes) of the local animations directory
+     * (json, assets, resources and extracted files).
+     * 0 disables the limit, Default: 50MB
+     */
+    public void setMaxLocalCacheSize(long maxSize) {
+        maxLocalCacheSize = Math.max(maxSize, 0);
+        getLocalDiskCache().setMaxSize(maxLocalCacheSize);
+    }
+
+    /**
+     * Set the maximum size (in bytes) of each frames cache (acache) directory.
+     * 0 disables the limit, Default: 200MB
+     */
+    public void setMaxFramesCacheSize(long maxSize) {
+        maxFramesCacheSize = Math.max(maxSize, 0);
+        synchronized (diskCaches) {
+            for (AXrLottieDiskCache diskCache : diskCaches.values()) {
+                if (diskCache.getDirectory().getName().equals(FRAMES_CACHE_DIR))
+                    diskCache.setMaxSize(maxFramesCacheSize);
+            }
+        }
+    }
+
+    public long getMaxNetworkCacheSize() {
+        return maxNetworkCacheSize;
+    }
+
+    public long getMaxLocalCacheSize() {
+        return maxLocalCacheSize;
+    }
+
+    public long getMaxFramesCacheSize() {
+        return maxFramesCacheSize;
+    }
+
+    public AXrLottieDiskCache getNetworkDiskCache() {
+        return getDiskCache(networkCacheDir, maxNetworkCacheSize, ANIMATION_COMPANIONS);
+    }
+
+    public AXrLottieDiskCache getLocalDiskCache() {
+        return getDiskCache(localCacheDir, maxLocalCacheSize, ANIMATION_COMPANIONS);
+    }
+
+    /**
+     * @return the disk cache of the directory where the frames of the animation file are cached
+     */
+    public AXrLottieDiskCache getFramesDiskCache(File source) {
+        return getDiskCache(new File(source.getAbsoluteFile().getParentFile(), FRAMES_CACHE_DIR), maxFramesCacheSize);
+    }
+
+    private AXrLottieDiskCache getDiskCache(File dir, long maxSize, String... companionSuffixes) {
+        synchronized (diskCaches) {
+            AXrLottieDiskCache diskCache = diskCaches.get(dir);
+            if (diskCache == null) {
+                diskCache = new AXrLottieDiskCache(dir, maxSize, companionSuffixes);
+                diskCaches.put(dir, diskCache);
+            }
+            return diskCache;
+        }
+    }
+
+    /**
+     * Removes the least recently used files of every directory that is over its limit.
+     */
+    public void trim() {
+        synchronized (diskCaches) {
+            for (AXrLottieDiskCache diskCache : diskCaches.values())
+                diskCache.trim();
+        }
+    }
+
+    /**
+     * Returns the file where the native side caches the frames of the animation,
+     * {@code <source dir>/acache/<source name><width>_<height>.cache}
+     */
+    public File getFramesCacheFile(File source, int width, int height, boolean limitFps) {
+        return new File(new File(source.getAbsoluteFile().getParentFile(), FRAMES_CACHE_DIR),
+                source.getName() + width + "_" + height + (limitFps ? ".s.cache" : ".cache"));
+    }
+
+    /**
+     * Set the sizes that frames caches are created at.
+     * The larger side of the requested size is rounded up to the nearest bucket,
+     * so close sizes share one cache and smaller views are downscaled from it.
+     * <p>
+     * Downscaling costs more than decompressing a frame of the exact size
+     * (but less than rendering it), so it pays off when the same animations are shown at several sizes.
+     * null or empty (default) caches every requested size as it is.
+     *
+     * @see #DEFAULT_FRAMES_CACHE_BUCKETS
+     */
+    public void setFramesCacheBuckets(@Nullable int... buckets) {
+        if (buckets == null || buckets.length == 0) {
+            framesCacheBuckets = null;
+        } else {
+            int[] sorted = buckets.clone();
+            Arrays.sort(sorted);
+            framesCacheBuckets = sorted;
+        }
+    }
+
+    /**
+     * Set how many times a bucket can be bigger than the requested one
+     * to serve it from an existing cache, instead of caching the frames again.
+     * Default: 4
+     */
+    public void setMaxFramesCacheDownscale(float ratio) {
+        maxFramesCacheDownscale = Math.max(ratio, 1);
+    }
+
+    /**
+     * Returns the size the frames of the animation should be cached at, for a view of the given size.
+     * A bigger cache of the animation that already exists is preferred,
+     * otherwise the size is rounded up to the nearest bucket.
+     */
+    public int[] getFramesCacheSize(File source, int width, int height, boolean limitFps) {
+        int[] buckets = framesCacheBuckets;
+        int side = Math.max(width, height);
+        int own = -1;
+        if (buckets != null && side > 0) {
+            for (int i = 0; i < buckets.length; i++) {
+                if (buckets[i] >= side) {
+                    own = i;
+                    break;
+                }
+            }
+        }
+        if (own == -1)
+            return new int[]{width, height};
+
+        for (int i = own; i < buckets.length && buckets[i] <= buckets[own] * maxFramesCacheDownscale; i++) {
+            int[] size = scaleToBucket(width, height, buckets[i]);
+            if (getFramesCacheFile(source, size[0], size[1], limitFps).exists())
+                return size;
+        }
+        return scaleToBucket(width, height, buckets[own]);
+    }
+
+    /**
+     * Removes the smaller caches of the animation that can be served from this one.
+     */
+    void removeSmallerFramesCaches(File source, int width, int height, boolean limitFps) {
+        int[] buckets = framesCacheBuckets;
+        int side = Math.max(width, height);
+        if (buckets == null) return;
+
+        AXrLottieDiskCache diskCache = getFramesDiskCache(source);
+        for (int bucket : buckets) {
+            if (bucket >= side) break;
+            if (bucket * maxFramesCacheDownscale < side) continue;
+
+            int[] size = scaleToBucket(width, height, bucket);
+            File file = getFramesCacheFile(source, size[0], size[1], limitFps);
+            if (file.exists() && file.delete())
+                diskCache.remove(file);
+        }
+    }
+
+    private static int[] scaleToBucket(int width, int height, int bucket) {
+        int side = Math.max(width, height);
+        return new int[]{Math.max(1, Math.round((float) width * bucket / side)),
+                Math.max(1, Math.round((float) height * bucket / side))};
+    }
+
+    /**
+     * Records an access to the frames cache and the parsed model of the animation.
+     */
+    void recordFramesCache(File source, File framesCache) {
+        AXrLottieDiskCache diskCache = getFramesDiskCache(source);
+        diskCache.record(framesCache);
+        diskCache.record(new File(framesCache.getParentFile(), source.getName() + LottieBinFileExtension.LOTTIEBIN.extension));
+    }
+
+    /**
+     * Removes the frames caches and the parsed model of the animation,
+     * call it when the source file has been replaced with a new content.
+     */
+    public void removeFramesCaches(File source) {
+        File dir = new File(source.getAbsoluteFile().getParentFile(), FRAMES_CACHE_DIR);
+        File[] files = dir.listFiles();
+        if (files == null) return;
+
+        String name = source.getName();
+        AXrLottieDiskCache diskCache = getFramesDiskCache(source);
+        for (File file : files) {
+            String fileName = file.getName();
+            if (!fileName.startsWith(name)) continue;
+            String suffix = fileName.substring(name.length());
+            if (suffix.equals(LottieBinFileExtension.LOTTIEBIN.extension) || suffix.matches("\\d+_\\d+(\\.s)?\\.cache")) {
+                if (file.delete()) diskCache.remove(file);
+            }
+        }
+    }
+
     /**
      * If the animation doesn't exist in the cache, null will be returned.
      * <p>
@@ -58,6 +305,7 @@ public class AXrLottieCacheManager {
     public File fetchURLFromCache(String url) {
         File jsonFile = getCachedFile(url, JsonFileExtension.JSON, true, false);
         if (jsonFile.exists()) {
+            recordAnimation(jsonFile, true);
             return jsonFile;
         } else {
             for (AXrFileExtension extension : AXrLottie.getSupportedFileExtensions().values()) {
@@ -66,14 +314,44 @@ public class AXrLottieCacheManager {
                     file.delete();
                 }
             }
+            for (String suffix : ANIMATION_COMPANIONS)
+                AXrLottieDiskCache.delete(new File(jsonFile.getAbsolutePath() + suffix));
             return null;
         }
     }
 
     public File fetchLocalFromCache(final String json, final String name) {
         File f = new File(getLocalCacheParent(), findCacheName(name, JsonFileExtension.JSON, false, false) + ".cache");
-        if (f.exists()) return f;
-        return writeLocalCache(json, f);
+        if (f.exists() || writeLocalCache(json, f) != null) {
+            getLocalDiskCache().record(f);
+            return f;
+        }
+        return null;
+    }
+
+    public File fetchLocalFromCache(final ByteBuffer buffer, final String name) {
+        File f = new File(getLocalCacheParent(), findCacheName(name, JsonFileExtension.JSON, false, false) + ".cache");
+        if (f.exists() || writeLocalCache(buffer, f) != null) {
+            getLocalDiskCache().record(f);
+            return f;
+        }
+        return null;
+    }
+
+    private File writeLocalCache(final ByteBuffer buffer, File file) {
+        try {
+            FileOutputStream output = new FileOutputStream(file);
+            try {
+                output.getChannel().write(buffer.duplicate());
+            } finally {
+                output.close();
+            }
+            return file;
+        } catch (IOException e) {
+            if (file.exists()) file.delete();
+            e.printStackTrace();
+            return null;
+        }
     }
 
     private File writeLocalCache(final String json, File file) {
@@ -125,6 +403,7 @@ public class AXrLottieCacheManager {
         } finally {
             stream.close();
         }
+        if (!isTemp) getDiskCache(fromNetwork).record(file);
         return file;
     }
 
@@ -139,9 +418,35 @@ public class AXrLottieCacheManager {
         String newFileName = file.getAbsolutePath().replace(".temp", "");
         File newFile = new File(newFileName);
         file.renameTo(newFile);
+        recordAnimation(newFile, fromNetwork);
         return newFile;
     }
 
+    /**
+     * Same as {@link #loadTempFile(String, boolean)}, but the output of the extension may also
+     * be the file that is already in its cache location (like an archive that has been extracted before).
+     */
+    public File loadTempFile(String cache, @Nullable File output, boolean fromNetwork) {
+        File target = getCachedFile(cache, JsonFileExtension.JSON, fromNetwork, false);
+        if (target.equals(output)) {
+            recordAnimation(target, fromNetwork);
+            return target;
+        }
+        return loadTempFile(cache, fromNetwork);
+    }
+
+    /**
+     * Records an access to the animation and the files that were extracted with it.
+     */
+    private void recordAnimation(File file, boolean fromNetwork) {
+        AXrLottieDiskCache diskCache = getDiskCache(fromNetwork);
+        diskCache.record(file);
+        for (String suffix : ANIMATION_COMPANIONS) {
+            File companion = new File(file.getAbsolutePath() + suffix);
+            if (companion.exists()) diskCache.record(companion);
+        }
+    }
+
     /**
      * Returns the cache file for the given url if it exists.
      * Returns null if neither exist.
@@ -150,6 +455,33 @@ public class AXrLottieCacheManager {
         return new File(getParent(fromNetwork), findCacheName(cache, extension, fromNetwork, isTemp));
     }
 
+    /**
+     * Returns the file that keeps the validators and the freshness of the downloaded animation,
+     * a companion of its json file ({@code <json file>.meta}).
+     */
+    public File getNetworkMetadataFile(String url) {
+        return new File(getCachedFile(url, JsonFileExtension.JSON, true, false).getAbsolutePath() + AXrLottieCacheMetadata.SUFFIX);
+    }
+
+    /**
+     * Returns the file where an interrupted download is kept to be resumed,
+     * its metadata is kept in {@code <partial file>.meta}.
+     */
+    public File getNetworkPartialFile(String url) {
+        return new File(getNetworkCacheParent(), findCacheName(url, true) + ".part");
+    }
+
+    /**
+     * Records an access to a file of the network cache directory.
+     */
+    public void recordNetworkFile(File file) {
+        getNetworkDiskCache().record(file);
+    }
+
+    private AXrLottieDiskCache getDiskCache(boolean fromNetwork) {
+        return fromNetwork ? getNetworkDiskCache() : getLocalDiskCache();
+    }
+
     private File getParent(boolean fromNetwork) {
         return fromNetwork ? getNetworkCacheParent() : getLocalCacheParent();
     }
@@ -177,6 +509,10 @@ public class AXrLottieCacheManager {
     }
 
     private String findCacheName(String url, AXrFileExtension extension, boolean fromNetwork, boolean isTemp) {
-        return (fromNetwork ? "lottie_cache_" : "") + url.replaceAll("\\W+", "") + (isTemp ? extension.tempExtension() : extension.extension);
+        return findCacheName(url, fromNetwork) + (isTemp ? extension.tempExtension() : extension.extension);
+    }
+
+    private String findCacheName(String url, boolean fromNetwork) {
+        return (fromNetwork ? "lottie_cache_" : "") + url.replaceAll("\\W+", "");
     }
 }
\ No newline at end of file
@@ -0,0 +1,469 @@
+/*
+ * Copyright (C) 2020 - Amir Hossein Aghajari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package com.aghajari.rlottie;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a cache directory under a size limit by removing the least recently used files.
+ * <p>
+ * The files are indexed in a journal, so the size of the directory is known without listing it.
+ * The directory is listed once per process, to pick up the files that were written
+ * without being recorded and to forget the ones removed by others.
+ * All the changes and the trimming happen on a single background thread.
+ * <p>
+ * Files may have companions, named {@code <file><suffix>} (like the images of an animation),
+ * which can be directories too. A file and its companions are always removed together.
+ */
+public class AXrLottieDiskCache {
+
+    private static final String TAG = AXrLottieDiskCache.class.getSimpleName();
+
+    static final String JOURNAL_FILE = "journal";
+    private static final String JOURNAL_FILE_TEMP = "journal.tmp";
+    private static final String MAGIC = "axrlottie.journal";
+    private static final String VERSION = "1";
+    private static final String ACCESS = "A";
+    private static final String REMOVE = "R";
+    private static final int REDUNDANT_OP_COMPACT_THRESHOLD = 2000;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static ThreadPoolExecutor executor;
+
+    private static class Entry {
+        long size;
+        long time;
+
+        Entry(long size, long time) {
+            this.size = size;
+            this.time = time;
+        }
+    }
+
+    private final File directory;
+    private final String[] companionSuffixes;
+    private volatile long maxSize;
+    private volatile long size;
+
+    // access ordered, the eldest entry is the least recently used file
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private Writer journalWriter;
+    private int redundantOpCount;
+    private boolean loaded, reconciled;
+    private boolean trimScheduled;
+
+    /**
+     * @param maxSize           maximum size of the directory in bytes, 0 disables the limit
+     * @param companionSuffixes suffixes of the files that belong to another file
+     */
+    public AXrLottieDiskCache(@NonNull File directory, long maxSize, @NonNull String... companionSuffixes) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.companionSuffixes = companionSuffixes.clone();
+        scheduleTrim();
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(long maxSize) {
+        this.maxSize = Math.max(maxSize, 0);
+        scheduleTrim();
+    }
+
+    /**
+     * @return the size of the recorded files in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Marks the file as the most recently used one and updates its size,
+     * the directory is trimmed if it gets bigger than the limit.
+     */
+    public void record(@NonNull final File file) {
+        if (!directory.equals(file.getParentFile())) return;
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                recordInternal(file.getName(), sizeOf(file), System.currentTimeMillis());
+            }
+        });
+    }
+
+    public void remove(@NonNull final File file) {
+        if (!directory.equals(file.getParentFile())) return;
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (AXrLottieDiskCache.this) {
+                    load();
+                    Entry entry = entries.remove(file.getName());
+                    if (entry != null) {
+                        size -= entry.size;
+                        journal(REMOVE, file.getName());
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Removes the least recently used files until the directory fits its limit.
+     */
+    public void trim() {
+        scheduleTrim();
+    }
+
+    /**
+     * Forgets all the recorded files, call it when the directory has been cleared.
+     */
+    public synchronized void reset() {
+        closeJournal();
+        entries.clear();
+        size = 0;
+        redundantOpCount = 0;
+        loaded = false;
+        reconciled = false;
+        new File(directory, JOURNAL_FILE).delete();
+    }
+
+    private synchronized void recordInternal(String name, long length, long time) {
+        load();
+        Entry entry = entries.get(name);
+        if (length <= 0) {
+            // the file doesn't exist (anymore)
+            if (entry != null) {
+                entries.remove(name);
+                size -= entry.size;
+                journal(REMOVE, name);
+            }
+            return;
+        }
+
+        if (entry == null) {
+            entries.put(name, new Entry(length, time));
+        } else {
+            size -= entry.size;
+            redundantOpCount++;
+            entry.size = length;
+            entry.time = time;
+        }
+        size += length;
+        journal(ACCESS, length + " " + time + " " + name);
+
+        if (maxSize > 0 && size > maxSize) scheduleTrim();
+    }
+
+    private synchronized void trimInternal() {
+        trimScheduled = false;
+        load();
+        reconcile();
+
+        if (maxSize > 0 && size > maxSize) {
+            for (String name : new ArrayList<>(entries.keySet())) {
+                if (size <= maxSize) break;
+                // already removed along with its owner
+                if (!entries.containsKey(name)) continue;
+
+                String owner = ownerOf(name);
+                evict(owner);
+                for (String suffix : companionSuffixes) evict(owner + suffix);
+            }
+        }
+
+        if (redundantOpCount >= REDUNDANT_OP_COMPACT_THRESHOLD && redundantOpCount >= entries.size())
+            rebuildJournal();
+    }
+
+    private void evict(String name) {
+        if (!entries.containsKey(name)) return;
+        File file = new File(directory, name);
+        if (file.exists() && !delete(file)) return;
+
+        Entry entry = entries.remove(name);
+        size -= entry.size;
+        journal(REMOVE, name);
+    }
+
+    private String ownerOf(String name) {
+        for (String suffix : companionSuffixes) {
+            if (name.endsWith(suffix) && name.length() > suffix.length())
+                return name.substring(0, name.length() - suffix.length());
+        }
+        return name;
+    }
+
+    private void scheduleTrim() {
+        synchronized (this) {
+            if (trimScheduled) return;
+            trimScheduled = true;
+        }
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                trimInternal();
+            }
+        });
+    }
+
+    private static synchronized void execute(Runnable runnable) {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(1, 1, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+            executor.allowCoreThreadTimeOut(true);
+        }
+        executor.execute(runnable);
+    }
+
+    /**
+     * Reads the journal, or builds it from the directory if it's missing or broken.
+     */
+    private void load() {
+        if (loaded) return;
+        loaded = true;
+
+        File journal = new File(directory, JOURNAL_FILE);
+        if (journal.exists()) {
+            try {
+                readJournal(journal);
+                return;
+            } catch (IOException e) {
+                Log.w(TAG, "journal of " + directory + " is corrupt, rebuilding it", e);
+            }
+        }
+
+        entries.clear();
+        size = 0;
+        scanDirectory();
+        reconciled = true;
+        rebuildJournal();
+    }
+
+    private void readJournal(File journal) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journal), UTF_8));
+        try {
+            if (!MAGIC.equals(reader.readLine()) || !VERSION.equals(reader.readLine()))
+                throw new IOException("unexpected journal header");
+
+            int lines = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                readJournalLine(line);
+                lines++;
+            }
+            redundantOpCount = lines - entries.size();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void readJournalLine(String line) throws IOException {
+        try {
+            if (line.startsWith(REMOVE + " ")) {
+                Entry entry = entries.remove(line.substring(2));
+                if (entry != null) size -= entry.size;
+                return;
+            }
+            if (line.startsWith(ACCESS + " ")) {
+                int sizeEnd = line.indexOf(' ', 2);
+                int timeEnd = line.indexOf(' ', sizeEnd + 1);
+                long length = Long.parseLong(line.substring(2, sizeEnd));
+                long time = Long.parseLong(line.substring(sizeEnd + 1, timeEnd));
+                String name = line.substring(timeEnd + 1);
+
+                Entry entry = entries.remove(name);
+                if (entry != null) size -= entry.size;
+                entries.put(name, new Entry(length, time));
+                size += length;
+                return;
+            }
+        } catch (RuntimeException ignore) {
+        }
+        throw new IOException("unexpected journal line: " + line);
+    }
+
+    /**
+     * Lists the directory once, the files that were not recorded are added by their modification time.
+     */
+    private void reconcile() {
+        if (reconciled) return;
+        reconciled = true;
+
+        Set<String> names = new HashSet<>();
+        File[] files = directory.listFiles();
+        if (files == null) return;
+
+        boolean changed = false;
+        for (File file : files) {
+            if (!isCacheFile(file)) continue;
+            names.add(file.getName());
+            if (!entries.containsKey(file.getName())) changed = true;
+        }
+        for (String name : entries.keySet()) {
+            if (!names.contains(name)) {
+                changed = true;
+                break;
+            }
+        }
+        if (!changed) return;
+
+        Map<String, Entry> known = new LinkedHashMap<>(entries);
+        entries.clear();
+        size = 0;
+        scanDirectory();
+        // the recorded files keep their place, the others go before them by age
+        for (Map.Entry<String, Entry> entry : known.entrySet()) {
+            Entry current = entries.remove(entry.getKey());
+            if (current != null) entries.put(entry.getKey(), current);
+        }
+        rebuildJournal();
+    }
+
+    private void scanDirectory() {
+        File[] files = directory.listFiles();
+        if (files == null) return;
+
+        List<File> list = new ArrayList<>();
+        for (File file : files) {
+            if (isCacheFile(file)) list.add(file);
+        }
+        final Map<File, Long> times = new HashMap<>();
+        for (File file : list) times.put(file, file.lastModified());
+        Collections.sort(list, (o1, o2) -> Long.compare(times.get(o1), times.get(o2)));
+
+        for (File file : list) {
+            long length = sizeOf(file);
+            entries.put(file.getName(), new Entry(length, times.get(file)));
+            size += length;
+        }
+    }
+
+    private boolean isCacheFile(File file) {
+        String name = file.getName();
+        if (name.equals(JOURNAL_FILE) || name.equals(JOURNAL_FILE_TEMP)) return false;
+        if (file.isFile()) return true;
+        if (!file.isDirectory()) return false;
+
+        // the other directories (like acache) aren't a part of this cache
+        for (String suffix : companionSuffixes) {
+            if (name.endsWith(suffix)) return true;
+        }
+        return false;
+    }
+
+    static long sizeOf(File file) {
+        if (!file.isDirectory()) return file.length();
+        long size = 0;
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) size += sizeOf(child);
+        }
+        return size;
+    }
+
+    static boolean delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) delete(child);
+        }
+        return file.delete();
+    }
+
+    private void journal(String op, String data) {
+        if (op.equals(REMOVE)) redundantOpCount++;
+        try {
+            if (journalWriter == null) {
+                if (!directory.exists()) directory.mkdirs();
+                journalWriter = new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(new File(directory, JOURNAL_FILE), true), UTF_8));
+            }
+            journalWriter.write(op + " " + data + "\n");
+            journalWriter.flush();
+        } catch (IOException e) {
+            Log.e(TAG, "journal: ", e);
+            closeJournal();
+        }
+    }
+
+    private void closeJournal() {
+        if (journalWriter == null) return;
+        try {
+            journalWriter.close();
+        } catch (IOException ignore) {
+        }
+        journalWriter = null;
+    }
+
+    /**
+     * Writes the current entries into a new journal and replaces the old one.
+     */
+    private void rebuildJournal() {
+        closeJournal();
+        if (!directory.exists() && !directory.mkdirs()) return;
+
+        File temp = new File(directory, JOURNAL_FILE_TEMP);
+        try {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), UTF_8));
+            try {
+                writer.write(MAGIC + "\n" + VERSION + "\n");
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    writer.write(ACCESS + " " + entry.getValue().size + " " + entry.getValue().time + " " + entry.getKey() + "\n");
+                }
+            } finally {
+                writer.close();
+            }
+            if (!temp.renameTo(new File(directory, JOURNAL_FILE)))
+                throw new IOException("can't rename " + temp);
+            redundantOpCount = 0;
+        } catch (IOException e) {
+            temp.delete();
+            Log.e(TAG, "rebuildJournal: ", e);
+        }
+    }
+}
@@ -19,6 +19,7 @@
 package com.aghajari.rlottie;
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
@@ -38,6 +39,7 @@ import androidx.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
@@ -53,8 +55,12 @@ import com.aghajari.rlottie.network.AXrLottieTaskFactory;
 import static com.aghajari.rlottie.AXrLottieNative.destroy;
 import static com.aghajari.rlottie.AXrLottieNative.create;
 import static com.aghajari.rlottie.AXrLottieNative.createCache;
+import static com.aghajari.rlottie.AXrLottieNative.createWithBuffer;
 import static com.aghajari.rlottie.AXrLottieNative.createWithJson;
 import static com.aghajari.rlottie.AXrLottieNative.getFrame;
+import static com.aghajari.rlottie.AXrLottieNative.getFramePartial;
+import static com.aghajari.rlottie.AXrLottieNative.isFrameUnchanged;
+import static com.aghajari.rlottie.AXrLottieNative.readFrameStats;
 
 public class AXrLottieDrawable extends BitmapDrawable implements Animatable {
 
@@ -71,8 +77,10 @@ public class AXrLottieDrawable extends BitmapDrawable implements Animatable {
     private boolean playInDirectionOfCustomEndFrame = false;
     private AXrLottieMarker selectedMarker = null;
 
-    private ArrayList<AXrLottieProperty.PropertyUpdate> newPropertyUpdates = new ArrayList<>();
-    private final ArrayList<AXrLottieProperty.PropertyUpdate> pendingPropertyUpdates = new ArrayList<>();
+    private final ArrayList<AXrLottiePropertyBatch> newPropertyBatches = new ArrayList<>();
+    private final ArrayList<AXrLottiePropertyBatch> pendingPropertyBatches = new ArrayList<>();
+    // collects setLayerProperty calls until the next frame is scheduled
+    private AXrLottiePropertyBatch localPropertyBatch;
 
     public final static int AUTO_REPEAT_INFINITE = -1;
     private int autoRepeat = AUTO_REPEAT_INFINITE;
@@ -87,10 +95,28 @@ public class AXrLottieDrawable extends BitmapDrawable implements Animatable {
     private volatile boolean nextFrameIsLast;
 
     private Runnable cacheGenerateTask;
+    private File framesCacheSource, framesCacheFile;
+    private int cacheWidth, cacheHeight;
+    private boolean cacheLimitFps;
     private Runnable loadFrameTask;
     private volatile Bitmap renderingBitmap;
     private volatile Bitmap nextRenderingBitmap;
     private volatile Bitmap backgroundBitmap;
+    // frames shown by renderingBitmap and nextRenderingBitmap,
+    // nextRenderingBitmap is renderingBitmap itself when its frame looks the same.
+    private volatile int renderingFrame = -1;
+    private volatile int nextRenderingFrame = -1;
+    private volatile boolean nextFrameUnchanged;
+    private boolean renderingFrameUnchanged;
+    // backgroundBitmap still holds the frame getFrame drew into it, only what changed is redrawn
+    private volatile boolean backgroundBitmapDrawn;
+    // area of nextRenderingBitmap that differs from the previous decoded frame,
+    // it is only the difference to renderingBitmap when no frame was decoded in between.
+    private final int[] nextChangedRect = new int[4];
+    private volatile boolean nextChangedRectValid;
+    private volatile int nextRenderingSerial;
+    private int renderingSerial;
+    private int decodeSerial;
     private boolean waitingForNextTask;
 
     private CountDownLatch frameWaitSync;
@@ -107,10 +133,16 @@ public class AXrLottieDrawable extends BitmapDrawable implements Animatable {
     protected float scaleY = 1.0f;
     private boolean applyTransformation;
     private final Rect dstRect = new Rect();
+    private final Rect dirtyBounds = new Rect();
     private static final Handler uiHandler = new Handler(Looper.getMainLooper());
     private volatile boolean isRunning;
     private volatile boolean isRecycled;
     private volatile long nativePtr;
+    private volatile String frameStoreKey;
+    private boolean firstFrameLoaded;
+    private final long[] frameStats = new long[3];
+    // frame intervals that passed while the next frame was being decoded
+    private int droppedFrames;
 
     @Nullable
     private volatile AXrSourceData<?> sourceData = null;
@@ -119,8 +151,8 @@ public class AXrLottieDrawable extends BitmapDrawable implements Animatable {
     private boolean isInvalid;
     private boolean doNotRemoveInvalidOnFrameReady;
 
-    private static final DispatchQueuePool loadFrameRunnableQueue = new DispatchQueuePool(4);
     private static ThreadPoolExecutor lottieCacheGenerateQueue;
+    private static int lottieCacheGenerateQueueSize = 2;
 
     private OnFrameChangedListener listener = null;
     private OnFrameRenderListener render = null;
@@ -128,6 +160,7 @@ public class AXrLottieDrawable extends BitmapDrawable implements Animatable {
 
     @Nullable
     private AXrLottieTask<File> networkTask;
+    private int networkPriority = AXrLottieTask.PRIORITY_NORMAL;
 
     private final AXrLottieTask.Listener<File> networkLoadedListener = file -> {
         if (file != null && !hasLoaded()) {
@@ -207,7 +240,18 @@ public class AXrLottieDrawable extends BitmapDrawable implements Animatable {
                     if (cacheGenerateTask == null) {
                         return;
                     }
-                    createCache(nativePtr, width, height);
+                    AXrLottieMetricsListener metrics = AXrLottie.getMetricsListener();
+                    long start = metrics != null ? System.nanoTime() : 0;
+                    createCache(nativePtr, cacheWidth, cacheHeight);
+                    if (metrics != null) {
+                        long bytes = framesCacheFile != null ? framesCacheFile.length() : 0;
+                        metrics.onCacheCreated(cacheName, System.nanoTime() - start, bytes);
+                    }
+                    if (framesCacheFile != null) {
+                        AXrLottie.getLottieCacheManager().recordFramesCache(framesCacheSource, framesCacheFile);
+                        if (framesCacheFile.exists())
+                            AXrLottie.getLottieCacheManager().removeSmallerFramesCaches(framesCacheSource, cacheWidth, cacheHeight, cacheLimitFps);
+                    }
                     uiHandler.post(uiRunnableCacheFinished);
                 });
             }
@@ -223,6 +267,8 @@ public class AXrLottieDrawable extends BitmapDrawable implements Animatable {
         }
         if (nextRenderingBitmap != null && loadFrameTask != null) {
             loadFrameTask = null;
+            if (!nextFrameUnchanged)
+                giveBack(nextRenderingBitmap);
             nextRenderingBitmap = null;
         }
     }
@@ -246,16 +292,54 @@ public class AXrLottieDrawable extends BitmapDrawable implements Animatable {
     }
 
     private void recycleResources() {
+        if (nextRenderingBitmap != null) {
+            if (nextRenderingBitmap != renderingBitmap)
+                giveBack(nextRenderingBitmap);
+            nextRenderingBitmap = null;
+        }
         if (renderingBitmap != null) {
-            renderingBitmap.recycle();
+            giveBack(renderingBitmap);
             renderingBitmap = null;
         }
         if (backgroundBitmap != null) {
-            backgroundBitmap.recycle();
+            giveBack(backgroundBitmap);
             backgroundBitmap = null;
         }
     }
 
+    /**
+     * Gives back a bitmap this drawable doesn't show anymore,
+     * a shared frame goes back to the pool once no other drawable shows it.
+     */
+    private static void giveBack(Bitmap bitmap) {
+        if (!AXrLottieFrameStore.getInstance().release(bitmap))
+            AXrLottieBitmapPool.getInstance().put(bitmap);
+    }
+
+    /**
+     * Called when the drawable stops showing the bitmap.
+     *
+     * @return the bitmap if it can be used to decode the next frames
+     */
+    private static Bitmap reusableBitmap(Bitmap bitmap) {
+        return AXrLottieFrameStore.getInstance().release(bitmap) ? null : bitmap;
+    }
+
+    private void registerFrameStore() {
+        if (frameStoreKey == null && nativePtr != 0 && builder.shareFrames && builder.properties == null) {
+            frameStoreKey = AXrLottieFrameStore.getAnimationKey(cacheName, width, height);
+            AXrLottieFrameStore.getInstance().register(frameStoreKey);
+        }
+    }
+
+    private void unregisterFrameStore() {
+        String key = frameStoreKey;
+        if (key != null) {
+            frameStoreKey = null;
+            AXrLottieFrameStore.getInstance().unregister(key);
+        }
+    }
+
     private final Runnable loadFrameRunnable = new Runnable() {
         @Override
         public void run() {
@@ -270,39 +354,92 @@ public class AXrLottieDrawable extends BitmapDrawable implements Animatable {
                 uiHandler.post(uiRunnableNoFrame);
                 return;
             }
-            if (backgroundBitmap == null) {
+            String storeKey = frameStoreKey;
+            boolean shareFrame = storeKey != null && render == null
+                    && AXrLottieFrameStore.getInstance().isShared(storeKey);
+            // shown until it's given back by reusableBitmap()
+            Bitmap sharedFrame = shareFrame ? AXrLottieFrameStore.getInstance().acquire(storeKey, currentFrame) : null;
+            if (sharedFrame == null && !firstFrameLoaded && storeKey != null && render == null && metaData[2] == 0) {
+                // rendered ahead by AXrLottiePrefetcher, a frames cache that is
+                // yet to be generated still needs this frame to be rendered natively
+                sharedFrame = AXrLottieFrameStore.getInstance().acquire(storeKey, currentFrame);
+            }
+
+            if (sharedFrame == null && backgroundBitmap == null) {
                 try {
-                    backgroundBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                    backgroundBitmapDrawn = false;
+                    backgroundBitmap = AXrLottieBitmapPool.getInstance().get(width, height);
                 } catch (Throwable e) {
                     e.printStackTrace();
                 }
             }
-            if (backgroundBitmap != null) {
+            if (sharedFrame != null || backgroundBitmap != null) {
+                AXrLottieMetricsListener metrics = AXrLottie.getMetricsListener();
                 try {
-                    if (!pendingPropertyUpdates.isEmpty()) {
-                        for (AXrLottieProperty.PropertyUpdate entry : pendingPropertyUpdates) {
-                            entry.apply(nativePtr);
+                    if (!pendingPropertyBatches.isEmpty()) {
+                        long start = metrics != null ? System.nanoTime() : 0;
+                        for (AXrLottiePropertyBatch batch : pendingPropertyBatches) {
+                            batch.apply(nativePtr);
                         }
-                        pendingPropertyUpdates.clear();
+                        pendingPropertyBatches.clear();
+                        if (metrics != null)
+                            metrics.onPropertiesApplied(cacheName, System.nanoTime() - start);
                     }
                 } catch (Exception ignore) {
                 }
                 try {
                     long ptrToUse = nativePtr;
-
-                    int result = getFrame(ptrToUse, currentFrame, backgroundBitmap, width, height, backgroundBitmap.getRowBytes());
-                    if (result == -1) {
-                        uiHandler.post(uiRunnableNoFrame);
-                        if (frameWaitSync != null) {
-                            frameWaitSync.countDown();
+                    Bitmap frameBitmap = sharedFrame;
+                    Bitmap shownBitmap = renderingBitmap;
+                    boolean unchanged = false;
+                    boolean changedRectValid = false;
+                    int serial = ++decodeSerial;
+
+                    if (frameBitmap == null && shownBitmap != null && render == null
+                            && isFrameUnchanged(ptrToUse, currentFrame, renderingFrame)) {
+                        // looks exactly like the frame on the screen, nothing to decode
+                        frameBitmap = shownBitmap;
+                        unchanged = true;
+                    } else if (frameBitmap == null) {
+                        frameBitmap = backgroundBitmap;
+                        long start = metrics != null ? System.nanoTime() : 0;
+                        int result;
+                        if (render == null && builder.partialRendering) {
+                            // only redraws what changed since the frame the bitmap holds
+                            result = getFramePartial(ptrToUse, currentFrame, frameBitmap, width, height,
+                                    frameBitmap.getRowBytes(), backgroundBitmapDrawn, nextChangedRect);
+                            changedRectValid = true;
+                        } else {
+                            result = getFrame(ptrToUse, currentFrame, frameBitmap, width, height, frameBitmap.getRowBytes());
+                        }
+                        if (metrics != null && result != -1) {
+                            long nanos = System.nanoTime() - start;
+                            readFrameStats(ptrToUse, frameStats);
+                            metrics.onFrameDecoded(cacheName, currentFrame, nanos, frameStats[0] > 0, frameStats[2]);
+                        }
+                        if (result == -1) {
+                            uiHandler.post(uiRunnableNoFrame);
+                            if (frameWaitSync != null) {
+                                frameWaitSync.countDown();
+                            }
+                            return;
+                        }
+                        if (shareFrame) {
+                            // other drawables may show this bitmap from now on
+                            AXrLottieFrameStore.getInstance().put(storeKey, currentFrame, frameBitmap, true);
+                            backgroundBitmap = null;
                         }
-                        return;
                     }
                     if (metaData[2] != 0) {
                         uiHandler.post(uiRunnableGenerateCache);
                         metaData[2] = 0;
                     }
-                    nextRenderingBitmap = backgroundBitmap;
+                    nextRenderingFrame = currentFrame;
+                    nextFrameUnchanged = unchanged;
+                    nextChangedRectValid = changedRectValid;
+                    nextRenderingSerial = serial;
+                    nextRenderingBitmap = frameBitmap;
+                    firstFrameLoaded = true;
                     int framesPerUpdates = getFramesPerUpdate();
                     int endFrame = findEndFrame();
                     int startFrame = findStartFrame();
@@ -436,6 +573,9 @@ public class AXrLottieDrawable extends BitmapDrawable implements Animatable {
             case JSON:
                 initFromJson(builder.json, builder.cache, builder.startDecode);
                 break;
+            case BUFFER:
+                initFromBuffer(builder.buffer, builder.cache, builder.startDecode);
+                break;
             case URL:
                 initFromNetwork(builder.url, builder.cache);
                 break;
@@ -456,10 +596,8 @@ public class AXrLottieDrawable extends BitmapDrawable implements Animatable {
         if (builder.speed > 0)
             setSpeed(builder.speed);
 
-        if (builder.properties != null) {
-            if (newPropertyUpdates == null) newPropertyUpdates = new ArrayList<>();
-            newPropertyUpdates.addAll(builder.properties);
-        }
+        if (builder.properties != null)
+            newPropertyBatches.add(builder.properties);
 
         if (builder.listener != null)
             setOnFrameChangedListener(builder.listener);
@@ -484,7 +622,37 @@ public class AXrLottieDrawable extends BitmapDrawable implements Animatable {
         }
 
         sourceData = new AXrSourceData<>(json);
+        long loadStart = System.nanoTime();
         nativePtr = createWithJson(json, getCacheName(), metaData);
+        reportLoaded(loadStart);
+        registerFrameStore();
+        timeBetweenFrames = Math.max(shouldLimitFps ? 33 : 16, (int) (1000.0f / metaData[1]));
+        if (startDecode) {
+            setAllowDecodeSingleFrame(true);
+        }
+        lottieLoaded();
+    }
+
+    private void initFromBuffer(ByteBuffer buffer, boolean cache, boolean startDecode) {
+        if (cache) {
+            File f = AXrLottie.getLottieCacheManager().fetchLocalFromCache(buffer, getCacheName());
+            if (f != null) {
+                initFromFile(f, true);
+                return;
+            }
+        }
+
+        if (!buffer.isDirect()) {
+            ByteBuffer direct = ByteBuffer.allocateDirect(buffer.remaining());
+            direct.put(buffer.duplicate());
+            direct.flip();
+            buffer = direct;
+        }
+        sourceData = new AXrSourceData<>(buffer);
+        long loadStart = System.nanoTime();
+        nativePtr = createWithBuffer(buffer, buffer.position(), buffer.remaining(), getCacheName(), metaData);
+        reportLoaded(loadStart);
+        registerFrameStore();
         timeBetweenFrames = Math.max(shouldLimitFps ? 33 : 16, (int) (1000.0f / metaData[1]));
         if (startDecode) {
             setAllowDecodeSingleFrame(true);
@@ -494,9 +662,25 @@ public class AXrLottieDrawable extends BitmapDrawable implements Animatable {
 
     private void initFromFile(File file, boolean precache) {
         sourceData = new AXrSourceData<>(file);
-        nativePtr = create(file.getAbsolutePath(), width, height, metaData, precache, shouldLimitFps);
-        if (precache && lottieCacheGenerateQueue == null) {
-            lottieCacheGenerateQueue = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+        cacheWidth = width;
+        cacheHeight = height;
+        cacheLimitFps = shouldLimitFps;
+        if (precache) {
+            int[] cacheSize = AXrLottie.getLottieCacheManager().getFramesCacheSize(file, width, height, shouldLimitFps);
+            cacheWidth = cacheSize[0];
+            cacheHeight = cacheSize[1];
+        }
+        long loadStart = System.nanoTime();
+        nativePtr = create(file.getAbsolutePath(), cacheWidth, cacheHeight, metaData, precache, shouldLimitFps);
+        reportLoaded(loadStart);
+        registerFrameStore();
+        if (precache) {
+            createCacheGenerateQueue();
+            if (nativePtr != 0) {
+                framesCacheSource = file;
+                framesCacheFile = AXrLottie.getLottieCacheManager().getFramesCacheFile(file, cacheWidth, cacheHeight, shouldLimitFps);
+                AXrLottie.getLottieCacheManager().recordFramesCache(file, framesCacheFile);
+            }
         }
         if (shouldLimitFps && metaData[1] < 60) {
             shouldLimitFps = false;
@@ -505,10 +689,37 @@ public class AXrLottieDrawable extends BitmapDrawable implements Animatable {
         lottieLoaded();
     }
 
+    private void reportLoaded(long start) {
+        AXrLottieMetricsListener metrics = AXrLottie.getMetricsListener();
+        if (metrics != null && nativePtr != 0)
+            metrics.onAnimationLoaded(getCacheName(), System.nanoTime() - start);
+    }
+
+    private static synchronized void createCacheGenerateQueue() {
+        if (lottieCacheGenerateQueue == null) {
+            lottieCacheGenerateQueue = new ThreadPoolExecutor(lottieCacheGenerateQueueSize, lottieCacheGenerateQueueSize,
+                    30L, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+            lottieCacheGenerateQueue.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    static synchronized void setCacheGenerateQueueSize(int size) {
+        lottieCacheGenerateQueueSize = Math.max(size, 1);
+        if (lottieCacheGenerateQueue != null) {
+            if (lottieCacheGenerateQueueSize > lottieCacheGenerateQueue.getMaximumPoolSize()) {
+                lottieCacheGenerateQueue.setMaximumPoolSize(lottieCacheGenerateQueueSize);
+                lottieCacheGenerateQueue.setCorePoolSize(lottieCacheGenerateQueueSize);
+            } else {
+                lottieCacheGenerateQueue.setCorePoolSize(lottieCacheGenerateQueueSize);
+                lottieCacheGenerateQueue.setMaximumPoolSize(lottieCacheGenerateQueueSize);
+            }
+        }
+    }
+
     private void initFromNetwork(String url, boolean cache) {
         cancelNetworkTask();
 
-        networkTask = AXrLottieTaskFactory.fromUrl(url, cache);
+        networkTask = AXrLottieTaskFactory.fromUrl(url, cache, networkPriority);
         if (networkTask != null) {
             networkTask.addListener(networkLoadedListener)
                     .addFailureListener(networkFailureListener);
@@ -519,9 +730,25 @@ public class AXrLottieDrawable extends BitmapDrawable implements Animatable {
         if (networkTask != null) {
             networkTask.removeListener(networkLoadedListener);
             networkTask.removeFailureListener(networkFailureListener);
+            AXrLottieTaskFactory.cancel(builder.url, networkTask, networkPriority);
+            networkTask = null;
         }
     }
 
+    /**
+     * Changes the priority of the download while it's waiting for a free network thread.
+     * The download moves to {@link AXrLottieTask#PRIORITY_HIGH} once the drawable gets drawn.
+     * A download shared with other drawables runs with the highest priority any of them asked for.
+     *
+     * @see AXrLottieTask#PRIORITY_LOW
+     * @see AXrLottieTask#PRIORITY_NORMAL
+     */
+    public void setNetworkPriority(int priority) {
+        int oldPriority = networkPriority;
+        networkPriority = priority;
+        AXrLottieTaskFactory.setPriority(builder.url, networkTask, oldPriority, priority);
+    }
+
     /**
      * called when animation loaded from {@link com.aghajari.rlottie.network.AXrNetworkFetcher}
      */
@@ -673,6 +900,8 @@ public class AXrLottieDrawable extends BitmapDrawable implements Animatable {
         this.speed = speed;
     }
 
+    private final Runnable invalidateRunnable = this::invalidateInternal;
+
     private void invalidateInternal() {
         if (getCallback() != null) {
             invalidateSelf();
@@ -690,6 +919,7 @@ public class AXrLottieDrawable extends BitmapDrawable implements Animatable {
         if (isRunning && listener != null) listener.onRecycle();
 
         cancelNetworkTask();
+        unregisterFrameStore();
         isRunning = false;
         isRecycled = true;
         checkRunningTasks();
@@ -810,12 +1040,26 @@ public class AXrLottieDrawable extends BitmapDrawable implements Animatable {
      * keyPath should contain object names separated by (.) and can handle globe(**) or wildchar(*).
      */
     public void setLayerProperty(String keyPath, AXrLottieProperty property) {
-        newPropertyUpdates.add(new AXrLottieProperty.PropertyUpdate(property, keyPath));
+        unregisterFrameStore();
+        if (localPropertyBatch == null) {
+            localPropertyBatch = new AXrLottiePropertyBatch();
+            newPropertyBatches.add(localPropertyBatch);
+        }
+        localPropertyBatch.add(keyPath, property);
         requestRedraw();
     }
 
-    void setLayerProperties(List<AXrLottieProperty.PropertyUpdate> list) {
-        newPropertyUpdates.addAll(list);
+    /**
+     * Sets all properties of the batch with a single native call,
+     * the batch can be shared by many drawables.
+     *
+     * @see AXrLottiePropertyBatch
+     */
+    public void setLayerProperties(AXrLottiePropertyBatch batch) {
+        if (batch == null || batch.isEmpty()) return;
+        unregisterFrameStore();
+        localPropertyBatch = null;
+        newPropertyBatches.add(batch);
         requestRedraw();
     }
 
@@ -838,14 +1082,43 @@ public class AXrLottieDrawable extends BitmapDrawable implements Animatable {
         if (loadFrameTask != null || nextRenderingBitmap != null || nativePtr == 0 || destroyWhenDone || !isRunning && (!decodeSingleFrame || singleFrameDecoded)) {
             return false;
         }
-        if (!newPropertyUpdates.isEmpty()) {
-            pendingPropertyUpdates.addAll(newPropertyUpdates);
-            newPropertyUpdates.clear();
+        if (!newPropertyBatches.isEmpty()) {
+            pendingPropertyBatches.addAll(newPropertyBatches);
+            newPropertyBatches.clear();
+            localPropertyBatch = null;
         }
-        loadFrameRunnableQueue.execute(loadFrameTask = loadFrameRunnable);
+        loadFrameTask = loadFrameRunnable;
+        AXrLottieFrameScheduler.getInstance().schedule(new LoadFrameRequest(
+                getCallback() != null && isVisible(), lastFrameTime + findTimeBetweenFrames()));
         return true;
     }
 
+    private final class LoadFrameRequest extends AXrLottieFrameScheduler.Request {
+
+        LoadFrameRequest(boolean visible, long deadline) {
+            super(visible, deadline);
+        }
+
+        @Override
+        boolean isStale() {
+            return isRecycled || destroyWhenDone || nativePtr == 0
+                    || (frameWaitSync == null && !isRunning && (!decodeSingleFrame || singleFrameDecoded));
+        }
+
+        @Override
+        void run() {
+            loadFrameRunnable.run();
+        }
+
+        @Override
+        void drop() {
+            if (frameWaitSync != null) {
+                frameWaitSync.countDown();
+            }
+            uiHandler.post(uiRunnableNoFrame);
+        }
+    }
+
     @Override
     public void stop() {
         isRunning = false;
@@ -874,7 +1147,10 @@ public class AXrLottieDrawable extends BitmapDrawable implements Animatable {
             }
         }
         if ((!async || resetFrame) && waitingForNextTask && nextRenderingBitmap != null) {
-            backgroundBitmap = nextRenderingBitmap;
+            if (!nextFrameUnchanged) {
+                backgroundBitmapDrawn = render == null;
+                backgroundBitmap = reusableBitmap(nextRenderingBitmap);
+            }
             nextRenderingBitmap = null;
             loadFrameTask = null;
             waitingForNextTask = false;
@@ -939,8 +1215,14 @@ public class AXrLottieDrawable extends BitmapDrawable implements Animatable {
     }
 
     private void setCurrentFrame(long now, long timeDiff, long timeCheck, boolean force) {
-        backgroundBitmap = renderingBitmap;
+        renderingFrameUnchanged = nextFrameUnchanged;
+        if (!renderingFrameUnchanged) {
+            backgroundBitmapDrawn = render == null;
+            backgroundBitmap = reusableBitmap(renderingBitmap);
+        }
         renderingBitmap = nextRenderingBitmap;
+        renderingFrame = nextRenderingFrame;
+        renderingSerial = nextRenderingSerial;
         nextRenderingBitmap = null;
         if (render != null) render.onUpdate(this, currentFrame, timeDiff, force);
         if (nextFrameIsLast) {
@@ -970,6 +1252,9 @@ public class AXrLottieDrawable extends BitmapDrawable implements Animatable {
     @Override
     public void draw(Canvas canvas) {
         if (nativePtr == 0 || destroyWhenDone) {
+            // a visible animation is still being downloaded
+            if (networkTask != null && networkPriority < AXrLottieTask.PRIORITY_HIGH)
+                setNetworkPriority(AXrLottieTask.PRIORITY_HIGH);
             return;
         }
         long now = SystemClock.elapsedRealtime();
@@ -985,7 +1270,22 @@ public class AXrLottieDrawable extends BitmapDrawable implements Animatable {
                 scheduleNextGetFrame();
             } else if (nextRenderingBitmap != null && (renderingBitmap == null || timeDiff >= timeCheck)) {
                 //update
+                if (droppedFrames > 0) {
+                    droppedFrames = 0;
+                    AXrLottieMetricsListener metrics = AXrLottie.getMetricsListener();
+                    if (metrics != null)
+                        metrics.onFrameLate(cacheName, timeDiff - timeCheck);
+                }
                 setCurrentFrame(now, timeDiff, timeCheck, false);
+            } else if (nextRenderingBitmap == null && renderingBitmap != null && timeDiff >= timeCheck) {
+                // the next frame is due but still being decoded, draw() runs on every
+                // vsync so a frame is only dropped once per frame interval that passed
+                AXrLottieMetricsListener metrics = AXrLottie.getMetricsListener();
+                if (metrics != null) {
+                    int missed = Math.max(1, (int) (timeDiff / Math.max(1, findTimeBetweenFrames())));
+                    for (; droppedFrames < missed; droppedFrames++)
+                        metrics.onFrameDropped(cacheName);
+                }
             }
         } else if ((forceFrameRedraw || decodeSingleFrame && timeDiff >= timeCheck) && nextRenderingBitmap != null) {
             setCurrentFrame(now, timeDiff, timeCheck, true);
@@ -1004,12 +1304,43 @@ public class AXrLottieDrawable extends BitmapDrawable implements Animatable {
 
             canvas.drawBitmap(render(renderingBitmap, currentFrame), 0, 0, getPaint());
             if (isRunning) {
-                invalidateInternal();
+                long delay = lastFrameTime + timeCheck - now;
+                if (renderingFrameUnchanged && delay > 0) {
+                    // the picture hasn't changed, no need to redraw it before the next frame is due
+                    unscheduleSelf(invalidateRunnable);
+                    scheduleSelf(invalidateRunnable, SystemClock.uptimeMillis() + delay);
+                } else {
+                    invalidateInternal();
+                }
             }
             canvas.restore();
         }
     }
 
+    /**
+     * @return the area that changes when the next frame is drawn,
+     * or the whole bounds if it isn't known yet
+     */
+    @NonNull
+    @Override
+    public Rect getDirtyBounds() {
+        Bitmap next = nextRenderingBitmap;
+        Rect bounds = getBounds();
+        // an empty area would skip the draw that shows the next frame
+        if (next == null || renderingBitmap == null || isInvalid || applyTransformation
+                || !nextChangedRectValid || nextRenderingSerial != renderingSerial + 1
+                || nextChangedRect[2] <= 0 || nextChangedRect[3] <= 0) {
+            return bounds;
+        }
+        // 1px more for the pixels filtering blends into the changed area
+        dirtyBounds.set(
+                dstRect.left + (int) Math.floor(nextChangedRect[0] * scaleX) - 1,
+                dstRect.top + (int) Math.floor(nextChangedRect[1] * scaleY) - 1,
+                dstRect.left + (int) Math.ceil((nextChangedRect[0] + nextChangedRect[2]) * scaleX) + 1,
+                dstRect.top + (int) Math.ceil((nextChangedRect[1] + nextChangedRect[3]) * scaleY) + 1);
+        return dirtyBounds.intersect(bounds) ? dirtyBounds : bounds;
+    }
+
     @Override
     public int getMinimumHeight() {
         return height;
@@ -1072,24 +1403,25 @@ public class AXrLottieDrawable extends BitmapDrawable implements Animatable {
     }
 
     /**
-     * @return frame info at the giving frame index
+     * @return frame info at the giving frame index,
+     * the bitmap can be given back to {@link AXrLottieBitmapPool} once it's no longer needed.
      */
     public AXrLottieFrame getLottieFrameAt(int frame, int width, int height) {
         Bitmap backgroundBitmap = null;
         AXrLottieFrame c_frame = new AXrLottieFrame();
         try {
-            backgroundBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            backgroundBitmap = AXrLottieBitmapPool.getInstance().get(width, height);
         } catch (Throwable e) {
             e.printStackTrace();
         }
 
         if (backgroundBitmap != null) {
             try {
-                if (!pendingPropertyUpdates.isEmpty()) {
-                    for (AXrLottieProperty.PropertyUpdate entry : pendingPropertyUpdates) {
-                        entry.apply(nativePtr);
+                if (!pendingPropertyBatches.isEmpty()) {
+                    for (AXrLottiePropertyBatch batch : pendingPropertyBatches) {
+                        batch.apply(nativePtr);
                     }
-                    pendingPropertyUpdates.clear();
+                    pendingPropertyBatches.clear();
                 }
             } catch (Exception ignore) {
 
@@ -1265,25 +1597,41 @@ public class AXrLottieDrawable extends BitmapDrawable implements Animatable {
     }
 
     public static Builder fromAssets(@NonNull Context context, @NonNull String fileName, @NonNull String cacheName) {
-        return new Builder(AXrFileReader.fromAssets(context, fileName), cacheName);
+        return new Builder(AXrFileReader.bufferFromAssets(context, fileName), cacheName);
     }
 
     public static Builder fromRes(@NonNull Context context, int res, @NonNull String cacheName) {
-        return new Builder(AXrFileReader.fromRes(context, res), cacheName);
+        return new Builder(AXrFileReader.bufferFromRes(context, res), cacheName);
     }
 
     public static Builder fromInputStream(@NonNull InputStream inputStream, @NonNull String cacheName) {
-        return new Builder(AXrFileReader.fromInputStream(inputStream), cacheName);
+        return new Builder(AXrFileReader.bufferFromInputStream(inputStream), cacheName);
+    }
+
+    /**
+     * The descriptor will be closed, the animation is read through a memory map of its bytes.
+     */
+    public static Builder fromFileDescriptor(@NonNull AssetFileDescriptor fd, @NonNull String cacheName) {
+        return new Builder(AXrFileReader.bufferFromFileDescriptor(fd), cacheName);
+    }
+
+    /**
+     * The json bytes (UTF-8) between the position and the limit of the buffer are loaded,
+     * a direct buffer is read by native code without any copy on the java heap.
+     */
+    public static Builder fromBuffer(@NonNull ByteBuffer buffer, @NonNull String cacheName) {
+        return new Builder(buffer, cacheName);
     }
 
     private enum BuilderType {
-        JSON, FILE, URL
+        JSON, BUFFER, FILE, URL
     }
 
     public static class Builder extends AXrLottieOptions {
         private final BuilderType type;
         private final File file;
         private final String json;
+        private final ByteBuffer buffer;
         private final String url;
 
         public Builder(File file) {
@@ -1293,6 +1641,7 @@ public class AXrLottieDrawable extends BitmapDrawable implements Animatable {
             }
             this.file = file;
             this.json = null;
+            this.buffer = null;
             this.url = null;
             this.type = BuilderType.FILE;
             setCacheName(file.getAbsolutePath());
@@ -1304,17 +1653,31 @@ public class AXrLottieDrawable extends BitmapDrawable implements Animatable {
                 throw new NullPointerException("json can't be empty!");
             this.file = null;
             this.json = json;
+            this.buffer = null;
             this.url = null;
             this.type = BuilderType.JSON;
             setCacheName(cacheName);
         }
 
+        public Builder(ByteBuffer buffer, String cacheName) {
+            super();
+            if (buffer == null || !buffer.hasRemaining())
+                throw new NullPointerException("buffer can't be empty!");
+            this.file = null;
+            this.json = null;
+            this.buffer = buffer;
+            this.url = null;
+            this.type = BuilderType.BUFFER;
+            setCacheName(cacheName);
+        }
+
         public Builder(String url) {
             super();
             if (TextUtils.isEmpty(url))
                 throw new NullPointerException("url can't be empty!");
             this.file = null;
             this.json = null;
+            this.buffer = null;
             this.url = url;
             this.type = BuilderType.URL;
             setCacheName("lottie_cache_" + url.replaceAll("\\W+", ""));
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2020 - Amir Hossein Aghajari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package com.aghajari.rlottie;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decodes the frames of all {@link AXrLottieDrawable}s.
+ * <p>
+ * Requests are kept in a lock-free ordered set, visible drawables first and then
+ * the one whose next frame is due earliest. A drawable has at most one request in flight,
+ * requests of drawables that were recycled or stopped meanwhile are dropped
+ * before they reach native code.
+ */
+public class AXrLottieFrameScheduler {
+
+    private static final AXrLottieFrameScheduler INSTANCE = new AXrLottieFrameScheduler(
+            Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), 4)));
+
+    public static AXrLottieFrameScheduler getInstance() {
+        return INSTANCE;
+    }
+
+    private final ConcurrentSkipListSet<Request> queue = new ConcurrentSkipListSet<>();
+    private final Semaphore pending = new Semaphore(0);
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private final int workersCount;
+
+    private final AtomicInteger executedCount = new AtomicInteger();
+    private final AtomicInteger droppedCount = new AtomicInteger();
+    private final AtomicInteger lateCount = new AtomicInteger();
+
+    private AXrLottieFrameScheduler(int workersCount) {
+        this.workersCount = workersCount;
+    }
+
+    static abstract class Request implements Comparable<Request> {
+        final boolean visible;
+        final long deadline;
+        long sequence;
+
+        /**
+         * @param deadline time ({@link SystemClock#elapsedRealtime()}) the frame should be ready at
+         */
+        Request(boolean visible, long deadline) {
+            this.visible = visible;
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return true if nobody is waiting for this frame anymore
+         */
+        abstract boolean isStale();
+
+        abstract void run();
+
+        /**
+         * called instead of {@link #run()} when the request is stale
+         */
+        abstract void drop();
+
+        @Override
+        public int compareTo(@NonNull Request o) {
+            if (visible != o.visible) return visible ? -1 : 1;
+            if (deadline != o.deadline) return deadline < o.deadline ? -1 : 1;
+            return Long.compare(sequence, o.sequence);
+        }
+    }
+
+    void schedule(Request request) {
+        if (started.compareAndSet(false, true)) {
+            for (int i = 0; i < workersCount; i++) {
+                Thread worker = new Thread(this::runWorker, "AXrLottieFrameScheduler-" + i);
+                worker.setDaemon(true);
+                worker.start();
+            }
+        }
+        request.sequence = sequence.getAndIncrement();
+        queue.add(request);
+        pending.release();
+    }
+
+    private void runWorker() {
+        while (true) {
+            pending.acquireUninterruptibly();
+            Request request = queue.pollFirst();
+            if (request == null) continue;
+
+            try {
+                if (request.isStale()) {
+                    droppedCount.incrementAndGet();
+                    request.drop();
+                    continue;
+                }
+                if (SystemClock.elapsedRealtime() > request.deadline) {
+                    lateCount.incrementAndGet();
+                }
+                executedCount.incrementAndGet();
+                request.run();
+            } catch (Throwable e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public int getWorkersCount() {
+        return workersCount;
+    }
+
+    /**
+     * @return number of requests waiting for a worker
+     */
+    public int getPendingCount() {
+        return pending.availablePermits();
+    }
+
+    public int getExecutedCount() {
+        return executedCount.get();
+    }
+
+    /**
+     * @return number of requests dropped because their drawable was stopped or recycled
+     */
+    public int getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return number of frames that started decoding after their deadline
+     */
+    public int getLateCount() {
+        return lateCount.get();
+    }
+}
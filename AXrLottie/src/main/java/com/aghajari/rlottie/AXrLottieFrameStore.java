@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2020 - Amir Hossein Aghajari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package com.aghajari.rlottie;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.collection.LruCache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Process-wide store of decoded frames, shared between {@link AXrLottieDrawable}s
+ * that play the same animation (cacheName) at the same size.
+ * <p>
+ * Frames are only stored while at least two drawables use the same animation,
+ * a bitmap that went into the store is never written again.
+ * The store and each drawable that shows a stored bitmap hold a reference to it,
+ * it goes back to {@link AXrLottieBitmapPool} once it's evicted and no drawable shows it.
+ */
+public class AXrLottieFrameStore {
+
+    private static final AXrLottieFrameStore INSTANCE = new AXrLottieFrameStore();
+
+    public static AXrLottieFrameStore getInstance() {
+        return INSTANCE;
+    }
+
+    private final LruCache<String, Bitmap> frames;
+    private final Map<String, Integer> activeAnimations = new HashMap<>();
+    // references to the bitmaps that went into the store, the store holds one while
+    // the bitmap is in it and every drawable that shows the bitmap holds one.
+    // weak, a drawable that is dropped without being recycled doesn't keep its frames.
+    private final Map<Bitmap, Integer> sharedBitmaps = new WeakHashMap<>();
+
+    private AXrLottieFrameStore() {
+        int maxSize = (int) Math.min(Runtime.getRuntime().maxMemory() / 16, Integer.MAX_VALUE);
+        frames = new LruCache<String, Bitmap>(maxSize) {
+            @Override
+            protected int sizeOf(@NonNull String key, @NonNull Bitmap value) {
+                return value.getByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, @NonNull String key, @NonNull Bitmap oldValue, @Nullable Bitmap newValue) {
+                // called on the thread that changed the cache, which holds the store's lock
+                if (oldValue != newValue) release(oldValue);
+            }
+        };
+    }
+
+    static String getAnimationKey(String cacheName, int width, int height) {
+        return cacheName + "_" + width + "_" + height;
+    }
+
+    private static String getFrameKey(String animationKey, int frame) {
+        return animationKey + "#" + frame;
+    }
+
+    synchronized void register(String animationKey) {
+        Integer count = activeAnimations.get(animationKey);
+        activeAnimations.put(animationKey, count == null ? 1 : count + 1);
+    }
+
+    synchronized void unregister(String animationKey) {
+        Integer count = activeAnimations.get(animationKey);
+        if (count == null) return;
+
+        if (count <= 1) {
+            activeAnimations.remove(animationKey);
+            String prefix = animationKey + "#";
+            for (String key : frames.snapshot().keySet()) {
+                if (key.startsWith(prefix)) frames.remove(key);
+            }
+        } else {
+            activeAnimations.put(animationKey, count - 1);
+        }
+    }
+
+    /**
+     * @return true if more than one drawable plays this animation
+     */
+    synchronized boolean isShared(String animationKey) {
+        Integer count = activeAnimations.get(animationKey);
+        return count != null && count > 1;
+    }
+
+    /**
+     * @return the stored frame without taking a reference, it must not be shown.
+     */
+    @Nullable
+    synchronized Bitmap get(String animationKey, int frame) {
+        return frames.get(getFrameKey(animationKey, frame));
+    }
+
+    /**
+     * @return the stored frame, the caller shows it until it gives it back by {@link #release(Bitmap)}.
+     */
+    @Nullable
+    synchronized Bitmap acquire(String animationKey, int frame) {
+        Bitmap bitmap = frames.get(getFrameKey(animationKey, frame));
+        if (bitmap != null) retain(bitmap);
+        return bitmap;
+    }
+
+    /**
+     * Stores the frame, the bitmap must not be written anymore.
+     *
+     * @param shown true if the caller shows the bitmap,
+     *              it gives it back by {@link #release(Bitmap)} once it doesn't.
+     */
+    synchronized void put(String animationKey, int frame, Bitmap bitmap, boolean shown) {
+        retain(bitmap);
+        if (shown) retain(bitmap);
+        frames.put(getFrameKey(animationKey, frame), bitmap);
+    }
+
+    /**
+     * Drops a reference to a bitmap that went into the store,
+     * the bitmap goes back to the pool once nothing holds it.
+     *
+     * @return false if the bitmap has never been in the store, the caller still owns it.
+     */
+    synchronized boolean release(@Nullable Bitmap bitmap) {
+        if (bitmap == null) return false;
+        Integer count = sharedBitmaps.get(bitmap);
+        if (count == null) return false;
+
+        if (count <= 1) {
+            sharedBitmaps.remove(bitmap);
+            AXrLottieBitmapPool.getInstance().put(bitmap);
+        } else {
+            sharedBitmaps.put(bitmap, count - 1);
+        }
+        return true;
+    }
+
+    private void retain(Bitmap bitmap) {
+        Integer count = sharedBitmaps.get(bitmap);
+        sharedBitmaps.put(bitmap, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * @return true if the bitmap has been handed to the store,
+     * it may be on screen in other drawables and must not be reused.
+     */
+    synchronized boolean isSharedBitmap(@Nullable Bitmap bitmap) {
+        return bitmap != null && sharedBitmaps.containsKey(bitmap);
+    }
+
+    /**
+     * Set the maximum size of the store in bytes.
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("maxSize must be > 0");
+        frames.resize(maxSize);
+    }
+
+    public int getMaxSize() {
+        return frames.maxSize();
+    }
+
+    /**
+     * @return the sum of the sizes of the stored frames in bytes.
+     */
+    public int getSize() {
+        return frames.size();
+    }
+
+    public int getHitCount() {
+        return frames.hitCount();
+    }
+
+    public int getMissCount() {
+        return frames.missCount();
+    }
+
+    public int getEvictionCount() {
+        return frames.evictionCount();
+    }
+
+    public synchronized void clear() {
+        frames.evictAll();
+    }
+}
@@ -28,11 +28,9 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.widget.AppCompatImageView;
 
-import java.util.ArrayList;
-
 public class AXrLottieImageView extends AppCompatImageView {
 
-    private ArrayList<AXrLottieProperty.PropertyUpdate> layerProperties;
+    private AXrLottiePropertyBatch layerProperties;
     private AXrLottieDrawable drawable;
     private int autoRepeat = AXrLottieOptions.DEFAULT;
     private boolean attachedToWindow;
@@ -52,9 +50,9 @@ public class AXrLottieImageView extends AppCompatImageView {
 
     public void setLayerProperty(String layer, AXrLottieProperty property) {
         if (layerProperties == null) {
-            layerProperties = new ArrayList<>();
+            layerProperties = new AXrLottiePropertyBatch();
         }
-        layerProperties.add(new AXrLottieProperty.PropertyUpdate(property, layer));
+        layerProperties.add(layer, property);
         if (drawable != null) {
             drawable.setLayerProperty(layer, property);
         }
@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2020 - Amir Hossein Aghajari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package com.aghajari.rlottie;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A registry of counters and latency histograms that collects what the library reports,
+ * per animation (decode latency, frames cache hit rate, dropped and late frames, bytes read)
+ * and for the network, the tasks and {@link AXrLottie2Gif}.
+ * <pre>
+ * AXrLottieMetrics metrics = new AXrLottieMetrics();
+ * AXrLottie.setMetricsListener(metrics);
+ * ...
+ * metrics.getAnimation(drawable.getCacheName()).getDecodeLatency().getPercentile(90);
+ * </pre>
+ */
+public class AXrLottieMetrics implements AXrLottieMetricsListener {
+
+    private final Map<String, AnimationMetrics> animations = new HashMap<>();
+    private final Histogram networkFetch = new Histogram();
+    private final Histogram taskWait = new Histogram();
+    private final Histogram gifFrames = new Histogram();
+    private long networkBytes, networkFailures;
+
+    @Override
+    public void onAnimationLoaded(String animation, long nanos) {
+        obtain(animation).load.record(nanos);
+    }
+
+    @Override
+    public void onFrameDecoded(String animation, int frame, long nanos, boolean fromCache, long bytesRead) {
+        AnimationMetrics metrics = obtain(animation);
+        metrics.decode.record(nanos);
+        synchronized (metrics) {
+            if (fromCache) {
+                metrics.cacheHits++;
+            } else {
+                metrics.cacheMisses++;
+            }
+            metrics.bytesRead += bytesRead;
+        }
+    }
+
+    @Override
+    public void onFrameDropped(String animation) {
+        AnimationMetrics metrics = obtain(animation);
+        synchronized (metrics) {
+            metrics.droppedFrames++;
+        }
+    }
+
+    @Override
+    public void onFrameLate(String animation, long lateMillis) {
+        AnimationMetrics metrics = obtain(animation);
+        synchronized (metrics) {
+            metrics.lateFrames++;
+        }
+    }
+
+    @Override
+    public void onCacheCreated(String animation, long nanos, long bytes) {
+        obtain(animation).cacheCreation.record(nanos);
+    }
+
+    @Override
+    public void onPropertiesApplied(String animation, long nanos) {
+        obtain(animation).properties.record(nanos);
+    }
+
+    @Override
+    public void onNetworkFetched(String url, long nanos, long bytes, boolean successful) {
+        networkFetch.record(nanos);
+        synchronized (this) {
+            networkBytes += bytes;
+            if (!successful) networkFailures++;
+        }
+    }
+
+    @Override
+    public void onTaskFinished(int priority, long waitNanos, long runNanos) {
+        taskWait.record(waitNanos);
+    }
+
+    @Override
+    public void onGifFrameEncoded(File gif, int frame, long nanos) {
+        gifFrames.record(nanos);
+    }
+
+    private AnimationMetrics obtain(String animation) {
+        synchronized (animations) {
+            AnimationMetrics metrics = animations.get(animation);
+            if (metrics == null) {
+                metrics = new AnimationMetrics();
+                animations.put(animation, metrics);
+            }
+            return metrics;
+        }
+    }
+
+    /**
+     * @return the metrics of the animation (by its cacheName), null if nothing has been reported
+     */
+    @Nullable
+    public AnimationMetrics getAnimation(String animation) {
+        synchronized (animations) {
+            return animations.get(animation);
+        }
+    }
+
+    @NonNull
+    public Map<String, AnimationMetrics> getAnimations() {
+        synchronized (animations) {
+            return new HashMap<>(animations);
+        }
+    }
+
+    public Histogram getNetworkFetchLatency() {
+        return networkFetch;
+    }
+
+    public synchronized long getNetworkBytes() {
+        return networkBytes;
+    }
+
+    public synchronized long getNetworkFailures() {
+        return networkFailures;
+    }
+
+    /**
+     * @return the time that tasks waited for a free thread
+     */
+    public Histogram getTaskWaitLatency() {
+        return taskWait;
+    }
+
+    public Histogram getGifFrameLatency() {
+        return gifFrames;
+    }
+
+    public void reset() {
+        synchronized (animations) {
+            animations.clear();
+        }
+        networkFetch.reset();
+        taskWait.reset();
+        gifFrames.reset();
+        synchronized (this) {
+            networkBytes = networkFailures = 0;
+        }
+    }
+
+    public static class AnimationMetrics {
+        private final Histogram load = new Histogram();
+        private final Histogram decode = new Histogram();
+        private final Histogram cacheCreation = new Histogram();
+        private final Histogram properties = new Histogram();
+        private long cacheHits, cacheMisses, droppedFrames, lateFrames, bytesRead;
+
+        public Histogram getLoadLatency() {
+            return load;
+        }
+
+        public Histogram getDecodeLatency() {
+            return decode;
+        }
+
+        public Histogram getCacheCreationLatency() {
+            return cacheCreation;
+        }
+
+        public Histogram getPropertiesLatency() {
+            return properties;
+        }
+
+        /**
+         * @return number of frames read from the frames cache
+         */
+        public synchronized long getCacheHitCount() {
+            return cacheHits;
+        }
+
+        /**
+         * @return number of frames that had to be rendered
+         */
+        public synchronized long getCacheMissCount() {
+            return cacheMisses;
+        }
+
+        public synchronized float getCacheHitRate() {
+            long total = cacheHits + cacheMisses;
+            return total == 0 ? 0 : (float) cacheHits / total;
+        }
+
+        public synchronized long getDroppedFrames() {
+            return droppedFrames;
+        }
+
+        public synchronized long getLateFrames() {
+            return lateFrames;
+        }
+
+        /**
+         * @return bytes read from the frames cache
+         */
+        public synchronized long getBytesRead() {
+            return bytesRead;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "AnimationMetrics{" +
+                    "load=" + load +
+                    ", decode=" + decode +
+                    ", cacheHitRate=" + getCacheHitRate() +
+                    ", droppedFrames=" + droppedFrames +
+                    ", lateFrames=" + lateFrames +
+                    ", bytesRead=" + bytesRead +
+                    '}';
+        }
+    }
+
+    /**
+     * Latencies counted in buckets that grow by a quarter of a power of two from a microsecond,
+     * a percentile is accurate to about 25%, however many values are recorded.
+     */
+    public static class Histogram {
+        private static final int BUCKETS = 160;
+
+        private final long[] counts = new long[BUCKETS];
+        private long count, sum, max;
+
+        public synchronized void record(long nanos) {
+            if (nanos < 0) nanos = 0;
+            counts[indexOf(nanos / 1000)]++;
+            count++;
+            sum += nanos;
+            max = Math.max(max, nanos);
+        }
+
+        private static int indexOf(long micros) {
+            if (micros < 4) return (int) micros;
+            int exp = 63 - Long.numberOfLeadingZeros(micros);
+            int sub = (int) (micros >>> (exp - 2)) & 3;
+            return Math.min(exp * 4 + sub - 4, BUCKETS - 1);
+        }
+
+        private static long upperBound(int index) {
+            if (index < 4) return index + 1;
+            int exp = index / 4 + 1;
+            return (long) (5 + index % 4) << (exp - 2);
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        public synchronized long getMean() {
+            return count == 0 ? 0 : sum / count;
+        }
+
+        public synchronized long getMax() {
+            return max;
+        }
+
+        /**
+         * @param percentile 0-100
+         * @return the latency in nanoseconds that the given percent of the values didn't exceed
+         */
+        public synchronized long getPercentile(double percentile) {
+            if (count == 0) return 0;
+            long target = Math.max((long) Math.ceil(count * Math.min(percentile, 100) / 100), 1);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= target)
+                    return Math.min(upperBound(i) * 1000, max);
+            }
+            return max;
+        }
+
+        public synchronized void reset() {
+            Arrays.fill(counts, 0);
+            count = sum = max = 0;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "{count=" + count +
+                    ", p50=" + getPercentile(50) / 1000 + "us" +
+                    ", p90=" + getPercentile(90) / 1000 + "us" +
+                    ", p99=" + getPercentile(99) / 1000 + "us" +
+                    ", max=" + max / 1000 + "us}";
+        }
+    }
+}
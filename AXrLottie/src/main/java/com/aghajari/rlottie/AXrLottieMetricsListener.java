@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2020 - Amir Hossein Aghajari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package com.aghajari.rlottie;
+
+import java.io.File;
+
+/**
+ * Receives the timings of the library, set it by {@link AXrLottie#setMetricsListener(AXrLottieMetricsListener)}.
+ * <p>
+ * The methods are called on the thread that did the work (mostly background threads),
+ * they must return quickly. Animations are identified by their cacheName.
+ * Nothing is measured while no listener is set.
+ *
+ * @see AXrLottieMetrics
+ */
+public interface AXrLottieMetricsListener {
+
+    /**
+     * The animation has been loaded (parsed, or found in the model cache).
+     */
+    default void onAnimationLoaded(String animation, long nanos) {
+    }
+
+    /**
+     * A frame has been decoded into the next bitmap of a drawable.
+     *
+     * @param fromCache true if it was read from the frames cache instead of being rendered
+     * @param bytesRead bytes read from the frames cache
+     */
+    default void onFrameDecoded(String animation, int frame, long nanos, boolean fromCache, long bytesRead) {
+    }
+
+    /**
+     * The drawable had to draw the previous frame again, the next one wasn't decoded in time.
+     * Called once for each frame interval that passes until the next frame is shown.
+     */
+    default void onFrameDropped(String animation) {
+    }
+
+    /**
+     * A frame has been shown after its time, it had been dropped at least once.
+     */
+    default void onFrameLate(String animation, long lateMillis) {
+    }
+
+    /**
+     * The frames cache of the animation has been generated.
+     *
+     * @param bytes the size of the cache file, 0 if it couldn't be written
+     */
+    default void onCacheCreated(String animation, long nanos, long bytes) {
+    }
+
+    /**
+     * Layer properties have been applied to the animation before a frame.
+     */
+    default void onPropertiesApplied(String animation, long nanos) {
+    }
+
+    /**
+     * An animation has been fetched, from the network or the network cache.
+     *
+     * @param bytes the size of the fetched file, 0 if the fetch failed
+     */
+    default void onNetworkFetched(String url, long nanos, long bytes, boolean successful) {
+    }
+
+    /**
+     * A {@link com.aghajari.rlottie.network.AXrLottieTask} has finished.
+     *
+     * @param waitNanos the time it waited in the queue
+     */
+    default void onTaskFinished(int priority, long waitNanos, long runNanos) {
+    }
+
+    /**
+     * A frame has been rendered and encoded by {@link AXrLottie2Gif}.
+     */
+    default void onGifFrameEncoded(File gif, int frame, long nanos) {
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2020 - Amir Hossein Aghajari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package com.aghajari.rlottie;
+
+/**
+ * Counters of the native model cache, which keeps the parsed animations
+ * so the same file or json is parsed only once.
+ *
+ * @see AXrLottie#getModelCacheStats()
+ */
+public class AXrLottieModelCacheStats {
+
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final int size;
+    private final long memorySize;
+
+    AXrLottieModelCacheStats(long hitCount, long missCount, long evictionCount, int size, long memorySize) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.size = size;
+        this.memorySize = memorySize;
+    }
+
+    /**
+     * @return number of loads that reused a cached model
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return number of loads that had to parse the animation
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return number of models removed to respect the cache limits
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public float getHitRate() {
+        long total = hitCount + missCount;
+        return total == 0 ? 0 : (float) hitCount / total;
+    }
+
+    /**
+     * @return number of models in the cache
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return estimated memory (in bytes) of the models in the cache
+     */
+    public long getMemorySize() {
+        return memorySize;
+    }
+
+    @Override
+    public String toString() {
+        return "AXrLottieModelCacheStats{" +
+                "hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                ", evictionCount=" + evictionCount +
+                ", size=" + size +
+                ", memorySize=" + memorySize +
+                '}';
+    }
+}
@@ -20,16 +20,36 @@ package com.aghajari.rlottie;
 
 import android.graphics.Bitmap;
 
+import java.nio.ByteBuffer;
+
 class AXrLottieNative {
     /** AXrLottie */
     public static native void configureModelCacheSize(int cacheSize);
+    public static native void configureModelCacheMemory(long bytes);
+    public static native void getModelCacheStats(long[] stats);
+    public static native void configureRleCacheMemory(long bytes);
+    public static native void getRleCacheStats(long[] stats);
+    public static native void configureCacheWorkers(int count);
+    public static native void configureCacheKeyFrames(int interval);
+    public static native void configureRenderBands(int count);
 
     /** AXrLottieDrawable */
     public static native long create(String src, int w, int h, int[] params, boolean precache, boolean limitFps);
     public static native long createWithJson(String json, String name, int[] params);
+    public static native long createWithBuffer(ByteBuffer buffer, int offset, int length, String name, int[] params);
     public static native void destroy(long ptr);
     public static native void createCache(long ptr, int w, int h);
     public static native int getFrame(long ptr, int frame, Bitmap bitmap, int w, int h, int stride);
+    /** changed gets the area (x, y, w, h) that differs from the frame of the previous call */
+    public static native int getFramePartial(long ptr, int frame, Bitmap bitmap, int w, int h, int stride, boolean keepContent, int[] changed);
+    public static native boolean renderFrame(long ptr, int frame, Bitmap bitmap, int w, int h, int stride);
+    /** renders in ARGB and swaps R and B afterwards, to compare with renderFrame */
+    public static native boolean renderFrameSwizzled(long ptr, int frame, Bitmap bitmap, int w, int h, int stride);
+    /** frames read from the cache, frames rendered, bytes read from the cache and pixels rendered (stats[3], optional) since the last call */
+    public static native void readFrameStats(long ptr, long[] stats);
+    public static native boolean isFrameUnchanged(long ptr, int frame, int previousFrame);
+    public static native int getFramesCount(long ptr);
+    public static native double getFrameRate(long ptr);
 
     /** Layer & Marker */
     public static native int getMarkersCount(long ptr);
@@ -50,17 +70,22 @@ class AXrLottieNative {
     public static native void setLayerTrScale(long ptr, String layer, float w, float h);
 
     /** Dynamic properties */
-    public static native void setDynamicLayerColor(long ptr, String layer, AXrLottieProperty.DynamicProperty<?> dynamicProperty);
-    public static native void setDynamicLayerStrokeColor(long ptr, String layer, AXrLottieProperty.DynamicProperty<?> dynamicProperty);
-    public static native void setDynamicLayerFillOpacity(long ptr, String layer, AXrLottieProperty.DynamicProperty<?> dynamicProperty);
-    public static native void setDynamicLayerStrokeOpacity(long ptr, String layer, AXrLottieProperty.DynamicProperty<?> dynamicProperty);
-    public static native void setDynamicLayerStrokeWidth(long ptr, String layer, AXrLottieProperty.DynamicProperty<?> dynamicProperty);
-    public static native void setDynamicLayerTrRotation(long ptr, String layer, AXrLottieProperty.DynamicProperty<?> dynamicProperty);
-    public static native void setDynamicLayerTrOpacity(long ptr, String layer, AXrLottieProperty.DynamicProperty<?> dynamicProperty);
-    public static native void setDynamicLayerTrAnchor(long ptr, String layer, AXrLottieProperty.DynamicProperty<?> dynamicProperty);
-    public static native void setDynamicLayerTrPosition(long ptr, String layer, AXrLottieProperty.DynamicProperty<?> dynamicProperty);
-    public static native void setDynamicLayerTrScale(long ptr, String layer, AXrLottieProperty.DynamicProperty<?> dynamicProperty);
+    public static native void setDynamicLayerColor(long ptr, String layer, AXrLottieProperty.ColorProvider provider);
+    public static native void setDynamicLayerStrokeColor(long ptr, String layer, AXrLottieProperty.ColorProvider provider);
+    public static native void setDynamicLayerFillOpacity(long ptr, String layer, AXrLottieProperty.FloatProvider provider);
+    public static native void setDynamicLayerStrokeOpacity(long ptr, String layer, AXrLottieProperty.FloatProvider provider);
+    public static native void setDynamicLayerStrokeWidth(long ptr, String layer, AXrLottieProperty.FloatProvider provider);
+    public static native void setDynamicLayerTrRotation(long ptr, String layer, AXrLottieProperty.FloatProvider provider);
+    public static native void setDynamicLayerTrOpacity(long ptr, String layer, AXrLottieProperty.FloatProvider provider);
+    public static native void setDynamicLayerTrAnchor(long ptr, String layer, AXrLottieProperty.PointProvider provider);
+    public static native void setDynamicLayerTrPosition(long ptr, String layer, AXrLottieProperty.PointProvider provider);
+    public static native void setDynamicLayerTrScale(long ptr, String layer, AXrLottieProperty.PointProvider provider);
+
+    /** Property batches */
+    public static native long createPropertyBatch(String[] keyPaths, int[] targets);
+    public static native void destroyPropertyBatch(long batch);
+    public static native void applyPropertyBatch(long ptr, long batch, int[] entries, float[] values, int start, int end);
 
     /** Lottie2Gif */
-    public static native boolean lottie2gif(long ptr, Bitmap bitmap, int w, int h, int stride, int bgColor, String gifPath, int delay, int bitDepth, boolean dither, int frameStart, int frameEnd, AXrLottie2Gif.Lottie2GifListener listener);
+    public static native boolean lottie2gif(long ptr, Bitmap bitmap, int w, int h, int stride, int bgColor, String gifPath, int delay, int bitDepth, boolean dither, int frameStart, int frameEnd, int threads, AXrLottie2Gif.Lottie2GifListener listener);
 }
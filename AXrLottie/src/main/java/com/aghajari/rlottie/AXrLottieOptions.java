@@ -20,9 +20,6 @@ package com.aghajari.rlottie;
 
 import android.text.TextUtils;
 
-import java.util.ArrayList;
-import java.util.List;
-
 public class AXrLottieOptions {
 
     public AXrLottieOptions() {
@@ -36,7 +33,9 @@ public class AXrLottieOptions {
     boolean cache = true;
     boolean limitFps = false;
     boolean startDecode = true;
-    List<AXrLottieProperty.PropertyUpdate> properties = null;
+    boolean shareFrames = true;
+    boolean partialRendering = false;
+    AXrLottiePropertyBatch properties = null;
     int customEndFrame = DEFAULT;
     int customStartFrame = DEFAULT;
     int repeatMode = DEFAULT;
@@ -101,6 +100,27 @@ public class AXrLottieOptions {
         return this;
     }
 
+    /**
+     * share decoded frames with other drawables of the same animation and size
+     *
+     * @see AXrLottieFrameStore
+     */
+    public AXrLottieOptions setFrameSharingEnabled(boolean enabled) {
+        this.shareFrames = enabled;
+        return this;
+    }
+
+    /**
+     * Only redraw the area of a frame that changed since the frame the bitmap holds,
+     * and only invalidate that area. Frames may differ by 1 in a channel at the edges of the
+     * redrawn area, and recording the changes costs time on frames that change everywhere.
+     * Disabled by default.
+     */
+    public AXrLottieOptions setPartialRenderingEnabled(boolean enabled) {
+        this.partialRendering = enabled;
+        return this;
+    }
+
     /**
      * Sets property value for the specified layer. layer can resolve
      * to multiple contents. In that case, the callback's value will apply to all of them.
@@ -108,8 +128,8 @@ public class AXrLottieOptions {
      * keyPath should contain object names separated by (.) and can handle globe(**) or wildchar(*).
      */
     public AXrLottieOptions addLayerProperty(String keyPath, AXrLottieProperty property) {
-        if (properties == null) properties = new ArrayList<>();
-        properties.add(new AXrLottieProperty.PropertyUpdate(property, keyPath));
+        if (properties == null) properties = new AXrLottiePropertyBatch();
+        properties.add(keyPath, property);
         return this;
     }
 
@@ -187,6 +207,8 @@ public class AXrLottieOptions {
         cache = options.cache;
         limitFps = options.limitFps;
         startDecode = options.startDecode;
+        shareFrames = options.shareFrames;
+        partialRendering = options.partialRendering;
         properties = options.properties;
         customEndFrame = options.customEndFrame;
         customStartFrame = options.customStartFrame;
@@ -0,0 +1,417 @@
+/*
+ * Copyright (C) 2020 - Amir Hossein Aghajari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package com.aghajari.rlottie;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.aghajari.rlottie.decoder.AXrFileReader;
+import com.aghajari.rlottie.network.AXrLottieTask;
+import com.aghajari.rlottie.network.AXrLottieTaskExecutor;
+import com.aghajari.rlottie.network.AXrLottieTaskFactory;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static com.aghajari.rlottie.AXrLottieNative.create;
+import static com.aghajari.rlottie.AXrLottieNative.createCache;
+import static com.aghajari.rlottie.AXrLottieNative.createWithBuffer;
+import static com.aghajari.rlottie.AXrLottieNative.destroy;
+import static com.aghajari.rlottie.AXrLottieNative.getFrame;
+
+/**
+ * Gets animations ready before their drawables are built, so the next screen opens warm.
+ * <p>
+ * Each request goes through the same steps as an {@link AXrLottieDrawable} would:
+ * the download (shared with the drawables of the same url), the parse into the model cache,
+ * the first frame of every target size, which is kept in the {@link AXrLottieFrameStore}
+ * for the first draw, and, if the cache is enabled, the frames cache.
+ * <p>
+ * Downloads run on {@link AXrLottieTask#EXECUTOR}, the rest runs on a pool of
+ * {@link #DEFAULT_POOL_SIZE} threads, both by the priority of the requests.
+ * A drawable built with the same source, size and cache options finds everything ready.
+ */
+public class AXrLottiePrefetcher {
+
+    private static final String TAG = AXrLottiePrefetcher.class.getSimpleName();
+
+    public static final int DEFAULT_POOL_SIZE = 2;
+
+    private static final AXrLottiePrefetcher INSTANCE = new AXrLottiePrefetcher();
+
+    public static AXrLottiePrefetcher getInstance() {
+        return INSTANCE;
+    }
+
+    private final AXrLottieTaskExecutor executor = new AXrLottieTaskExecutor(DEFAULT_POOL_SIZE);
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private AXrLottiePrefetcher() {
+    }
+
+    public interface OnPrefetchListener {
+        /**
+         * Called on the main thread once the request is ready.
+         */
+        void onPrefetched(Request request);
+
+        void onError(Request request, Throwable error);
+    }
+
+    /**
+     * Set the maximum number of requests that are loaded and rendered at the same time.
+     */
+    public void setPoolSize(int size) {
+        executor.setPoolSize(size);
+    }
+
+    public void prefetch(@NonNull Request request, @Nullable OnPrefetchListener listener) {
+        synchronized (request) {
+            if (request.state != Request.STATE_IDLE)
+                throw new IllegalStateException("request has already been prefetched");
+            request.state = Request.STATE_LOADING;
+            request.listener = listener;
+        }
+
+        if (request.url == null) {
+            enqueue(request, null);
+            return;
+        }
+
+        AXrLottieTask<File> task = AXrLottieTaskFactory.fromUrl(request.url, true, request.priority);
+        synchronized (request) {
+            request.networkTask = task;
+        }
+        task.addListener(file -> enqueue(request, file))
+                .addFailureListener(error -> finish(request, error));
+    }
+
+    public void prefetch(@NonNull Collection<Request> requests, @Nullable OnPrefetchListener listener) {
+        for (Request request : requests)
+            prefetch(request, listener);
+    }
+
+    private void enqueue(Request request, @Nullable File downloaded) {
+        synchronized (request) {
+            if (request.state != Request.STATE_LOADING) return;
+            request.networkTask = null;
+            request.job = new Job(request, downloaded);
+            executor.execute(request.job);
+        }
+    }
+
+    private void finish(Request request, @Nullable Throwable error) {
+        synchronized (request) {
+            if (request.state != Request.STATE_LOADING) return;
+            request.state = Request.STATE_DONE;
+            request.networkTask = null;
+            request.job = null;
+        }
+        if (error != null)
+            Log.w(TAG, "prefetch failed: " + request.getCacheName(), error);
+
+        final OnPrefetchListener listener = request.listener;
+        if (listener == null) return;
+        handler.post(() -> {
+            if (error == null) {
+                listener.onPrefetched(request);
+            } else {
+                listener.onError(request, error);
+            }
+        });
+    }
+
+    private void cancel(Request request) {
+        AXrLottieTask<File> networkTask;
+        Job job;
+        synchronized (request) {
+            if (request.state != Request.STATE_LOADING) return;
+            request.state = Request.STATE_CANCELLED;
+            networkTask = request.networkTask;
+            job = request.job;
+            request.networkTask = null;
+            request.job = null;
+        }
+        if (networkTask != null)
+            AXrLottieTaskFactory.cancel(request.url, networkTask, request.priority);
+        if (job != null)
+            executor.remove(job);
+    }
+
+    @WorkerThread
+    private void load(Request request, @Nullable File downloaded) throws Exception {
+        File file = downloaded;
+        ByteBuffer buffer = null;
+        if (request.file != null) {
+            file = AXrFileReader.fromFile(request.file);
+            // named after the converted file, as the drawable is
+            request.cacheName = file.getAbsolutePath();
+        } else if (request.asset != null) {
+            buffer = AXrFileReader.bufferFromAssets(request.context, request.asset);
+            if (buffer == null)
+                throw new FileNotFoundException(request.asset);
+            if (request.cache) {
+                file = AXrLottie.getLottieCacheManager().fetchLocalFromCache(buffer, request.cacheName);
+            }
+            if (file == null && !buffer.isDirect()) {
+                ByteBuffer direct = ByteBuffer.allocateDirect(buffer.remaining());
+                direct.put(buffer.duplicate());
+                direct.flip();
+                buffer = direct;
+            }
+        }
+        if (file == null && buffer == null)
+            throw new FileNotFoundException(request.getCacheName());
+
+        if (request.sizes.isEmpty()) {
+            // only parsed into the model cache
+            warmUp(request, file, buffer, 0, 0);
+        }
+        for (int[] size : request.sizes) {
+            if (request.isCancelled()) return;
+            warmUp(request, file, buffer, size[0], size[1]);
+        }
+    }
+
+    /**
+     * Loads the animation the way {@link AXrLottieDrawable} does at this size,
+     * so it finds the model, its first frame and the frames cache ready.
+     */
+    @WorkerThread
+    private void warmUp(Request request, @Nullable File file, @Nullable ByteBuffer buffer, int width, int height) {
+        AXrLottieCacheManager cacheManager = AXrLottie.getLottieCacheManager();
+        boolean render = width > 0 && height > 0;
+        boolean precache = render && request.cache && file != null;
+        int cacheWidth = width, cacheHeight = height;
+        int[] metaData = new int[3];
+
+        long ptr;
+        if (file != null) {
+            if (precache) {
+                int[] cacheSize = cacheManager.getFramesCacheSize(file, width, height, request.limitFps);
+                cacheWidth = cacheSize[0];
+                cacheHeight = cacheSize[1];
+            }
+            ptr = create(file.getAbsolutePath(), cacheWidth, cacheHeight, metaData, precache, request.limitFps);
+        } else {
+            ptr = createWithBuffer(buffer, buffer.position(), buffer.remaining(), request.cacheName, metaData);
+        }
+        if (ptr == 0)
+            throw new IllegalStateException("can't load " + request.getCacheName());
+
+        try {
+            if (!render) return;
+
+            String animationKey = AXrLottieFrameStore.getAnimationKey(request.cacheName, width, height);
+            // the frames cache is generated once a frame has been rendered, as in the drawable
+            Bitmap bitmap = AXrLottieBitmapPool.getInstance().get(width, height);
+            if (getFrame(ptr, 0, bitmap, width, height, bitmap.getRowBytes()) != -1
+                    && AXrLottieFrameStore.getInstance().get(animationKey, 0) == null) {
+                AXrLottieFrameStore.getInstance().put(animationKey, 0, bitmap, false);
+            } else {
+                AXrLottieBitmapPool.getInstance().put(bitmap);
+            }
+
+            if (precache && metaData[2] != 0 && !request.isCancelled()) {
+                File framesCacheFile = cacheManager.getFramesCacheFile(file, cacheWidth, cacheHeight, request.limitFps);
+                cacheManager.recordFramesCache(file, framesCacheFile);
+                createCache(ptr, cacheWidth, cacheHeight);
+                cacheManager.recordFramesCache(file, framesCacheFile);
+                if (framesCacheFile.exists())
+                    cacheManager.removeSmallerFramesCaches(file, cacheWidth, cacheHeight, request.limitFps);
+            }
+        } finally {
+            destroy(ptr);
+        }
+    }
+
+    private class Job implements Runnable, AXrLottieTaskExecutor.Prioritized {
+        private final Request request;
+        @Nullable
+        private final File downloaded;
+        private final long sequence = AXrLottieTaskExecutor.nextSequence();
+
+        Job(Request request, @Nullable File downloaded) {
+            this.request = request;
+            this.downloaded = downloaded;
+        }
+
+        @Override
+        public int getPriority() {
+            return request.priority;
+        }
+
+        @Override
+        public long getSequence() {
+            return sequence;
+        }
+
+        @Override
+        public void run() {
+            if (request.isCancelled()) return;
+            Throwable error = null;
+            try {
+                load(request, downloaded);
+            } catch (Throwable e) {
+                error = e;
+            }
+            finish(request, error);
+        }
+    }
+
+    /**
+     * An animation to prefetch at one or more sizes,
+     * the sizes and the options must match the drawables that will show it.
+     */
+    public static class Request {
+        private static final int STATE_IDLE = 0;
+        private static final int STATE_LOADING = 1;
+        private static final int STATE_DONE = 2;
+        private static final int STATE_CANCELLED = 3;
+
+        @Nullable
+        final String url;
+        @Nullable
+        final File file;
+        @Nullable
+        final String asset;
+        @Nullable
+        final Context context;
+        volatile String cacheName;
+
+        final List<int[]> sizes = new ArrayList<>(1);
+        int priority = AXrLottieTask.PRIORITY_LOW;
+        boolean cache = false;
+        boolean limitFps = false;
+
+        private int state = STATE_IDLE;
+        @Nullable
+        private OnPrefetchListener listener;
+        @Nullable
+        private AXrLottieTask<File> networkTask;
+        @Nullable
+        private Job job;
+
+        private Request(@Nullable String url, @Nullable File file, @Nullable Context context,
+                        @Nullable String asset, String cacheName) {
+            this.url = url;
+            this.file = file;
+            this.context = context;
+            this.asset = asset;
+            this.cacheName = cacheName;
+        }
+
+        public static Request fromURL(@NonNull String url) {
+            if (TextUtils.isEmpty(url))
+                throw new NullPointerException("url can't be empty!");
+            return new Request(url, null, null, null, "lottie_cache_" + url.replaceAll("\\W+", ""));
+        }
+
+        public static Request fromPath(@NonNull String path) {
+            return fromFile(new File(path));
+        }
+
+        /**
+         * The file is converted (e.g. a zip file is extracted) on the prefetch thread.
+         */
+        public static Request fromFile(@NonNull File file) {
+            return new Request(null, file, null, null, file.getAbsolutePath());
+        }
+
+        public static Request fromAssets(@NonNull Context context, @NonNull String fileName) {
+            return fromAssets(context, fileName, fileName.replaceAll("\\W+", ""));
+        }
+
+        public static Request fromAssets(@NonNull Context context, @NonNull String fileName, @NonNull String cacheName) {
+            return new Request(null, null, context.getApplicationContext(), fileName, cacheName);
+        }
+
+        /**
+         * Adds a size that the animation will be shown at, the first frame is rendered
+         * and the frames cache is created for every size.
+         */
+        public Request addSize(int width, int height) {
+            if (width <= 0 || height <= 0)
+                throw new IllegalArgumentException("size must be > 0");
+            sizes.add(new int[]{width, height});
+            return this;
+        }
+
+        /**
+         * Default: {@link AXrLottieTask#PRIORITY_LOW}
+         */
+        public Request setPriority(int priority) {
+            this.priority = priority;
+            return this;
+        }
+
+        /**
+         * Creates the frames cache of the animation, as {@link AXrLottieOptions#setCacheEnabled(boolean)}.
+         * Default: false
+         */
+        public Request setCacheEnabled(boolean cache) {
+            this.cache = cache;
+            return this;
+        }
+
+        /**
+         * Default: false
+         */
+        public Request setFpsLimit(boolean limitFps) {
+            this.limitFps = limitFps;
+            return this;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        public String getCacheName() {
+            return cacheName;
+        }
+
+        public synchronized boolean isDone() {
+            return state == STATE_DONE;
+        }
+
+        public synchronized boolean isCancelled() {
+            return state == STATE_CANCELLED;
+        }
+
+        /**
+         * Stops the request, the listener won't be called anymore.
+         * The download goes on if a drawable is waiting for it.
+         */
+        public void cancel() {
+            AXrLottiePrefetcher.getInstance().cancel(this);
+        }
+    }
+}
@@ -22,7 +22,8 @@ package com.aghajari.rlottie;
 public class AXrLottieProperty {
     final PropertyType type;
 
-    private enum PropertyType {
+    // ordinals are used by AXrLottieNative.createPropertyBatch
+    enum PropertyType {
         FillColor,
         FillOpacity,
         StrokeColor,
@@ -35,19 +36,42 @@ public class AXrLottieProperty {
         TrScale
     }
 
-    final DynamicProperty<?> dynamicProperty;
+    /* ColorProvider, FloatProvider or PointProvider */
+    final Object provider;
 
     public interface DynamicProperty<T> {
         T getValue(int frame);
     }
 
+    /**
+     * Dynamic color, called from the rendering thread without boxing.
+     */
+    public interface ColorProvider {
+        int getValue(int frame);
+    }
+
+    /**
+     * Dynamic float value, called from the rendering thread without boxing.
+     */
+    public interface FloatProvider {
+        float getValue(int frame);
+    }
+
+    /**
+     * Dynamic point or size, write x (width) and y (height) into out[0] and out[1].
+     * out is reused for every frame.
+     */
+    public interface PointProvider {
+        void getValue(int frame, float[] out);
+    }
+
     final int intValue;
     final float floatValue, floatValue2;
 
     AXrLottieProperty(PropertyType type, int value) {
         this.type = type;
         this.intValue = value;
-        this.dynamicProperty = null;
+        this.provider = null;
         this.floatValue = 0;
         this.floatValue2 = 0;
     }
@@ -55,7 +79,7 @@ public class AXrLottieProperty {
     AXrLottieProperty(PropertyType type, float value) {
         this.type = type;
         this.floatValue = value;
-        this.dynamicProperty = null;
+        this.provider = null;
         this.intValue = 0;
         this.floatValue2 = 0;
     }
@@ -64,13 +88,13 @@ public class AXrLottieProperty {
         this.type = type;
         this.floatValue = value1;
         this.floatValue2 = value2;
-        this.dynamicProperty = null;
+        this.provider = null;
         this.intValue = 0;
     }
 
-    AXrLottieProperty(PropertyType type, DynamicProperty<?> dynamicProperty) {
+    AXrLottieProperty(PropertyType type, Object provider) {
         this.type = type;
-        this.dynamicProperty = dynamicProperty;
+        this.provider = provider;
         this.intValue = 0;
         this.floatValue = 0;
         this.floatValue2 = 0;
@@ -83,7 +107,12 @@ public class AXrLottieProperty {
 
     /* Dynamic color property of Fill object */
     public static AXrLottieProperty dynamicFillColor(DynamicProperty<Integer> dynamicProperty) {
-        return new AXrLottieProperty(PropertyType.FillColor, dynamicProperty);
+        return fillColor((ColorProvider) frame -> dynamicProperty.getValue(frame));
+    }
+
+    /* Dynamic color property of Fill object */
+    public static AXrLottieProperty fillColor(ColorProvider provider) {
+        return new AXrLottieProperty(PropertyType.FillColor, provider);
     }
 
     /* Opacity property of Fill object, [ 0 .. 100] */
@@ -93,7 +122,12 @@ public class AXrLottieProperty {
 
     /* Dynamic opacity property of Fill object, [ 0 .. 100] */
     public static AXrLottieProperty dynamicFillOpacity(DynamicProperty<Float> dynamicProperty) {
-        return new AXrLottieProperty(PropertyType.FillOpacity, dynamicProperty);
+        return fillOpacity((FloatProvider) frame -> dynamicProperty.getValue(frame));
+    }
+
+    /* Dynamic opacity property of Fill object, [ 0 .. 100] */
+    public static AXrLottieProperty fillOpacity(FloatProvider provider) {
+        return new AXrLottieProperty(PropertyType.FillOpacity, provider);
     }
 
     /* Color property of Stroke object */
@@ -103,7 +137,12 @@ public class AXrLottieProperty {
 
     /* Dynamic color property of Stroke object */
     public static AXrLottieProperty dynamicStrokeColor(DynamicProperty<Integer> dynamicProperty) {
-        return new AXrLottieProperty(PropertyType.StrokeColor, dynamicProperty);
+        return strokeColor((ColorProvider) frame -> dynamicProperty.getValue(frame));
+    }
+
+    /* Dynamic color property of Stroke object */
+    public static AXrLottieProperty strokeColor(ColorProvider provider) {
+        return new AXrLottieProperty(PropertyType.StrokeColor, provider);
     }
 
     /* Opacity property of Stroke object, [ 0 .. 100] */
@@ -113,7 +152,12 @@ public class AXrLottieProperty {
 
     /* Dynamic opacity property of Stroke object, [ 0 .. 100] */
     public static AXrLottieProperty dynamicStrokeOpacity(DynamicProperty<Float> dynamicProperty) {
-        return new AXrLottieProperty(PropertyType.StrokeOpacity, dynamicProperty);
+        return strokeOpacity((FloatProvider) frame -> dynamicProperty.getValue(frame));
+    }
+
+    /* Dynamic opacity property of Stroke object, [ 0 .. 100] */
+    public static AXrLottieProperty strokeOpacity(FloatProvider provider) {
+        return new AXrLottieProperty(PropertyType.StrokeOpacity, provider);
     }
 
     /* Stroke with property of Stroke object */
@@ -123,7 +167,12 @@ public class AXrLottieProperty {
 
     /* Dynamic stroke with property of Stroke object */
     public static AXrLottieProperty dynamicStrokeWidth(DynamicProperty<Float> dynamicProperty) {
-        return new AXrLottieProperty(PropertyType.StrokeWidth, dynamicProperty);
+        return strokeWidth((FloatProvider) frame -> dynamicProperty.getValue(frame));
+    }
+
+    /* Dynamic stroke with property of Stroke object */
+    public static AXrLottieProperty strokeWidth(FloatProvider provider) {
+        return new AXrLottieProperty(PropertyType.StrokeWidth, provider);
     }
 
     /* Transform Scale property of Layer and Group object, range[0 .. 360] in degrees*/
@@ -133,7 +182,12 @@ public class AXrLottieProperty {
 
     /* Dynamic transform Scale property of Layer and Group object, range[0 .. 360] in degrees*/
     public static AXrLottieProperty dynamicTrRotation(DynamicProperty<Float> dynamicProperty) {
-        return new AXrLottieProperty(PropertyType.TrRotation, dynamicProperty);
+        return trRotation((FloatProvider) frame -> dynamicProperty.getValue(frame));
+    }
+
+    /* Dynamic transform Scale property of Layer and Group object, range[0 .. 360] in degrees */
+    public static AXrLottieProperty trRotation(FloatProvider provider) {
+        return new AXrLottieProperty(PropertyType.TrRotation, provider);
     }
 
     /* Transform Opacity property of Layer and Group object, [ 0 .. 100] */
@@ -143,7 +197,12 @@ public class AXrLottieProperty {
 
     /* Dynamic transform Opacity property of Layer and Group object, [ 0 .. 100] */
     public static AXrLottieProperty dynamicTrOpacity(DynamicProperty<Float> dynamicProperty) {
-        return new AXrLottieProperty(PropertyType.TrOpacity, dynamicProperty);
+        return trOpacity((FloatProvider) frame -> dynamicProperty.getValue(frame));
+    }
+
+    /* Dynamic transform Opacity property of Layer and Group object, [ 0 .. 100] */
+    public static AXrLottieProperty trOpacity(FloatProvider provider) {
+        return new AXrLottieProperty(PropertyType.TrOpacity, provider);
     }
 
     /* Transform Anchor property of Layer and Group object */
@@ -153,7 +212,16 @@ public class AXrLottieProperty {
 
     /* Dynamic transform Anchor property of Layer and Group object */
     public static AXrLottieProperty dynamicTrAnchor(DynamicProperty<Float[]> dynamicProperty) {
-        return new AXrLottieProperty(PropertyType.TrAnchor, dynamicProperty);
+        return trAnchor((PointProvider) (frame, out) -> {
+            Float[] value = dynamicProperty.getValue(frame);
+            out[0] = value[0];
+            out[1] = value[1];
+        });
+    }
+
+    /* Dynamic transform Anchor property of Layer and Group object */
+    public static AXrLottieProperty trAnchor(PointProvider provider) {
+        return new AXrLottieProperty(PropertyType.TrAnchor, provider);
     }
 
     /* Transform Position property of Layer and Group object */
@@ -163,7 +231,16 @@ public class AXrLottieProperty {
 
     /* Dynamic transform Position property of Layer and Group object */
     public static AXrLottieProperty dynamicTrPosition(DynamicProperty<Float[]> dynamicProperty) {
-        return new AXrLottieProperty(PropertyType.TrPosition, dynamicProperty);
+        return trPosition((PointProvider) (frame, out) -> {
+            Float[] value = dynamicProperty.getValue(frame);
+            out[0] = value[0];
+            out[1] = value[1];
+        });
+    }
+
+    /* Dynamic transform Position property of Layer and Group object */
+    public static AXrLottieProperty trPosition(PointProvider provider) {
+        return new AXrLottieProperty(PropertyType.TrPosition, provider);
     }
 
     /* Transform Scale property of Layer and Group object, range[0 ..100] */
@@ -173,7 +250,16 @@ public class AXrLottieProperty {
 
     /* Dynamic transform Scale property of Layer and Group object, range[0 ..100] */
     public static AXrLottieProperty dynamicTrScale(DynamicProperty<Float[]> dynamicProperty) {
-        return new AXrLottieProperty(PropertyType.TrScale, dynamicProperty);
+        return trScale((PointProvider) (frame, out) -> {
+            Float[] value = dynamicProperty.getValue(frame);
+            out[0] = value[0];
+            out[1] = value[1];
+        });
+    }
+
+    /* Dynamic transform Scale property of Layer and Group object, range[0 ..100] */
+    public static AXrLottieProperty trScale(PointProvider provider) {
+        return new AXrLottieProperty(PropertyType.TrScale, provider);
     }
 
     static class PropertyUpdate {
@@ -191,37 +277,37 @@ public class AXrLottieProperty {
     }
 
     private static void apply(long ptr, String layer, AXrLottieProperty property) {
-        if (property.dynamicProperty != null) {
+        if (property.provider != null) {
             switch (property.type) {
                 case FillColor:
-                    AXrLottieNative.setDynamicLayerColor(ptr, layer, property.dynamicProperty);
+                    AXrLottieNative.setDynamicLayerColor(ptr, layer, (ColorProvider) property.provider);
                     break;
                 case FillOpacity:
-                    AXrLottieNative.setDynamicLayerFillOpacity(ptr, layer, property.dynamicProperty);
+                    AXrLottieNative.setDynamicLayerFillOpacity(ptr, layer, (FloatProvider) property.provider);
                     break;
                 case StrokeColor:
-                    AXrLottieNative.setDynamicLayerStrokeColor(ptr, layer, property.dynamicProperty);
+                    AXrLottieNative.setDynamicLayerStrokeColor(ptr, layer, (ColorProvider) property.provider);
                     break;
                 case StrokeOpacity:
-                    AXrLottieNative.setDynamicLayerStrokeOpacity(ptr, layer, property.dynamicProperty);
+                    AXrLottieNative.setDynamicLayerStrokeOpacity(ptr, layer, (FloatProvider) property.provider);
                     break;
                 case StrokeWidth:
-                    AXrLottieNative.setDynamicLayerStrokeWidth(ptr, layer, property.dynamicProperty);
+                    AXrLottieNative.setDynamicLayerStrokeWidth(ptr, layer, (FloatProvider) property.provider);
                     break;
                 case TrAnchor:
-                    AXrLottieNative.setDynamicLayerTrAnchor(ptr, layer, property.dynamicProperty);
+                    AXrLottieNative.setDynamicLayerTrAnchor(ptr, layer, (PointProvider) property.provider);
                     break;
                 case TrOpacity:
-                    AXrLottieNative.setDynamicLayerTrOpacity(ptr, layer, property.dynamicProperty);
+                    AXrLottieNative.setDynamicLayerTrOpacity(ptr, layer, (FloatProvider) property.provider);
                     break;
                 case TrPosition:
-                    AXrLottieNative.setDynamicLayerTrPosition(ptr, layer, property.dynamicProperty);
+                    AXrLottieNative.setDynamicLayerTrPosition(ptr, layer, (PointProvider) property.provider);
                     break;
                 case TrRotation:
-                    AXrLottieNative.setDynamicLayerTrRotation(ptr, layer, property.dynamicProperty);
+                    AXrLottieNative.setDynamicLayerTrRotation(ptr, layer, (FloatProvider) property.provider);
                     break;
                 case TrScale:
-                    AXrLottieNative.setDynamicLayerTrScale(ptr, layer, property.dynamicProperty);
+                    AXrLottieNative.setDynamicLayerTrScale(ptr, layer, (PointProvider) property.provider);
                     break;
             }
         } else {
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2020 - Amir Hossein Aghajari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package com.aghajari.rlottie;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * A set of layer properties that is applied to an animation with a single native call.
+ * <p>
+ * Key paths are converted once, the first time the batch is applied,
+ * and resolved once for each animation the batch is applied to,
+ * the same batch can be given to any number of {@link AXrLottieDrawable}s.
+ * Properties are applied in the order they were added,
+ * dynamic properties one by one between the other properties of the batch.
+ *
+ * @see AXrLottieDrawable#setLayerProperties(AXrLottiePropertyBatch)
+ */
+public class AXrLottiePropertyBatch {
+
+    private final ArrayList<AXrLottieProperty.PropertyUpdate> updates = new ArrayList<>();
+
+    private boolean compiled;
+    private long nativeBatch;
+    private int[] entries;
+    private float[] values;
+    private final ArrayList<AXrLottieProperty.PropertyUpdate> dynamicUpdates = new ArrayList<>();
+    // number of entries applied before each dynamic update
+    private int[] dynamicPositions;
+
+    /**
+     * Sets property value for the specified layer. layer can resolve
+     * to multiple contents. In that case, the callback's value will apply to all of them.
+     * <p>
+     * keyPath should contain object names separated by (.) and can handle globe(**) or wildchar(*).
+     */
+    public synchronized AXrLottiePropertyBatch add(String keyPath, AXrLottieProperty property) {
+        updates.add(new AXrLottieProperty.PropertyUpdate(property, keyPath));
+        compiled = false;
+        return this;
+    }
+
+    public synchronized int size() {
+        return updates.size();
+    }
+
+    public synchronized boolean isEmpty() {
+        return updates.isEmpty();
+    }
+
+    private void compile() {
+        release();
+
+        HashMap<String, Integer> keyPathIndexes = new HashMap<>();
+        ArrayList<String> keyPaths = new ArrayList<>();
+        HashMap<String, Integer> targetIndexes = new HashMap<>();
+        ArrayList<Integer> targets = new ArrayList<>();
+        ArrayList<Integer> entryTargets = new ArrayList<>();
+        for (AXrLottieProperty.PropertyUpdate update : updates) {
+            if (update.property.provider != null) continue;
+            Integer keyPathIndex = keyPathIndexes.get(update.layer);
+            if (keyPathIndex == null) {
+                keyPathIndex = keyPaths.size();
+                keyPathIndexes.put(update.layer, keyPathIndex);
+                keyPaths.add(update.layer);
+            }
+            String target = keyPathIndex + ":" + update.property.type.ordinal();
+            Integer targetIndex = targetIndexes.get(target);
+            if (targetIndex == null) {
+                targetIndex = targets.size() / 2;
+                targetIndexes.put(target, targetIndex);
+                targets.add(keyPathIndex);
+                targets.add(update.property.type.ordinal());
+            }
+            entryTargets.add(targetIndex);
+        }
+
+        int count = entryTargets.size();
+        entries = new int[count * 2];
+        values = new float[count * 2];
+        dynamicUpdates.clear();
+        dynamicPositions = new int[updates.size() - count];
+        int index = 0;
+        for (AXrLottieProperty.PropertyUpdate update : updates) {
+            AXrLottieProperty property = update.property;
+            if (property.provider != null) {
+                dynamicPositions[dynamicUpdates.size()] = index;
+                dynamicUpdates.add(update);
+                continue;
+            }
+            entries[index * 2] = entryTargets.get(index);
+            entries[index * 2 + 1] = property.intValue;
+            values[index * 2] = property.floatValue;
+            values[index * 2 + 1] = property.floatValue2;
+            index++;
+        }
+
+        if (count > 0) {
+            int[] targetsArray = new int[targets.size()];
+            for (int i = 0; i < targetsArray.length; i++) targetsArray[i] = targets.get(i);
+            nativeBatch = AXrLottieNative.createPropertyBatch(keyPaths.toArray(new String[0]), targetsArray);
+        }
+        compiled = true;
+    }
+
+    synchronized void apply(long ptr) {
+        if (ptr == 0 || updates.isEmpty()) return;
+        if (!compiled) compile();
+
+        int start = 0;
+        for (int i = 0; i < dynamicUpdates.size(); i++) {
+            start = applyEntries(ptr, start, dynamicPositions[i]);
+            dynamicUpdates.get(i).apply(ptr);
+        }
+        applyEntries(ptr, start, entries.length / 2);
+    }
+
+    private int applyEntries(long ptr, int start, int end) {
+        if (nativeBatch != 0 && start < end)
+            AXrLottieNative.applyPropertyBatch(ptr, nativeBatch, entries, values, start, end);
+        return end;
+    }
+
+    /**
+     * Releases the converted key paths,
+     * they will be converted again if the batch is applied after this.
+     */
+    public synchronized void release() {
+        if (nativeBatch != 0) {
+            AXrLottieNative.destroyPropertyBatch(nativeBatch);
+            nativeBatch = 0;
+        }
+        compiled = false;
+    }
+
+    @Override
+    protected void finalize() throws Throwable {
+        try {
+            release();
+        } finally {
+            super.finalize();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2020 - Amir Hossein Aghajari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package com.aghajari.rlottie;
+
+/**
+ * Counters of the native rle cache, which keeps the rasterized shapes, masks and mattes
+ * so the ones that didn't change since the previous frame aren't rasterized again.
+ *
+ * @see AXrLottie#getRleCacheStats()
+ */
+public class AXrLottieRleCacheStats {
+
+    private final long hitCount;
+    private final long missCount;
+    private final int size;
+    private final long memorySize;
+
+    AXrLottieRleCacheStats(long hitCount, long missCount, int size, long memorySize) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.size = size;
+        this.memorySize = memorySize;
+    }
+
+    /**
+     * @return number of paths that reused the rle of the previous frame
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return number of paths that had to be rasterized
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public float getHitRate() {
+        long total = hitCount + missCount;
+        return total == 0 ? 0 : (float) hitCount / total;
+    }
+
+    /**
+     * @return number of rles in the cache
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return memory (in bytes) of the paths and rles in the cache
+     */
+    public long getMemorySize() {
+        return memorySize;
+    }
+
+    @Override
+    public String toString() {
+        return "AXrLottieRleCacheStats{" +
+                "hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                ", size=" + size +
+                ", memorySize=" + memorySize +
+                '}';
+    }
+}
@@ -19,6 +19,7 @@
 package com.aghajari.rlottie.decoder;
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 
 import androidx.annotation.Nullable;
 
@@ -31,6 +32,8 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * Helper class to read local files
@@ -87,6 +90,119 @@ public class AXrFileReader {
         return readStream(stream);
     }
 
+    /**
+     * Reads the raw resource into a direct buffer, without converting it to a String.
+     * Uncompressed resources are memory mapped.
+     */
+    public static ByteBuffer bufferFromRes(Context context, int rawRes) {
+        String cache = "lottie_cache_" + context.getResources().getResourceName(rawRes);
+        return readBuffer(cache, context, null, rawRes);
+    }
+
+    /**
+     * Reads the asset into a direct buffer, without converting it to a String.
+     * Uncompressed assets are memory mapped.
+     */
+    public static ByteBuffer bufferFromAssets(Context context, String fileName) {
+        String cache = "lottie_cache_" + fileName;
+        return readBuffer(cache, context, fileName, 0);
+    }
+
+    /**
+     * Memory maps the part of the file that the descriptor points to,
+     * the descriptor will be closed.
+     */
+    public static ByteBuffer bufferFromFileDescriptor(AssetFileDescriptor fd) {
+        try {
+            FileInputStream inputStream = new FileInputStream(fd.getFileDescriptor());
+            try {
+                FileChannel channel = inputStream.getChannel();
+                long length = fd.getLength();
+                if (length == AssetFileDescriptor.UNKNOWN_LENGTH)
+                    length = channel.size() - fd.getStartOffset();
+                return channel.map(FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), length);
+            } finally {
+                inputStream.close();
+            }
+        } catch (IOException e) {
+            return null;
+        } finally {
+            try {
+                fd.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    public static ByteBuffer bufferFromFile(File file) {
+        try {
+            FileInputStream inputStream = new FileInputStream(file);
+            try {
+                FileChannel channel = inputStream.getChannel();
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                inputStream.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public static ByteBuffer bufferFromInputStream(InputStream stream) {
+        int length = readStreamBytes(stream);
+        if (length < 0) return null;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+        buffer.put(readBufferLocal.get(), 0, length);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static ByteBuffer readBuffer(String cache, Context context, @Nullable String asset, int rawRes) {
+        File file = AXrLottie.getLottieCacheManager().getCachedFile(cache, JsonFileExtension.JSON, false, true);
+        if (file != null && file.exists()) {
+            ByteBuffer buffer = bufferFromFile(file);
+            if (buffer != null) return buffer;
+        }
+
+        try {
+            File input = null;
+            for (AXrFileExtension extension : AXrLottie.getSupportedFileExtensions().values()) {
+                if (extension.canParseFile(cache)) {
+                    if (input == null) {
+                        input = AXrLottie.getLottieCacheManager().writeTempCacheFile(cache, readRes(context, asset, rawRes), extension, false);
+                    }
+                    try {
+                        File f = extension.toFile(cache, input, false);
+                        if (f != null) return bufferFromFile(f);
+                    } catch (IOException ignore) {
+                    }
+                    if (input != null && input.exists()) input.delete();
+                }
+            }
+        } catch (Exception ignore) {
+        }
+
+        AssetFileDescriptor fd = readResFd(context, asset, rawRes);
+        if (fd != null) {
+            ByteBuffer buffer = bufferFromFileDescriptor(fd);
+            if (buffer != null) return buffer;
+        }
+        // compressed in the apk, there is no descriptor to map
+        return bufferFromInputStream(readRes(context, asset, rawRes));
+    }
+
+    private static AssetFileDescriptor readResFd(Context context, @Nullable String asset, int rawRes) {
+        try {
+            if (asset != null) {
+                return context.getAssets().openFd(asset);
+            } else {
+                return context.getResources().openRawResourceFd(rawRes);
+            }
+        } catch (Exception ignore) {
+            return null;
+        }
+    }
+
     private static String read(String cache, Context context, @Nullable String asset, int rawRes) {
         File file = AXrLottie.getLottieCacheManager().getCachedFile(cache, JsonFileExtension.JSON, false, true);
         if (file != null && file.exists()) {
@@ -138,7 +254,18 @@ public class AXrFileReader {
     }
 
     private static String readStream(InputStream inputStream) {
-        if (inputStream == null) return null;
+        int totalRead = readStreamBytes(inputStream);
+        if (totalRead < 0) return null;
+        return new String(readBufferLocal.get(), 0, totalRead);
+    }
+
+    /**
+     * Reads the stream into the thread's read buffer.
+     *
+     * @return number of bytes read, or -1 if reading failed
+     */
+    private static int readStreamBytes(InputStream inputStream) {
+        if (inputStream == null) return -1;
 
         int totalRead = 0;
         byte[] readBuffer = readBufferLocal.get();
@@ -166,14 +293,13 @@ public class AXrFileReader {
                 }
             }
         } catch (Throwable e) {
-            return null;
+            return -1;
         } finally {
             try {
                 inputStream.close();
             } catch (Throwable ignore) {
             }
         }
-
-        return new String(readBuffer, 0, totalRead);
+        return totalRead;
     }
 }
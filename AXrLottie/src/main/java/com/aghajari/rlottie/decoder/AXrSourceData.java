@@ -27,6 +27,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
 
 /**
  * Helper class to save drawable json source.
@@ -47,6 +48,8 @@ public final class AXrSourceData<V> {
     public void export(File output) throws IOException {
         if (value instanceof File) {
             copy((File) value, output);
+        } else if (value instanceof ByteBuffer) {
+            write((ByteBuffer) value, output);
         } else {
             write((String) value, output);
         }
@@ -58,6 +61,12 @@ public final class AXrSourceData<V> {
         outputStreamWriter.close();
     }
 
+    private static void write(ByteBuffer buffer, File file) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.getChannel().write(buffer.duplicate());
+        }
+    }
+
     private static void copy(File src, File dst) throws IOException {
         try (InputStream in = new FileInputStream(src);
              OutputStream out = new FileOutputStream(dst)) {
@@ -42,25 +42,25 @@ public class AXrStreamParser {
                 contentType = "application/json";
             }
 
-            boolean parsed = false;
+            File output = null;
             for (AXrFileExtension fileExtension : AXrLottie.getSupportedFileExtensions().values()) {
                 if (fileExtension.canParseContent(contentType)) {
                     if (fileExtension.willReadStream()) {
-                        parsed = fileExtension.toFile(name, inputStream, fromNetwork) != null;
+                        output = fileExtension.toFile(name, inputStream, fromNetwork);
                     } else {
                         File input = AXrLottie.getLottieCacheManager().writeTempCacheFile(name, inputStream, fileExtension, fromNetwork);
-                        parsed = fileExtension.toFile(name, input, fromNetwork) != null;
-                        if (!parsed && input != null && input.exists())
+                        output = fileExtension.toFile(name, input, fromNetwork);
+                        if (output == null && input != null && input.exists())
                             input.delete();
                     }
                 }
-                if (parsed) break;
+                if (output != null) break;
             }
-            if (!parsed) {
+            if (output == null) {
                 AXrLottie.getLottieCacheManager().writeTempCacheFile(name, inputStream, JsonFileExtension.JSON, fromNetwork);
             }
 
-            File file = AXrLottie.getLottieCacheManager().loadTempFile(name, fromNetwork);
+            File file = AXrLottie.getLottieCacheManager().loadTempFile(name, output, fromNetwork);
             return new AXrLottieResult<>(file);
         } catch (Exception e) {
             return new AXrLottieResult<>(e);
@@ -70,20 +70,20 @@ public class AXrStreamParser {
     @WorkerThread
     public static AXrLottieResult<File> parseStream(InputStream inputStream, AXrFileExtension extension, String name, boolean fromNetwork) {
         try {
-            boolean parsed;
+            File output;
             if (extension.willReadStream()) {
-                parsed = extension.toFile(name, inputStream, fromNetwork) != null;
+                output = extension.toFile(name, inputStream, fromNetwork);
             } else {
                 File input = AXrLottie.getLottieCacheManager().writeTempCacheFile(name, inputStream, extension, fromNetwork);
-                parsed = extension.toFile(name, input, fromNetwork) != null;
-                if (!parsed && input != null && input.exists())
+                output = extension.toFile(name, input, fromNetwork);
+                if (output == null && input != null && input.exists())
                     input.delete();
             }
-            if (!parsed) {
+            if (output == null) {
                 return new AXrLottieResult<>(new InvalidPropertiesFormatException("couldn't read " + name + " as " + extension.extension));
             }
 
-            File file = AXrLottie.getLottieCacheManager().loadTempFile(name, fromNetwork);
+            File file = AXrLottie.getLottieCacheManager().loadTempFile(name, output, fromNetwork);
             return new AXrLottieResult<>(file);
         } catch (Exception e) {
             return new AXrLottieResult<>(e);
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2020 - Amir Hossein Aghajari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package com.aghajari.rlottie.extension;
+
+import com.aghajari.rlottie.AXrLottie;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * LottieBinFileExtension
+ * File Type                       : Pre-parsed lottie composition
+ * File Type Extension             : lottiebin
+ * MIME Type                       : application/x-lottiebin
+ * <p>
+ * The native loader recognizes the binary model by its header,
+ * so the file is used as it is, without any json parsing.
+ * Animations loaded from files with cache enabled keep their binary model
+ * next to the frames cache automatically.
+ */
+public class LottieBinFileExtension extends AXrFileExtension {
+
+    public static final LottieBinFileExtension LOTTIEBIN = new LottieBinFileExtension();
+
+    public LottieBinFileExtension() {
+        super(".lottiebin");
+    }
+
+    public LottieBinFileExtension(String extension) {
+        super(extension);
+    }
+
+    @Override
+    public boolean canParseContent(String contentType) {
+        return contentType.toLowerCase().contains("application/x-lottiebin");
+    }
+
+    @Override
+    public File toFile(String cache, File input, boolean fromNetwork) throws IOException {
+        // temp files are moved where the loaders look for the parsed animation
+        if (!input.getName().endsWith(tempExtension()))
+            return input;
+
+        File output = AXrLottie.getLottieCacheManager().getCachedFile(cache, JsonFileExtension.JSON, fromNetwork, true);
+        if (output.exists()) output.delete();
+        if (!input.renameTo(output))
+            throw new IOException("can't move " + input + " to " + output);
+        return output;
+    }
+}
@@ -20,22 +20,49 @@ package com.aghajari.rlottie.extension;
 
 import android.util.Log;
 
+import com.aghajari.rlottie.AXrLottie;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
 import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
+import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 
 /**
- * Helper class to extract json animation from a zip
+ * Helper class to extract json animation and its images from a zip
+ * <p>
+ * The archive is read as a stream, so it never has to be written to disk first.
+ * The images are extracted to {@code <json file>.assets}, the native loader looks for the
+ * images of a json file there, keeping the paths they have next to the json in the archive
+ * (or in the root of the archive, for the images outside the json's folder).
+ * The hash of the archive is kept in {@code <json file>.sha1}, an archive that
+ * hasn't changed is not extracted again.
  */
 class ZipCompositionFactory {
 
     private static final String TAG = ZipCompositionFactory.class.getSimpleName();
 
+    private static final String[] IMAGE_EXTENSIONS = {".png", ".jpg", ".jpeg", ".webp"};
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     public static boolean isZipContent(String contentType) {
         return contentType.toLowerCase().contains("application/zip") ||
                 contentType.toLowerCase().contains("application/x-zip") ||
@@ -54,66 +81,208 @@ class ZipCompositionFactory {
         }
     }
 
+    /**
+     * Extracts the first json entry and the images of the archive.
+     *
+     * @param output where the json is written, usually the temp file that gets moved to target
+     * @param target where the json is finally kept, its images are extracted next to it
+     * @return output, or target if the same archive has been extracted there before
+     */
+    @Nullable
+    @WorkerThread
+    public static File fromZipStream(InputStream stream, File output, File target) {
+        MessageDigest digest = newDigest();
+        InputStream input = new BufferedInputStream(stream, BUFFER_SIZE);
+        if (digest != null) input = new DigestInputStream(input, digest);
+        return fromZipStream(new ZipInputStream(input), input, digest, output, target);
+    }
+
+    /**
+     * Extracts an archive that is already being read, its hash is unknown so it's always extracted.
+     */
+    @Nullable
+    @WorkerThread
+    static File fromZipStream(ZipInputStream zis, File output) {
+        return fromZipStream(zis, null, null, output, output);
+    }
+
+    @Nullable
     @WorkerThread
-    public static File toFile(File f, File output, ZipInputStream zis, ZipEntry ze) {
-        int count;
-        byte[] buffer = new byte[8192];
-        File file = new File(output.getAbsolutePath());
-        File dir = ze.isDirectory() ? file : file.getParentFile();
-        if (!dir.isDirectory() && !dir.mkdirs()) return null;
-        if (ze.isDirectory()) return null;
-        FileOutputStream fout;
+    private static File fromZipStream(ZipInputStream zis, @Nullable InputStream input, @Nullable MessageDigest digest, File output, File target) {
+        File staging = new File(target.getAbsolutePath() + ZipFileExtension.ASSETS_SUFFIX + ".temp");
+        deleteRecursively(staging);
+
         try {
-            if (output.exists()) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            String jsonDir = null;
+            List<String> images = new ArrayList<>();
+
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                String name = entry.getName();
+                if (entry.isDirectory() || name.contains("__MACOSX") || !isSafe(name)) {
+                    zis.closeEntry();
+                } else if (jsonDir == null && name.toLowerCase(Locale.US).endsWith(".json")) {
+                    if (!write(zis, output, buffer)) return null;
+                    int index = name.lastIndexOf('/');
+                    jsonDir = index >= 0 ? name.substring(0, index + 1) : "";
+                } else if (isImage(name)) {
+                    if (!write(zis, new File(staging, name), buffer)) return null;
+                    images.add(name);
+                }
+            }
+            if (jsonDir == null) return null;
+
+            // the central directory is a part of the archive as well
+            if (digest != null) {
+                while (input.read(buffer) != -1) ;
+            }
+            boolean hasImages = !images.isEmpty();
+
+            File assets = new File(target.getAbsolutePath() + ZipFileExtension.ASSETS_SUFFIX);
+            File hashFile = new File(target.getAbsolutePath() + ZipFileExtension.HASH_SUFFIX);
+            String hash = digest != null ? toHex(digest.digest()) : null;
+            if (hash != null && target.exists() && hasImages == assets.isDirectory() && hash.equals(readHash(hashFile))) {
                 output.delete();
+                return target;
             }
-            fout = new FileOutputStream(file);
+
+            // the frames and the parsed model (with its images) of the old archive
+            if (target.exists()) AXrLottie.getLottieCacheManager().removeFramesCaches(target);
+
+            deleteRecursively(assets);
+            if (hasImages) {
+                File root = new File(staging, jsonDir);
+                if (!moveOuterImages(staging, root, jsonDir, images)) return null;
+                if (!root.renameTo(assets)) {
+                    Log.e(TAG, "fromZipStream: can't move " + root + " to " + assets);
+                    return null;
+                }
+            }
+            if (hash != null) {
+                writeHash(hashFile, hash);
+            } else {
+                hashFile.delete();
+            }
+            return output;
+        } catch (IOException e) {
+            Log.e(TAG, "fromZipStream: ", e);
+            return null;
+        } finally {
+            deleteRecursively(staging);
+            closeQuietly(zis);
+        }
+    }
+
+    /**
+     * The paths of the images outside the folder of the json are relative to the root of the archive
+     * (e.g. {@code data/anim.json} and {@code images/img_0.png}), they're moved next to the json.
+     * An image of the json's folder wins over an outer image with the same path.
+     */
+    private static boolean moveOuterImages(File staging, File root, String jsonDir, List<String> images) {
+        for (String name : images) {
+            if (name.startsWith(jsonDir)) continue;
+            File image = new File(root, name);
+            if (image.exists()) {
+                Log.w(TAG, "fromZipStream: " + name + " is hidden by " + jsonDir + name);
+                continue;
+            }
+            File dir = image.getParentFile();
+            if (dir != null && !dir.isDirectory() && !dir.mkdirs()) return false;
+            if (!new File(staging, name).renameTo(image)) {
+                Log.e(TAG, "fromZipStream: can't move " + name + " to " + image);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean write(InputStream input, File file, byte[] buffer) {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) return false;
+        try {
+            OutputStream output = new FileOutputStream(file);
             try {
-                while ((count = zis.read(buffer)) != -1)
-                    fout.write(buffer, 0, count);
+                int count;
+                while ((count = input.read(buffer)) != -1)
+                    output.write(buffer, 0, count);
             } finally {
-                fout.close();
+                output.close();
             }
+            return true;
         } catch (IOException e) {
-            Log.e(TAG, "toFile: ", e);
+            Log.e(TAG, "write: ", e);
+            file.delete();
+            return false;
+        }
+    }
+
+    /**
+     * Entries must stay inside the directory they're extracted to.
+     */
+    private static boolean isSafe(String name) {
+        return !name.startsWith("/") && !name.startsWith("\\") && !name.contains("..");
+    }
+
+    private static boolean isImage(String name) {
+        String lowerCase = name.toLowerCase(Locale.US);
+        for (String extension : IMAGE_EXTENSIONS) {
+            if (lowerCase.endsWith(extension)) return true;
+        }
+        return false;
+    }
+
+    @Nullable
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
             return null;
         }
-        if (f.exists()) {
-            f.delete();
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
         }
-        return file;
+        return builder.toString();
     }
 
-    @WorkerThread
-    public static File fromZipStreamSyncInternal(File file, File output, ZipInputStream inputStream) {
+    @Nullable
+    private static String readHash(File file) {
+        if (!file.exists()) return null;
         try {
-            ZipEntry entry = inputStream.getNextEntry();
-            while (entry != null) {
-                final String entryName = entry.getName();
-                if (entryName.contains("__MACOSX")) {
-                    inputStream.closeEntry();
-                } else if (entry.getName().toLowerCase().contains(".json")) {
-                    File f = toFile(file, output, inputStream, entry);
-                    if (f != null) {
-                        closeQuietly(inputStream);
-                        return f;
-                    }
-                    /*
-                    } else if (entryName.contains(".png") || entryName.contains(".webp")) {
-                     } else {
-                     File f = toFile(file, output, inputStream, entry);
-                     if (f != null) {
-                     closeQuietly(inputStream);
-                     return f;
-                     } */
-                }
-                entry = inputStream.getNextEntry();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            try {
+                return reader.readLine();
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void writeHash(File file, String hash) {
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            try {
+                writer.write(hash);
+            } finally {
+                writer.close();
             }
         } catch (IOException e) {
-            Log.e(TAG, "fromZipStreamSyncInternal: ", e);
-            e.printStackTrace();
+            Log.e(TAG, "writeHash: ", e);
+            file.delete();
+        }
+    }
+
+    static void deleteRecursively(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) deleteRecursively(child);
         }
-        closeQuietly(inputStream);
-        return null;
+        file.delete();
     }
-}
\ No newline at end of file
+}
@@ -19,10 +19,12 @@
 package com.aghajari.rlottie.extension;
 
 import com.aghajari.rlottie.AXrLottie;
+import com.aghajari.rlottie.AXrLottieCacheManager;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.zip.ZipInputStream;
 
 /**
@@ -30,11 +32,23 @@ import java.util.zip.ZipInputStream;
  * File Type                       : Compressed Archive File
  * File Type Extension             : zip
  * MIME Type                       : application/zip
+ * <p>
+ * The archive is extracted while it's being read, the first json entry is the animation and
+ * the png, jpg and webp entries are its images.
  */
 public class ZipFileExtension extends AXrFileExtension {
 
     public static final ZipFileExtension ZIP = new ZipFileExtension();
 
+    /**
+     * The images of {@code <name>.json} are extracted to the {@code <name>.json.assets} directory
+     */
+    public static final String ASSETS_SUFFIX = ".assets";
+    /**
+     * The hash of the archive that {@code <name>.json} was extracted from is kept in {@code <name>.json.sha1}
+     */
+    public static final String HASH_SUFFIX = ".sha1";
+
     public ZipFileExtension() {
         super(".zip");
     }
@@ -48,15 +62,44 @@ public class ZipFileExtension extends AXrFileExtension {
         return ZipCompositionFactory.isZipContent(contentType);
     }
 
+    /**
+     * Extracts the json and the images of an archive to output, then deletes the archive file.
+     *
+     * @deprecated archives are read by {@link #toFile(String, InputStream, boolean)} while they're downloaded
+     */
+    @Deprecated
     public File fromZipStream(File file, File output, ZipInputStream stream) {
-        return ZipCompositionFactory.fromZipStreamSyncInternal(file, output, stream);
+        File result = ZipCompositionFactory.fromZipStream(stream, output);
+        if (result != null && file.exists())
+            file.delete();
+        return result;
+    }
+
+    @Override
+    public boolean willReadStream() {
+        return true;
+    }
+
+    @Override
+    public File toFile(String cache, InputStream stream, boolean fromNetwork) throws IOException {
+        AXrLottieCacheManager cacheManager = AXrLottie.getLottieCacheManager();
+        return ZipCompositionFactory.fromZipStream(stream,
+                cacheManager.getCachedFile(cache, JsonFileExtension.JSON, fromNetwork, true),
+                cacheManager.getCachedFile(cache, JsonFileExtension.JSON, fromNetwork, false));
     }
 
     @Override
     public File toFile(String cache, File input, boolean fromNetwork) throws IOException {
-        return fromZipStream(input,
-                AXrLottie.getLottieCacheManager().getCachedFile(cache, JsonFileExtension.JSON, fromNetwork, true),
-                new ZipInputStream(new FileInputStream(input)));
+        InputStream stream = new FileInputStream(input);
+        File output;
+        try {
+            output = toFile(cache, stream, fromNetwork);
+        } finally {
+            stream.close();
+        }
+        if (output != null && input.getName().endsWith(tempExtension()))
+            input.delete();
+        return output;
     }
 
 }
@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2021 - Amir Hossein Aghajari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package com.aghajari.rlottie.network;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TimeZone;
+
+/**
+ * The validators and the freshness of a downloaded animation,
+ * kept in a sidecar file next to it.
+ * <p>
+ * A fresh file is used without any request, a stale one is revalidated with
+ * If-None-Match / If-Modified-Since and reused if the server answers 304.
+ * The freshness follows Cache-Control (no-cache, no-store, max-age), Expires
+ * and, if neither is sent, a tenth of the time since Last-Modified (up to a day).
+ */
+public class AXrLottieCacheMetadata {
+
+    private static final String TAG = AXrLottieCacheMetadata.class.getSimpleName();
+
+    /**
+     * The metadata of {@code <file>} is kept in {@code <file>.meta}
+     */
+    public static final String SUFFIX = ".meta";
+
+    /**
+     * Used when the response has validators but says nothing about its freshness.
+     */
+    public static final long DEFAULT_MAX_AGE = 60 * 60 * 1000;
+    private static final long MAX_HEURISTIC_AGE = 24 * 60 * 60 * 1000;
+
+    private static final String KEY_ETAG = "etag";
+    private static final String KEY_LAST_MODIFIED = "last-modified";
+    private static final String KEY_EXPIRES = "expires";
+    private static final String KEY_CONTENT_TYPE = "content-type";
+    private static final String KEY_LENGTH = "length";
+
+    @Nullable
+    String etag, lastModified, contentType;
+    /**
+     * Time (local clock) until the file is fresh
+     */
+    long expires;
+    /**
+     * Full length of the body, used to resume partial downloads. -1 if unknown
+     */
+    long length = -1;
+
+    /**
+     * Reads the validators and the freshness of a response.
+     *
+     * @param now the time the response was received
+     */
+    @NonNull
+    public static AXrLottieCacheMetadata fromResponse(@NonNull AXrLottieFetchResult result, long now) {
+        AXrLottieCacheMetadata metadata = new AXrLottieCacheMetadata();
+        metadata.etag = result.header("ETag");
+        metadata.lastModified = result.header("Last-Modified");
+        metadata.contentType = result.contentType();
+        metadata.updateFreshness(result, now);
+
+        String contentRange = result.header("Content-Range");
+        if (contentRange != null && contentRange.lastIndexOf('/') >= 0) {
+            metadata.length = parseLong(contentRange.substring(contentRange.lastIndexOf('/') + 1), -1);
+        } else {
+            metadata.length = parseLong(result.header("Content-Length"), -1);
+        }
+        return metadata;
+    }
+
+    /**
+     * Updates the freshness (and the validators, if sent) from a 304 response.
+     */
+    public void update(@NonNull AXrLottieFetchResult result, long now) {
+        String etag = result.header("ETag");
+        if (etag != null) this.etag = etag;
+        String lastModified = result.header("Last-Modified");
+        if (lastModified != null) this.lastModified = lastModified;
+        updateFreshness(result, now);
+    }
+
+    private void updateFreshness(AXrLottieFetchResult result, long now) {
+        long date = parseDate(result.header("Date"));
+        long age = Math.max(parseLong(result.header("Age"), 0), 0) * 1000;
+
+        String cacheControl = result.header("Cache-Control");
+        if (cacheControl != null) {
+            for (String directive : cacheControl.toLowerCase(Locale.US).split(",")) {
+                directive = directive.trim();
+                if (directive.equals("no-cache") || directive.equals("no-store")) {
+                    expires = now;
+                    return;
+                }
+                if (directive.startsWith("max-age=")) {
+                    long maxAge = parseLong(directive.substring(8).replace("\"", ""), -1);
+                    if (maxAge >= 0) {
+                        expires = now + maxAge * 1000 - age;
+                        return;
+                    }
+                }
+            }
+        }
+
+        long expiresDate = parseDate(result.header("Expires"));
+        if (expiresDate > 0) {
+            // relative to the server clock, it may not match ours
+            expires = now + expiresDate - (date > 0 ? date : now);
+            return;
+        }
+
+        long lastModifiedDate = parseDate(lastModified);
+        if (lastModifiedDate > 0) {
+            long since = (date > 0 ? date : now) - lastModifiedDate;
+            expires = now + Math.min(Math.max(since / 10, 0), MAX_HEURISTIC_AGE);
+        } else {
+            expires = now + DEFAULT_MAX_AGE;
+        }
+    }
+
+    public boolean isFresh(long now) {
+        return now < expires;
+    }
+
+    public boolean hasValidators() {
+        return etag != null || lastModified != null;
+    }
+
+    /**
+     * Adds the headers of a conditional request.
+     */
+    public void addConditionalHeaders(@NonNull Map<String, String> headers) {
+        if (etag != null) headers.put("If-None-Match", etag);
+        if (lastModified != null) headers.put("If-Modified-Since", lastModified);
+    }
+
+    /**
+     * Adds the headers to fetch the rest of a partial download, the server sends the
+     * whole body again if it has changed.
+     *
+     * @return false if the download can't be resumed
+     */
+    public boolean addRangeHeaders(@NonNull Map<String, String> headers, long downloaded) {
+        // a weak etag can't be used with If-Range
+        String validator = etag != null && !etag.startsWith("W/") ? etag : lastModified;
+        if (validator == null || downloaded <= 0 || (length >= 0 && downloaded >= length))
+            return false;
+
+        headers.put("Range", "bytes=" + downloaded + "-");
+        headers.put("If-Range", validator);
+        return true;
+    }
+
+    @Nullable
+    public String getContentType() {
+        return contentType;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    @Nullable
+    public static AXrLottieCacheMetadata read(@NonNull File file) {
+        if (!file.exists()) return null;
+        Properties properties = new Properties();
+        try {
+            InputStream input = new FileInputStream(file);
+            try {
+                properties.load(input);
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "read: ", e);
+            return null;
+        }
+
+        AXrLottieCacheMetadata metadata = new AXrLottieCacheMetadata();
+        metadata.etag = properties.getProperty(KEY_ETAG);
+        metadata.lastModified = properties.getProperty(KEY_LAST_MODIFIED);
+        metadata.contentType = properties.getProperty(KEY_CONTENT_TYPE);
+        metadata.expires = parseLong(properties.getProperty(KEY_EXPIRES), 0);
+        metadata.length = parseLong(properties.getProperty(KEY_LENGTH), -1);
+        return metadata;
+    }
+
+    public boolean write(@NonNull File file) {
+        Properties properties = new Properties();
+        if (etag != null) properties.setProperty(KEY_ETAG, etag);
+        if (lastModified != null) properties.setProperty(KEY_LAST_MODIFIED, lastModified);
+        if (contentType != null) properties.setProperty(KEY_CONTENT_TYPE, contentType);
+        properties.setProperty(KEY_EXPIRES, String.valueOf(expires));
+        properties.setProperty(KEY_LENGTH, String.valueOf(length));
+
+        // written aside and renamed, readers never see a partial file
+        File temp = new File(file.getAbsolutePath() + ".temp");
+        try {
+            OutputStream output = new FileOutputStream(temp);
+            try {
+                properties.store(output, null);
+            } finally {
+                output.close();
+            }
+            if (!temp.renameTo(file))
+                throw new IOException("can't rename " + temp);
+            return true;
+        } catch (IOException e) {
+            temp.delete();
+            Log.e(TAG, "write: ", e);
+            return false;
+        }
+    }
+
+    private static long parseLong(@Nullable String value, long defaultValue) {
+        if (value == null || value.isEmpty()) return defaultValue;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static long parseDate(@Nullable String value) {
+        if (value == null || value.isEmpty()) return 0;
+        // RFC 1123, the format that servers must send
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            Date date = format.parse(value.trim());
+            return date != null ? date.getTime() : 0;
+        } catch (ParseException e) {
+            return 0;
+        }
+    }
+}
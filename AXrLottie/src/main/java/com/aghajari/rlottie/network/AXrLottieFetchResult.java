@@ -54,4 +54,21 @@ public interface AXrLottieFetchResult extends Closeable {
      */
     @Nullable
     String error();
+
+    /**
+     * @return HTTP status code, needed to reuse the cached file on 304
+     * and to resume a partial download on 206.
+     */
+    default int code() {
+        return isSuccessful() ? 200 : 0;
+    }
+
+    /**
+     * @return Value of a response header, ETag, Last-Modified, Cache-Control, Expires,
+     * Date, Age, Content-Length and Content-Range are used by the network cache.
+     */
+    @Nullable
+    default String header(@NonNull String name) {
+        return null;
+    }
 }
\ No newline at end of file
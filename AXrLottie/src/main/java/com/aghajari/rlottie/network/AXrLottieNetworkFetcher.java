@@ -19,9 +19,13 @@
 package com.aghajari.rlottie.network;
 
 
+import android.os.CancellationSignal;
+
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import java.io.IOException;
+import java.util.Map;
 
 /**
  * AXrLottie has a default network fetching {@link AXrSimpleNetworkFetcher} stack built on {@link java.net.HttpURLConnection}.
@@ -32,6 +36,23 @@ public abstract class AXrLottieNetworkFetcher {
 
     public abstract AXrLottieFetchResult fetchSync(@NonNull String url) throws IOException;
 
+    /**
+     * Override it to abort the request when the signal gets cancelled while connecting,
+     * once the result is returned, cancelling closes it.
+     */
+    public AXrLottieFetchResult fetchSync(@NonNull String url, @Nullable CancellationSignal signal) throws IOException {
+        return fetchSync(url);
+    }
+
+    /**
+     * Override it to send the headers of conditional and range requests,
+     * the cached files are never revalidated and partial downloads start over if they are ignored.
+     */
+    public AXrLottieFetchResult fetchSync(@NonNull String url, @NonNull Map<String, String> headers,
+                                          @Nullable CancellationSignal signal) throws IOException {
+        return fetchSync(url, signal);
+    }
+
     private int connectTimeout = 10_000;
     private int readTimeout = 10_000;
 
@@ -18,12 +18,15 @@
 
 package com.aghajari.rlottie.network;
 
+import android.os.CancellationSignal;
 import android.os.Handler;
 import android.os.Looper;
 
 import androidx.annotation.Nullable;
 import androidx.annotation.RestrictTo;
 
+import com.aghajari.rlottie.AXrLottie;
+import com.aghajari.rlottie.AXrLottieMetricsListener;
 import com.aghajari.rlottie.decoder.AXrLottieResult;
 
 import java.util.ArrayList;
@@ -33,8 +36,8 @@ import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
 
 /**
  * @author kienht
@@ -44,18 +47,33 @@ import java.util.concurrent.FutureTask;
  * Results can be obtained with {@link #addListener(Listener)}.
  * Failures can be obtained with {@link #addFailureListener(Listener)}.
  * <p>
- * A task will produce a single result or a single failure.
+ * A task will produce a single result or a single failure, unless it gets cancelled.
+ * <p>
+ * Waiting tasks run by their priority, see {@link #setPriority(int)}.
  */
 public class AXrLottieTask<T> {
 
+    /**
+     * Prefetches and the other loads that nobody is waiting for.
+     */
+    public static final int PRIORITY_LOW = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    /**
+     * Loads of the animations that are visible on the screen.
+     */
+    public static final int PRIORITY_HIGH = 2;
+
     /**
      * Set this to change the executor that LottieTasks are run on. This will be the executor that composition parsing and url
      * fetching happens on.
+     * By default it's an {@link AXrLottieTaskExecutor}, which runs up to
+     * {@link AXrLottieTaskExecutor#DEFAULT_POOL_SIZE} tasks at the same time, by their priority.
+     * Priorities are ignored if the executor doesn't order its queue.
      * <p>
      * You may change this to run deserialization synchronously for testing.
      */
     @SuppressWarnings("WeakerAccess")
-    public static Executor EXECUTOR = Executors.newCachedThreadPool();
+    public static Executor EXECUTOR = new AXrLottieTaskExecutor();
 
     /* Preserve add order. */
     private final Set<Listener<T>> successListeners = new LinkedHashSet<>(1);
@@ -65,9 +83,26 @@ public class AXrLottieTask<T> {
     @Nullable
     private volatile AXrLottieResult<T> result = null;
 
+    private final CancellationSignal cancellationSignal;
+    @Nullable
+    private final LottieFutureTask future;
+    private volatile int priority;
+
     @RestrictTo(RestrictTo.Scope.LIBRARY)
     public AXrLottieTask(Callable<AXrLottieResult<T>> runnable) {
-        this(runnable, false);
+        this(runnable, PRIORITY_NORMAL, new CancellationSignal());
+    }
+
+    /**
+     * @param cancellationSignal gets cancelled by {@link #cancel()},
+     *                           the callable may listen to it to abort its work.
+     */
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    public AXrLottieTask(Callable<AXrLottieResult<T>> runnable, int priority, CancellationSignal cancellationSignal) {
+        this.priority = priority;
+        this.cancellationSignal = cancellationSignal;
+        this.future = new LottieFutureTask(runnable);
+        EXECUTOR.execute(future);
     }
 
     /**
@@ -75,15 +110,62 @@ public class AXrLottieTask<T> {
      */
     @RestrictTo(RestrictTo.Scope.LIBRARY)
     AXrLottieTask(Callable<AXrLottieResult<T>> runnable, boolean runNow) {
+        this.priority = PRIORITY_NORMAL;
+        this.cancellationSignal = new CancellationSignal();
         if (runNow) {
+            this.future = null;
             try {
                 setResult(runnable.call());
             } catch (Throwable e) {
                 setResult(new AXrLottieResult<>(e));
             }
         } else {
-            EXECUTOR.execute(new LottieFutureTask(runnable));
+            this.future = new LottieFutureTask(runnable);
+            EXECUTOR.execute(future);
+        }
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * Changes the priority of the task, a waiting task moves ahead of the
+     * tasks with lower priorities. It has no effect once the task has started.
+     *
+     * @return the task for call chaining.
+     */
+    public AXrLottieTask<T> setPriority(int priority) {
+        if (this.priority == priority) return this;
+
+        // the queue can't see the change, the task has to be queued again
+        if (future != null && EXECUTOR instanceof ThreadPoolExecutor
+                && ((ThreadPoolExecutor) EXECUTOR).remove(future)) {
+            this.priority = priority;
+            EXECUTOR.execute(future);
+        } else {
+            this.priority = priority;
         }
+        return this;
+    }
+
+    /**
+     * Cancels the task, a waiting task is removed from the queue and a running one
+     * is interrupted and aborts its transfer. The listeners won't be called anymore.
+     *
+     * @return false if the task had already completed.
+     */
+    public boolean cancel() {
+        if (future == null || future.isDone()) return false;
+        cancellationSignal.cancel();
+        boolean cancelled = future.cancel(true);
+        if (cancelled && EXECUTOR instanceof ThreadPoolExecutor)
+            ((ThreadPoolExecutor) EXECUTOR).remove(future);
+        return cancelled;
+    }
+
+    public boolean isCancelled() {
+        return future != null && future.isCancelled();
     }
 
     private void setResult(@Nullable AXrLottieResult<T> result) {
@@ -186,11 +268,36 @@ public class AXrLottieTask<T> {
         }
     }
 
-    private class LottieFutureTask extends FutureTask<AXrLottieResult<T>> {
+    private class LottieFutureTask extends FutureTask<AXrLottieResult<T>> implements AXrLottieTaskExecutor.Prioritized {
+        private final long sequence = AXrLottieTaskExecutor.nextSequence();
+        private final long queueTime = System.nanoTime();
+
         LottieFutureTask(Callable<AXrLottieResult<T>> callable) {
             super(callable);
         }
 
+        @Override
+        public void run() {
+            AXrLottieMetricsListener metrics = AXrLottie.getMetricsListener();
+            if (metrics == null) {
+                super.run();
+                return;
+            }
+            long start = System.nanoTime();
+            super.run();
+            metrics.onTaskFinished(priority, start - queueTime, System.nanoTime() - start);
+        }
+
+        @Override
+        public int getPriority() {
+            return priority;
+        }
+
+        @Override
+        public long getSequence() {
+            return sequence;
+        }
+
         @Override
         protected void done() {
             if (isCancelled()) {
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2021 - Amir Hossein Aghajari
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package com.aghajari.rlottie.network;
+
+import java.util.Comparator;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded executor that runs the queued tasks by their priority,
+ * tasks with the same priority run in the order they were queued.
+ * <p>
+ * Runnables that don't implement {@link Prioritized} are treated as
+ * {@link AXrLottieTask#PRIORITY_NORMAL}.
+ */
+public class AXrLottieTaskExecutor extends ThreadPoolExecutor {
+
+    public static final int DEFAULT_POOL_SIZE = 4;
+
+    private static final AtomicLong sequencer = new AtomicLong();
+
+    /**
+     * A runnable that is queued by its priority, then by its sequence.
+     */
+    public interface Prioritized {
+        int getPriority();
+
+        long getSequence();
+    }
+
+    private static final Comparator<Runnable> COMPARATOR = (o1, o2) -> {
+        int p1 = o1 instanceof Prioritized ? ((Prioritized) o1).getPriority() : AXrLottieTask.PRIORITY_NORMAL;
+        int p2 = o2 instanceof Prioritized ? ((Prioritized) o2).getPriority() : AXrLottieTask.PRIORITY_NORMAL;
+        if (p1 != p2) return Integer.compare(p2, p1);
+
+        long s1 = o1 instanceof Prioritized ? ((Prioritized) o1).getSequence() : 0;
+        long s2 = o2 instanceof Prioritized ? ((Prioritized) o2).getSequence() : 0;
+        return Long.compare(s1, s2);
+    };
+
+    public AXrLottieTaskExecutor() {
+        this(DEFAULT_POOL_SIZE);
+    }
+
+    public AXrLottieTaskExecutor(int poolSize) {
+        super(Math.max(poolSize, 1), Math.max(poolSize, 1), 30L, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(11, COMPARATOR));
+        allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Set the maximum number of tasks that run at the same time.
+     */
+    public void setPoolSize(int size) {
+        size = Math.max(size, 1);
+        if (size > getMaximumPoolSize()) {
+            setMaximumPoolSize(size);
+            setCorePoolSize(size);
+        } else {
+            setCorePoolSize(size);
+            setMaximumPoolSize(size);
+        }
+    }
+
+    /**
+     * @return a sequence that keeps the queue order of the tasks with the same priority
+     */
+    public static long nextSequence() {
+        return sequencer.incrementAndGet();
+    }
+}
@@ -18,16 +18,19 @@
 
 package com.aghajari.rlottie.network;
 
+import android.os.CancellationSignal;
 import android.text.TextUtils;
 
 import androidx.annotation.Nullable;
 
 import com.aghajari.rlottie.AXrLottie;
+import com.aghajari.rlottie.AXrLottieMetricsListener;
 import com.aghajari.rlottie.decoder.AXrLottieResult;
 
 import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.Callable;
 
 /**
@@ -40,11 +43,51 @@ public class AXrLottieTaskFactory {
      * Keep a map of cache keys to in-progress tasks and return them for new requests.
      * Without this, simultaneous requests to parse a composition will trigger multiple parallel
      * parse tasks prior to the cache getting populated.
+     * <p>
+     * Guarded by itself, tasks are removed when they finish or when all their requests are cancelled.
      */
-    private static final Map<String, AXrLottieTask<File>> taskCache = new HashMap<>();
+    private static final Map<String, Request> taskCache = new HashMap<>();
+
+    private static class Request {
+        final AXrLottieTask<File> task;
+        // number of live requests of each priority
+        final TreeMap<Integer, Integer> priorities = new TreeMap<>();
+        int count;
+
+        Request(AXrLottieTask<File> task) {
+            this.task = task;
+        }
+
+        void add(int priority) {
+            Integer requests = priorities.get(priority);
+            priorities.put(priority, requests == null ? 1 : requests + 1);
+            count++;
+        }
+
+        void remove(int priority) {
+            if (priorities.isEmpty()) return;
+            if (!priorities.containsKey(priority)) priority = priorities.firstKey();
+            int requests = priorities.get(priority);
+            if (requests > 1) {
+                priorities.put(priority, requests - 1);
+            } else {
+                priorities.remove(priority);
+            }
+            count--;
+        }
+
+        /**
+         * The task runs with the highest priority any live request asked for.
+         */
+        void updatePriority() {
+            if (!priorities.isEmpty()) task.setPriority(priorities.lastKey());
+        }
+    }
 
     public static void clearCache() {
-        taskCache.clear();
+        synchronized (taskCache) {
+            taskCache.clear();
+        }
         AXrLottieTaskCache.getInstance().clear();
     }
 
@@ -56,11 +99,32 @@ public class AXrLottieTaskFactory {
      * To skip the cache, add null as a third parameter.
      */
     public static AXrLottieTask<File> fromUrl(final String url, final boolean cache) {
+        return fromUrl(url, cache, AXrLottieTask.PRIORITY_NORMAL);
+    }
+
+    /**
+     * Fetch an animation from an http url with the given priority.
+     * Requests of the same url share a single task, which runs with the highest requested priority.
+     * Each request may be cancelled by {@link #cancel(String, AXrLottieTask)},
+     * the download is aborted once all of them are cancelled.
+     *
+     * @see AXrLottieTask#PRIORITY_LOW
+     * @see AXrLottieTask#PRIORITY_NORMAL
+     * @see AXrLottieTask#PRIORITY_HIGH
+     */
+    public static AXrLottieTask<File> fromUrl(final String url, final boolean cache, int priority) {
         if (TextUtils.isEmpty(url)) return null;
         final String cacheKey = "url_" + url;
-        return cache(cache, cacheKey, () -> {
-            AXrLottieResult<File> result = AXrLottie.getNetworkFetcher().fetchSync(url, cache);
+        final CancellationSignal signal = new CancellationSignal();
+        return cache(cache, cacheKey, priority, signal, () -> {
+            long start = System.nanoTime();
+            AXrLottieResult<File> result = AXrLottie.getNetworkFetcher().fetchSync(url, cache, signal);
             File resultFile = result.getValue();
+            AXrLottieMetricsListener metrics = AXrLottie.getMetricsListener();
+            if (metrics != null) {
+                metrics.onNetworkFetched(url, System.nanoTime() - start,
+                        resultFile != null ? resultFile.length() : 0, resultFile != null);
+            }
             if (resultFile != null) {
                 AXrLottieTaskCache.getInstance().put(cacheKey, resultFile);
             }
@@ -68,29 +132,104 @@ public class AXrLottieTaskFactory {
         });
     }
 
+    /**
+     * Cancels a request made by {@link #fromUrl(String, boolean)},
+     * the task itself is cancelled when it has no other requests.
+     *
+     * @return true if the task got cancelled
+     */
+    public static boolean cancel(final String url, @Nullable AXrLottieTask<File> task) {
+        return cancel(url, task, AXrLottieTask.PRIORITY_NORMAL);
+    }
+
+    /**
+     * Cancels a request made by {@link #fromUrl(String, boolean, int)} with the given priority,
+     * the task itself is cancelled when it has no other requests.
+     *
+     * @return true if the task got cancelled
+     */
+    public static boolean cancel(final String url, @Nullable AXrLottieTask<File> task, int priority) {
+        if (task == null) return false;
+        if (!TextUtils.isEmpty(url)) {
+            final String cacheKey = "url_" + url;
+            synchronized (taskCache) {
+                Request request = taskCache.get(cacheKey);
+                if (request != null && request.task == task) {
+                    request.remove(priority);
+                    if (request.count > 0) {
+                        request.updatePriority();
+                        return false;
+                    }
+                    taskCache.remove(cacheKey);
+                }
+            }
+        }
+        return task.cancel();
+    }
+
+    /**
+     * Changes the priority of a request made by {@link #fromUrl(String, boolean, int)}.
+     * A task shared by several requests keeps the highest priority any of them asked for,
+     * so lowering one request doesn't slow down the others.
+     */
+    public static void setPriority(final String url, @Nullable AXrLottieTask<File> task, int oldPriority, int priority) {
+        if (task == null) return;
+        if (!TextUtils.isEmpty(url)) {
+            synchronized (taskCache) {
+                Request request = taskCache.get("url_" + url);
+                if (request != null && request.task == task) {
+                    request.remove(oldPriority);
+                    request.add(priority);
+                    request.updatePriority();
+                    return;
+                }
+            }
+        }
+        // not shared with other requests
+        task.setPriority(priority);
+    }
+
     /**
      * First, check to see if there are any in-progress tasks associated with the cache key and return it if there is.
      * If not, create a new task for the callable.
      * Then, add the new task to the task cache and set up listeners so it gets cleared when done.
      */
-    private static AXrLottieTask<File> cache(final boolean cache, @Nullable final String cacheKey, Callable<AXrLottieResult<File>> callable) {
+    private static AXrLottieTask<File> cache(final boolean cache, @Nullable final String cacheKey, int priority,
+                                             CancellationSignal signal, Callable<AXrLottieResult<File>> callable) {
         if (cache && !TextUtils.isEmpty(cacheKey)) {
             final File cachedFile = AXrLottieTaskCache.getInstance().get(cacheKey);
             if (cachedFile != null) {
-                return new AXrLottieTask<>(() -> new AXrLottieResult<>(cachedFile));
+                return new AXrLottieTask<>(() -> new AXrLottieResult<>(cachedFile),
+                        AXrLottieTask.PRIORITY_HIGH, new CancellationSignal());
             }
         }
 
-        if (cacheKey != null && taskCache.containsKey(cacheKey)) {
-            return taskCache.get(cacheKey);
+        if (cacheKey == null)
+            return new AXrLottieTask<>(callable, priority, signal);
+
+        synchronized (taskCache) {
+            Request request = taskCache.get(cacheKey);
+            if (request != null) {
+                request.add(priority);
+                request.updatePriority();
+                return request.task;
+            }
+
+            final AXrLottieTask<File> task = new AXrLottieTask<>(callable, priority, signal);
+            task.addListener(result -> remove(cacheKey, task));
+            task.addFailureListener(result -> remove(cacheKey, task));
+            request = new Request(task);
+            request.add(priority);
+            taskCache.put(cacheKey, request);
+            return task;
         }
+    }
 
-        AXrLottieTask<File> task = new AXrLottieTask<>(callable);
-        if (cacheKey != null) {
-            task.addListener(result -> taskCache.remove(cacheKey));
-            task.addFailureListener(result -> taskCache.remove(cacheKey));
-            taskCache.put(cacheKey, task);
+    private static void remove(String cacheKey, AXrLottieTask<File> task) {
+        synchronized (taskCache) {
+            Request request = taskCache.get(cacheKey);
+            if (request != null && request.task == task)
+                taskCache.remove(cacheKey);
         }
-        return task;
     }
-}
\ No newline at end of file
+}
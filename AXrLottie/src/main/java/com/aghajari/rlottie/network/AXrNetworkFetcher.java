@@ -18,18 +18,32 @@
 
 package com.aghajari.rlottie.network;
 
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 
 import com.aghajari.rlottie.AXrLottie;
+import com.aghajari.rlottie.AXrLottieCacheManager;
 import com.aghajari.rlottie.decoder.AXrLottieResult;
 import com.aghajari.rlottie.decoder.AXrStreamParser;
+import com.aghajari.rlottie.extension.AXrFileExtension;
+import com.aghajari.rlottie.extension.JsonFileExtension;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.HashMap;
+import java.util.InvalidPropertiesFormatException;
+import java.util.Map;
 
 /**
  * @author kienht
@@ -39,6 +53,12 @@ public class AXrNetworkFetcher {
 
     private static final String TAG = AXrNetworkFetcher.class.getSimpleName();
 
+    /**
+     * Bodies of this size or larger are written to disk before they're parsed,
+     * so an interrupted download can be resumed.
+     */
+    public static final long RESUMABLE_LENGTH = 1024 * 1024;
+
     @NonNull
     public final AXrLottieNetworkFetcher fetcher;
 
@@ -49,29 +69,127 @@ public class AXrNetworkFetcher {
     @NonNull
     @WorkerThread
     public AXrLottieResult<File> fetchSync(@NonNull final String url, @NonNull final Boolean cache) {
+        return fetchSync(url, cache, null);
+    }
+
+    /**
+     * Fresh cached files are used without any request, stale ones are revalidated
+     * and reused if they haven't changed (or if the server can't be reached).
+     * Bodies that are written to disk first (file based extensions and the ones of at least
+     * {@link #RESUMABLE_LENGTH} bytes) are kept if the download is interrupted and resumed
+     * by a range request, if the server sent a validator for them.
+     *
+     * @param signal cancelling it closes the connection, so a blocked read fails right away.
+     * @see AXrLottieCacheMetadata
+     */
+    @NonNull
+    @WorkerThread
+    public AXrLottieResult<File> fetchSync(@NonNull final String url, @NonNull final Boolean cache, @Nullable final CancellationSignal signal) {
+        AXrLottieCacheManager cacheManager = AXrLottie.getLottieCacheManager();
+        boolean useCache = AXrLottie.isNetworkCacheEnabled() && cache;
         AXrLottieFetchResult fetchResult = null;
         File file = null;
+        long modified = 0;
         try {
-            if (AXrLottie.isNetworkCacheEnabled() && cache) {
-                file = AXrLottie.getLottieCacheManager().fetchURLFromCache(url);
+            AXrLottieCacheMetadata metadata = null;
+            if (useCache) {
+                file = cacheManager.fetchURLFromCache(url);
+                if (file != null) {
+                    metadata = AXrLottieCacheMetadata.read(cacheManager.getNetworkMetadataFile(url));
+                    modified = file.lastModified();
+                    // files cached without validators are used as they are
+                    if (metadata == null || !metadata.hasValidators() || metadata.isFresh(System.currentTimeMillis()))
+                        return new AXrLottieResult<>(file);
+                }
+            }
+
+            Map<String, String> headers = new HashMap<>();
+            AXrLottieCacheMetadata partialMetadata = null;
+            if (metadata != null) {
+                metadata.addConditionalHeaders(headers);
+            } else if (useCache) {
+                File partial = cacheManager.getNetworkPartialFile(url);
+                partialMetadata = AXrLottieCacheMetadata.read(getMetadataFile(partial));
+                if (partialMetadata != null && !partialMetadata.addRangeHeaders(headers, partial.length())) {
+                    deletePartial(partial);
+                    partialMetadata = null;
+                }
             }
-            if (file != null) {
+
+            if (signal != null) signal.throwIfCanceled();
+            try {
+                fetchResult = fetcher.fetchSync(url, headers, signal);
+            } catch (IOException e) {
+                // the stale file is better than nothing
+                if (file != null && (signal == null || !signal.isCanceled()))
+                    return new AXrLottieResult<>(file);
+                throw e;
+            }
+
+            if (signal != null) {
+                final AXrLottieFetchResult result = fetchResult;
+                signal.setOnCancelListener(() -> closeQuietly(result));
+            }
+
+            long now = System.currentTimeMillis();
+            int code = fetchResult.code();
+            if (file != null && code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                metadata.update(fetchResult, now);
+                File metadataFile = cacheManager.getNetworkMetadataFile(url);
+                if (metadata.write(metadataFile))
+                    cacheManager.recordNetworkFile(metadataFile);
                 return new AXrLottieResult<>(file);
-            } else {
-                fetchResult = fetcher.fetchSync(url);
+            }
+
+            if (fetchResult.isSuccessful()) {
+                InputStream inputStream = fetchResult.bodyByteStream();
+                String contentType = fetchResult.contentType();
+                if (signal != null)
+                    inputStream = new CancellableInputStream(inputStream, signal);
 
-                if (fetchResult.isSuccessful()) {
-                    InputStream inputStream = fetchResult.bodyByteStream();
-                    String contentType = fetchResult.contentType();
+                AXrLottieCacheMetadata received = AXrLottieCacheMetadata.fromResponse(fetchResult, now);
+                AXrFileExtension extension = findExtension(contentType);
 
-                    return AXrStreamParser.parseStream(inputStream, contentType, url, true);
+                boolean resuming = code == HttpURLConnection.HTTP_PARTIAL && partialMetadata != null;
+                AXrLottieResult<File> result;
+                // streamed bodies can't be resumed, large ones are written to disk first
+                if (useCache && extension != null && (!extension.willReadStream()
+                        || resuming || received.getLength() >= RESUMABLE_LENGTH)) {
+                    long start = resuming ? rangeStart(fetchResult.header("Content-Range")) : 0;
+                    result = download(url, inputStream, start, received, extension);
+                } else if (code == HttpURLConnection.HTTP_PARTIAL) {
+                    deletePartial(cacheManager.getNetworkPartialFile(url));
+                    return new AXrLottieResult<>(new IOException("unexpected partial content of " + url));
                 } else {
-                    return new AXrLottieResult<>(new IllegalArgumentException(fetchResult.error()));
+                    result = AXrStreamParser.parseStream(inputStream, contentType, url, true);
                 }
+                if (signal != null && signal.isCanceled())
+                    throw new OperationCanceledException();
+
+                File resultFile = result.getValue();
+                if (resultFile != null) {
+                    // the frames of the old content are no longer valid,
+                    // unless the extension found out nothing has changed
+                    if (file != null && resultFile.lastModified() != modified)
+                        cacheManager.removeFramesCaches(resultFile);
+
+                    File metadataFile = cacheManager.getNetworkMetadataFile(url);
+                    if (useCache && received.hasValidators() && received.write(metadataFile)) {
+                        cacheManager.recordNetworkFile(metadataFile);
+                    } else if (metadataFile.exists()) {
+                        metadataFile.delete();
+                    }
+                }
+                return result;
+            } else if (file != null) {
+                return new AXrLottieResult<>(file);
+            } else {
+                return new AXrLottieResult<>(new IllegalArgumentException(fetchResult.error()));
             }
         } catch (Exception e) {
             return new AXrLottieResult<>(e);
         } finally {
+            if (signal != null) signal.setOnCancelListener(null);
             if (fetchResult != null) {
                 try {
                     fetchResult.close();
@@ -82,6 +200,143 @@ public class AXrNetworkFetcher {
         }
     }
 
+    /**
+     * Writes the body into the partial file, appending it if the response continues the partial download.
+     * The partial file is kept if the transfer breaks, so it can be resumed later.
+     *
+     * @param start the offset of the body, it's ignored if it doesn't match the partial file
+     */
+    private AXrLottieResult<File> download(String url, InputStream inputStream, long start,
+                                           AXrLottieCacheMetadata received, AXrFileExtension extension) throws IOException {
+        AXrLottieCacheManager cacheManager = AXrLottie.getLottieCacheManager();
+        File partial = cacheManager.getNetworkPartialFile(url);
+        File partialMetadata = getMetadataFile(partial);
+
+        boolean append = start > 0 && start == partial.length();
+        if (start > 0 && !append) {
+            deletePartial(partial);
+            throw new IOException("unexpected range of " + url);
+        }
+
+        // saved before the transfer, so a broken transfer can be resumed
+        if (received.hasValidators()) {
+            received.write(partialMetadata);
+        } else if (partialMetadata.exists()) {
+            partialMetadata.delete();
+        }
+
+        OutputStream output = new FileOutputStream(partial, append);
+        try {
+            byte[] buffer = new byte[16 * 1024];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+            output.flush();
+        } catch (IOException e) {
+            if (received.hasValidators()) {
+                cacheManager.recordNetworkFile(partial);
+                cacheManager.recordNetworkFile(partialMetadata);
+            } else {
+                partial.delete();
+            }
+            throw e;
+        } finally {
+            output.close();
+        }
+
+        if (received.getLength() >= 0 && partial.length() != received.getLength()) {
+            cacheManager.recordNetworkFile(partial);
+            throw new IOException("incomplete download of " + url + ", " + partial.length() + " of " + received.getLength() + " bytes");
+        }
+
+        File input = cacheManager.getCachedFile(url, extension, true, true);
+        if (input.exists()) input.delete();
+        if (!partial.renameTo(input)) {
+            deletePartial(partial);
+            throw new IOException("can't move " + partial + " to " + input);
+        }
+        deletePartial(partial);
+
+        File result = extension.toFile(url, input, true);
+        if (input.exists() && !input.equals(result)) input.delete();
+        if (result == null)
+            return new AXrLottieResult<>(new InvalidPropertiesFormatException("couldn't read " + url + " as " + extension.extension));
+        return new AXrLottieResult<>(cacheManager.loadTempFile(url, result, true));
+    }
+
+    @Nullable
+    private static AXrFileExtension findExtension(@Nullable String contentType) {
+        if (contentType == null) contentType = "application/json";
+        for (AXrFileExtension fileExtension : AXrLottie.getSupportedFileExtensions().values()) {
+            if (fileExtension.canParseContent(contentType))
+                return fileExtension;
+        }
+        return null;
+    }
+
+    /**
+     * @return the first byte of a "bytes first-last/length" range, -1 if it can't be parsed
+     */
+    private static long rangeStart(@Nullable String contentRange) {
+        if (contentRange == null || !contentRange.startsWith("bytes ")) return -1;
+        int end = contentRange.indexOf('-');
+        if (end < 0) return -1;
+        try {
+            return Long.parseLong(contentRange.substring(6, end).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static File getMetadataFile(File partial) {
+        return new File(partial.getAbsolutePath() + AXrLottieCacheMetadata.SUFFIX);
+    }
+
+    private static void deletePartial(File partial) {
+        if (partial.exists()) partial.delete();
+        File metadata = getMetadataFile(partial);
+        if (metadata.exists()) metadata.delete();
+    }
+
+    private static void closeQuietly(AXrLottieFetchResult fetchResult) {
+        try {
+            fetchResult.close();
+        } catch (Exception e) {
+            Log.e(TAG, "LottieFetchResult close failed ", e);
+        }
+    }
+
+    /**
+     * Stops reading once the signal is cancelled, for the stacks that keep
+     * delivering the buffered data after the connection is closed.
+     */
+    private static class CancellableInputStream extends FilterInputStream {
+
+        private final CancellationSignal signal;
+
+        CancellableInputStream(InputStream in, CancellationSignal signal) {
+            super(in);
+            this.signal = signal;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkCanceled();
+            return super.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkCanceled();
+            return super.read(b, off, len);
+        }
+
+        private void checkCanceled() throws IOException {
+            if (signal.isCanceled()) throw new InterruptedIOException("canceled");
+        }
+    }
+
     @WorkerThread
     protected AXrLottieResult<File> parseStream(InputStream inputStream, String contentType, String url) {
         try {
@@ -18,6 +18,7 @@
 
 package com.aghajari.rlottie.network;
 
+import android.os.CancellationSignal;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -27,8 +28,11 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
 
 /**
  * AXrSimpleNetworkFetcher is the default network fetching stack built on HttpURLConnection.
@@ -40,12 +44,36 @@ public class AXrSimpleNetworkFetcher extends AXrLottieNetworkFetcher {
     @NonNull
     @Override
     public AXrLottieFetchResult fetchSync(@NonNull String url) throws IOException {
+        return fetchSync(url, null);
+    }
+
+    @NonNull
+    @Override
+    public AXrLottieFetchResult fetchSync(@NonNull String url, @Nullable CancellationSignal signal) throws IOException {
+        return fetchSync(url, Collections.emptyMap(), signal);
+    }
+
+    @NonNull
+    @Override
+    public AXrLottieFetchResult fetchSync(@NonNull String url, @NonNull Map<String, String> headers,
+                                         @Nullable CancellationSignal signal) throws IOException {
         final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
         connection.setInstanceFollowRedirects(true);
         connection.setRequestMethod("GET");
         connection.setConnectTimeout(getConnectTimeout());
         connection.setReadTimeout(getReadTimeout());
-        connection.connect();
+        // the validators are handled by AXrNetworkFetcher
+        connection.setUseCaches(false);
+        for (Map.Entry<String, String> header : headers.entrySet())
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        if (signal != null) signal.setOnCancelListener(connection::disconnect);
+        try {
+            connection.connect();
+        } catch (IOException e) {
+            if (signal != null && signal.isCanceled())
+                throw new InterruptedIOException("canceled");
+            throw e;
+        }
         return new AXrSimpleLottieFetchResult(connection);
     }
 
@@ -79,6 +107,21 @@ public class AXrSimpleNetworkFetcher extends AXrLottieNetworkFetcher {
             return connection.getContentType();
         }
 
+        @Override
+        public int code() {
+            try {
+                return connection.getResponseCode();
+            } catch (IOException e) {
+                return 0;
+            }
+        }
+
+        @Nullable
+        @Override
+        public String header(@NonNull String name) {
+            return connection.getHeaderField(name);
+        }
+
         @Nullable
         @Override
         public String error() {
@@ -0,0 +1,209 @@
+package com.aghajari.rlottie;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Journal replay, compaction and reconcile of {@link AXrLottieDiskCache}, and the eviction
+ * of a file along with its companions.
+ */
+public class AXrLottieDiskCacheTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String HEADER = "axrlottie.journal\n1\n";
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("diskcache").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        drain();
+        AXrLottieDiskCache.delete(directory);
+    }
+
+    @Test
+    public void journalIsReplayed() throws Exception {
+        File a = write("a", 10), b = write("b", 20), c = write("c", 30);
+        AXrLottieDiskCache cache = new AXrLottieDiskCache(directory, 0);
+        cache.record(a);
+        cache.record(b);
+        cache.record(c);
+        cache.record(a);
+        drain();
+        assertEquals(60, cache.getSize());
+
+        // b is the least recently used file of the new instance as well
+        cache = new AXrLottieDiskCache(directory, 45);
+        drain();
+        assertFalse(b.exists());
+        assertTrue(a.exists());
+        assertTrue(c.exists());
+        assertEquals(40, cache.getSize());
+    }
+
+    @Test
+    public void removedFilesAreReplayed() throws Exception {
+        write("b", 20);
+        String journal = HEADER
+                + "A 10 1000 a\n"
+                + "A 20 2000 b\n"
+                + "R a\n"
+                + "R unknown\n";
+        writeJournal(journal);
+
+        AXrLottieDiskCache cache = new AXrLottieDiskCache(directory, 0);
+        drain();
+        assertEquals(20, cache.getSize());
+        // the journal matched the directory, so it wasn't rebuilt
+        assertEquals(journal, readJournal());
+    }
+
+    @Test
+    public void corruptJournalIsRebuilt() throws Exception {
+        write("a", 10);
+        write("b", 20);
+        writeJournal(HEADER + "A 10 1000 a\nA twenty 2000 b\n");
+
+        AXrLottieDiskCache cache = new AXrLottieDiskCache(directory, 0);
+        drain();
+        assertEquals(30, cache.getSize());
+        List<String> lines = journalLines();
+        assertEquals(4, lines.size());
+        assertTrue(lines.subList(2, 4).stream().anyMatch(line -> line.matches("A 10 \\d+ a")));
+        assertTrue(lines.subList(2, 4).stream().anyMatch(line -> line.matches("A 20 \\d+ b")));
+    }
+
+    @Test
+    public void unknownHeaderIsRebuilt() throws Exception {
+        write("a", 10);
+        writeJournal("libcore.io.DiskLruCache\n1\nA 99 1000 a\n");
+
+        AXrLottieDiskCache cache = new AXrLottieDiskCache(directory, 0);
+        drain();
+        assertEquals(10, cache.getSize());
+        assertTrue(readJournal().startsWith(HEADER));
+    }
+
+    @Test
+    public void redundantLinesAreCompacted() throws Exception {
+        File a = write("a", 10);
+        write("b", 20);
+        AXrLottieDiskCache cache = new AXrLottieDiskCache(directory, 0);
+        for (int i = 0; i < 2100; i++) cache.record(a);
+        drain();
+        assertTrue(journalLines().size() > 2000);
+
+        cache.trim();
+        drain();
+        assertEquals(4, journalLines().size());
+        assertEquals(30, cache.getSize());
+    }
+
+    @Test
+    public void directoryIsReconciled() throws Exception {
+        File a = write("a", 10), b = write("b", 20);
+        AXrLottieDiskCache cache = new AXrLottieDiskCache(directory, 0);
+        cache.record(a);
+        cache.record(b);
+        drain();
+
+        // changed behind the journal: a removed, c written without being recorded
+        assertTrue(a.delete());
+        File c = write("c", 30);
+        assertTrue(c.setLastModified(System.currentTimeMillis() - 60_000));
+
+        cache = new AXrLottieDiskCache(directory, 0);
+        drain();
+        assertEquals(50, cache.getSize());
+
+        // the unrecorded file goes before the recorded ones
+        cache.setMaxSize(25);
+        drain();
+        assertFalse(c.exists());
+        assertTrue(b.exists());
+        assertEquals(20, cache.getSize());
+    }
+
+    @Test
+    public void ownerIsEvictedWithItsCompanions() throws Exception {
+        File json = write("x.json", 10);
+        File assets = new File(directory, "x.json.assets");
+        assertTrue(new File(assets, "images").mkdirs());
+        Files.write(new File(assets, "images/img_0.png").toPath(), new byte[100]);
+        File hash = write("x.json.sha1", 5);
+        File other = write("y.json", 10);
+
+        AXrLottieDiskCache cache = new AXrLottieDiskCache(directory, 0, ".assets", ".sha1");
+        // the companion is the least recently used file
+        cache.record(assets);
+        cache.record(json);
+        cache.record(hash);
+        cache.record(other);
+        drain();
+        assertEquals(125, cache.getSize());
+
+        cache.setMaxSize(20);
+        drain();
+        assertFalse(json.exists());
+        assertFalse(assets.exists());
+        assertFalse(hash.exists());
+        assertTrue(other.exists());
+        assertEquals(10, cache.getSize());
+    }
+
+    @Test
+    public void otherDirectoriesAreIgnored() throws Exception {
+        write("a", 10);
+        File frames = new File(directory, "acache");
+        assertTrue(frames.mkdirs());
+        Files.write(new File(frames, "a.cache").toPath(), new byte[100]);
+
+        AXrLottieDiskCache cache = new AXrLottieDiskCache(directory, 0, ".assets");
+        drain();
+        assertEquals(10, cache.getSize());
+    }
+
+    private File write(String name, int length) throws IOException {
+        File file = new File(directory, name);
+        Files.write(file.toPath(), new byte[length]);
+        return file;
+    }
+
+    private void writeJournal(String journal) throws IOException {
+        Files.write(new File(directory, AXrLottieDiskCache.JOURNAL_FILE).toPath(), journal.getBytes(UTF_8));
+    }
+
+    private String readJournal() throws IOException {
+        return new String(Files.readAllBytes(new File(directory, AXrLottieDiskCache.JOURNAL_FILE).toPath()), UTF_8);
+    }
+
+    private List<String> journalLines() throws IOException {
+        return Files.readAllLines(new File(directory, AXrLottieDiskCache.JOURNAL_FILE).toPath(), UTF_8);
+    }
+
+    /**
+     * Waits for the tasks queued on the single thread of the disk caches.
+     */
+    private static void drain() throws Exception {
+        Field field = AXrLottieDiskCache.class.getDeclaredField("executor");
+        field.setAccessible(true);
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) field.get(null);
+        if (executor != null) executor.submit(() -> {
+        }).get();
+    }
+}
@@ -0,0 +1,210 @@
+package com.aghajari.rlottie.network;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * Freshness and validators of {@link AXrLottieCacheMetadata}, read from the headers of a response.
+ */
+public class AXrLottieCacheMetadataTest {
+
+    private static final long NOW = 1_600_000_000_000L;
+    private static final long HOUR = 60 * 60 * 1000;
+
+    @Test
+    public void maxAgeMinusAge() {
+        AXrLottieCacheMetadata metadata = AXrLottieCacheMetadata.fromResponse(
+                response("Cache-Control", "public, max-age=60", "Age", "10"), NOW);
+        assertTrue(metadata.isFresh(NOW + 49_999));
+        assertFalse(metadata.isFresh(NOW + 50_000));
+    }
+
+    @Test
+    public void noCacheIsStaleRightAway() {
+        AXrLottieCacheMetadata metadata = AXrLottieCacheMetadata.fromResponse(
+                response("Cache-Control", "no-cache", "ETag", "\"v1\"", "Expires", date(NOW + HOUR)), NOW);
+        assertFalse(metadata.isFresh(NOW));
+        assertTrue(metadata.hasValidators());
+    }
+
+    @Test
+    public void maxAgeWinsOverExpires() {
+        AXrLottieCacheMetadata metadata = AXrLottieCacheMetadata.fromResponse(
+                response("Cache-Control", "max-age=10", "Expires", date(NOW + HOUR)), NOW);
+        assertFalse(metadata.isFresh(NOW + 10_000));
+    }
+
+    @Test
+    public void expiresIsRelativeToTheServerDate() {
+        // the server clock is an hour behind ours
+        long serverNow = NOW - HOUR;
+        AXrLottieCacheMetadata metadata = AXrLottieCacheMetadata.fromResponse(
+                response("Date", date(serverNow), "Expires", date(serverNow + 120_000)), NOW);
+        assertTrue(metadata.isFresh(NOW + 119_999));
+        assertFalse(metadata.isFresh(NOW + 120_000));
+    }
+
+    @Test
+    public void lastModifiedHeuristic() {
+        AXrLottieCacheMetadata metadata = AXrLottieCacheMetadata.fromResponse(
+                response("Date", date(NOW), "Last-Modified", date(NOW - 10 * HOUR)), NOW);
+        assertTrue(metadata.isFresh(NOW + HOUR - 1));
+        assertFalse(metadata.isFresh(NOW + HOUR));
+
+        // a tenth of the age, up to a day
+        metadata = AXrLottieCacheMetadata.fromResponse(
+                response("Date", date(NOW), "Last-Modified", date(NOW - 1000 * HOUR)), NOW);
+        assertTrue(metadata.isFresh(NOW + 24 * HOUR - 1));
+        assertFalse(metadata.isFresh(NOW + 24 * HOUR));
+    }
+
+    @Test
+    public void defaultMaxAge() {
+        AXrLottieCacheMetadata metadata = AXrLottieCacheMetadata.fromResponse(response("ETag", "\"v1\""), NOW);
+        assertTrue(metadata.isFresh(NOW + AXrLottieCacheMetadata.DEFAULT_MAX_AGE - 1));
+        assertFalse(metadata.isFresh(NOW + AXrLottieCacheMetadata.DEFAULT_MAX_AGE));
+    }
+
+    @Test
+    public void notModifiedUpdatesValidatorsAndFreshness() {
+        AXrLottieCacheMetadata metadata = AXrLottieCacheMetadata.fromResponse(
+                response("Cache-Control", "no-cache", "ETag", "\"v1\"", "Content-Length", "100"), NOW);
+        metadata.update(response("Cache-Control", "max-age=60", "ETag", "\"v2\""), NOW + HOUR);
+        assertTrue(metadata.isFresh(NOW + HOUR + 59_999));
+        assertEquals(100, metadata.getLength());
+
+        Map<String, String> headers = new HashMap<>();
+        metadata.addConditionalHeaders(headers);
+        assertEquals("\"v2\"", headers.get("If-None-Match"));
+        assertNull(headers.get("If-Modified-Since"));
+    }
+
+    @Test
+    public void conditionalHeaders() {
+        String lastModified = date(NOW - HOUR);
+        AXrLottieCacheMetadata metadata = AXrLottieCacheMetadata.fromResponse(
+                response("ETag", "W/\"v1\"", "Last-Modified", lastModified), NOW);
+        Map<String, String> headers = new HashMap<>();
+        metadata.addConditionalHeaders(headers);
+        assertEquals("W/\"v1\"", headers.get("If-None-Match"));
+        assertEquals(lastModified, headers.get("If-Modified-Since"));
+    }
+
+    @Test
+    public void rangeHeadersUseAStrongValidator() {
+        AXrLottieCacheMetadata metadata = AXrLottieCacheMetadata.fromResponse(
+                response("ETag", "\"v1\"", "Content-Length", "1000"), NOW);
+        Map<String, String> headers = new HashMap<>();
+        assertTrue(metadata.addRangeHeaders(headers, 400));
+        assertEquals("bytes=400-", headers.get("Range"));
+        assertEquals("\"v1\"", headers.get("If-Range"));
+
+        // a weak etag can't be used with If-Range
+        String lastModified = date(NOW - HOUR);
+        metadata = AXrLottieCacheMetadata.fromResponse(
+                response("ETag", "W/\"v1\"", "Last-Modified", lastModified), NOW);
+        headers.clear();
+        assertTrue(metadata.addRangeHeaders(headers, 400));
+        assertEquals(lastModified, headers.get("If-Range"));
+
+        metadata = AXrLottieCacheMetadata.fromResponse(response("ETag", "W/\"v1\""), NOW);
+        assertFalse(metadata.addRangeHeaders(new HashMap<>(), 400));
+    }
+
+    @Test
+    public void nothingLeftToResume() {
+        AXrLottieCacheMetadata metadata = AXrLottieCacheMetadata.fromResponse(
+                response("ETag", "\"v1\"", "Content-Length", "1000"), NOW);
+        assertFalse(metadata.addRangeHeaders(new HashMap<>(), 0));
+        assertFalse(metadata.addRangeHeaders(new HashMap<>(), 1000));
+    }
+
+    @Test
+    public void lengthOfAPartialResponse() {
+        AXrLottieCacheMetadata metadata = AXrLottieCacheMetadata.fromResponse(
+                response("Content-Range", "bytes 400-999/1000", "Content-Length", "600"), NOW);
+        assertEquals(1000, metadata.getLength());
+    }
+
+    @Test
+    public void writeAndRead() throws IOException {
+        File file = File.createTempFile("metadata", AXrLottieCacheMetadata.SUFFIX);
+        try {
+            AXrLottieCacheMetadata metadata = AXrLottieCacheMetadata.fromResponse(
+                    response("ETag", "\"v1\"", "Cache-Control", "max-age=60", "Content-Length", "1000"), NOW);
+            assertTrue(metadata.write(file));
+
+            AXrLottieCacheMetadata read = AXrLottieCacheMetadata.read(file);
+            assertNotNull(read);
+            assertEquals("application/json", read.getContentType());
+            assertEquals(1000, read.getLength());
+            assertTrue(read.isFresh(NOW + 59_999));
+            assertFalse(read.isFresh(NOW + 60_000));
+            Map<String, String> headers = new HashMap<>();
+            read.addConditionalHeaders(headers);
+            assertEquals("\"v1\"", headers.get("If-None-Match"));
+        } finally {
+            file.delete();
+        }
+        assertNull(AXrLottieCacheMetadata.read(file));
+    }
+
+    private static String date(long time) {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format.format(new Date(time));
+    }
+
+    private static AXrLottieFetchResult response(String... headers) {
+        final Map<String, String> map = new HashMap<>();
+        for (int i = 0; i < headers.length; i += 2) map.put(headers[i].toLowerCase(Locale.US), headers[i + 1]);
+        return new AXrLottieFetchResult() {
+            @Override
+            public boolean isSuccessful() {
+                return true;
+            }
+
+            @NonNull
+            @Override
+            public InputStream bodyByteStream() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Nullable
+            @Override
+            public String contentType() {
+                return "application/json";
+            }
+
+            @Nullable
+            @Override
+            public String error() {
+                return null;
+            }
+
+            @Nullable
+            @Override
+            public String header(@NonNull String name) {
+                return map.get(name.toLowerCase(Locale.US));
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
@@ -0,0 +1,68 @@
+package com.aghajari.rlottie.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Priorities of the tasks {@link AXrLottieTaskFactory} shares between the requests of a url.
+ */
+public class AXrLottieTaskFactoryTest {
+
+    private static final String URL = "https://example.com/anim.json";
+
+    private Executor executor;
+
+    @Before
+    public void setUp() {
+        executor = AXrLottieTask.EXECUTOR;
+        // the downloads never start
+        AXrLottieTask.EXECUTOR = runnable -> {
+        };
+    }
+
+    @After
+    public void tearDown() {
+        AXrLottieTaskFactory.clearCache();
+        AXrLottieTask.EXECUTOR = executor;
+    }
+
+    @Test
+    public void sharedTaskRunsWithHighestPriority() {
+        AXrLottieTask<File> visible = AXrLottieTaskFactory.fromUrl(URL, false, AXrLottieTask.PRIORITY_HIGH);
+        AXrLottieTask<File> other = AXrLottieTaskFactory.fromUrl(URL, false, AXrLottieTask.PRIORITY_NORMAL);
+        assertSame(visible, other);
+        assertEquals(AXrLottieTask.PRIORITY_HIGH, visible.getPriority());
+
+        AXrLottieTaskFactory.setPriority(URL, other, AXrLottieTask.PRIORITY_NORMAL, AXrLottieTask.PRIORITY_LOW);
+        assertEquals(AXrLottieTask.PRIORITY_HIGH, visible.getPriority());
+    }
+
+    @Test
+    public void priorityFollowsLiveRequests() {
+        AXrLottieTask<File> task = AXrLottieTaskFactory.fromUrl(URL, false, AXrLottieTask.PRIORITY_LOW);
+        AXrLottieTaskFactory.fromUrl(URL, false, AXrLottieTask.PRIORITY_LOW);
+        assertEquals(AXrLottieTask.PRIORITY_LOW, task.getPriority());
+
+        AXrLottieTaskFactory.setPriority(URL, task, AXrLottieTask.PRIORITY_LOW, AXrLottieTask.PRIORITY_HIGH);
+        assertEquals(AXrLottieTask.PRIORITY_HIGH, task.getPriority());
+
+        // the request that asked for the high priority is gone
+        assertFalse(AXrLottieTaskFactory.cancel(URL, task, AXrLottieTask.PRIORITY_HIGH));
+        assertEquals(AXrLottieTask.PRIORITY_LOW, task.getPriority());
+    }
+
+    @Test
+    public void unsharedTaskTakesPriority() {
+        AXrLottieTask<File> task = AXrLottieTaskFactory.fromUrl(URL, false, AXrLottieTask.PRIORITY_HIGH);
+        AXrLottieTaskFactory.cancel(URL, task, AXrLottieTask.PRIORITY_HIGH);
+
+        AXrLottieTaskFactory.setPriority(URL, task, AXrLottieTask.PRIORITY_HIGH, AXrLottieTask.PRIORITY_LOW);
+        assertEquals(AXrLottieTask.PRIORITY_LOW, task.getPriority());
+    }
+}
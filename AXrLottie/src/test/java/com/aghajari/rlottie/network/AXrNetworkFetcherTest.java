@@ -0,0 +1,216 @@
+package com.aghajari.rlottie.network;
+
+import com.aghajari.rlottie.AXrLottie;
+import com.aghajari.rlottie.AXrLottieCacheManager;
+import com.aghajari.rlottie.decoder.AXrLottieResult;
+import com.aghajari.rlottie.extension.JsonFileExtension;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Revalidation (304) and resumed downloads (206, If-Range) of {@link AXrNetworkFetcher},
+ * against a local http server.
+ */
+public class AXrNetworkFetcherTest {
+
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    private HttpServer server;
+    private volatile Handler handler;
+    private final List<Headers> requests = new CopyOnWriteArrayList<>();
+    private File directory;
+    private AXrLottieCacheManager cacheManager;
+    private AXrNetworkFetcher fetcher;
+    private String url;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("axrlottie").toFile();
+        cacheManager = new AXrLottieCacheManager(new File(directory, "network"), new File(directory, "local"));
+        setCacheManager(cacheManager);
+        AXrLottie.addFileExtension(JsonFileExtension.JSON);
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/anim.json", exchange -> {
+            requests.add(exchange.getRequestHeaders());
+            try {
+                handler.handle(exchange);
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/anim.json";
+        fetcher = new AXrNetworkFetcher(new AXrSimpleNetworkFetcher());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop(0);
+        setCacheManager(null);
+        delete(directory);
+    }
+
+    @Test
+    public void freshFileIsUsedWithoutRequest() throws Exception {
+        byte[] body = body(100, 'a');
+        handler = exchange -> send(exchange, 200, body, "ETag", "\"v1\"", "Cache-Control", "max-age=60");
+
+        File file = fetch();
+        assertArrayEquals(body, Files.readAllBytes(file.toPath()));
+        // the metadata is a companion of the json, evicted along with it
+        File metadata = cacheManager.getNetworkMetadataFile(url);
+        assertEquals(new File(file.getAbsolutePath() + AXrLottieCacheMetadata.SUFFIX), metadata);
+        assertTrue(metadata.exists());
+
+        assertEquals(file, fetch());
+        assertEquals(1, requests.size());
+    }
+
+    @Test
+    public void staleFileIsRevalidated() throws Exception {
+        byte[] body = body(100, 'a');
+        String lastModified = "Tue, 15 Sep 2020 12:00:00 GMT";
+        handler = exchange -> send(exchange, 200, body, "ETag", "\"v1\"", "Last-Modified", lastModified, "Cache-Control", "no-cache");
+        File file = fetch();
+        long modified = file.lastModified();
+
+        handler = exchange -> {
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                send(exchange, 304, null, "Cache-Control", "max-age=60");
+            } else {
+                send(exchange, 200, body(100, 'b'));
+            }
+        };
+        assertEquals(file, fetch());
+        assertEquals(2, requests.size());
+        assertEquals(lastModified, requests.get(1).getFirst("If-Modified-Since"));
+        assertArrayEquals(body, Files.readAllBytes(file.toPath()));
+        assertEquals(modified, file.lastModified());
+
+        // fresh after the 304
+        AXrLottieCacheMetadata metadata = AXrLottieCacheMetadata.read(cacheManager.getNetworkMetadataFile(url));
+        assertNotNull(metadata);
+        assertTrue(metadata.isFresh(System.currentTimeMillis()));
+        fetch();
+        assertEquals(2, requests.size());
+    }
+
+    @Test
+    public void changedFileIsDownloadedAgain() throws Exception {
+        handler = exchange -> send(exchange, 200, body(100, 'a'), "ETag", "\"v1\"", "Cache-Control", "no-cache");
+        fetch();
+
+        byte[] body = body(120, 'b');
+        handler = exchange -> send(exchange, 200, body, "ETag", "\"v2\"", "Cache-Control", "no-cache");
+        File file = fetch();
+        assertEquals("\"v1\"", requests.get(1).getFirst("If-None-Match"));
+        assertArrayEquals(body, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void interruptedDownloadIsResumed() throws Exception {
+        byte[] body = body(64 * 1024, 'a');
+        interrupt(body, "\"v1\"");
+
+        handler = exchange -> {
+            Headers headers = exchange.getRequestHeaders();
+            int start = body.length / 2;
+            if (("bytes=" + start + "-").equals(headers.getFirst("Range")) && "\"v1\"".equals(headers.getFirst("If-Range"))) {
+                send(exchange, 206, Arrays.copyOfRange(body, start, body.length), "ETag", "\"v1\"",
+                        "Content-Range", "bytes " + start + "-" + (body.length - 1) + "/" + body.length);
+            } else {
+                send(exchange, 200, body, "ETag", "\"v1\"");
+            }
+        };
+        File file = fetch();
+        assertEquals("bytes=" + body.length / 2 + "-", requests.get(1).getFirst("Range"));
+        assertArrayEquals(body, Files.readAllBytes(file.toPath()));
+        assertFalse(cacheManager.getNetworkPartialFile(url).exists());
+    }
+
+    @Test
+    public void changedFileRestartsTheDownload() throws Exception {
+        interrupt(body(64 * 1024, 'a'), "\"v1\"");
+
+        // If-Range doesn't match, the server sends the whole new body
+        byte[] body = body(48 * 1024, 'b');
+        handler = exchange -> send(exchange, 200, body, "ETag", "\"v2\"");
+        File file = fetch();
+        assertEquals("\"v1\"", requests.get(1).getFirst("If-Range"));
+        assertArrayEquals(body, Files.readAllBytes(file.toPath()));
+    }
+
+    /**
+     * Sends half of the body and closes the connection.
+     */
+    private void interrupt(byte[] body, String etag) throws Exception {
+        handler = exchange -> {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.sendResponseHeaders(200, body.length);
+            OutputStream output = exchange.getResponseBody();
+            output.write(body, 0, body.length / 2);
+            output.flush();
+        };
+        AXrLottieResult<File> result = fetcher.fetchSync(url, true);
+        assertNull(result.getValue());
+        assertNotNull(result.getException());
+        assertEquals(body.length / 2, cacheManager.getNetworkPartialFile(url).length());
+    }
+
+    private File fetch() {
+        AXrLottieResult<File> result = fetcher.fetchSync(url, true);
+        if (result.getException() != null) throw new AssertionError(result.getException());
+        assertNotNull(result.getValue());
+        return result.getValue();
+    }
+
+    private static void send(HttpExchange exchange, int code, byte[] body, String... headers) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        for (int i = 0; i < headers.length; i += 2) exchange.getResponseHeaders().set(headers[i], headers[i + 1]);
+        exchange.sendResponseHeaders(code, body == null ? -1 : body.length);
+        if (body != null) exchange.getResponseBody().write(body);
+    }
+
+    private static byte[] body(int length, char c) {
+        byte[] body = new byte[length];
+        Arrays.fill(body, (byte) c);
+        body[0] = '{';
+        body[length - 1] = '}';
+        return body;
+    }
+
+    private static void setCacheManager(AXrLottieCacheManager cacheManager) throws Exception {
+        Field field = AXrLottie.class.getDeclaredField("cacheManager");
+        field.setAccessible(true);
+        field.set(null, cacheManager);
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) delete(child);
+        }
+        file.delete();
+    }
+}
@@ -45,9 +45,13 @@ public class AXrLottieDrawableResource implements Resource<AXrLottieDrawable>,In
 
     @Override
     public int getSize() {
-        return drawable.getMinimumWidth();
+        // rendering + background frame buffers (ARGB_8888)
+        return drawable.getIntrinsicWidth() * drawable.getIntrinsicHeight() * 4 * 2;
     }
 
+    /**
+     * frame buffers go back to {@link com.aghajari.rlottie.AXrLottieBitmapPool}
+     */
     @Override
     public void recycle() {
         drawable.stop();
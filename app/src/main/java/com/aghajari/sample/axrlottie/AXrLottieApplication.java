@@ -14,6 +14,7 @@ import com.aghajari.emojiview.iosprovider.AXIOSEmojiProvider;
 import com.aghajari.emojiview.listener.StickerViewCreatorListener;
 import com.aghajari.emojiview.sticker.StickerCategory;
 import com.aghajari.rlottie.AXrLottie;
+import com.aghajari.rlottie.AXrLottieCacheManager;
 import com.aghajari.rlottie.AXrLottieDrawable;
 import com.aghajari.rlottie.AXrLottieImageView;
 import com.aghajari.rlottie.AXrLottieOptions;
@@ -29,6 +30,8 @@ public class AXrLottieApplication extends Application {
       //AXrLottie.setMaxNetworkCacheSize(100);
         AXrLottie.setNetworkFetcher(OkHttpNetworkFetcher.create());
         AXrLottie.addFileExtension(new GZipFileExtension(".tgs"));
+        // stickers are shown in the grid, the category tabs and the preview
+        AXrLottie.setFramesCacheBuckets(AXrLottieCacheManager.DEFAULT_FRAMES_CACHE_BUCKETS);
 
         AXrLottie.setDefaultOptions(new AXrLottieOptions()
                 .setOnLottieLoaderListener(new AXrLottieDrawable.OnLottieLoaderListener() {
@@ -16,6 +16,8 @@
  */
 package com.aghajari.sample.axrlottie;
 
+import android.os.CancellationSignal;
+
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
@@ -24,8 +26,12 @@ import com.aghajari.rlottie.network.AXrLottieNetworkFetcher;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
+import okhttp3.Call;
+import okhttp3.Headers;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
@@ -53,10 +59,25 @@ public class OkHttpNetworkFetcher extends AXrLottieNetworkFetcher {
     @NonNull
     @Override
     public AXrLottieFetchResult fetchSync(@NonNull String url) throws IOException {
+        return fetchSync(url, null);
+    }
+
+    @NonNull
+    @Override
+    public AXrLottieFetchResult fetchSync(@NonNull String url, @Nullable CancellationSignal signal) throws IOException {
+        return fetchSync(url, Collections.emptyMap(), signal);
+    }
+
+    @NonNull
+    @Override
+    public AXrLottieFetchResult fetchSync(@NonNull String url, @NonNull Map<String, String> headers,
+                                          @Nullable CancellationSignal signal) throws IOException {
         if (client == null) updateClient();
 
-        Request request = new Request.Builder().url(url).build();
-        Response response = client.newCall(request).execute();
+        Request request = new Request.Builder().url(url).headers(Headers.of(headers)).build();
+        Call call = client.newCall(request);
+        if (signal != null) signal.setOnCancelListener(call::cancel);
+        Response response = call.execute();
 
         return new OkHttpNetworkFetchResult(response);
     }
@@ -90,6 +111,17 @@ public class OkHttpNetworkFetcher extends AXrLottieNetworkFetcher {
             return contentType;
         }
 
+        @Override
+        public int code() {
+            return response.code();
+        }
+
+        @Nullable
+        @Override
+        public String header(@NonNull String name) {
+            return response.header(name);
+        }
+
         @Nullable
         @Override
         public String error() {